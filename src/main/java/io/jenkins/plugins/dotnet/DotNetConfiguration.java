@@ -1,10 +1,12 @@
 package io.jenkins.plugins.dotnet;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.model.FreeStyleProject;
 import hudson.tasks.Builder;
 import hudson.util.FormValidation;
+import io.jenkins.plugins.dotnet.commands.BuildServerPool;
 import io.jenkins.plugins.dotnet.commands.Command;
 import io.jenkins.plugins.dotnet.commands.ListPackage;
 import io.jenkins.plugins.dotnet.commands.Messages;
@@ -52,6 +54,166 @@ public class DotNetConfiguration extends GlobalConfiguration implements Serializ
     return GlobalConfigurationCategory.get(ToolConfigurationCategory.class);
   }
 
+  /** Indicates whether MSBuild and test runner parallelism should be derived from the agent's cores and executors. */
+  private boolean automaticParallelism = false;
+
+  /**
+   * Determines whether MSBuild and test runner parallelism should be derived from the agent's cores and executors.
+   *
+   * @return {@code true} when parallelism is set automatically; {@code false} otherwise.
+   */
+  public boolean isAutomaticParallelism() {
+    return this.automaticParallelism;
+  }
+
+  /**
+   * Determines whether MSBuild and test runner parallelism should be derived from the agent's cores and executors.
+   * <p>
+   * When set, MSBuild-based commands pass {@code -maxcpucount:N} and test runs set {@code RunConfiguration.MaxCpuCount=N}, where
+   * {@code N} is the number of cores on the agent divided by its number of executors (but at least 1), unless a job specifies its
+   * own value.
+   *
+   * @param automaticParallelism {@code true} to set parallelism automatically; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setAutomaticParallelism(boolean automaticParallelism) {
+    this.automaticParallelism = automaticParallelism;
+  }
+
+  /** The number of minutes after which unused pooled build servers are shut down. */
+  private Integer buildServerIdleTime;
+
+  /**
+   * Gets the number of minutes after which unused pooled build servers are shut down.
+   *
+   * @return The number of minutes after which unused pooled build servers are shut down, or {@code null} when build servers are
+   * not pooled.
+   */
+  @CheckForNull
+  public Integer getBuildServerIdleTime() {
+    return this.buildServerIdleTime;
+  }
+
+  /**
+   * Sets the number of minutes after which unused pooled build servers are shut down.
+   * <p>
+   * When set, the build servers (MSBuild nodes and the compiler server) started by MSBuild-based commands are kept running after
+   * the build, so that later builds on the same node using the same SDK start warm (see {@link BuildServerPool}).
+   *
+   * @param buildServerIdleTime The number of minutes after which unused pooled build servers are shut down; values less than 1
+   *                            mean build servers are not pooled.
+   */
+  @DataBoundSetter
+  public void setBuildServerIdleTime(@CheckForNull Integer buildServerIdleTime) {
+    this.buildServerIdleTime = buildServerIdleTime == null || buildServerIdleTime < 1 ? null : buildServerIdleTime;
+  }
+
+  /** The free memory (in MB) on a node below which its pooled build servers are shut down. */
+  private Integer buildServerMinFreeMemory;
+
+  /**
+   * Gets the free memory on a node below which its pooled build servers are shut down.
+   *
+   * @return The free memory (in MB) on a node below which its pooled build servers are shut down, or {@code null} when memory is
+   * not checked.
+   */
+  @CheckForNull
+  public Integer getBuildServerMinFreeMemory() {
+    return this.buildServerMinFreeMemory;
+  }
+
+  /**
+   * Sets the free memory on a node below which its pooled build servers are shut down, even when they have not been idle for long
+   * enough (see {@link #setBuildServerIdleTime(Integer)}).
+   *
+   * @param buildServerMinFreeMemory The free memory (in MB) on a node below which its pooled build servers are shut down; values
+   *                                 less than 1 mean memory is not checked.
+   */
+  @DataBoundSetter
+  public void setBuildServerMinFreeMemory(@CheckForNull Integer buildServerMinFreeMemory) {
+    this.buildServerMinFreeMemory = buildServerMinFreeMemory == null || buildServerMinFreeMemory < 1 ? null :
+                                    buildServerMinFreeMemory;
+  }
+
+  /** The memory (in MB) each running command is assumed to use, for node admission control. */
+  private Integer commandMemory;
+
+  /**
+   * Gets the memory each running command is assumed to use, for node admission control.
+   *
+   * @return The memory (in MB) each running command is assumed to use, or {@code null} when memory is not taken into account.
+   */
+  @CheckForNull
+  public Integer getCommandMemory() {
+    return this.commandMemory;
+  }
+
+  /**
+   * Sets the memory each running command is assumed to use, for node admission control (see {@link #setNodeMemoryBudget(Integer)}).
+   *
+   * @param commandMemory The memory (in MB) each running command is assumed to use; values less than 1 mean memory is not taken
+   *                      into account.
+   */
+  @DataBoundSetter
+  public void setCommandMemory(@CheckForNull Integer commandMemory) {
+    this.commandMemory = commandMemory == null || commandMemory < 1 ? null : commandMemory;
+  }
+
+  /** The number of CPUs that commands running at the same time on a node may claim in total. */
+  private Integer nodeCpuBudget;
+
+  /**
+   * Gets the number of CPUs that commands running at the same time on a node may claim in total.
+   *
+   * @return The number of CPUs that commands running at the same time on a node may claim in total, or {@code null} for no limit.
+   */
+  @CheckForNull
+  public Integer getNodeCpuBudget() {
+    return this.nodeCpuBudget;
+  }
+
+  /**
+   * Sets the number of CPUs that commands running at the same time on a node may claim in total.
+   * <p>
+   * When set, a command only starts once enough of this budget is available on its node; until then, it waits in line. A command
+   * claims the number of CPUs it was told to use (see {@link #setAutomaticParallelism(boolean)}); an MSBuild-based command without
+   * such a limit claims the entire budget, and other commands claim a single CPU.
+   *
+   * @param nodeCpuBudget The number of CPUs that commands running at the same time on a node may claim in total; values less than 1
+   *                      mean there is no limit.
+   */
+  @DataBoundSetter
+  public void setNodeCpuBudget(@CheckForNull Integer nodeCpuBudget) {
+    this.nodeCpuBudget = nodeCpuBudget == null || nodeCpuBudget < 1 ? null : nodeCpuBudget;
+  }
+
+  /** The memory (in MB) that commands running at the same time on a node may claim in total. */
+  private Integer nodeMemoryBudget;
+
+  /**
+   * Gets the memory that commands running at the same time on a node may claim in total.
+   *
+   * @return The memory (in MB) that commands running at the same time on a node may claim in total, or {@code null} for no limit.
+   */
+  @CheckForNull
+  public Integer getNodeMemoryBudget() {
+    return this.nodeMemoryBudget;
+  }
+
+  /**
+   * Sets the memory that commands running at the same time on a node may claim in total.
+   * <p>
+   * When set (along with {@link #setCommandMemory(Integer)}), a command only starts once enough of this budget is available on its
+   * node; until then, it waits in line.
+   *
+   * @param nodeMemoryBudget The memory (in MB) that commands running at the same time on a node may claim in total; values less
+   *                         than 1 mean there is no limit.
+   */
+  @DataBoundSetter
+  public void setNodeMemoryBudget(@CheckForNull Integer nodeMemoryBudget) {
+    this.nodeMemoryBudget = nodeMemoryBudget == null || nodeMemoryBudget < 1 ? null : nodeMemoryBudget;
+  }
+
   /** Indicates whether the "build" command should be available for use in freestyle projects. */
   private boolean buildAllowed = true;
 
@@ -8,6 +8,7 @@ import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.Computer;
 import hudson.model.EnvironmentSpecific;
 import hudson.model.Node;
@@ -21,6 +22,7 @@ import hudson.tools.ToolInstaller;
 import hudson.tools.ToolProperty;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import io.jenkins.plugins.dotnet.commands.RuntimeTuning;
 import jenkins.model.Jenkins;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -28,8 +30,13 @@ import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /** An installation of a .NET SDK as a global tool. */
 public final class DotNetSDK extends ToolInstallation implements NodeSpecific<DotNetSDK>, EnvironmentSpecific<DotNetSDK> {
@@ -50,6 +57,14 @@ public final class DotNetSDK extends ToolInstallation implements NodeSpecific<Do
   // FIXME: case, so we can't know whether it would be appropriate to set it.
   public static final String ROOT_ENVIRONMENT_VARIABLE = "DOTNET_ROOT";
 
+  /** The sentinel files the .NET CLI creates (in {@code DOTNET_CLI_HOME/.dotnet}) once its first-use work is done. */
+  private static final String[] FIRST_USE_SENTINELS = {
+    ".aspNetCertificateSentinel", ".dotnetFirstUseSentinel", ".toolpath.sentinel"
+  };
+
+  /** The CLI home directories already prepared for the cold-start profile, per node. */
+  private static final Map<Computer, Set<String>> PREPARED_CLI_HOMES = new WeakHashMap<>();
+
   /**
    * Creates a new .NET SDK installation.
    *
@@ -78,6 +93,131 @@ public final class DotNetSDK extends ToolInstallation implements NodeSpecific<Do
   @NonNull
   private final DotNetConfiguration configuration;
 
+  /** Indicates whether the cold-start profile is used. */
+  private boolean coldStartProfile = false;
+
+  /**
+   * Determines whether the cold-start profile is used.
+   *
+   * @return {@code true} when the cold-start profile is used; {@code false} otherwise.
+   */
+  public boolean isColdStartProfile() {
+    return this.coldStartProfile;
+  }
+
+  /**
+   * Determines whether the cold-start profile should be used.
+   * <p>
+   * When set, the .NET CLI's first-run experience (welcome banner, development certificate generation, tool path setup) is skipped,
+   * and {@code DOTNET_CLI_HOME} is pinned (unless already set) to a directory on the node that is prepared once per installation
+   * (see {@link #prepareColdStart(FilePath, EnvVars, TaskListener)}), so that the first command run on a fresh agent starts as
+   * quickly as later ones.
+   *
+   * @param coldStartProfile {@code true} to use the cold-start profile; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setColdStartProfile(boolean coldStartProfile) {
+    this.coldStartProfile = coldStartProfile;
+  }
+
+  /** The GC heap hard limit, as a percentage of the node's memory per executor. */
+  @CheckForNull
+  private Integer gcHeapLimit;
+
+  /**
+   * Gets the GC heap hard limit for .NET processes, as a percentage of the node's memory divided by its number of executors.
+   *
+   * @return The GC heap hard limit, or {@code null} for no limit.
+   */
+  @CheckForNull
+  public Integer getGcHeapLimit() {
+    return this.gcHeapLimit;
+  }
+
+  /**
+   * Sets the GC heap hard limit for .NET processes, as a percentage of the node's memory divided by its number of executors.
+   *
+   * @param gcHeapLimit The GC heap hard limit; values less than 1 mean there is no limit, values over 100 are taken as 100.
+   */
+  @DataBoundSetter
+  public void setGcHeapLimit(@CheckForNull Integer gcHeapLimit) {
+    this.gcHeapLimit = gcHeapLimit == null || gcHeapLimit < 1 ? null : Math.min(100, gcHeapLimit);
+  }
+
+  /** The GC mode for .NET processes. */
+  @CheckForNull
+  private String gcMode;
+
+  /**
+   * Gets the GC mode for .NET processes.
+   *
+   * @return The GC mode ({@link RuntimeTuning#GC_SERVER} or {@link RuntimeTuning#GC_WORKSTATION}), or {@code null} for the
+   * runtime's default.
+   */
+  @CheckForNull
+  public String getGcMode() {
+    return this.gcMode;
+  }
+
+  /**
+   * Sets the GC mode for .NET processes.
+   *
+   * @param gcMode The GC mode ({@link RuntimeTuning#GC_SERVER} or {@link RuntimeTuning#GC_WORKSTATION}), or {@code null} for the
+   *               runtime's default.
+   */
+  @DataBoundSetter
+  public void setGcMode(@CheckForNull String gcMode) {
+    this.gcMode = Util.fixEmptyAndTrim(gcMode);
+  }
+
+  /** Indicates whether concurrent GC should be disabled for .NET processes. */
+  private boolean noConcurrentGc = false;
+
+  /**
+   * Determines whether concurrent (background) GC should be disabled for .NET processes.
+   *
+   * @return {@code true} when concurrent GC should be disabled; {@code false} otherwise.
+   */
+  public boolean isNoConcurrentGc() {
+    return this.noConcurrentGc;
+  }
+
+  /**
+   * Determines whether concurrent (background) GC should be disabled for .NET processes.
+   *
+   * @param noConcurrentGc {@code true} to disable concurrent GC; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setNoConcurrentGc(boolean noConcurrentGc) {
+    this.noConcurrentGc = noConcurrentGc;
+  }
+
+  /** The tiered compilation setting for .NET processes. */
+  @CheckForNull
+  private String tieredCompilation;
+
+  /**
+   * Gets the tiered compilation setting for .NET processes.
+   *
+   * @return The tiered compilation setting ({@link RuntimeTuning#TIERED_QUICK} or {@link RuntimeTuning#TIERED_DISABLED}), or
+   * {@code null} for the runtime's default.
+   */
+  @CheckForNull
+  public String getTieredCompilation() {
+    return this.tieredCompilation;
+  }
+
+  /**
+   * Sets the tiered compilation setting for .NET processes.
+   *
+   * @param tieredCompilation The tiered compilation setting ({@link RuntimeTuning#TIERED_QUICK} or
+   *                          {@link RuntimeTuning#TIERED_DISABLED}), or {@code null} for the runtime's default.
+   */
+  @DataBoundSetter
+  public void setTieredCompilation(@CheckForNull String tieredCompilation) {
+    this.tieredCompilation = Util.fixEmptyAndTrim(tieredCompilation);
+  }
+
   /** Indicates whether the telemetry opt-out is set. */
   private boolean telemetryOptOut = false;
 
@@ -132,6 +272,11 @@ public final class DotNetSDK extends ToolInstallation implements NodeSpecific<Do
     if (this.configuration.isTelemetryOptOut() || this.telemetryOptOut) {
       env.put("DOTNET_CLI_TELEMETRY_OPTOUT", "1");
     }
+    if (this.coldStartProfile) {
+      env.put("DOTNET_GENERATE_ASPNET_CERTIFICATE", "false");
+      env.put("DOTNET_NOLOGO", "1");
+      env.put("DOTNET_SKIP_FIRST_TIME_EXPERIENCE", "1");
+    }
     // Without this, a more recent system-level SDK can get used (especially on Windows) instead of the configured one.
     env.put("DOTNET_MULTILEVEL_LOOKUP", "0");
   }
@@ -231,7 +376,12 @@ public final class DotNetSDK extends ToolInstallation implements NodeSpecific<Do
   @NonNull
   public DotNetSDK forEnvironment(@NonNull EnvVars envVars) {
     final DotNetSDK sdk = new DotNetSDK(this.getName(), envVars.expand(this.getHome()));
+    sdk.setColdStartProfile(this.coldStartProfile);
+    sdk.setGcHeapLimit(this.gcHeapLimit);
+    sdk.setGcMode(this.gcMode);
+    sdk.setNoConcurrentGc(this.noConcurrentGc);
     sdk.setTelemetryOptOut(this.telemetryOptOut);
+    sdk.setTieredCompilation(this.tieredCompilation);
     return sdk;
   }
 
@@ -246,7 +396,12 @@ public final class DotNetSDK extends ToolInstallation implements NodeSpecific<Do
   @NonNull
   public DotNetSDK forNode(@NonNull Node node, @NonNull TaskListener listener) throws IOException, InterruptedException {
     final DotNetSDK sdk = new DotNetSDK(this.getName(), this.translateFor(node, listener));
+    sdk.setColdStartProfile(this.coldStartProfile);
+    sdk.setGcHeapLimit(this.gcHeapLimit);
+    sdk.setGcMode(this.gcMode);
+    sdk.setNoConcurrentGc(this.noConcurrentGc);
     sdk.setTelemetryOptOut(this.telemetryOptOut);
+    sdk.setTieredCompilation(this.tieredCompilation);
     return sdk;
   }
 
@@ -262,6 +417,35 @@ public final class DotNetSDK extends ToolInstallation implements NodeSpecific<Do
     return launcher.isUnix() ? "dotnet" : "dotnet.exe";
   }
 
+  /**
+   * Determines the versions of the .NET SDKs present in this installation.
+   *
+   * @param channel The remote context to use for the file paths.
+   *
+   * @return The (sorted) versions of the .NET SDKs present in this installation; empty when there are none, or when no home
+   * directory was set.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When processing is interrupted.
+   */
+  @NonNull
+  public List<String> getSdkVersions(@CheckForNull VirtualChannel channel) throws IOException, InterruptedException {
+    final FilePath home = this.getHomePath(channel);
+    if (home == null)
+      return Collections.emptyList();
+    final FilePath sdkRoot = home.child("sdk");
+    if (!sdkRoot.exists())
+      return Collections.emptyList();
+    final List<String> versions = new ArrayList<>();
+    for (final FilePath sdkDir : sdkRoot.listDirectories()) {
+      // Same assumption as in createGlobalJson(): SDK directories contain 'dotnet.dll'.
+      if (sdkDir.child("dotnet.dll").exists())
+        versions.add(sdkDir.getName());
+    }
+    Collections.sort(versions);
+    return versions;
+  }
+
   /**
    * Determines the file path for this SDK's home directory.
    *
@@ -292,6 +476,77 @@ public final class DotNetSDK extends ToolInstallation implements NodeSpecific<Do
     return sdks != null && sdks.length > 0;
   }
 
+  /**
+   * Prepares the first-use state of this .NET SDK installation on the node hosting a workspace, when the cold-start profile is used.
+   * <p>
+   * Unless {@code DOTNET_CLI_HOME} is already set, this pins it to a directory (per installation) under the node's root directory.
+   * NuGet also derives its global packages folder from {@code DOTNET_CLI_HOME}, so unless {@code NUGET_PACKAGES} is already set,
+   * it is set to the folder that would be used otherwise (under the user's home directory), so that restored packages stay where
+   * they were; when that folder cannot be determined, {@code DOTNET_CLI_HOME} is left alone. Then the sentinel files the .NET CLI
+   * would otherwise create (after doing its first-use work) on its first run are created in the CLI home directory, for every SDK
+   * version in the installation. This is done once per node and CLI home directory; the time taken and the number of first-use
+   * steps skipped are reported.
+   *
+   * @param workspace The workspace.
+   * @param env       The environment to update.
+   * @param listener  The task listener to use for output.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When processing is interrupted.
+   */
+  public void prepareColdStart(@NonNull FilePath workspace, @NonNull EnvVars env, @NonNull TaskListener listener)
+    throws IOException, InterruptedException {
+    if (!this.coldStartProfile)
+      return;
+    final String home = this.getHome();
+    final Computer computer = workspace.toComputer();
+    final Node node = computer == null ? null : computer.getNode();
+    final FilePath root = node == null ? null : node.getRootPath();
+    if (home == null || root == null)
+      return;
+    final FilePath cliHome;
+    final String existingCliHome = Util.fixEmpty(env.get("DOTNET_CLI_HOME"));
+    if (existingCliHome != null)
+      cliHome = new FilePath(workspace.getChannel(), existingCliHome);
+    else {
+      if (Util.fixEmpty(env.get("NUGET_PACKAGES")) == null) {
+        // Without this, pinning DOTNET_CLI_HOME would also move NuGet's global packages folder (and restore everything again).
+        String userHome = Util.fixEmpty(env.get("USERPROFILE"));
+        if (userHome == null)
+          userHome = Util.fixEmpty(env.get("HOME"));
+        if (userHome == null)
+          return;
+        env.put("NUGET_PACKAGES", new FilePath(workspace.getChannel(), userHome).child(".nuget").child("packages").getRemote());
+      }
+      cliHome = root.child("dotnet-cli-home").child(Util.getDigestOf(home).substring(0, 8));
+      env.put("DOTNET_CLI_HOME", cliHome.getRemote());
+    }
+    synchronized (DotNetSDK.PREPARED_CLI_HOMES) {
+      final Set<String> prepared = DotNetSDK.PREPARED_CLI_HOMES.get(computer);
+      if (prepared != null && prepared.contains(cliHome.getRemote()))
+        return;
+    }
+    final long start = System.currentTimeMillis();
+    final List<String> versions = this.getSdkVersions(workspace.getChannel());
+    final FilePath sentinels = cliHome.child(".dotnet");
+    sentinels.mkdirs();
+    int created = 0;
+    for (final String version : versions) {
+      for (final String suffix : DotNetSDK.FIRST_USE_SENTINELS) {
+        final FilePath sentinel = sentinels.child(version + suffix);
+        if (!sentinel.exists()) {
+          sentinel.touch(start);
+          ++created;
+        }
+      }
+    }
+    synchronized (DotNetSDK.PREPARED_CLI_HOMES) {
+      DotNetSDK.PREPARED_CLI_HOMES.computeIfAbsent(computer, c -> new HashSet<>()).add(cliHome.getRemote());
+    }
+    listener.getLogger().println(Messages.DotNetSDK_ColdStart_Prepared(this.getName(), versions.size(), created,
+      System.currentTimeMillis() - start, cliHome.getRemote()));
+  }
+
   /**
    * Removes a {@code global.json} file (as previously created via {@link #createGlobalJson(FilePath, TaskListener)}.
    *
@@ -354,6 +609,30 @@ public final class DotNetSDK extends ToolInstallation implements NodeSpecific<Do
       return FormValidation.ok();
     }
 
+    /**
+     * Fills a listbox with the possible GC modes.
+     *
+     * @return A suitably filled listbox model.
+     */
+    @NonNull
+    public ListBoxModel doFillGcModeItems() {
+      final ListBoxModel model = new ListBoxModel();
+      RuntimeTuning.addGcModes(model);
+      return model;
+    }
+
+    /**
+     * Fills a listbox with the possible tiered compilation settings.
+     *
+     * @return A suitably filled listbox model.
+     */
+    @NonNull
+    public ListBoxModel doFillTieredCompilationItems() {
+      final ListBoxModel model = new ListBoxModel();
+      RuntimeTuning.addTieredCompilationModes(model);
+      return model;
+    }
+
     /**
      * Gets the default installer to use for a .NET SDK installation.
      *
@@ -16,6 +16,7 @@ import hudson.model.TaskListener;
 import hudson.tasks.BuildWrapperDescriptor;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import io.jenkins.plugins.dotnet.commands.RuntimeTuning;
 import io.jenkins.plugins.dotnet.console.DiagnosticFilter;
 import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildWrapper;
@@ -114,6 +115,9 @@ public class DotNetWrapper extends SimpleBuildWrapper {
     { // Update Environment
       final EnvVars modified = new EnvVars();
       sdkInstance.buildEnvVars(modified);
+      sdkInstance.prepareColdStart(workspace, modified, listener);
+      RuntimeTuning.apply(workspace, modified, sdkInstance.getGcHeapLimit(), sdkInstance.getGcMode(),
+        sdkInstance.isNoConcurrentGc(), sdkInstance.getTieredCompilation(), listener.getLogger());
       for (Map.Entry<String, String> entry : modified.entrySet())
         context.env(entry.getKey(), entry.getValue());
     }
@@ -0,0 +1,151 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.model.Computer;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Node-wide admission control for .NET commands.
+ * <p>
+ * Each node has a CPU budget and/or a memory budget (as configured globally); a command claims part of these budgets while it
+ * runs, and waits (in order of arrival) until its claim fits. A claim larger than a budget is reduced to that budget, so that such
+ * a command can still run, on its own. This makes concurrent builds on a busy node queue up instead of overloading it.
+ */
+public final class AdmissionControl {
+
+  private AdmissionControl() {
+  }
+
+  /** The governor per node. */
+  private static final Map<Computer, Governor> GOVERNORS = new WeakHashMap<>();
+
+  /**
+   * Admits a command to the node hosting a workspace, waiting until enough of the node's budgets is available.
+   *
+   * @param workspace    The workspace.
+   * @param cpuBudget    The node's CPU budget, or {@code null} for no limit.
+   * @param memoryBudget The node's memory budget (in MB), or {@code null} for no limit.
+   * @param cpus         The number of CPUs claimed by the command.
+   * @param memory       The memory (in MB) claimed by the command.
+   * @param log          The stream to report any waiting to.
+   *
+   * @return The claim to release once the command has completed, or {@code null} when no admission control applies.
+   *
+   * @throws InterruptedException When interrupted while waiting.
+   */
+  @CheckForNull
+  public static Claim admit(@NonNull FilePath workspace, @CheckForNull Integer cpuBudget, @CheckForNull Integer memoryBudget,
+                            int cpus, int memory, @NonNull PrintStream log) throws InterruptedException {
+    if (cpuBudget == null && memoryBudget == null)
+      return null;
+    final Computer computer = workspace.toComputer();
+    if (computer == null)
+      return null;
+    final int cpuLimit = cpuBudget == null ? Integer.MAX_VALUE : cpuBudget;
+    final int memoryLimit = memoryBudget == null ? Integer.MAX_VALUE : memoryBudget;
+    final Governor governor;
+    synchronized (AdmissionControl.GOVERNORS) {
+      Governor existing = AdmissionControl.GOVERNORS.get(computer);
+      // When the budgets were reconfigured, start over; running commands release their claims on the old governor.
+      if (existing == null || existing.cpuBudget != cpuLimit || existing.memoryBudget != memoryLimit) {
+        existing = new Governor(cpuLimit, memoryLimit);
+        AdmissionControl.GOVERNORS.put(computer, existing);
+      }
+      governor = existing;
+    }
+    final Claim claim = new Claim(governor, Math.min(Math.max(0, cpus), cpuLimit), Math.min(Math.max(0, memory), memoryLimit));
+    governor.acquire(claim, log);
+    return claim;
+  }
+
+  /** A command's claim on a node's budgets. */
+  public static final class Claim {
+
+    Claim(@NonNull Governor governor, int cpus, int memory) {
+      this.governor = governor;
+      this.cpus = cpus;
+      this.memory = memory;
+    }
+
+    private final int cpus;
+
+    @NonNull
+    private final Governor governor;
+
+    private final int memory;
+
+    private boolean released;
+
+    /** Releases this claim, allowing waiting commands to start. */
+    public void release() {
+      synchronized (this.governor) {
+        if (this.released)
+          return;
+        this.released = true;
+        this.governor.cpusInUse -= this.cpus;
+        this.governor.memoryInUse -= this.memory;
+        this.governor.notifyAll();
+      }
+    }
+
+  }
+
+  /** The budgets for a node, along with the claims currently on them. */
+  static final class Governor {
+
+    Governor(int cpuBudget, int memoryBudget) {
+      this.cpuBudget = cpuBudget;
+      this.memoryBudget = memoryBudget;
+    }
+
+    final int cpuBudget;
+
+    private long cpusInUse;
+
+    final int memoryBudget;
+
+    private long memoryInUse;
+
+    /** The claims waiting to be admitted, in order of arrival. */
+    private final Deque<Claim> waiting = new ArrayDeque<>();
+
+    synchronized void acquire(@NonNull Claim claim, @NonNull PrintStream log) throws InterruptedException {
+      if (this.waiting.isEmpty() && this.fits(claim)) {
+        this.take(claim);
+        return;
+      }
+      log.println(Messages.AdmissionControl_Waiting(claim.cpus, claim.memory, this.cpusInUse, this.memoryInUse,
+        this.waiting.size()));
+      final long start = System.currentTimeMillis();
+      this.waiting.add(claim);
+      try {
+        while (this.waiting.peek() != claim || !this.fits(claim))
+          this.wait();
+        this.take(claim);
+      }
+      finally {
+        this.waiting.remove(claim);
+        this.notifyAll();
+      }
+      log.println(Messages.AdmissionControl_Admitted(System.currentTimeMillis() - start));
+    }
+
+    private boolean fits(@NonNull Claim claim) {
+      return this.cpusInUse + claim.cpus <= this.cpuBudget && this.memoryInUse + claim.memory <= this.memoryBudget;
+    }
+
+    private void take(@NonNull Claim claim) {
+      this.cpusInUse += claim.cpus;
+      this.memoryInUse += claim.memory;
+    }
+
+  }
+
+}
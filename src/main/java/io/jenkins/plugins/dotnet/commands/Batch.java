@@ -0,0 +1,225 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.tasks.Builder;
+import io.jenkins.plugins.dotnet.DotNetSDK;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
+import jenkins.model.Jenkins;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A build step running a sequence of .NET CLI commands, preparing the SDK and environment only once.
+ * <p>
+ * The SDK-related settings ({@code sdk}, {@code specificSdkVersion}, {@code showSdkInfo} and {@code charset}) of the batch apply to
+ * all its commands; those same settings on the individual commands are ignored. Everything else is still honored per command: its
+ * result handling ({@code continueOnError}, {@code unstableIfErrors}, ...), work directory (relative to that of the batch), runtime
+ * tuning, fail-fast mode and output summarization. A command is run detached when either it or the batch asks for that; when the
+ * batch summarizes its output, so does every command in it.
+ * <p>
+ * In a Pipeline, the nested commands must be specified using {@code $class} (e.g. {@code [$class: 'Build', project: 'Foo.sln']});
+ * using a command's symbol (e.g. {@code dotnetBuild()}) would run it as a step of its own, immediately.
+ */
+public final class Batch extends Command {
+
+  /**
+   * Creates a new batch of .NET commands.
+   *
+   * @param commands The commands to run, in order.
+   */
+  @DataBoundConstructor
+  public Batch(@CheckForNull List<Command> commands) {
+    this.commands = commands == null ? new ArrayList<>() : new ArrayList<>(commands);
+  }
+
+  /**
+   * Runs all commands in this batch, in order (see {@link Command#runInBatch(CommandExecution, DiagnosticScanner)}).
+   * <p>
+   * The result of each command is applied as soon as it completes; a command that aborts the build stops the batch.
+   *
+   * @param execution The prepared execution context (SDK, environment and working directory).
+   * @param scanner   The scanner to send command output to; it receives the total error and warning counts.
+   *
+   * @return {@code 0}; the results of the individual commands will already have been applied.
+   *
+   * @throws AbortException       When a command aborts the build.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @Override
+  protected int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner)
+    throws AbortException, IOException, InterruptedException {
+    int executed = 0;
+    scanner.resetCounts();
+    try {
+      for (final Command command : this.commands) {
+        if (command instanceof Batch)
+          throw new AbortException(Messages.Batch_NestingNotSupported());
+        ++executed;
+        command.runInBatch(execution, scanner);
+      }
+    }
+    finally {
+      execution.getListener().getLogger().println(Messages.Batch_Completed(executed, this.commands.size(), scanner.getErrors(),
+        scanner.getWarnings()));
+    }
+    return 0;
+  }
+
+  /**
+   * Does nothing: each command in this batch applies its own runtime tuning (on top of the settings for the SDK).
+   *
+   * @param workspace The workspace for the batch.
+   * @param env       The environment to update.
+   * @param sdk       The .NET SDK installation in use, if any.
+   * @param log       The stream to report the applied settings to.
+   */
+  @Override
+  protected void applyRuntimeTuning(@NonNull FilePath workspace, @NonNull EnvVars env, @CheckForNull DotNetSDK sdk,
+                                    @NonNull PrintStream log) {
+    // Each command applies its own runtime tuning
+  }
+
+  /**
+   * Does nothing: the results of the commands in this batch are applied as each one completes.
+   *
+   * @param run      The run context for the batch.
+   * @param rc       The batch's return code.
+   * @param errors   The number of errors reported by the last command.
+   * @param warnings The number of warnings reported by the last command.
+   */
+  @Override
+  protected void checkResult(@NonNull Run<?, ?> run, int rc, int errors, int warnings) {
+    // Each command has already had its own result applied
+  }
+
+  /**
+   * Determines the number of CPUs this batch claims on its node while it runs.
+   *
+   * @param cpuCount The automatically determined number of CPUs the commands may use, if any.
+   *
+   * @return The largest number of CPUs claimed by any of the commands in this batch.
+   */
+  @Override
+  protected int getRequiredCpus(@CheckForNull Integer cpuCount) {
+    int cpus = 1;
+    for (final Command command : this.commands)
+      cpus = Math.max(cpus, command.getRequiredCpus(cpuCount));
+    return cpus;
+  }
+
+  /**
+   * Determines whether this batch uses the automatically determined parallelism.
+   *
+   * @return {@code true} when any of the commands in this batch uses the automatically determined parallelism; {@code false}
+   * otherwise.
+   */
+  @Override
+  protected boolean isParallelismSupported() {
+    for (final Command command : this.commands) {
+      if (command.isParallelismSupported())
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Determines whether "{@code dotnet build-server shutdown}" should be run after this batch.
+   *
+   * @return {@code true} when any of the commands in this batch requested a build server shutdown; {@code false} otherwise.
+   */
+  @Override
+  protected boolean isShutDownBuildServersRequested() {
+    for (final Command command : this.commands) {
+      if (command.isShutDownBuildServersRequested())
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Determines whether this batch uses build servers.
+   *
+   * @return {@code true} when any of the commands in this batch uses build servers; {@code false} otherwise.
+   */
+  @Override
+  protected boolean usesBuildServers() {
+    for (final Command command : this.commands) {
+      if (command.usesBuildServers())
+        return true;
+    }
+    return false;
+  }
+
+  //region Properties
+
+  @NonNull
+  private final List<Command> commands;
+
+  /**
+   * Gets the commands to run.
+   *
+   * @return The commands to run, in order.
+   */
+  @NonNull
+  public List<Command> getCommands() {
+    return Collections.unmodifiableList(this.commands);
+  }
+
+  //endregion
+
+  //region DescriptorImpl
+
+  /** A descriptor for batches of .NET commands. */
+  @Extension
+  @Symbol("dotnetBatch")
+  public static final class DescriptorImpl extends CommandDescriptor {
+
+    /** Creates a new .NET command batch descriptor instance. */
+    public DescriptorImpl() {
+      this.load();
+    }
+
+    /**
+     * Gets the descriptors for the commands that can be part of a batch.
+     *
+     * @return The descriptors for all .NET commands, except batches.
+     */
+    @NonNull
+    public List<CommandDescriptor> getCommandDescriptors() {
+      final List<CommandDescriptor> descriptors = new ArrayList<>();
+      for (final Descriptor<Builder> descriptor : Jenkins.get().getDescriptorList(Builder.class)) {
+        if (descriptor instanceof CommandDescriptor && !(descriptor instanceof DescriptorImpl))
+          descriptors.add((CommandDescriptor) descriptor);
+      }
+      return descriptors;
+    }
+
+    /**
+     * Gets the display name for this build step (as used in the project configuration UI).
+     *
+     * @return This build step's display name.
+     */
+    @NonNull
+    public String getDisplayName() {
+      return Messages.Batch_DisplayName();
+    }
+
+  }
+
+  //endregion
+
+}
@@ -0,0 +1,332 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.ProcessKillingVeto;
+import hudson.util.ProcessTreeRemoting.IOSProcess;
+import jenkins.model.Jenkins;
+import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.Timer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the build servers started by the .NET CLI (the MSBuild worker nodes and the VBCSCompiler/Roslyn compiler server) running
+ * across builds, so that later builds on the same node, using the same SDK, start warm.
+ * <p>
+ * Build servers are started by {@code dotnet} itself, so their processes are not known; instead, this tracks their use per node,
+ * {@code dotnet} executable and environment. When a build ends, Jenkins kills the processes it started; a veto (see {@link Veto})
+ * exempts only the build server processes (recognized by their command line) belonging to a {@code dotnet} installation that is in
+ * the pool, so that everything else run by the build is still cleaned up as usual. Once the servers have not been used for the
+ * configured idle period, or when the node's free memory drops below the configured minimum, they are stopped using
+ * {@code dotnet build-server shutdown}.
+ */
+public final class BuildServerPool {
+
+  private BuildServerPool() {
+  }
+
+  /** The interval (in milliseconds) between checks of the pooled build servers. */
+  private static final long CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+  /** The environment variables that are kept for running {@code dotnet build-server shutdown}. */
+  private static final String[] KEPT_VARIABLES = {
+    "DOTNET_CLI_HOME", "DOTNET_MULTILEVEL_LOOKUP", "DOTNET_ROOT", "HOME", "PATH", "TEMP", "TMP", "TMPDIR", "USERPROFILE"
+  };
+
+  private static final Logger LOGGER = Logger.getLogger(BuildServerPool.class.getName());
+
+  /** The pooled build servers, keyed on node name, {@code dotnet} executable and (kept) environment. */
+  private static final Map<String, Entry> ENTRIES = new HashMap<>();
+
+  /**
+   * Starts using the pooled build servers for a command.
+   * <p>
+   * While the lease is held (and for as long as the build servers are then kept running), the build servers started by the
+   * command are exempt from being killed at the end of the build.
+   *
+   * @param workspace     The command's workspace.
+   * @param executable    The {@code dotnet} executable used by the command.
+   * @param env           The command's environment.
+   * @param idleMinutes   The number of minutes after which unused build servers are shut down.
+   * @param minFreeMemory The free memory (in MB) below which build servers are shut down, or {@code null} to ignore memory.
+   * @param log           The stream to report the pool's use to.
+   *
+   * @return The lease to release once the command has completed, or {@code null} when the node is not known.
+   */
+  @CheckForNull
+  public static Lease acquire(@NonNull FilePath workspace, @NonNull String executable, @NonNull EnvVars env, int idleMinutes,
+                              @CheckForNull Integer minFreeMemory, @NonNull PrintStream log) {
+    final Computer computer = workspace.toComputer();
+    if (computer == null)
+      return null;
+    final Map<String, String> kept = new TreeMap<>();
+    for (final String name : BuildServerPool.KEPT_VARIABLES) {
+      final String value = env.get(name);
+      if (value != null)
+        kept.put(name, value);
+    }
+    // Build servers started with a different environment (e.g. a different DOTNET_CLI_HOME) are separate, so are pooled separately.
+    final String key = computer.getName() + '\n' + executable + '\n' + kept;
+    final Entry entry;
+    synchronized (BuildServerPool.ENTRIES) {
+      entry = BuildServerPool.ENTRIES.computeIfAbsent(key, k -> new Entry(computer.getName(), executable, kept));
+      ++entry.active;
+      entry.idle = TimeUnit.MINUTES.toMillis(Math.max(1, idleMinutes));
+      entry.minFreeMemory = minFreeMemory;
+    }
+    log.println(Messages.BuildServerPool_KeptWarm(idleMinutes));
+    return new Lease(key, entry);
+  }
+
+  /**
+   * Determines whether a command line is that of a build server kept running by the pool.
+   *
+   * @param args The command line.
+   *
+   * @return {@code true} when {@code args} is the command line of a build server (see {@link #isBuildServer(List)}) run from the
+   * installation of a {@code dotnet} executable that is in the pool; {@code false} otherwise.
+   */
+  static boolean isPooled(@NonNull List<String> args) {
+    if (!BuildServerPool.isBuildServer(args))
+      return false;
+    synchronized (BuildServerPool.ENTRIES) {
+      for (final Entry entry : BuildServerPool.ENTRIES.values()) {
+        final String home = entry.getHome();
+        if (home == null) // relying on the system's PATH, so any installation could be the one in use
+          return true;
+        for (final String arg : args) {
+          if (arg.startsWith(home))
+            return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Determines whether a command line is that of a build server: an MSBuild worker node that is set up for reuse, or the
+   * VBCSCompiler (Roslyn) compiler server.
+   *
+   * @param args The command line.
+   *
+   * @return {@code true} when {@code args} is the command line of a build server; {@code false} otherwise.
+   */
+  static boolean isBuildServer(@NonNull List<String> args) {
+    boolean msbuild = false;
+    boolean nodeMode = false;
+    boolean nodeReuse = false;
+    for (final String arg : args) {
+      final String lower = arg.toLowerCase(Locale.ROOT);
+      if (lower.endsWith("vbcscompiler.dll") || lower.endsWith("vbcscompiler.exe") || lower.endsWith("vbcscompiler"))
+        return true;
+      if (lower.endsWith("msbuild.dll"))
+        msbuild = true;
+      else if (lower.startsWith("/nodemode:") || lower.startsWith("-nodemode:"))
+        nodeMode = true;
+      else if (lower.equals("/nodereuse:true") || lower.equals("-nodereuse:true"))
+        nodeReuse = true;
+    }
+    return msbuild && nodeMode && nodeReuse;
+  }
+
+  private static void check(@NonNull String key, @NonNull Entry entry) {
+    final boolean idle;
+    synchronized (BuildServerPool.ENTRIES) {
+      entry.scheduled = false;
+      if (BuildServerPool.ENTRIES.get(key) != entry || entry.active > 0)
+        return;
+      idle = System.currentTimeMillis() - entry.lastUsed >= entry.idle;
+    }
+    String reason = idle ? "idle" : null;
+    if (reason == null && entry.minFreeMemory != null) {
+      final Long free = BuildServerPool.getFreeMemory(entry.node);
+      if (free != null && free < entry.minFreeMemory)
+        reason = "low memory (" + free + " MB free)";
+    }
+    synchronized (BuildServerPool.ENTRIES) {
+      if (BuildServerPool.ENTRIES.get(key) != entry || entry.active > 0)
+        return;
+      if (reason == null) {
+        BuildServerPool.schedule(key, entry);
+        return;
+      }
+      BuildServerPool.ENTRIES.remove(key);
+    }
+    BuildServerPool.shutDown(entry, reason);
+  }
+
+  @CheckForNull
+  private static Long getFreeMemory(@NonNull String nodeName) {
+    final Computer computer = Jenkins.get().getComputer(nodeName);
+    final VirtualChannel channel = computer == null ? null : computer.getChannel();
+    if (channel == null)
+      return null;
+    try {
+      return channel.call(new FreeMemory());
+    }
+    catch (IOException e) {
+      BuildServerPool.LOGGER.log(Level.FINE, "Failed to determine the free memory on node '" + nodeName + "'.", e);
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /** Schedules a check of pooled build servers; the caller must hold the lock on {@link #ENTRIES}. */
+  private static void schedule(@NonNull String key, @NonNull Entry entry) {
+    if (entry.scheduled)
+      return;
+    entry.scheduled = true;
+    Timer.get().schedule(() -> BuildServerPool.check(key, entry), BuildServerPool.CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  private static void shutDown(@NonNull Entry entry, @NonNull String reason) {
+    final Computer computer = Jenkins.get().getComputer(entry.node);
+    final Node node = computer == null ? null : computer.getNode();
+    if (node == null || computer.isOffline())
+      return;
+    BuildServerPool.LOGGER.log(Level.FINE, "Shutting down build servers for {0} on node ''{1}'' ({2}).",
+      new Object[] { entry.executable, entry.node, reason });
+    try {
+      final Launcher launcher = node.createLauncher(TaskListener.NULL);
+      final int rc = launcher.launch().cmds(entry.executable, "build-server", "shutdown").envs(entry.env).quiet(true)
+                             .stdout(TaskListener.NULL).join();
+      if (rc != 0)
+        BuildServerPool.LOGGER.log(Level.FINE, "Build server shutdown returned {0}.", rc);
+    }
+    catch (IOException e) {
+      BuildServerPool.LOGGER.log(Level.FINE, "Failed to shut down build servers on node '" + entry.node + "'.", e);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** A command's use of pooled build servers. */
+  public static final class Lease {
+
+    Lease(@NonNull String key, @NonNull Entry entry) {
+      this.key = key;
+      this.entry = entry;
+    }
+
+    @NonNull
+    private final Entry entry;
+
+    @NonNull
+    private final String key;
+
+    private boolean released;
+
+    /**
+     * Ends the command's use of the pooled build servers.
+     *
+     * @param shutDown {@code true} when the command has shut down the build servers itself; {@code false} otherwise.
+     */
+    public void release(boolean shutDown) {
+      synchronized (BuildServerPool.ENTRIES) {
+        if (this.released)
+          return;
+        this.released = true;
+        --this.entry.active;
+        this.entry.lastUsed = System.currentTimeMillis();
+        if (BuildServerPool.ENTRIES.get(this.key) != this.entry)
+          return;
+        if (shutDown && this.entry.active == 0)
+          BuildServerPool.ENTRIES.remove(this.key);
+        else
+          BuildServerPool.schedule(this.key, this.entry);
+      }
+    }
+
+  }
+
+  /** The state of the build servers for one node and {@code dotnet} executable; guarded by the lock on {@link #ENTRIES}. */
+  private static final class Entry {
+
+    Entry(@NonNull String node, @NonNull String executable, @NonNull Map<String, String> env) {
+      this.node = node;
+      this.executable = executable;
+      this.env = Collections.unmodifiableMap(env);
+    }
+
+    int active;
+
+    @NonNull
+    final Map<String, String> env;
+
+    @NonNull
+    final String executable;
+
+    long idle;
+
+    long lastUsed;
+
+    @CheckForNull
+    Integer minFreeMemory;
+
+    @NonNull
+    final String node;
+
+    boolean scheduled;
+
+    /** Gets the directory containing the {@code dotnet} executable (including a trailing separator), if it is known. */
+    @CheckForNull
+    String getHome() {
+      final int sep = Math.max(this.executable.lastIndexOf('/'), this.executable.lastIndexOf('\\'));
+      return sep < 0 ? null : this.executable.substring(0, sep + 1);
+    }
+
+  }
+
+  /** Determines the free physical memory (in MB) on a node. */
+  private static final class FreeMemory extends MasterToSlaveCallable<Long, IOException> {
+
+    private static final long serialVersionUID = -2412998736617463805L;
+
+    @Override
+    public Long call() {
+      final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+      if (os instanceof com.sun.management.OperatingSystemMXBean)
+        return ((com.sun.management.OperatingSystemMXBean) os).getFreePhysicalMemorySize() / (1024 * 1024);
+      return null;
+    }
+
+  }
+
+  /** Keeps Jenkins from killing the pooled build servers when the build that started them ends. */
+  @Extension
+  public static final class Veto extends ProcessKillingVeto {
+
+    @CheckForNull
+    @Override
+    public VetoCause vetoProcessKilling(@NonNull IOSProcess p) {
+      return BuildServerPool.isPooled(p.getArguments()) ? new VetoCause(Messages.BuildServerPool_Veto()) : null;
+    }
+
+  }
+
+}
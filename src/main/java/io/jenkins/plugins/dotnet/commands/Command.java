@@ -4,6 +4,7 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.AbortException;
 import hudson.EnvVars;
+import hudson.ExtensionList;
 import hudson.FilePath;
 import hudson.Functions;
 import hudson.Launcher;
@@ -14,13 +15,17 @@ import hudson.model.TaskListener;
 import hudson.tasks.Builder;
 import hudson.tools.ToolInstallation;
 import hudson.util.ArgumentListBuilder;
+import io.jenkins.plugins.dotnet.DotNetConfiguration;
 import io.jenkins.plugins.dotnet.DotNetSDK;
 import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
 import jenkins.tasks.SimpleBuildStep;
 import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /** A build step executing a .NET CLI command. */
 public class Command extends Builder implements SimpleBuildStep {
@@ -84,6 +89,7 @@ public class Command extends Builder implements SimpleBuildStep {
     if (sdkInstance != null) {
       executable = sdkInstance.ensureExecutableExists(launcher);
       sdkInstance.buildEnvVars(env);
+      sdkInstance.prepareColdStart(workspace, env, listener);
     }
     else {
       final String basename = DotNetSDK.getExecutableFileName(launcher);
@@ -97,67 +103,265 @@ public class Command extends Builder implements SimpleBuildStep {
     }
     if (this.workDirectory != null)
       workspace = workspace.child(this.workDirectory);
+    AdmissionControl.Claim claim = null;
+    BuildServerPool.Lease lease = null;
+    CommandOutput output = null;
     try {
       if (sdkInstance != null && this.specificSdkVersion)
         sdkInstance.createGlobalJson(workspace, listener);
-      // Note: this MUST NOT BE CLOSED, because that also closes the build listener, causing all further output to go bye-bye
-      final DiagnosticScanner scanner = new DiagnosticScanner(listener.getLogger(), cs);
-      if (this.showSdkInfo) {
-        final ArgumentListBuilder cmdLine = new ArgumentListBuilder(executable, "--info");
-        launcher.launch().cmds(cmdLine).envs(env).stdout(scanner).pwd(workspace).join();
-      }
-      int rc = -1;
-      {
-        final ArgumentListBuilder cmdLine = new ArgumentListBuilder(executable);
-        this.addCommandLineArguments(new DotNetArguments(run, cmdLine));
-        try {
-          rc = launcher.launch().cmds(cmdLine).envs(env).stdout(scanner).pwd(workspace).join();
-        }
-        finally {
-          scanner.writeCompletionMessage(rc);
-        }
-      }
-      if (this.shutDownBuildServers) {
-        final ArgumentListBuilder cmdLine = new ArgumentListBuilder(executable, "build-server", "shutdown");
-        launcher.launch().cmds(cmdLine).envs(env).stdout(scanner).pwd(workspace).join();
-      }
-      final int errors = scanner.getErrors();
-      if (errors > 0) {
-        if (this.unstableIfErrors) {
-          run.setResult(Result.UNSTABLE);
-        }
-        else if (this.continueOnError) {
-          run.setResult(Result.FAILURE);
-        }
-        else {
-          throw new AbortException(Messages.Command_ExecutionCompletedWithErrors(errors));
-        }
-      }
-      else if (rc != 0) {
-        if (this.continueOnError) {
-          run.setResult(Result.FAILURE);
-        }
-        else {
-          throw new AbortException(Messages.Command_ExecutionCompletedWithNonZeroReturnCode(rc));
-        }
-      }
-      else if (this.unstableIfWarnings && scanner.getWarnings() > 0) {
-        run.setResult(Result.UNSTABLE);
-      }
+      // From here on, all of the step's output goes through the same (batching) stream, so that nothing can overtake pending output.
+      output = CommandOutput.start(run, listener, cs, this.summarizeOutput);
+      final TaskListener messages = output.getListener();
+      final FailFast failFast = this.createFailFast();
+      final DotNetConfiguration configuration = ExtensionList.lookupSingleton(DotNetConfiguration.class);
+      Integer cpuCount = null;
+      if (this.isParallelismSupported() && configuration.isAutomaticParallelism())
+        cpuCount = Parallelism.cpuCount(workspace, messages.getLogger());
+      final Integer memory = configuration.getCommandMemory();
+      claim = AdmissionControl.admit(workspace, configuration.getNodeCpuBudget(), configuration.getNodeMemoryBudget(),
+        this.getRequiredCpus(cpuCount), memory == null ? 0 : memory, messages.getLogger());
+      final Integer idleTime = configuration.getBuildServerIdleTime();
+      if (idleTime != null && this.usesBuildServers())
+        lease = BuildServerPool.acquire(workspace, executable, env, idleTime, configuration.getBuildServerMinFreeMemory(),
+          messages.getLogger());
+      this.applyRuntimeTuning(workspace, env, sdkInstance, messages.getLogger());
+      final CommandExecution execution = new CommandExecution(run, workspace, env, launcher, output, cs, sdkInstance, executable,
+        failFast, cpuCount, this.detached);
+      final DiagnosticScanner scanner = output.createScanner();
+      if (this.showSdkInfo)
+        execution.launch(execution.createCommandLine("--info"), scanner).join();
+      final int rc = this.execute(execution, scanner);
+      if (this.isShutDownBuildServersRequested())
+        execution.launch(execution.createCommandLine("build-server", "shutdown"), scanner).join();
+      this.checkResult(run, rc, Command.getErrors(scanner, failFast, messages.getLogger()), scanner.getWarnings());
     }
     catch (AbortException ae) {
       throw ae;
     }
     catch (Throwable t) {
-      Functions.printStackTrace(t, listener.fatalError(Messages.Command_ExecutionFailed()));
+      Functions.printStackTrace(t, (output == null ? listener : output.getListener()).fatalError(Messages.Command_ExecutionFailed()));
       throw new AbortException(Messages.Command_ExecutionFailed());
     }
     finally {
+      Command.finish(output, run, launcher);
+      if (lease != null)
+        lease.release(this.isShutDownBuildServersRequested());
+      if (claim != null)
+        claim.release();
       if (sdkInstance != null && this.specificSdkVersion)
         DotNetSDK.removeGlobalJson(workspace, listener);
     }
   }
 
+  /**
+   * Runs this command as part of a batch (see {@link Batch}), then applies its result.
+   * <p>
+   * The command runs in the batch's prepared context (SDK and environment), but with its own work directory (relative to that of
+   * the batch), runtime tuning, fail-fast mode and output summarization; it is run detached when either it or the batch asks for
+   * that.
+   *
+   * @param batch  The prepared execution context for the batch.
+   * @param totals The scanner to add this command's error and warning counts to.
+   *
+   * @throws AbortException       When something goes wrong, or the command's result aborts the build.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  final void runInBatch(@NonNull CommandExecution batch, @NonNull DiagnosticScanner totals)
+    throws AbortException, IOException, InterruptedException {
+    final Run<?, ?> run = batch.getRun();
+    final FilePath workspace = this.workDirectory == null ? batch.getWorkspace() : batch.getWorkspace().child(this.workDirectory);
+    final CommandOutput output = batch.getOutput().nest(run, this.summarizeOutput);
+    try {
+      final PrintStream log = output.getListener().getLogger();
+      final EnvVars env = new EnvVars(batch.getEnvironment());
+      this.applyRuntimeTuning(workspace, env, batch.getSdk(), log);
+      final FailFast failFast = this.createFailFast();
+      final CommandExecution execution = batch.forCommand(workspace, env, output, failFast, this.detached || batch.isDetached());
+      final DiagnosticScanner scanner = output.createScanner();
+      final int rc = this.execute(execution, scanner);
+      totals.merge(scanner);
+      this.checkResult(run, rc, Command.getErrors(scanner, failFast, log), scanner.getWarnings());
+    }
+    finally {
+      Command.finish(output, run, batch.getLauncher());
+    }
+  }
+
+  /**
+   * Determines the number of errors for a command: those reported in its build summary, or the number of failures seen by its
+   * fail-fast monitor, if that was triggered (and saw more).
+   *
+   * @param scanner  The scanner that saw the command's output.
+   * @param failFast The command's fail-fast monitor, if any.
+   * @param log      The stream to report a triggered fail-fast monitor to.
+   *
+   * @return The number of errors for the command.
+   */
+  private static int getErrors(@NonNull DiagnosticScanner scanner, @CheckForNull FailFast failFast, @NonNull PrintStream log) {
+    int errors = scanner.getErrors();
+    if (failFast != null && failFast.isTriggered()) {
+      log.println(Messages.Command_FailFastTriggered(failFast.getFailures()));
+      errors = Math.max(errors, failFast.getFailures());
+    }
+    return errors;
+  }
+
+  /**
+   * Completes a step's output (see {@link CommandOutput#finish(Run, Launcher)}), ignoring any problems doing so (they will be
+   * reported via other means).
+   *
+   * @param output   The output to complete.
+   * @param run      The build the step is part of.
+   * @param launcher The launcher for the step.
+   */
+  private static void finish(@CheckForNull CommandOutput output, @NonNull Run<?, ?> run, @NonNull Launcher launcher) {
+    if (output == null)
+      return;
+    try {
+      output.finish(run, launcher);
+    }
+    catch (IOException e) {
+      Command.LOGGER.log(Level.FINE, "Failed to forward pending command output.", e);
+    }
+  }
+
+  /**
+   * Applies .NET runtime tuning (see {@link RuntimeTuning}) to the environment for this command.
+   * <p>
+   * By default, this applies the settings made for the .NET SDK installation in use, if any.
+   *
+   * @param workspace The workspace for the command.
+   * @param env       The environment to update.
+   * @param sdk       The .NET SDK installation in use, if any.
+   * @param log       The stream to report the applied settings to.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  protected void applyRuntimeTuning(@NonNull FilePath workspace, @NonNull EnvVars env, @CheckForNull DotNetSDK sdk,
+                                    @NonNull PrintStream log) throws IOException, InterruptedException {
+    if (sdk != null)
+      RuntimeTuning.apply(workspace, env, sdk.getGcHeapLimit(), sdk.getGcMode(), sdk.isNoConcurrentGc(),
+        sdk.getTieredCompilation(), log);
+  }
+
+  /**
+   * Creates the fail-fast monitor for this command's processes.
+   * <p>
+   * By default, fail-fast mode is not supported, so this returns {@code null}.
+   *
+   * @return The fail-fast monitor for this command's processes, or {@code null} when fail-fast mode is not in use.
+   */
+  @CheckForNull
+  protected FailFast createFailFast() {
+    return null;
+  }
+
+  /**
+   * Executes this .NET command in a prepared context.
+   * <p>
+   * By default, this runs {@code dotnet} once, with the arguments produced by
+   * {@link #addCommandLineArguments(DotNetArguments)}.
+   *
+   * @param execution The prepared execution context (SDK, environment and working directory).
+   * @param scanner   The scanner to send command output to.
+   *
+   * @return The return code for the command.
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  protected int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner)
+    throws AbortException, IOException, InterruptedException {
+    final ArgumentListBuilder cmdLine = execution.createCommandLine();
+    this.addCommandLineArguments(execution.createArguments(cmdLine));
+    return execution.run(cmdLine, scanner);
+  }
+
+  /**
+   * Applies the results of this .NET command to the build, based on the configured handling of errors and warnings.
+   *
+   * @param run      The run context for the command.
+   * @param rc       The command's return code.
+   * @param errors   The number of errors reported by the command.
+   * @param warnings The number of warnings reported by the command.
+   *
+   * @throws AbortException When the build should be aborted.
+   */
+  protected void checkResult(@NonNull Run<?, ?> run, int rc, int errors, int warnings) throws AbortException {
+    if (errors > 0) {
+      if (this.unstableIfErrors) {
+        run.setResult(Result.UNSTABLE);
+      }
+      else if (this.continueOnError) {
+        run.setResult(Result.FAILURE);
+      }
+      else {
+        throw new AbortException(Messages.Command_ExecutionCompletedWithErrors(errors));
+      }
+    }
+    else if (rc != 0) {
+      if (this.continueOnError) {
+        run.setResult(Result.FAILURE);
+      }
+      else {
+        throw new AbortException(Messages.Command_ExecutionCompletedWithNonZeroReturnCode(rc));
+      }
+    }
+    else if (this.unstableIfWarnings && warnings > 0) {
+      run.setResult(Result.UNSTABLE);
+    }
+  }
+
+  /**
+   * Determines the number of CPUs this command claims on its node while it runs, for admission control (see
+   * {@link AdmissionControl}).
+   * <p>
+   * By default, this is a single CPU.
+   *
+   * @param cpuCount The automatically determined number of CPUs the command may use (see {@link Parallelism}), if any.
+   *
+   * @return The number of CPUs this command claims.
+   */
+  protected int getRequiredCpus(@CheckForNull Integer cpuCount) {
+    return 1;
+  }
+
+  /**
+   * Determines whether this command uses the automatically determined parallelism (see {@link Parallelism}), when that has been
+   * enabled in the global configuration.
+   * <p>
+   * By default, this returns {@code false}.
+   *
+   * @return {@code true} when this command uses the automatically determined parallelism; {@code false} otherwise.
+   */
+  protected boolean isParallelismSupported() {
+    return false;
+  }
+
+  /**
+   * Determines whether "{@code dotnet build-server shutdown}" should be run after this command.
+   *
+   * @return {@code true} when build servers should be shut down after this command; {@code false} otherwise.
+   */
+  protected boolean isShutDownBuildServersRequested() {
+    return this.shutDownBuildServers;
+  }
+
+  /**
+   * Determines whether this command uses build servers (MSBuild nodes and/or the compiler server), so that they can be kept
+   * running for reuse (see {@link BuildServerPool}), when that has been enabled in the global configuration.
+   * <p>
+   * By default, this returns {@code false}.
+   *
+   * @return {@code true} when this command uses build servers; {@code false} otherwise.
+   */
+  protected boolean usesBuildServers() {
+    return false;
+  }
+
   //region Properties
 
   /** A specific charset to use for the command's output. If {@code null}, the build's default charset will be used. */
@@ -210,6 +414,32 @@ public class Command extends Builder implements SimpleBuildStep {
     this.continueOnError = continueOnError;
   }
 
+  /** Flag indicating whether {@code dotnet} should be run detached from the launcher. */
+  protected boolean detached = false;
+
+  /**
+   * Determines whether {@code dotnet} should be run detached from the launcher.
+   *
+   * @return {@code true} if {@code dotnet} should be run detached from the launcher; {@code false} otherwise.
+   */
+  public boolean isDetached() {
+    return this.detached;
+  }
+
+  /**
+   * Determines whether {@code dotnet} should be run detached from the launcher.
+   * <p>
+   * When set, {@code dotnet} is started by the agent itself, with its output written to a file on the agent; the controller
+   * fetches that output in chunks, instead of receiving it line by line. The process keeps running when the connection to the
+   * agent is lost, and its output is picked up again when the agent reconnects (within 10 minutes). See {@link DetachedProc}.
+   *
+   * @param detached {@code true} if {@code dotnet} should be run detached from the launcher; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setDetached(boolean detached) {
+    this.detached = detached;
+  }
+
   /** The name of the SDK to use. */
   @CheckForNull
   protected String sdk;
@@ -286,6 +516,34 @@ public class Command extends Builder implements SimpleBuildStep {
     this.specificSdkVersion = specificSdkVersion;
   }
 
+  /** Flag indicating whether only a summary of the command output should be written to the build log. */
+  protected boolean summarizeOutput = false;
+
+  /**
+   * Determines whether only a summary of the command output should be written to the build log.
+   *
+   * @return {@code true} if only a summary of the command output should be written to the build log, with the complete output
+   * archived as a build artifact; {@code false} otherwise.
+   */
+  public boolean isSummarizeOutput() {
+    return this.summarizeOutput;
+  }
+
+  /**
+   * Determines whether only a summary of the command output should be written to the build log.
+   * <p>
+   * When set, the build log only receives diagnostics, project and target markers, and build and test summaries, with repeated
+   * warnings collapsed (see {@link io.jenkins.plugins.dotnet.console.ConsoleSummarizer}); the complete output is compressed and
+   * archived as a build artifact (see {@link RawOutputArchive}).
+   *
+   * @param summarizeOutput {@code true} if only a summary of the command output should be written to the build log;
+   *                        {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setSummarizeOutput(boolean summarizeOutput) {
+    this.summarizeOutput = summarizeOutput;
+  }
+
   /** Flag indicating whether the presence of errors makes the build unstable (instead of failed). */
   protected boolean unstableIfErrors = false;
 
@@ -319,4 +577,6 @@ public class Command extends Builder implements SimpleBuildStep {
 
   //endregion
 
+  private static final Logger LOGGER = Logger.getLogger(Command.class.getName());
+
 }
@@ -239,6 +239,24 @@ public abstract class CommandDescriptor extends BuildStepDescriptor<Builder> imp
     return model;
   }
 
+  /**
+   * Fills a listbox with the possible GC modes (see {@link RuntimeTuning}).
+   *
+   * @param item The item being configured.
+   *
+   * @return A suitably filled listbox model.
+   */
+  @NonNull
+  @POST
+  public final ListBoxModel doFillGcModeItems(@CheckForNull @AncestorInPath Item item) {
+    if (item != null) {
+      item.checkPermission(Item.CONFIGURE);
+    }
+    final ListBoxModel model = new ListBoxModel();
+    RuntimeTuning.addGcModes(model);
+    return model;
+  }
+
   /**
    * Fills a listbox with the names of .NET SDKs that have been defined as global tools.
    *
@@ -258,6 +276,24 @@ public abstract class CommandDescriptor extends BuildStepDescriptor<Builder> imp
     return model;
   }
 
+  /**
+   * Fills a listbox with the possible tiered compilation settings (see {@link RuntimeTuning}).
+   *
+   * @param item The item being configured.
+   *
+   * @return A suitably filled listbox model.
+   */
+  @NonNull
+  @POST
+  public final ListBoxModel doFillTieredCompilationItems(@CheckForNull @AncestorInPath Item item) {
+    if (item != null) {
+      item.checkPermission(Item.CONFIGURE);
+    }
+    final ListBoxModel model = new ListBoxModel();
+    RuntimeTuning.addTieredCompilationModes(model);
+    return model;
+  }
+
   /**
    * Fills a listbox with the possible values for the .NET CLI "verbosity" option.
    *
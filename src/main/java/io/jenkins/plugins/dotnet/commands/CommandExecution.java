@@ -0,0 +1,373 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import io.jenkins.plugins.dotnet.DotNetSDK;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The context for running one or more .NET CLI commands: the build, the (already prepared) SDK and environment, and the location
+ * where commands are run.
+ * <p>
+ * This is set up once by {@link Command#perform(Run, FilePath, EnvVars, Launcher, TaskListener)}, so that commands that run more
+ * than one {@code dotnet} process do not need to repeat the SDK preparation.
+ */
+public final class CommandExecution {
+
+  /**
+   * Creates a new command execution context.
+   *
+   * @param run        The run context for the command.
+   * @param workspace  The working directory for the command.
+   * @param env        The environment variables that apply for the command (including those set up by the SDK).
+   * @param launcher   The launcher to use to execute the command.
+   * @param output     The output to report command output to.
+   * @param charset    The character set to use for the command's output.
+   * @param sdk        The SDK in use, or {@code null} when relying on the SDK made available by the parent context (or the system).
+   * @param executable The full path to the {@code dotnet} executable (or just its name, when relying on the system's PATH).
+   * @param failFast   The fail-fast monitor to use for the processes run, if any.
+   * @param cpuCount   The number of CPUs commands may use when no specific value is configured (see {@link Parallelism}), if any.
+   * @param detached   Indicates whether processes should be run detached from the launcher (see {@link DetachedProc}).
+   */
+  CommandExecution(@NonNull Run<?, ?> run, @NonNull FilePath workspace, @NonNull EnvVars env, @NonNull Launcher launcher,
+                   @NonNull CommandOutput output, @NonNull Charset charset, @CheckForNull DotNetSDK sdk,
+                   @NonNull String executable, @CheckForNull FailFast failFast, @CheckForNull Integer cpuCount,
+                   boolean detached) {
+    this.run = run;
+    this.workspace = workspace;
+    this.env = env;
+    this.launcher = launcher;
+    this.output = output;
+    this.listener = output.getListener();
+    this.charset = charset;
+    this.sdk = sdk;
+    this.executable = executable;
+    this.failFast = failFast;
+    this.cpuCount = cpuCount;
+    this.detached = detached;
+  }
+
+  @NonNull
+  private final Run<?, ?> run;
+
+  @NonNull
+  private final FilePath workspace;
+
+  @NonNull
+  private final EnvVars env;
+
+  @NonNull
+  private final Launcher launcher;
+
+  @NonNull
+  private final CommandOutput output;
+
+  @NonNull
+  private final TaskListener listener;
+
+  @NonNull
+  private final Charset charset;
+
+  @CheckForNull
+  private final DotNetSDK sdk;
+
+  @NonNull
+  private final String executable;
+
+  @CheckForNull
+  private final FailFast failFast;
+
+  @CheckForNull
+  private final Integer cpuCount;
+
+  private final boolean detached;
+
+  /**
+   * Gets the character set to use for command output.
+   *
+   * @return The character set to use for command output.
+   */
+  @NonNull
+  public Charset getCharset() {
+    return this.charset;
+  }
+
+  /**
+   * Gets the number of CPUs commands may use when no specific value is configured.
+   *
+   * @return The number of CPUs commands may use when no specific value is configured, or {@code null} when parallelism is not set
+   * automatically.
+   */
+  @CheckForNull
+  public Integer getCpuCount() {
+    return this.cpuCount;
+  }
+
+  /**
+   * Gets the environment variables that apply for the command.
+   *
+   * @return The environment variables that apply for the command.
+   */
+  @NonNull
+  public EnvVars getEnvironment() {
+    return this.env;
+  }
+
+  /**
+   * Gets the full path to the {@code dotnet} executable.
+   *
+   * @return The full path to the {@code dotnet} executable (or just its name, when relying on the system's PATH).
+   */
+  @NonNull
+  public String getExecutable() {
+    return this.executable;
+  }
+
+  /**
+   * Gets the fail-fast monitor for the processes run.
+   *
+   * @return The fail-fast monitor for the processes run, or {@code null} if fail-fast mode is not in use.
+   */
+  @CheckForNull
+  public FailFast getFailFast() {
+    return this.failFast;
+  }
+
+  /**
+   * Gets the launcher to use to execute the command.
+   *
+   * @return The launcher to use to execute the command.
+   */
+  @NonNull
+  public Launcher getLauncher() {
+    return this.launcher;
+  }
+
+  /**
+   * Gets the listener to report command output to.
+   *
+   * @return The listener to report command output to.
+   */
+  @NonNull
+  public TaskListener getListener() {
+    return this.listener;
+  }
+
+  /**
+   * Gets the output to report command output to.
+   *
+   * @return The output to report command output to.
+   */
+  @NonNull
+  CommandOutput getOutput() {
+    return this.output;
+  }
+
+  /**
+   * Gets the run context for the command.
+   *
+   * @return The run context for the command.
+   */
+  @NonNull
+  public Run<?, ?> getRun() {
+    return this.run;
+  }
+
+  /**
+   * Gets the SDK in use.
+   *
+   * @return The SDK in use, or {@code null} when relying on the SDK made available by the parent context (or the system).
+   */
+  @CheckForNull
+  public DotNetSDK getSdk() {
+    return this.sdk;
+  }
+
+  /**
+   * Gets the working directory for the command.
+   *
+   * @return The working directory for the command.
+   */
+  @NonNull
+  public FilePath getWorkspace() {
+    return this.workspace;
+  }
+
+  /**
+   * Creates a new argument processor for a command line run in this context.
+   *
+   * @param cmdLine The command line.
+   *
+   * @return A new argument processor, using this context's run and CPU count.
+   */
+  @NonNull
+  public DotNetArguments createArguments(@NonNull ArgumentListBuilder cmdLine) {
+    return new DotNetArguments(this.run, cmdLine, this.cpuCount);
+  }
+
+  /**
+   * Creates a new command line, starting with the {@code dotnet} executable.
+   *
+   * @param args Any initial arguments to add.
+   *
+   * @return A new command line.
+   */
+  @NonNull
+  public ArgumentListBuilder createCommandLine(@NonNull String... args) {
+    return new ArgumentListBuilder(this.executable).add(args);
+  }
+
+  /**
+   * Determines whether processes are run detached from the launcher (see {@link DetachedProc}).
+   *
+   * @return {@code true} when processes are run detached from the launcher; {@code false} otherwise.
+   */
+  public boolean isDetached() {
+    return this.detached;
+  }
+
+  /**
+   * Prepares the launch of a command line in this context.
+   *
+   * @param cmdLine The command line to launch.
+   * @param out     The stream to send the command's output to.
+   *
+   * @return A process starter, configured with the command line, environment, output stream and working directory.
+   */
+  @NonNull
+  public Launcher.ProcStarter launch(@NonNull ArgumentListBuilder cmdLine, @NonNull OutputStream out) {
+    // The launcher would echo the command line straight to the build log; echo it via this context's listener instead, so that it
+    // cannot overtake any output still pending there. The command line's toString() masks any secrets.
+    this.listener.getLogger().println('[' + this.workspace.getName() + "] $ " + cmdLine);
+    return this.launcher.launch().cmds(cmdLine).envs(this.env).stdout(out).pwd(this.workspace).quiet(true);
+  }
+
+  /**
+   * Runs a command line in this context, writing a completion message once it ends.
+   * <p>
+   * When fail-fast mode is in use (see {@link #getFailFast()}), the command's output is checked for failures as it streams in, and
+   * the command is killed once the failure limit has been reached.
+   * <p>
+   * When detached execution is in use (see {@link #isDetached()}), the command is run as a {@link DetachedProc}.
+   *
+   * @param cmdLine The command line to run.
+   * @param scanner The scanner to send the command's output to.
+   *
+   * @return The command's return code.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public int run(@NonNull ArgumentListBuilder cmdLine, @NonNull DiagnosticScanner scanner) throws IOException, InterruptedException {
+    return this.run(cmdLine, scanner, scanner);
+  }
+
+  /**
+   * Runs a command line in this context, sending its output through an additional stream, and writing a completion message once
+   * it ends.
+   *
+   * @param cmdLine The command line to run.
+   * @param scanner The scanner to write the completion message to.
+   * @param out     The stream to send the command's output to; this must forward all output to {@code scanner}. Unless it is
+   *                {@code scanner} itself, it is closed when the command ends (so it must not close {@code scanner}).
+   *
+   * @return The command's return code.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public int run(@NonNull ArgumentListBuilder cmdLine, @NonNull DiagnosticScanner scanner, @NonNull OutputStream out)
+    throws IOException, InterruptedException {
+    int rc = -1;
+    final OutputStream monitored = this.failFast == null ? out : this.failFast.monitor(out, this.charset);
+    try {
+      final Proc proc;
+      if (this.detached)
+        proc = DetachedProc.start(cmdLine, this.env, this.workspace, monitored, monitored == scanner ? scanner : null,
+                                  this.listener);
+      else
+        proc = this.launch(cmdLine, monitored).start();
+      if (this.failFast == null)
+        rc = proc.join();
+      else {
+        this.failFast.register(proc);
+        try {
+          rc = proc.join();
+        }
+        finally {
+          this.failFast.unregister(proc);
+        }
+      }
+    }
+    finally {
+      if (monitored != out)
+        monitored.close();
+      if (out != scanner)
+        out.close();
+      scanner.writeCompletionMessage(rc);
+    }
+    return rc;
+  }
+
+  /**
+   * Creates a copy of this context that uses a different working directory.
+   *
+   * @param workDirectory The working directory to use, relative to the current one. If this is {@code null}, this context is
+   *                      returned as-is.
+   *
+   * @return A suitable command execution context.
+   */
+  @NonNull
+  public CommandExecution withWorkDirectory(@CheckForNull String workDirectory) {
+    if (workDirectory == null)
+      return this;
+    return new CommandExecution(this.run, this.workspace.child(workDirectory), this.env, this.launcher, this.output,
+      this.charset, this.sdk, this.executable, this.failFast, this.cpuCount, this.detached);
+  }
+
+  /**
+   * Creates a copy of this context for one of several invocations running at the same time: the automatically determined number
+   * of CPUs (if any) is shared between them, so that together they do not use more than that.
+   *
+   * @param parallelism The number of invocations running at the same time.
+   *
+   * @return A suitable command execution context.
+   */
+  @NonNull
+  public CommandExecution forParallelInvocations(int parallelism) {
+    if (parallelism <= 1 || this.cpuCount == null)
+      return this;
+    return new CommandExecution(this.run, this.workspace, this.env, this.launcher, this.output, this.charset, this.sdk,
+      this.executable, this.failFast, Math.max(1, this.cpuCount / parallelism), this.detached);
+  }
+
+  /**
+   * Creates a copy of this context for a single command in a batch (see {@link Batch}), using that command's own settings.
+   *
+   * @param workspace The working directory to use.
+   * @param env       The environment variables to use.
+   * @param output    The output to use.
+   * @param failFast  The fail-fast monitor to use, if any.
+   * @param detached  Indicates whether processes should be run detached from the launcher.
+   *
+   * @return A suitable command execution context.
+   */
+  @NonNull
+  CommandExecution forCommand(@NonNull FilePath workspace, @NonNull EnvVars env, @NonNull CommandOutput output,
+                              @CheckForNull FailFast failFast, boolean detached) {
+    return new CommandExecution(this.run, workspace, env, this.launcher, output, this.charset, this.sdk, this.executable, failFast,
+      this.cpuCount, detached);
+  }
+
+}
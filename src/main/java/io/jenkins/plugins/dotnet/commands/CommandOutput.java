@@ -0,0 +1,234 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.CloseProofOutputStream;
+import hudson.Functions;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import io.jenkins.plugins.dotnet.console.BatchingOutputStream;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
+import io.jenkins.plugins.dotnet.console.LogIndexAction;
+import io.jenkins.plugins.dotnet.console.LogIndexer;
+import io.jenkins.plugins.dotnet.console.PrefixedOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The output of a build step running .NET commands, on its way to the build log.
+ * <p>
+ * All output for the step goes through a single stream, which forwards it to the build log in batches (see
+ * {@link BatchingOutputStream}): both the output of the {@code dotnet} processes (after scanning, see {@link #createScanner()}) and
+ * the messages written by the step itself (via {@link #getListener()}). Because nothing bypasses that stream, the step's messages
+ * cannot overtake process output that is still pending.
+ * <p>
+ * When output is summarized, only the process output is; the step's own messages are always kept (see {@link RawOutputArchive}).
+ * Otherwise, an index of the diagnostic lines and project boundaries is kept (see {@link LogIndexer}); because it sits right in front
+ * of the batching stream, the positions it records account for everything the step writes to the build log.
+ * <p>
+ * Every write to the streams handed out by this class must consist of complete lines (as is the case for
+ * {@link DiagnosticScanner} and {@link PrefixedOutputStream}); this allows several processes (and the step itself) to write at the
+ * same time without their lines getting mixed up.
+ */
+final class CommandOutput {
+
+  private CommandOutput(@NonNull Object lock, @CheckForNull OutputStream log, @NonNull OutputStream messages,
+                        @NonNull Charset charset, @NonNull TaskListener listener, @CheckForNull RawOutputArchive archive,
+                        @NonNull OutputStream process) {
+    this.lock = lock;
+    this.log = log;
+    this.messages = messages;
+    this.charset = charset;
+    this.listener = listener;
+    this.archive = archive;
+    this.process = process;
+  }
+
+  /** The archive for the complete process output, when it is summarized (by this output, as opposed to its parent). */
+  @CheckForNull
+  private final RawOutputArchive archive;
+
+  /** The character set for the process output. */
+  @NonNull
+  private final Charset charset;
+
+  /** The listener for the step's own messages. */
+  @NonNull
+  private final TaskListener listener;
+
+  /** The lock serializing all writes. */
+  @NonNull
+  private final Object lock;
+
+  /**
+   * The stream receiving all output, forwarding it to the build log (in batches); {@code null} for a nested output (see
+   * {@link #nest(Run, boolean)}), which leaves that to its parent.
+   */
+  @CheckForNull
+  private final OutputStream log;
+
+  /** The stream receiving the step's own messages (and, unless it is summarized, the process output). */
+  @NonNull
+  private final OutputStream messages;
+
+  /** The stream receiving the (scanned) process output. */
+  @NonNull
+  private final OutputStream process;
+
+  /**
+   * Sets up the output for a build step.
+   *
+   * @param run       The build the step is part of.
+   * @param listener  The listener for the build.
+   * @param charset   The character set for the process output.
+   * @param summarize Indicates whether the process output should be summarized.
+   *
+   * @return The output for the step.
+   *
+   * @throws IOException When the file for the complete output could not be created.
+   */
+  @NonNull
+  static CommandOutput start(@NonNull Run<?, ?> run, @NonNull TaskListener listener, @NonNull Charset charset,
+                             boolean summarize) throws IOException {
+    // The build log is not closed along with the batching stream.
+    final BatchingOutputStream batching = new BatchingOutputStream(new CloseProofOutputStream(listener.getLogger()));
+    final OutputStream log;
+    if (summarize) // a summarized log is small enough to navigate as-is
+      log = batching;
+    else {
+      listener.getLogger().flush();
+      log = new LogIndexer(batching, run.getCharset(), LogIndexAction.forRun(run)::record, run.getLogText().length());
+    }
+    final Object lock = new Object();
+    final OutputStream messages = new Sink(lock, log);
+    // The listener's stream makes sure each line of a message is forwarded using a single write.
+    final Charset logCharset = run.getCharset();
+    final TaskListener messageListener = new StreamTaskListener(new PrefixedOutputStream(messages, "", logCharset), logCharset);
+    if (!summarize)
+      return new CommandOutput(lock, log, messages, charset, messageListener, null, messages);
+    final RawOutputArchive archive = RawOutputArchive.start(run, messages, charset);
+    return new CommandOutput(lock, log, messages, charset, messageListener, archive, new Sink(lock, archive.getOutput()));
+  }
+
+  /**
+   * Sets up the output for a single command in a batch (see {@link Batch}), sharing this output's stream to the build log.
+   * <p>
+   * The new output must be finished (see {@link #finish(Run, Launcher)}) when the command completes; this only archives its
+   * complete output, if needed.
+   *
+   * @param run       The build the command is part of.
+   * @param summarize Indicates whether the process output should be summarized; this has no effect when this output is already
+   *                  summarizing it.
+   *
+   * @return The output for the command.
+   *
+   * @throws IOException When the file for the complete output could not be created.
+   */
+  @NonNull
+  CommandOutput nest(@NonNull Run<?, ?> run, boolean summarize) throws IOException {
+    if (!summarize || this.process != this.messages)
+      return new CommandOutput(this.lock, null, this.messages, this.charset, this.listener, null, this.process);
+    final RawOutputArchive archive = RawOutputArchive.start(run, this.messages, this.charset);
+    return new CommandOutput(this.lock, null, this.messages, this.charset, this.listener, archive,
+      new Sink(this.lock, archive.getOutput()));
+  }
+
+  /**
+   * Creates a scanner for process output.
+   * <p>
+   * The scanner does not need to be closed; closing it has no effect on this output.
+   *
+   * @return A new scanner, forwarding to this output.
+   */
+  @NonNull
+  DiagnosticScanner createScanner() {
+    return new DiagnosticScanner(this.process, this.charset);
+  }
+
+  /**
+   * Completes this output: when the process output was summarized, the complete output is archived (and linked to); then (unless
+   * this is a nested output) all remaining output is forwarded to the build log.
+   *
+   * @param run      The build the step is part of.
+   * @param launcher The launcher for the step.
+   *
+   * @throws IOException When forwarding output failed.
+   */
+  void finish(@NonNull Run<?, ?> run, @NonNull Launcher launcher) throws IOException {
+    try {
+      if (this.archive != null) {
+        try {
+          this.archive.finish(run, launcher, this.listener);
+        }
+        catch (IOException e) {
+          Functions.printStackTrace(e, this.listener.error(Messages.Command_RawOutputNotStored()));
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    finally {
+      this.listener.getLogger().flush();
+      if (this.log != null)
+        this.log.close();
+    }
+  }
+
+  /**
+   * Gets the listener for the step's own messages.
+   *
+   * @return The listener for the step's own messages.
+   */
+  @NonNull
+  TaskListener getListener() {
+    return this.listener;
+  }
+
+  /** Forwards each write to a stream, serialized using a shared lock; closing it has no effect. */
+  private static final class Sink extends OutputStream {
+
+    Sink(@NonNull Object lock, @NonNull OutputStream out) {
+      this.lock = lock;
+      this.out = out;
+    }
+
+    @NonNull
+    private final Object lock;
+
+    @NonNull
+    private final OutputStream out;
+
+    @Override
+    public void close() {
+      // the stream is closed by its owner
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (this.lock) {
+        this.out.flush();
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      synchronized (this.lock) {
+        this.out.write(b);
+      }
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+      synchronized (this.lock) {
+        this.out.write(b, off, len);
+      }
+    }
+
+  }
+
+}
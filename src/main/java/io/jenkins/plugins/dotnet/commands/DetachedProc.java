@@ -0,0 +1,543 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Proc;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.WorkspaceList;
+import hudson.util.ArgumentListBuilder;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@code dotnet} process run detached from the launcher on its node.
+ * <p>
+ * The process is started by the node's JVM, with its output (standard output and standard error combined) written to a file next
+ * to it; a thread in the node's JVM records the exit code once it ends. The controller tails the output file in chunks, so that no
+ * per-line traffic is needed, and the process keeps running (and its output keeps being recorded) when the connection to the node
+ * is lost; when the node reconnects in time, tailing resumes where it left off.
+ * <p>
+ * Each read also checks (using the recorded process ID) that the process is still running, so that a process that is gone without
+ * an exit code having been recorded (for example because the node's JVM was restarted) is reported as a failure instead of being
+ * waited for forever.
+ * <p>
+ * When output goes straight to a {@link DiagnosticScanner}, the scanning is done by the node while reading the output file: along
+ * with the output, only the positions of its diagnostic lines and the counts from any build summary are sent back, so that the
+ * controller does not need to decode and match every line. The controller then encodes a note specific to each diagnostic line
+ * (see {@link io.jenkins.plugins.dotnet.console.DiagnosticNote#forLine(String)}).
+ */
+public final class DetachedProc extends Proc {
+
+  /** The name of the file holding the process's exit code, once it has ended. */
+  private static final String EXIT_CODE = "exit-code";
+
+  private static final Logger LOGGER = Logger.getLogger(DetachedProc.class.getName());
+
+  /** The maximum number of bytes of output fetched at once. */
+  private static final int MAX_CHUNK = 1024 * 1024;
+
+  /** The name of the file holding the process's output. */
+  private static final String OUTPUT = "output.log";
+
+  /** The interval (in milliseconds) at which the output file is checked for more output. */
+  private static final long POLL_INTERVAL = 250;
+
+  /**
+   * The time (in milliseconds) to keep waiting for the exit code after the process has been found to be gone, to allow the node to
+   * finish recording it.
+   */
+  private static final long GONE_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+  /** The name of the file holding the process ID. */
+  private static final String PID = "pid";
+
+  /** The time (in milliseconds) to wait for a disconnected node to come back. */
+  private static final long RECONNECT_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+  private DetachedProc(@NonNull FilePath control, @CheckForNull String node, @NonNull OutputStream out,
+                       @CheckForNull DiagnosticScanner scanner, @NonNull TaskListener listener) {
+    this.control = control;
+    this.node = node;
+    this.out = out;
+    this.scanner = scanner;
+    this.settings = scanner == null ? null : scanner.getSettings();
+    this.listener = listener;
+  }
+
+  /** The directory holding the process's output, ID and exit code. */
+  @NonNull
+  private FilePath control;
+
+  /** Indicates whether the process has ended (and its output has been forwarded). */
+  private volatile boolean ended;
+
+  /** Indicates whether the process has been killed (see {@link #kill()}). */
+  private volatile boolean killed;
+
+  @NonNull
+  private final TaskListener listener;
+
+  /** The name of the node running the process, or {@code null} when it is not known. */
+  @CheckForNull
+  private final String node;
+
+  /** The offset in the output file up to which output has been forwarded. */
+  private long offset;
+
+  @NonNull
+  private final OutputStream out;
+
+  /** The scanner to send output to, when scanning is done by the node. */
+  @CheckForNull
+  private final DiagnosticScanner scanner;
+
+  /** The settings for the scanner used by the node, when scanning is done by the node. */
+  @CheckForNull
+  private final DiagnosticScanner.Settings settings;
+
+  /**
+   * Starts a detached process.
+   *
+   * @param cmdLine   The command line to run.
+   * @param env       The environment variables to set (on top of the node's own).
+   * @param workspace The working directory for the process.
+   * @param out       The stream to forward the process's output to.
+   * @param scanner   The scanner to send the process's output to after scanning it on the node, or {@code null} to forward the
+   *                  output to {@code out} as-is.
+   * @param listener  The listener to report the command line and any connection problems to.
+   *
+   * @return The started process.
+   *
+   * @throws IOException          When the process could not be started.
+   * @throws InterruptedException When interrupted while starting the process.
+   */
+  @NonNull
+  public static DetachedProc start(@NonNull ArgumentListBuilder cmdLine, @NonNull EnvVars env, @NonNull FilePath workspace,
+                                   @NonNull OutputStream out, @CheckForNull DiagnosticScanner scanner,
+                                   @NonNull TaskListener listener)
+    throws IOException, InterruptedException {
+    final FilePath tempDir = WorkspaceList.tempDir(workspace);
+    if (tempDir == null)
+      throw new IOException("No temporary directory available for " + workspace);
+    final FilePath control = tempDir.child("dotnet-" + UUID.randomUUID());
+    control.mkdirs();
+    final Computer computer = workspace.toComputer();
+    final DetachedProc proc = new DetachedProc(control, computer == null ? null : computer.getName(), out, scanner, listener);
+    listener.getLogger().println(Messages.DetachedProc_Started(workspace.getRemote(), cmdLine.toString(), control.getRemote()));
+    control.act(new Start(cmdLine.toList(), env, workspace.getRemote()));
+    return proc;
+  }
+
+  @Override
+  public InputStream getStderr() {
+    return null;
+  }
+
+  @Override
+  public OutputStream getStdin() {
+    return null;
+  }
+
+  @Override
+  public InputStream getStdout() {
+    return null;
+  }
+
+  @Override
+  public boolean isAlive() throws IOException, InterruptedException {
+    return !this.ended && !this.killed && this.control.act(new Alive());
+  }
+
+  /**
+   * Waits for the process to end, forwarding its output as it is written.
+   *
+   * @return The process's exit code.
+   *
+   * @throws AbortException       When the process is gone without having recorded an exit code.
+   * @throws IOException          When an I/O error occurs (other than a temporary loss of the connection to the node).
+   * @throws InterruptedException When interrupted while waiting; the process is killed in that case.
+   */
+  @Override
+  public int join() throws IOException, InterruptedException {
+    long goneSince = 0;
+    try {
+      while (true) {
+        final Chunk chunk;
+        try {
+          chunk = this.control.act(new Read(this.offset, this.settings));
+        }
+        catch (IOException e) {
+          this.reconnect(e);
+          continue;
+        }
+        if (this.scanner != null && chunk.scan != null)
+          this.scanner.writeScanned(chunk.data, chunk.scan);
+        else if (chunk.data.length > 0)
+          this.out.write(chunk.data);
+        this.offset += chunk.consumed;
+        if (chunk.exitCode != null && !chunk.more) {
+          this.out.flush();
+          this.ended = true;
+          this.cleanUp();
+          return chunk.exitCode;
+        }
+        if (chunk.gone && !chunk.more) {
+          this.out.flush();
+          if (this.killed) { // no exit code gets recorded for a process killed by us
+            this.ended = true;
+            return -1;
+          }
+          final long now = System.currentTimeMillis();
+          if (goneSince == 0)
+            goneSince = now;
+          else if (now - goneSince >= DetachedProc.GONE_TIMEOUT) {
+            this.ended = true;
+            final String control = this.control.getRemote();
+            this.cleanUp();
+            throw new AbortException(Messages.DetachedProc_Lost(control));
+          }
+        }
+        else
+          goneSince = 0;
+        if (!chunk.more)
+          Thread.sleep(DetachedProc.POLL_INTERVAL);
+      }
+    }
+    catch (InterruptedException e) {
+      this.ended = true;
+      this.kill();
+      throw e;
+    }
+  }
+
+  /**
+   * Kills the process, along with all processes it started, then removes its output and other files.
+   *
+   * @throws IOException          When the process could not be killed.
+   * @throws InterruptedException When interrupted while killing the process.
+   */
+  @Override
+  public void kill() throws IOException, InterruptedException {
+    this.killed = true;
+    this.control.act(new Stop());
+  }
+
+  private void cleanUp() {
+    try {
+      this.control.deleteRecursive();
+    }
+    catch (IOException e) {
+      DetachedProc.LOGGER.log(Level.FINE, "Failed to clean up " + this.control.getRemote() + ".", e);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Waits for the node to come back after losing the connection to it, switching to its new channel. */
+  private void reconnect(@NonNull IOException problem) throws IOException, InterruptedException {
+    if (this.node == null || !this.isDisconnected())
+      throw problem;
+    this.listener.getLogger().println(Messages.DetachedProc_Disconnected(this.node));
+    final long deadline = System.currentTimeMillis() + DetachedProc.RECONNECT_TIMEOUT;
+    while (System.currentTimeMillis() < deadline) {
+      Thread.sleep(TimeUnit.SECONDS.toMillis(5));
+      final Computer computer = Jenkins.get().getComputer(this.node);
+      final VirtualChannel channel = computer == null ? null : computer.getChannel();
+      if (channel != null && channel != this.control.getChannel()) {
+        this.control = new FilePath(channel, this.control.getRemote());
+        this.listener.getLogger().println(Messages.DetachedProc_Reconnected(this.node));
+        return;
+      }
+    }
+    throw problem;
+  }
+
+  /**
+   * Determines whether the process recorded in a control directory is still running.
+   *
+   * @param control The control directory.
+   *
+   * @return {@code true} when the process is still running; {@code false} when it has ended, or was never started.
+   *
+   * @throws IOException When the process ID could not be read.
+   */
+  private static boolean isRunning(@NonNull File control) throws IOException {
+    final Optional<ProcessHandle> process = DetachedProc.getProcess(control);
+    return process.isPresent() && process.get().isAlive();
+  }
+
+  /**
+   * Gets the handle for the process recorded in a control directory.
+   *
+   * @param control The control directory.
+   *
+   * @return The handle for the process, if it still exists.
+   *
+   * @throws IOException When the process ID could not be read.
+   */
+  @NonNull
+  private static Optional<ProcessHandle> getProcess(@NonNull File control) throws IOException {
+    final File pidFile = new File(control, DetachedProc.PID);
+    if (!pidFile.isFile())
+      return Optional.empty();
+    final String pid = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+    try {
+      return ProcessHandle.of(Long.parseLong(pid));
+    }
+    catch (NumberFormatException e) {
+      throw new IOException("Invalid process ID recorded in " + pidFile + ": " + pid, e);
+    }
+  }
+
+  private boolean isDisconnected() {
+    final Computer computer = this.node == null ? null : Jenkins.get().getComputer(this.node);
+    final VirtualChannel channel = computer == null ? null : computer.getChannel();
+    return channel == null || channel != this.control.getChannel();
+  }
+
+  /** A chunk of output, along with the exit code if the process has ended. */
+  private static final class Chunk implements Serializable {
+
+    private static final long serialVersionUID = -7213829125424637795L;
+
+    Chunk(@NonNull byte[] data, int consumed, boolean more, @CheckForNull Integer exitCode) {
+      this.data = data;
+      this.consumed = consumed;
+      this.more = more;
+      this.exitCode = exitCode;
+    }
+
+    /** The number of bytes of the output file covered by this chunk. */
+    final int consumed;
+
+    /** The output, as written by the process. */
+    @NonNull
+    final byte[] data;
+
+    @CheckForNull
+    final Integer exitCode;
+
+    /** Indicates whether the process is gone without an exit code having been recorded. */
+    boolean gone;
+
+    /** Indicates whether more output was available than was returned. */
+    final boolean more;
+
+    /** The result of scanning the output (when scanned by the node). */
+    @CheckForNull
+    DiagnosticScanner.ScanResult scan;
+
+  }
+
+  /** Reads output from a given offset, scanning it if requested. */
+  private static final class Read extends MasterToSlaveFileCallable<Chunk> {
+
+    private static final long serialVersionUID = 2826460218264898327L;
+
+    Read(long offset, @CheckForNull DiagnosticScanner.Settings settings) {
+      this.offset = offset;
+      this.settings = settings;
+    }
+
+    private final long offset;
+
+    @CheckForNull
+    private final DiagnosticScanner.Settings settings;
+
+    @Override
+    public Chunk invoke(@NonNull File control, @NonNull VirtualChannel channel) throws IOException {
+      // Check the exit code first: once it is there, all output has been written.
+      Integer exitCode = Read.readExitCode(control);
+      boolean gone = false;
+      if (exitCode == null && !DetachedProc.isRunning(control)) {
+        // The process may have ended just now; if so, its exit code will be there after all.
+        exitCode = Read.readExitCode(control);
+        gone = exitCode == null;
+      }
+      final Chunk chunk = this.read(control, exitCode, gone);
+      chunk.gone = gone;
+      return chunk;
+    }
+
+    @CheckForNull
+    private static Integer readExitCode(@NonNull File control) throws IOException {
+      final File exitCodeFile = new File(control, DetachedProc.EXIT_CODE);
+      if (!exitCodeFile.isFile())
+        return null;
+      return Integer.valueOf(new String(Files.readAllBytes(exitCodeFile.toPath()), StandardCharsets.US_ASCII).trim());
+    }
+
+    @NonNull
+    private Chunk read(@NonNull File control, @CheckForNull Integer exitCode, boolean gone) throws IOException {
+      final File output = new File(control, DetachedProc.OUTPUT);
+      if (!output.isFile())
+        return new Chunk(new byte[0], 0, false, exitCode);
+      final byte[] data;
+      final long available;
+      try (final RandomAccessFile raf = new RandomAccessFile(output, "r")) {
+        available = raf.length() - this.offset;
+        if (available <= 0)
+          return new Chunk(new byte[0], 0, false, exitCode);
+        data = new byte[(int) Math.min(available, DetachedProc.MAX_CHUNK)];
+        raf.seek(this.offset);
+        raf.readFully(data);
+      }
+      if (this.settings == null)
+        return new Chunk(data, data.length, data.length < available, exitCode);
+      // Only scan complete lines, unless the process has ended (or is gone) or a single line fills the entire chunk.
+      int length = data.length;
+      if ((exitCode == null && !gone) || length < available) {
+        while (length > 0 && data[length - 1] != '\n')
+          --length;
+        if (length == 0) {
+          if (data.length < DetachedProc.MAX_CHUNK)
+            return new Chunk(new byte[0], 0, false, null);
+          length = data.length;
+        }
+      }
+      final Chunk chunk = new Chunk(length == data.length ? data : Arrays.copyOf(data, length), length, data.length < available,
+                                    exitCode);
+      chunk.scan = this.settings.scan(data, length);
+      return chunk;
+    }
+
+  }
+
+  /** Starts the process on its node. */
+  private static final class Start extends MasterToSlaveFileCallable<Void> {
+
+    private static final long serialVersionUID = -3412769402367528405L;
+
+    Start(@NonNull List<String> cmdLine, @NonNull Map<String, String> env, @NonNull String workDirectory) {
+      this.cmdLine = cmdLine;
+      this.env = env;
+      this.workDirectory = workDirectory;
+    }
+
+    @NonNull
+    private final List<String> cmdLine;
+
+    @NonNull
+    private final Map<String, String> env;
+
+    @NonNull
+    private final String workDirectory;
+
+    @Override
+    public Void invoke(@NonNull File control, @NonNull VirtualChannel channel) throws IOException {
+      final ProcessBuilder pb = new ProcessBuilder(this.cmdLine);
+      pb.directory(new File(this.workDirectory));
+      { // Same as what a local launcher does: the node's environment, with the given variables applied on top
+        final EnvVars merged = new EnvVars(EnvVars.masterEnvVars);
+        merged.overrideAll(this.env);
+        pb.environment().clear();
+        pb.environment().putAll(merged);
+      }
+      pb.redirectErrorStream(true);
+      pb.redirectOutput(new File(control, DetachedProc.OUTPUT));
+      pb.redirectInput(ProcessBuilder.Redirect.from(new File(File.pathSeparatorChar == ';' ? "NUL" : "/dev/null")));
+      final Process process = pb.start();
+      Files.write(new File(control, DetachedProc.PID).toPath(),
+        Long.toString(process.pid()).getBytes(StandardCharsets.US_ASCII));
+      final Thread waiter = new Thread(() -> {
+        int rc;
+        try {
+          rc = process.waitFor();
+        }
+        catch (InterruptedException e) {
+          rc = -1;
+        }
+        if (!control.isDirectory()) // killed and cleaned up (see Stop)
+          return;
+        try {
+          final File temp = new File(control, DetachedProc.EXIT_CODE + ".tmp");
+          Files.write(temp.toPath(), Integer.toString(rc).getBytes(StandardCharsets.US_ASCII));
+          Files.move(temp.toPath(), new File(control, DetachedProc.EXIT_CODE).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+          DetachedProc.LOGGER.log(Level.WARNING, "Failed to record the exit code of a detached dotnet process.", e);
+        }
+      }, "Detached dotnet process " + process.pid());
+      waiter.setDaemon(true);
+      waiter.start();
+      return null;
+    }
+
+  }
+
+  /** Determines whether the process is still running on its node. */
+  private static final class Alive extends MasterToSlaveFileCallable<Boolean> {
+
+    private static final long serialVersionUID = -1795243385010925312L;
+
+    @Override
+    public Boolean invoke(@NonNull File control, @NonNull VirtualChannel channel) throws IOException {
+      return !new File(control, DetachedProc.EXIT_CODE).isFile() && DetachedProc.isRunning(control);
+    }
+
+  }
+
+  /** Kills the process (and its descendants) on its node, then removes the control directory. */
+  private static final class Stop extends MasterToSlaveFileCallable<Void> {
+
+    private static final long serialVersionUID = 6150447958125014137L;
+
+    /** The time (in seconds) to wait for the process to end after killing it, before removing its output file. */
+    private static final long EXIT_TIMEOUT = 5;
+
+    @Override
+    public Void invoke(@NonNull File control, @NonNull VirtualChannel channel) throws IOException, InterruptedException {
+      if (!control.isDirectory())
+        return null;
+      final Optional<ProcessHandle> process = DetachedProc.getProcess(control);
+      if (process.isPresent()) {
+        process.get().descendants().forEach(ProcessHandle::destroyForcibly);
+        process.get().destroyForcibly();
+        // The output file cannot be removed on Windows while the process still has it open.
+        try {
+          process.get().onExit().get(Stop.EXIT_TIMEOUT, TimeUnit.SECONDS);
+        }
+        catch (ExecutionException | TimeoutException e) {
+          DetachedProc.LOGGER.log(Level.FINE, "Detached dotnet process " + process.get().pid() + " did not end in time.", e);
+        }
+      }
+      try {
+        Util.deleteRecursive(control);
+      }
+      catch (IOException e) {
+        DetachedProc.LOGGER.log(Level.FINE, "Failed to clean up " + control + ".", e);
+      }
+      return null;
+    }
+
+  }
+
+}
@@ -31,6 +31,17 @@ public final class DotNetArguments {
    * @param cmdLine The underlying argument list builder (expected to be preloaded with the path to the {@code dotnet} executable.
    */
   public DotNetArguments(@NonNull Run<?, ?> run, @NonNull ArgumentListBuilder cmdLine) {
+    this(run, cmdLine, null);
+  }
+
+  /**
+   * Creates a new .NET CLI argument processor.
+   *
+   * @param run      The execution context.
+   * @param cmdLine  The underlying argument list builder (expected to be preloaded with the path to the {@code dotnet} executable.
+   * @param cpuCount The number of CPUs a command may use when no specific value is configured (see {@link Parallelism}), if any.
+   */
+  public DotNetArguments(@NonNull Run<?, ?> run, @NonNull ArgumentListBuilder cmdLine, @CheckForNull Integer cpuCount) {
     this.run = run;
     if (run instanceof AbstractBuild<?, ?>) {
       final AbstractBuild<?, ?> build = (AbstractBuild<?, ?>) run;
@@ -42,6 +53,7 @@ public final class DotNetArguments {
       this.sensitive = Collections.emptySet();
     }
     this.cmdLine = cmdLine;
+    this.cpuCount = cpuCount;
   }
 
   @NonNull
@@ -56,6 +68,20 @@ public final class DotNetArguments {
   @NonNull
   private final Set<String> sensitive;
 
+  @CheckForNull
+  private final Integer cpuCount;
+
+  /**
+   * Gets the number of CPUs a command may use when no specific value is configured.
+   *
+   * @return The number of CPUs a command may use when no specific value is configured, or {@code null} when parallelism is not set
+   * automatically.
+   */
+  @CheckForNull
+  public Integer getCpuCount() {
+    return this.cpuCount;
+  }
+
   /**
    * Adds a literal string argument.
    *
@@ -151,6 +177,21 @@ public final class DotNetArguments {
     return this;
   }
 
+  /**
+   * Adds an MSBuild {@code -maxcpucount:N} argument.
+   *
+   * @param maxCpuCount The maximum number of CPUs to use; if this is {@code null}, the automatically determined value (see
+   *                    {@link #getCpuCount()}) is used instead. If that is {@code null} too, no argument is added.
+   *
+   * @return This .NET CLI argument processor.
+   */
+  public DotNetArguments addMaxCpuCount(@CheckForNull Integer maxCpuCount) {
+    final Integer value = maxCpuCount == null ? this.cpuCount : maxCpuCount;
+    if (value != null)
+      this.cmdLine.add("-maxcpucount:" + Integer.toString(value, 10));
+    return this;
+  }
+
   /**
    * Adds an option argument.
    *
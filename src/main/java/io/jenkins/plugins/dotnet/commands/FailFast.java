@@ -0,0 +1,192 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Proc;
+import hudson.console.LineTransformationOutputStream;
+import io.jenkins.plugins.dotnet.console.DiagnosticNote;
+import jenkins.util.Timer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Stops the processes run for a command as soon as a given number of failures has been seen in their output.
+ * <p>
+ * A failure is an error with a message code (as reported by compilers and MSBuild tasks) or a failed test (as reported by the
+ * console logger of {@code dotnet test}). Output is checked as it streams in (see {@link #monitor(OutputStream, Charset)}), and
+ * once the limit is reached, the process trees of all running processes for the command are killed; processes started after that
+ * are killed right away.
+ * <p>
+ * The monitoring stream runs on the thread pumping a process's output, and killing a process waits for that thread to finish; so
+ * the monitor only records that the limit was reached, and the processes are killed on a separate thread (see {@link Timer}).
+ */
+public final class FailFast {
+
+  /** Regular expression pattern for a failed test line, as written by the console logger of {@code dotnet test}. */
+  private static final Pattern RE_FAILED_TEST = Pattern.compile("^ {1,4}Failed \\S.* \\[[^\\]]+\\]$");
+
+  private static final Logger LOGGER = Logger.getLogger(FailFast.class.getName());
+
+  /**
+   * Creates a new fail-fast monitor.
+   *
+   * @param limit The number of failures after which to stop.
+   */
+  public FailFast(int limit) {
+    this.limit = Math.max(1, limit);
+  }
+
+  private int failures;
+
+  private final int limit;
+
+  private final Set<Proc> processes = new HashSet<>();
+
+  private boolean triggered;
+
+  /**
+   * Gets the number of failures seen.
+   *
+   * @return The number of failures seen.
+   */
+  public synchronized int getFailures() {
+    return this.failures;
+  }
+
+  /**
+   * Gets the number of failures after which to stop.
+   *
+   * @return The number of failures after which to stop.
+   */
+  public int getLimit() {
+    return this.limit;
+  }
+
+  /**
+   * Determines whether the failure limit has been reached.
+   *
+   * @return {@code true} when the failure limit has been reached (and processes are being stopped); {@code false} otherwise.
+   */
+  public synchronized boolean isTriggered() {
+    return this.triggered;
+  }
+
+  /**
+   * Wraps an output stream so that failures in the output passing through it are counted.
+   * <p>
+   * Closing the returned stream forces end-of-line processing, but does not close {@code out}.
+   *
+   * @param out     The output stream to forward all output to.
+   * @param charset The character set in use.
+   *
+   * @return The monitoring stream.
+   */
+  @NonNull
+  public OutputStream monitor(@NonNull OutputStream out, @NonNull Charset charset) {
+    return new Monitor(out, charset);
+  }
+
+  /**
+   * Registers a running process, so that it can be stopped when the failure limit is reached. If the limit has been reached
+   * already, the process is killed right away.
+   *
+   * @param proc The process.
+   *
+   * @throws IOException          When the process could not be killed.
+   * @throws InterruptedException When interrupted while killing the process.
+   */
+  public void register(@NonNull Proc proc) throws IOException, InterruptedException {
+    synchronized (this) {
+      if (!this.triggered) {
+        this.processes.add(proc);
+        return;
+      }
+    }
+    proc.kill();
+  }
+
+  /**
+   * Unregisters a process once it has ended.
+   *
+   * @param proc The process.
+   */
+  public synchronized void unregister(@NonNull Proc proc) {
+    this.processes.remove(proc);
+  }
+
+  private void failure() {
+    final List<Proc> toKill;
+    synchronized (this) {
+      ++this.failures;
+      if (this.triggered || this.failures < this.limit)
+        return;
+      this.triggered = true;
+      if (this.processes.isEmpty())
+        return;
+      toKill = new ArrayList<>(this.processes);
+      this.processes.clear();
+    }
+    // This runs on an output pump thread; killing a process joins that thread, so must not be done here.
+    Timer.get().submit(() -> FailFast.kill(toKill));
+  }
+
+  private static void kill(@NonNull List<Proc> toKill) {
+    for (final Proc proc : toKill) {
+      try {
+        proc.kill();
+      }
+      catch (IOException e) {
+        FailFast.LOGGER.log(Level.FINE, Messages.FailFast_KillFailed(), e);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /** A stream checking each line of output for failures. */
+  private final class Monitor extends LineTransformationOutputStream {
+
+    Monitor(@NonNull OutputStream out, @NonNull Charset charset) {
+      this.out = out;
+      this.charset = charset;
+    }
+
+    @NonNull
+    private final Charset charset;
+
+    @NonNull
+    private final OutputStream out;
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      this.out.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      this.out.flush();
+    }
+
+    @Override
+    protected void eol(byte[] lineBytes, int lineLength) throws IOException {
+      this.out.write(lineBytes, 0, lineLength);
+      final String line = this.trimEOL(this.charset.decode(ByteBuffer.wrap(lineBytes, 0, lineLength)).toString());
+      if (DiagnosticNote.isCodedError(line) || FailFast.RE_FAILED_TEST.matcher(line).matches())
+        FailFast.this.failure();
+    }
+
+  }
+
+}
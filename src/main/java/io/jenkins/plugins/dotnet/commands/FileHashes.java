@@ -0,0 +1,181 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A file callable that computes content hashes (SHA-256) for the files in a directory.
+ * <p>
+ * This runs on the node where the files reside, hashing files in parallel; larger files are memory-mapped rather than read into
+ * buffers.
+ */
+public final class FileHashes extends MasterToSlaveFileCallable<TreeMap<String, String>> {
+
+  private static final long serialVersionUID = 3946153720834276135L;
+
+  /** Files at least this large are hashed using memory mapping. */
+  private static final long MAPPING_THRESHOLD = 1024 * 1024;
+
+  /** The largest region of a file mapped into memory at once. */
+  private static final long MAPPING_CHUNK_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Creates a new file hashing callable, covering all files in a directory tree.
+   */
+  public FileHashes() {
+    this(null, null);
+  }
+
+  /**
+   * Creates a new file hashing callable, covering files in a directory tree that match an Ant-style file set.
+   *
+   * @param includes The (comma-separated) patterns for files to include; when {@code null}, all files are included.
+   * @param excludes The (comma-separated) patterns for files to exclude, if any.
+   */
+  public FileHashes(@CheckForNull String includes, @CheckForNull String excludes) {
+    this.includes = Util.fixEmptyAndTrim(includes);
+    this.excludes = Util.fixEmptyAndTrim(excludes);
+  }
+
+  @CheckForNull
+  private final String includes;
+
+  @CheckForNull
+  private final String excludes;
+
+  /**
+   * Computes the content hashes for the selected files in a directory.
+   *
+   * @param dir     The directory to process.
+   * @param channel The channel to the controller (unused).
+   *
+   * @return A map of file paths (relative to {@code dir}, using forward slashes) to their hexadecimal SHA-256 hashes; empty when
+   * {@code dir} is not a directory.
+   *
+   * @throws IOException When a file could not be read.
+   */
+  @Override
+  public TreeMap<String, String> invoke(@NonNull File dir, @CheckForNull VirtualChannel channel) throws IOException {
+    if (!dir.isDirectory())
+      return new TreeMap<>();
+    final List<String> files = this.listFiles(dir);
+    try {
+      return files.parallelStream().collect(Collectors.toMap(file -> file, file -> {
+        try {
+          return FileHashes.hash(new File(dir, file).toPath());
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, (a, b) -> a, TreeMap::new));
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  @NonNull
+  private List<String> listFiles(@NonNull File dir) throws IOException {
+    if (this.includes != null || this.excludes != null) {
+      final String includes = this.includes == null ? "**" : this.includes;
+      final String[] files = Util.createFileSet(dir, includes, this.excludes).getDirectoryScanner().getIncludedFiles();
+      return Arrays.stream(files).map(file -> file.replace('\\', '/')).collect(Collectors.toList());
+    }
+    final Path root = dir.toPath();
+    try (final Stream<Path> paths = Files.walk(root)) {
+      return paths.filter(Files::isRegularFile).map(path -> root.relativize(path).toString().replace('\\', '/'))
+                  .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Computes the SHA-256 hash of a file's contents.
+   *
+   * @param file The file to hash.
+   *
+   * @return The file's hash, as a hexadecimal string.
+   *
+   * @throws IOException When the file could not be read.
+   */
+  @NonNull
+  public static String hash(@NonNull Path file) throws IOException {
+    final MessageDigest md = FileHashes.createDigest();
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size >= FileHashes.MAPPING_THRESHOLD) {
+        for (long position = 0; position < size; position += FileHashes.MAPPING_CHUNK_SIZE) {
+          final long length = Math.min(FileHashes.MAPPING_CHUNK_SIZE, size - position);
+          final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+          md.update(buffer);
+        }
+      }
+      else {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(size, 1));
+        while (channel.read(buffer) > 0) {
+          buffer.flip();
+          md.update(buffer);
+          buffer.clear();
+        }
+      }
+    }
+    return Util.toHexString(md.digest());
+  }
+
+  /**
+   * Combines a set of file hashes (and any additional values) into a single hash.
+   *
+   * @param hashes The file hashes, as produced by this callable.
+   * @param extra  Any additional values to include in the hash.
+   *
+   * @return The combined hash, as a hexadecimal string.
+   */
+  @NonNull
+  public static String combine(@NonNull Map<String, String> hashes, @NonNull String... extra) {
+    final MessageDigest md = FileHashes.createDigest();
+    for (final Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet()) {
+      md.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+      md.update((byte) 0);
+      md.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+      md.update((byte) '\n');
+    }
+    for (final String value : extra) {
+      if (value != null)
+        md.update(value.getBytes(StandardCharsets.UTF_8));
+      md.update((byte) '\n');
+    }
+    return Util.toHexString(md.digest());
+  }
+
+  @NonNull
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported by this JVM.", e);
+    }
+  }
+
+}
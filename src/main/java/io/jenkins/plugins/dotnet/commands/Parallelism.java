@@ -0,0 +1,85 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.model.Computer;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Derives the parallelism to use for MSBuild and the test runner from the node a build runs on: its number of cores, shared
+ * evenly by its executors.
+ * <p>
+ * The number of cores is only determined once per node; the number of executors is taken from the node's current configuration.
+ */
+public final class Parallelism {
+
+  private Parallelism() {
+  }
+
+  /** The number of cores per node, as reported by the node's JVM. */
+  private static final Map<Computer, Integer> CORES = new WeakHashMap<>();
+
+  /**
+   * Determines the number of CPUs that one build may use on the node hosting a workspace.
+   *
+   * @param workspace The workspace.
+   * @param log       The stream to report the derived value to.
+   *
+   * @return The number of cores on the node divided by its number of executors (but at least 1), or {@code null} when the node is
+   * not known.
+   *
+   * @throws IOException          When the number of cores could not be determined.
+   * @throws InterruptedException When interrupted while determining the number of cores.
+   */
+  @CheckForNull
+  public static Integer cpuCount(@NonNull FilePath workspace, @NonNull PrintStream log) throws IOException, InterruptedException {
+    final Computer computer = workspace.toComputer();
+    if (computer == null)
+      return null;
+    Integer cores;
+    synchronized (Parallelism.CORES) {
+      cores = Parallelism.CORES.get(computer);
+    }
+    if (cores == null) {
+      cores = workspace.act(new AvailableProcessors());
+      synchronized (Parallelism.CORES) {
+        Parallelism.CORES.put(computer, cores);
+      }
+    }
+    final int executors = Math.max(1, computer.getNumExecutors());
+    final int cpuCount = Parallelism.cpuCount(cores, executors);
+    log.println(Messages.Parallelism_Automatic(cpuCount, cores, executors));
+    return cpuCount;
+  }
+
+  /**
+   * Determines the number of CPUs that one build may use on a node.
+   *
+   * @param cores     The number of cores on the node.
+   * @param executors The number of executors on the node.
+   *
+   * @return The number of cores divided by the number of executors, but at least 1.
+   */
+  static int cpuCount(int cores, int executors) {
+    return Math.max(1, cores / Math.max(1, executors));
+  }
+
+  /** Determines the number of cores available to the JVM on a node. */
+  private static final class AvailableProcessors extends MasterToSlaveCallable<Integer, IOException> {
+
+    private static final long serialVersionUID = 4370524419880286409L;
+
+    @Override
+    public Integer call() {
+      return Runtime.getRuntime().availableProcessors();
+    }
+
+  }
+
+}
@@ -0,0 +1,112 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.dotnet.console.ConsoleSummarizer;
+import jenkins.util.BuildListenerAdapter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the complete output of a command whose console output is summarized (see {@link ConsoleSummarizer}).
+ * <p>
+ * The output is written, compressed, to a file in the build's directory on the controller (where the process output is received
+ * and summarized anyway), which is archived as a build artifact (and then removed) when the command completes. The output is not
+ * sent back to the node, and the file is written through a buffer, so there is no per-line overhead.
+ */
+public final class RawOutputArchive {
+
+  /** The size of the buffer used for the compressed output. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private RawOutputArchive(@NonNull File file, @NonNull ConsoleSummarizer summarizer) {
+    this.file = file;
+    this.summarizer = summarizer;
+  }
+
+  /** The file receiving the compressed output. */
+  @NonNull
+  private final File file;
+
+  /** The summarizer forwarding output to the build log and to {@link #file}. */
+  @NonNull
+  private final ConsoleSummarizer summarizer;
+
+  /**
+   * Starts keeping the complete output for a command.
+   *
+   * @param run     The build the command is part of.
+   * @param log     The stream to send the summarized output to (typically leading to the build log).
+   * @param charset The character set in use.
+   *
+   * @return The archive for the command's output.
+   *
+   * @throws IOException When the file for the output could not be created.
+   */
+  @NonNull
+  public static RawOutputArchive start(@NonNull Run<?, ?> run, @NonNull OutputStream log, @NonNull Charset charset)
+    throws IOException {
+    final File dir = run.getRootDir();
+    Files.createDirectories(dir.toPath());
+    final File file = new File(dir, "dotnet-console-" + UUID.randomUUID().toString().substring(0, 8) + ".log.gz");
+    final OutputStream raw = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file.toPath()),
+                                                                           RawOutputArchive.BUFFER_SIZE),
+                                                      RawOutputArchive.BUFFER_SIZE);
+    return new RawOutputArchive(file, new ConsoleSummarizer(log, raw, charset));
+  }
+
+  /**
+   * Gets the stream to send the command's output to.
+   *
+   * @return The stream to send the command's output to.
+   */
+  @NonNull
+  public OutputStream getOutput() {
+    return this.summarizer;
+  }
+
+  /**
+   * Completes the summarized output, and archives the complete output as a build artifact, linking to it from the build log.
+   * <p>
+   * All output must have been written before this is called.
+   *
+   * @param run      The run to archive the output for.
+   * @param launcher The launcher for the command.
+   * @param listener The listener for the build.
+   *
+   * @throws IOException          When the output could not be archived.
+   * @throws InterruptedException When interrupted while archiving the output.
+   */
+  public void finish(@NonNull Run<?, ?> run, @NonNull Launcher launcher, @NonNull TaskListener listener)
+    throws IOException, InterruptedException {
+    try {
+      try {
+        this.summarizer.writeRepeats();
+      }
+      finally {
+        this.summarizer.close();
+      }
+      final String name = this.file.getName();
+      final FilePath dir = new FilePath(this.file.getParentFile());
+      run.pickArtifactManager().archive(dir, launcher, BuildListenerAdapter.wrap(listener), Collections.singletonMap(name, name));
+      listener.getLogger().print(Messages.RawOutputArchive_Stored() + ' ');
+      listener.hyperlink('/' + run.getUrl() + "artifact/" + name, name);
+      listener.getLogger().println();
+    }
+    finally {
+      Files.deleteIfExists(this.file.toPath());
+    }
+  }
+
+}
@@ -0,0 +1,159 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.util.ListBoxModel;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Tunes the .NET runtime used by {@code dotnet} (and the processes it starts, like MSBuild nodes and test hosts) via environment
+ * variables: a GC heap hard limit derived from the node's memory share per executor, server or workstation GC, concurrent GC, and
+ * tiered compilation.
+ * <p>
+ * The settings can be made for a .NET SDK installation, and (for MSBuild-based commands) overridden per build step.
+ */
+public final class RuntimeTuning {
+
+  private RuntimeTuning() {
+  }
+
+  /** The GC mode value selecting server GC. */
+  public static final String GC_SERVER = "server";
+
+  /** The GC mode value selecting workstation GC. */
+  public static final String GC_WORKSTATION = "workstation";
+
+  /** The tiered compilation value disabling tiered compilation (everything is fully optimized up front). */
+  public static final String TIERED_DISABLED = "disabled";
+
+  /** The tiered compilation value favouring startup time (quick JIT for loops, no dynamic PGO). */
+  public static final String TIERED_QUICK = "quick";
+
+  /** The total physical memory (in bytes) per node, as reported by the node's JVM. */
+  private static final Map<Computer, Long> MEMORY = new WeakHashMap<>();
+
+  /**
+   * Fills a listbox with the possible GC modes.
+   *
+   * @param model The listbox model to fill.
+   */
+  public static void addGcModes(@NonNull ListBoxModel model) {
+    model.add(Messages.RuntimeTuning_GcMode_Default(), "");
+    model.add(Messages.RuntimeTuning_GcMode_Workstation(), RuntimeTuning.GC_WORKSTATION);
+    model.add(Messages.RuntimeTuning_GcMode_Server(), RuntimeTuning.GC_SERVER);
+  }
+
+  /**
+   * Fills a listbox with the possible tiered compilation settings.
+   *
+   * @param model The listbox model to fill.
+   */
+  public static void addTieredCompilationModes(@NonNull ListBoxModel model) {
+    model.add(Messages.RuntimeTuning_TieredCompilation_Default(), "");
+    model.add(Messages.RuntimeTuning_TieredCompilation_Quick(), RuntimeTuning.TIERED_QUICK);
+    model.add(Messages.RuntimeTuning_TieredCompilation_Disabled(), RuntimeTuning.TIERED_DISABLED);
+  }
+
+  /**
+   * Applies runtime tuning to the environment for a command.
+   *
+   * @param workspace         The workspace; its node determines the memory available.
+   * @param env               The environment to update.
+   * @param gcHeapLimit       The GC heap hard limit, as a percentage of the node's memory divided by its number of executors, or
+   *                          {@code null} for no limit.
+   * @param gcMode            The GC mode ({@link #GC_SERVER} or {@link #GC_WORKSTATION}), or {@code null} for the default.
+   * @param noConcurrentGc    Indicates whether concurrent (background) GC should be disabled.
+   * @param tieredCompilation The tiered compilation setting ({@link #TIERED_QUICK} or {@link #TIERED_DISABLED}), or {@code null}
+   *                          for the default.
+   * @param log               The stream to report the applied settings to.
+   *
+   * @throws IOException          When the node's memory could not be determined.
+   * @throws InterruptedException When interrupted while determining the node's memory.
+   */
+  public static void apply(@NonNull FilePath workspace, @NonNull EnvVars env, @CheckForNull Integer gcHeapLimit,
+                           @CheckForNull String gcMode, boolean noConcurrentGc, @CheckForNull String tieredCompilation,
+                           @NonNull PrintStream log) throws IOException, InterruptedException {
+    final Map<String, String> settings = new TreeMap<>();
+    if (gcHeapLimit != null) {
+      final Computer computer = workspace.toComputer();
+      if (computer != null) {
+        Long memory;
+        synchronized (RuntimeTuning.MEMORY) {
+          memory = RuntimeTuning.MEMORY.get(computer);
+        }
+        if (memory == null) {
+          memory = workspace.act(new TotalMemory());
+          synchronized (RuntimeTuning.MEMORY) {
+            RuntimeTuning.MEMORY.put(computer, memory);
+          }
+        }
+        if (memory > 0)
+          settings.put("DOTNET_GCHeapHardLimit", RuntimeTuning.heapHardLimit(memory, computer.getNumExecutors(), gcHeapLimit));
+      }
+    }
+    if (RuntimeTuning.GC_SERVER.equals(gcMode))
+      settings.put("DOTNET_gcServer", "1");
+    else if (RuntimeTuning.GC_WORKSTATION.equals(gcMode))
+      settings.put("DOTNET_gcServer", "0");
+    if (noConcurrentGc)
+      settings.put("DOTNET_gcConcurrent", "0");
+    if (RuntimeTuning.TIERED_QUICK.equals(tieredCompilation)) {
+      settings.put("DOTNET_TC_QuickJitForLoops", "1");
+      settings.put("DOTNET_TieredPGO", "0");
+    }
+    else if (RuntimeTuning.TIERED_DISABLED.equals(tieredCompilation))
+      settings.put("DOTNET_TieredCompilation", "0");
+    if (settings.isEmpty())
+      return;
+    final StringJoiner applied = new StringJoiner(", ");
+    for (final Map.Entry<String, String> setting : settings.entrySet()) {
+      env.put(setting.getKey(), setting.getValue());
+      applied.add(setting.getKey() + '=' + setting.getValue());
+    }
+    log.println(Messages.RuntimeTuning_Applied(applied.toString()));
+  }
+
+  /**
+   * Computes the value for {@code DOTNET_GCHeapHardLimit}.
+   *
+   * @param memory    The node's total memory (in bytes).
+   * @param executors The node's number of executors.
+   * @param percent   The percentage of the memory per executor to use as limit.
+   *
+   * @return The limit, as a hexadecimal number (as expected by the runtime); at least 16 MB.
+   */
+  @NonNull
+  static String heapHardLimit(long memory, int executors, int percent) {
+    final long share = memory / Math.max(1, executors);
+    final long limit = Math.max(16L * 1024 * 1024, share * Math.min(100, Math.max(1, percent)) / 100);
+    return "0x" + Long.toHexString(limit).toUpperCase();
+  }
+
+  /** Determines the total physical memory (in bytes) on a node; 0 when that is not available. */
+  private static final class TotalMemory extends MasterToSlaveCallable<Long, IOException> {
+
+    private static final long serialVersionUID = -1672367281538302851L;
+
+    @Override
+    public Long call() {
+      final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+      if (os instanceof com.sun.management.OperatingSystemMXBean)
+        return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+      return 0L;
+    }
+
+  }
+
+}
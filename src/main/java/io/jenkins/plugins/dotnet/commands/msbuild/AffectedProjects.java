@@ -0,0 +1,233 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import hudson.scm.ChangeLogSet;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.scm.RunWithSCM;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Determines which projects in a {@link ProjectGraph} are affected by a set of changed files.
+ * <p>
+ * A project is directly affected when a changed file is located in its directory tree; all projects that (transitively) reference
+ * an affected project are affected too. A change to a shared build file outside of all project directories (such as
+ * {@code Directory.Build.props} or {@code global.json}) affects all projects.
+ * <p>
+ * Changelogs report paths relative to the root of the SCM checkout, while project graphs are scanned in a command's working
+ * directory; {@link #mapToWorkingDirectory(Run, FilePath, Set)} converts between the two.
+ */
+final class AffectedProjects {
+
+  private AffectedProjects() {
+  }
+
+  /** The names of the files or directories holding version control metadata, marking the root of a checkout. */
+  private static final String[] CHECKOUT_MARKERS = { ".git", ".hg", ".svn" };
+
+  /**
+   * Gets the paths changed since the last successful build, according to the SCM changelogs.
+   *
+   * @param run The current build.
+   *
+   * @return The paths changed since the last successful build (relative to the root of the checkout, using forward slashes), or
+   * {@code null} when these are not known
+   * (because the build does not use SCM, or there is no earlier successful build).
+   */
+  @CheckForNull
+  static Set<String> getChangedPaths(@NonNull Run<?, ?> run) {
+    final Set<String> paths = new TreeSet<>();
+    for (Run<?, ?> build = run; build != null; build = build.getPreviousBuild()) {
+      if (build != run) {
+        final Result result = build.getResult();
+        if (result != null && result.isBetterOrEqualTo(Result.SUCCESS))
+          return paths;
+      }
+      if (!(build instanceof RunWithSCM))
+        return null;
+      for (final ChangeLogSet<? extends ChangeLogSet.Entry> changeSet : ((RunWithSCM<?, ?>) build).getChangeSets()) {
+        for (final ChangeLogSet.Entry entry : changeSet) {
+          for (final String path : entry.getAffectedPaths())
+            paths.add(AffectedProjects.normalize(path));
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Maps paths changed in the SCM checkout onto the working directory for a command.
+   * <p>
+   * For freestyle builds, the checkout root is the module root of the build's SCM; otherwise (or when the working directory is not
+   * located inside it), it is the closest directory containing the working directory that holds version control metadata
+   * ({@code .git}, {@code .hg} or {@code .svn}).
+   *
+   * @param run              The current build.
+   * @param workingDirectory The working directory for the command.
+   * @param changed          The changed paths (relative to the root of the checkout, using forward slashes).
+   *
+   * @return The changed paths located inside the working directory, relative to it (changes elsewhere in the checkout are
+   * dropped); {@code null} when the changed paths cannot be mapped, because the checkout root is not known or a path cannot be
+   * interpreted.
+   *
+   * @throws IOException          When the checkout root could not be determined.
+   * @throws InterruptedException When interrupted while determining the checkout root.
+   */
+  @CheckForNull
+  static Set<String> mapToWorkingDirectory(@NonNull Run<?, ?> run, @NonNull FilePath workingDirectory,
+                                           @NonNull Set<String> changed) throws IOException, InterruptedException {
+    String moduleRoot = null;
+    if (run instanceof AbstractBuild) {
+      final FilePath root = ((AbstractBuild<?, ?>) run).getModuleRoot();
+      if (root != null)
+        moduleRoot = root.getRemote();
+    }
+    final String prefix = workingDirectory.act(new FindCheckoutPath(moduleRoot));
+    return prefix == null ? null : AffectedProjects.relativize(changed, prefix);
+  }
+
+  /**
+   * Makes changed paths relative to a directory in the checkout.
+   *
+   * @param changed The changed paths (relative to the root of the checkout, using forward slashes).
+   * @param prefix  The path of the directory (relative to the root of the checkout, using forward slashes); empty for the root
+   *                itself.
+   *
+   * @return The changed paths located inside the directory, relative to it; {@code null} when any of the paths cannot be
+   * interpreted (because it is empty or refers to a parent directory). Shared build files (see {@link #isSharedBuildFile(String)})
+   * located in a directory above the directory apply to it as well, so they are included, as just their file name.
+   */
+  @CheckForNull
+  static Set<String> relativize(@NonNull Collection<String> changed, @NonNull String prefix) {
+    final Set<String> mapped = new TreeSet<>();
+    for (final String path : changed) {
+      if (path.isEmpty() || path.equals("..") || path.startsWith("../") || path.contains("/../"))
+        return null;
+      if (prefix.isEmpty())
+        mapped.add(path);
+      else if (path.startsWith(prefix + "/"))
+        mapped.add(path.substring(prefix.length() + 1));
+      else if (AffectedProjects.isSharedBuildFile(path)) {
+        final int slash = path.lastIndexOf('/');
+        if (slash < 0 || prefix.startsWith(path.substring(0, slash + 1)))
+          mapped.add(path.substring(slash + 1));
+      }
+    }
+    return mapped;
+  }
+
+  /**
+   * Selects the projects in a graph that are affected by a set of changed paths.
+   *
+   * @param graph   The project graph.
+   * @param changed The changed paths (relative to the directory the graph was scanned in, using forward slashes).
+   *
+   * @return The affected projects, in build order.
+   */
+  @NonNull
+  static List<ProjectGraph.Node> select(@NonNull ProjectGraph graph, @NonNull Collection<String> changed) {
+    final List<ProjectGraph.Node> nodes = graph.getNodes();
+    final Set<String> affected = new HashSet<>();
+    for (final String path : changed) {
+      boolean owned = false;
+      for (final ProjectGraph.Node node : nodes) {
+        final String dir = node.getDirectory();
+        if (dir.isEmpty() || path.startsWith(dir + "/")) {
+          affected.add(node.getPath());
+          owned = true;
+        }
+      }
+      if (!owned && AffectedProjects.isSharedBuildFile(path))
+        return nodes;
+    }
+    // Nodes are in build order, so every reference has been decided on before the node referencing it.
+    final List<ProjectGraph.Node> selected = new ArrayList<>();
+    final Map<String, Boolean> decided = new HashMap<>();
+    for (final ProjectGraph.Node node : nodes) {
+      boolean isAffected = affected.contains(node.getPath());
+      for (final String ref : node.getReferences())
+        isAffected |= decided.getOrDefault(ref, false);
+      decided.put(node.getPath(), isAffected);
+      if (isAffected)
+        selected.add(node);
+    }
+    return selected;
+  }
+
+  /**
+   * Determines whether a file is a shared build file, affecting all projects when it is located outside of all project directories.
+   *
+   * @param path The path of the file.
+   *
+   * @return {@code true} when the file is a shared build file; {@code false} otherwise.
+   */
+  static boolean isSharedBuildFile(@NonNull String path) {
+    final String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+    return name.endsWith(".props") || name.endsWith(".targets") || name.endsWith(".sln") || name.endsWith(".slnx") ||
+           name.endsWith(".slnf") || name.endsWith(".editorconfig") || name.equals("global.json") || name.equals("nuget.config");
+  }
+
+  /**
+   * A file callable determining the path of a directory relative to the root of the checkout containing it (using forward
+   * slashes; empty for the root itself), or {@code null} when that root cannot be found.
+   */
+  static final class FindCheckoutPath extends MasterToSlaveFileCallable<String> {
+
+    private static final long serialVersionUID = 2716640287135049823L;
+
+    FindCheckoutPath(@CheckForNull String moduleRoot) {
+      this.moduleRoot = moduleRoot;
+    }
+
+    @CheckForNull
+    private final String moduleRoot;
+
+    @Override
+    public String invoke(@NonNull File dir, @CheckForNull VirtualChannel channel) {
+      final Path path = dir.toPath().toAbsolutePath().normalize();
+      if (this.moduleRoot != null) {
+        final Path root = Paths.get(this.moduleRoot).toAbsolutePath().normalize();
+        if (path.startsWith(root))
+          return root.relativize(path).toString().replace('\\', '/');
+      }
+      for (Path root = path; root != null; root = root.getParent()) {
+        for (final String marker : AffectedProjects.CHECKOUT_MARKERS) {
+          if (Files.exists(root.resolve(marker)))
+            return root.relativize(path).toString().replace('\\', '/');
+        }
+      }
+      return null;
+    }
+
+  }
+
+  @NonNull
+  private static String normalize(@NonNull String path) {
+    String normalized = path.replace('\\', '/');
+    while (normalized.startsWith("./"))
+      normalized = normalized.substring(2);
+    while (normalized.startsWith("/"))
+      normalized = normalized.substring(1);
+    return normalized;
+  }
+
+}
@@ -2,17 +2,21 @@ package io.jenkins.plugins.dotnet.commands.msbuild;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
 import hudson.Extension;
 import hudson.Util;
 import io.jenkins.plugins.dotnet.DotNetConfiguration;
 import io.jenkins.plugins.dotnet.DotNetUtils;
+import io.jenkins.plugins.dotnet.commands.CommandExecution;
 import io.jenkins.plugins.dotnet.commands.DotNetArguments;
 import io.jenkins.plugins.dotnet.commands.Messages;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.structs.describable.UninstantiatedDescribable;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,13 +34,14 @@ public final class Build extends MSBuildCommand {
    * <p>
    * This adds:
    * <ol>
-   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments)}.</li>
+   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments, Invocation)}.</li>
    *   <li>{@code --force}, if requested via {@link #setForce(boolean)}.</li>
+   *   <li>{@code -graph}, if requested via {@link #setGraph(boolean)}.</li>
    *   <li>{@code --no-dependencies}, if requested via {@link #setNoDependencies(boolean)}.</li>
    *   <li>{@code --no-incremental}, if requested via {@link #setNoIncremental(boolean)}.</li>
    *   <li>{@code --no-restore}, if requested via {@link #setNoRestore(boolean)}.</li>
-   *   <li>{@code -f:xxx}, if a target framework moniker has been specified via {@link #setFramework(String)}.</li>
-   *   <li>{@code -r:xxx}, if a runtime identifier has been specified via {@link #setRuntime(String)}.</li>
+   *   <li>{@code -f:xxx}, for the invocation's target framework moniker (see {@link #setFrameworks(String...)}).</li>
+   *   <li>{@code -r:xxx}, for the invocation's runtime identifier (see {@link #setRuntimes(String...)}).</li>
    *   <li>
    *     {@code -t:xxx} for each target specified via {@link #setTarget(String)}, {@link #setTargets(String...)} or
    *     {@link #setTargetsString(String)}.
@@ -45,20 +50,80 @@ public final class Build extends MSBuildCommand {
    * </ol>
    */
   @Override
-  protected void addCommandLineArguments(@NonNull DotNetArguments args) {
-    super.addCommandLineArguments(args);
+  protected void addCommandLineArguments(@NonNull DotNetArguments args, @NonNull Invocation invocation) {
+    super.addCommandLineArguments(args, invocation);
     args.addFlag("force", this.force);
+    if (this.graph)
+      args.add("-graph");
     args.addFlag("no-dependencies", this.noDependencies);
     args.addFlag("no-incremental", this.noIncremental);
     args.addFlag("no-restore", this.noRestore);
-    args.addOption('f', this.framework);
-    args.addOption('r', this.runtime);
+    args.addOption('f', invocation.getFramework());
+    args.addOption('r', invocation.getRuntime());
     args.addOptions('t', this.targets, Build.TARGETS_DELIMITER);
     args.addOption("version-suffix", this.versionSuffix);
   }
 
   private static final String TARGETS_DELIMITER = "; \t\n\r\f";
 
+  @CheckForNull
+  @Override
+  protected String[] getInvocationFrameworks() {
+    return this.getFrameworks();
+  }
+
+  @CheckForNull
+  @Override
+  protected String[] getInvocationRuntimes() {
+    return this.getRuntimes();
+  }
+
+  @Override
+  protected boolean isAffectedOnlySupported() {
+    return true;
+  }
+
+  @Override
+  protected boolean isBuildCacheSupported() {
+    return true;
+  }
+
+  /**
+   * Runs this "{@code dotnet build}" command.
+   * <p>
+   * When the use of results caches has been requested (via {@link #setResultsCache(boolean)}), each invocation builds its
+   * project graph project by project, in isolation, reusing stored MSBuild results caches where possible (see
+   * {@link ResultsCache}). Otherwise, this runs the command as usual.
+   *
+   * @param execution The prepared execution context (SDK, environment and working directory).
+   * @param scanner   The scanner to send command output to.
+   *
+   * @return The return code for the command.
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @Override
+  protected int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner)
+    throws AbortException, IOException, InterruptedException {
+    if (!this.resultsCache)
+      return super.execute(execution, scanner);
+    final ResultsCache cache = new ResultsCache(execution, this.resultsCacheDirectory);
+    try {
+      for (final Invocation invocation : this.selectInvocations(execution)) {
+        final int rc = cache.build(this, execution, scanner, invocation);
+        if (rc != 0)
+          return rc;
+      }
+      cache.prune(execution.getListener().getLogger());
+      return 0;
+    }
+    finally {
+      cache.writeSummary(execution.getListener().getLogger());
+    }
+  }
+
   //region Properties
 
   private boolean force;
@@ -85,23 +150,86 @@ public final class Build extends MSBuildCommand {
   private String framework;
 
   /**
-   * Gets the target framework moniker to use.
+   * Gets the sole target framework moniker to use.
    *
-   * @return The target framework moniker to use.
+   * @return The sole target framework moniker to use, or {@code null} when there is not exactly one framework set.
    */
   @CheckForNull
   public String getFramework() {
-    return this.framework;
+    return DotNetUtils.singleToken(this.framework);
   }
 
   /**
-   * Sets the target framework moniker to use.
+   * Sets the sole target framework moniker to use.
+   * <p>
+   * To set more than one, use {@link #setFrameworks(String...)} instead.
    *
-   * @param framework The target framework moniker to use.
+   * @param framework The sole target framework moniker to use.
    */
   @DataBoundSetter
   public void setFramework(@CheckForNull String framework) {
-    this.framework = Util.fixEmptyAndTrim(framework);
+    this.framework = DotNetUtils.detokenize(' ', framework);
+  }
+
+  /**
+   * Gets the target framework monikers to use. The command is run separately for each of them.
+   *
+   * @return The target framework monikers to use.
+   */
+  @CheckForNull
+  public String[] getFrameworks() {
+    return DotNetUtils.tokenize(this.framework);
+  }
+
+  /**
+   * Sets the target framework monikers to use. The command is run separately for each of them.
+   *
+   * @param frameworks The target framework monikers to use.
+   */
+  @DataBoundSetter
+  public void setFrameworks(@CheckForNull String... frameworks) {
+    this.framework = DotNetUtils.detokenize(' ', frameworks);
+  }
+
+  /**
+   * Gets the target framework monikers to use.
+   *
+   * @return The target framework monikers to use.
+   */
+  @CheckForNull
+  public String getFrameworksString() {
+    return this.framework;
+  }
+
+  /**
+   * Sets the target framework monikers to use.
+   *
+   * @param frameworks The target framework monikers to use.
+   */
+  @DataBoundSetter
+  public void setFrameworksString(@CheckForNull String frameworks) {
+    this.framework = Util.fixEmptyAndTrim(frameworks);
+  }
+
+  private boolean graph;
+
+  /**
+   * Determines whether MSBuild should build in static graph mode.
+   *
+   * @return {@code true} when the project graph is constructed and built up front; {@code false} otherwise.
+   */
+  public boolean isGraph() {
+    return this.graph;
+  }
+
+  /**
+   * Determines whether MSBuild should build in static graph mode.
+   *
+   * @param graph {@code true} to construct and build the project graph up front; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setGraph(boolean graph) {
+    this.graph = graph;
   }
 
   private boolean noDependencies;
@@ -167,26 +295,117 @@ public final class Build extends MSBuildCommand {
     this.noRestore = noRestore;
   }
 
+  private boolean resultsCache;
+
+  /**
+   * Determines whether the build should be done project by project, using (and storing) MSBuild results caches.
+   *
+   * @return {@code true} when the build uses MSBuild results caches; {@code false} otherwise.
+   */
+  public boolean isResultsCache() {
+    return this.resultsCache;
+  }
+
+  /**
+   * Determines whether the build should be done project by project, using (and storing) MSBuild results caches.
+   * <p>
+   * In this mode, the project graph is determined first; each project is then built in isolation ({@code -isolate}), with the
+   * results caches of the projects it depends on as input ({@code -irc}), writing its own results cache ({@code -orc}). The results
+   * caches are stored, keyed by project input hash, so that later builds (on any agent) can skip projects whose inputs did not
+   * change, provided their output is present.
+   *
+   * @param resultsCache {@code true} to build using MSBuild results caches; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setResultsCache(boolean resultsCache) {
+    this.resultsCache = resultsCache;
+  }
+
+  private String resultsCacheDirectory;
+
+  /**
+   * Gets the directory (on the agent) where MSBuild results caches are stored.
+   *
+   * @return The directory (on the agent) where MSBuild results caches are stored, or {@code null} to store them on the controller.
+   */
+  @CheckForNull
+  public String getResultsCacheDirectory() {
+    return this.resultsCacheDirectory;
+  }
+
+  /**
+   * Sets the directory (on the agent) where MSBuild results caches are stored.
+   *
+   * @param resultsCacheDirectory The directory (on the agent) where MSBuild results caches are stored (typically a shared
+   *                              location), or {@code null} to store them on the controller.
+   */
+  @DataBoundSetter
+  public void setResultsCacheDirectory(@CheckForNull String resultsCacheDirectory) {
+    this.resultsCacheDirectory = Util.fixEmptyAndTrim(resultsCacheDirectory);
+  }
+
   private String runtime;
 
   /**
-   * Gets the runtime identifier to use.
+   * Gets the sole runtime identifier to use.
    *
-   * @return The runtime identifier to use.
+   * @return The sole runtime identifier to use, or {@code null} when there is not exactly one runtime identifier set.
    */
   @CheckForNull
   public String getRuntime() {
-    return this.runtime;
+    return DotNetUtils.singleToken(this.runtime);
   }
 
   /**
-   * Sets the runtime identifier to use.
+   * Sets the sole runtime identifier to use.
+   * <p>
+   * To set more than one, use {@link #setRuntimes(String...)} instead.
    *
-   * @param runtime The runtime identifier to use.
+   * @param runtime The sole runtime identifier to use.
    */
   @DataBoundSetter
   public void setRuntime(@CheckForNull String runtime) {
-    this.runtime = Util.fixEmptyAndTrim(runtime);
+    this.runtime = DotNetUtils.detokenize(' ', runtime);
+  }
+
+  /**
+   * Gets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String[] getRuntimes() {
+    return DotNetUtils.tokenize(this.runtime);
+  }
+
+  /**
+   * Sets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimes(@CheckForNull String... runtimes) {
+    this.runtime = DotNetUtils.detokenize(' ', runtimes);
+  }
+
+  /**
+   * Gets the runtime identifiers to use.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String getRuntimesString() {
+    return this.runtime;
+  }
+
+  /**
+   * Sets the runtime identifiers to use.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimesString(@CheckForNull String runtimes) {
+    this.runtime = Util.fixEmptyAndTrim(runtimes);
   }
 
   private String targets;
@@ -0,0 +1,290 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.io.ArchiverFactory;
+import io.jenkins.plugins.dotnet.DotNetSDK;
+import io.jenkins.plugins.dotnet.commands.CommandExecution;
+import io.jenkins.plugins.dotnet.commands.FileHashes;
+import io.jenkins.plugins.dotnet.commands.Messages;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An input-hash based cache for the output of MSBuild-based commands.
+ * <p>
+ * The fingerprint of an invocation covers the contents of all files in the working directory (hashed on the agent, once per build
+ * step), except for build output (including everything in the command's output directory, so that the output for one framework or
+ * runtime is not an input for another), but including the restored package information ({@code obj/project.assets.json}); the
+ * .NET SDK versions in use;
+ * the environment variables (except for the ones that differ for every build, see {@link #getEnvironment(EnvVars)}); and the
+ * complete command line (so including the configuration, framework, runtime and properties). When a fingerprint has been seen
+ * before, the stored contents of the output directory are restored instead of running {@code dotnet}.
+ * <p>
+ * Entries are stored either in a directory on the agent (as plain directory trees) or, when no directory is specified, in the
+ * job's directory on the controller (as {@code .tar.gz} files, compressed on the agent). Either way, entries are removed once they
+ * have not been used for a while, or when the store grows too large (see {@link PruneCache}).
+ */
+final class BuildCache {
+
+  /**
+   * The files considered to be inputs for a build. Any file can be an input (as an embedded resource, content file, analyzer
+   * configuration, response file, ...), so this is everything that is not excluded by {@link #NON_INPUTS}.
+   */
+  static final String INPUTS = "**";
+
+  /** Files that are never considered to be inputs for a build. */
+  static final String NON_INPUTS = "**/bin/**,**/obj/**,**/.git/**,**/.vs/**,**/node_modules/**,**/TestResults/**";
+
+  /**
+   * The files produced by a restore that are inputs for a build: they reflect the packages actually restored (e.g. for floating
+   * versions). These are excluded by {@link #NON_INPUTS}, so must be hashed separately.
+   */
+  static final String RESTORE_INPUTS = "**/obj/project.assets.json";
+
+  /** Files that are never considered to be restore inputs for a build. */
+  static final String NON_RESTORE_INPUTS = "**/bin/**,**/.git/**,**/node_modules/**";
+
+  /** The environment variables that are set by Jenkins (or the shell) and differ for every build. */
+  private static final Set<String> VOLATILE_VARIABLES = new HashSet<>(Arrays.asList(
+    "BRANCH_IS_PRIMARY", "BRANCH_NAME", "EXECUTOR_NUMBER", "HOSTNAME", "NODE_LABELS", "NODE_NAME", "OLDPWD", "PWD", "SHLVL",
+    "STAGE_NAME", "WORKSPACE", "WORKSPACE_TMP", "_"
+  ));
+
+  /** The prefixes for the names of environment variables that are set by Jenkins (or the shell) and differ for every build. */
+  private static final String[] VOLATILE_PREFIXES = {
+    "BUILD_", "CHANGE_", "GIT_", "HUDSON_", "JENKINS_", "JOB_", "RUN_", "SSH_", "TAG_"
+  };
+
+  /**
+   * Creates a new build cache.
+   *
+   * @param execution       The execution context for the command using the cache.
+   * @param directory       The directory (on the agent) to store entries in; when {@code null}, entries are stored on the
+   *                        controller.
+   * @param outputDirectory The command's output directory (relative to the working directory); the output directories for its
+   *                        invocations are located inside it.
+   */
+  BuildCache(@NonNull CommandExecution execution, @CheckForNull String directory, @NonNull String outputDirectory) {
+    this.outputDirectory = outputDirectory;
+    if (directory == null) {
+      this.root = new FilePath(new File(execution.getRun().getParent().getRootDir(), "dotnet-build-cache"));
+      this.local = false;
+    }
+    else {
+      this.root = new FilePath(execution.getWorkspace().getChannel(), directory);
+      this.local = true;
+    }
+  }
+
+  @NonNull
+  private final FilePath root;
+
+  private final boolean local;
+
+  @NonNull
+  private final String outputDirectory;
+
+  /** The fingerprint of the inputs shared by all invocations (files, SDK versions and environment), once computed. */
+  @CheckForNull
+  private String inputKey;
+
+  @NonNull
+  private final AtomicInteger hits = new AtomicInteger();
+
+  @NonNull
+  private final AtomicInteger misses = new AtomicInteger();
+
+  @NonNull
+  private final AtomicInteger stored = new AtomicInteger();
+
+  /**
+   * Runs a command line, or restores its output from the cache when its inputs are unchanged.
+   *
+   * @param execution       The execution context.
+   * @param scanner         The scanner to send command output to.
+   * @param cmdLine         The command line to run.
+   * @param outputDirectory The output directory for the invocation (relative to the working directory).
+   *
+   * @return The command's return code ({@code 0} for a cache hit).
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  int run(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner, @NonNull ArgumentListBuilder cmdLine,
+          @NonNull String outputDirectory) throws IOException, InterruptedException {
+    final PrintStream logger = execution.getListener().getLogger();
+    final FilePath output = execution.getWorkspace().child(outputDirectory);
+    final String key = this.computeKey(execution, cmdLine);
+    if (this.restore(key, output)) {
+      this.hits.incrementAndGet();
+      logger.println(Messages.MSBuild_Command_BuildCacheHit(outputDirectory, key));
+      return 0;
+    }
+    this.misses.incrementAndGet();
+    logger.println(Messages.MSBuild_Command_BuildCacheMiss(outputDirectory, key));
+    final int rc = execution.run(cmdLine, scanner);
+    if (rc == 0) {
+      try {
+        if (this.store(key, output))
+          this.stored.incrementAndGet();
+      }
+      catch (IOException e) {
+        logger.println(Messages.MSBuild_Command_BuildCacheStoreFailed(e));
+      }
+    }
+    return rc;
+  }
+
+  /**
+   * Removes old entries from the store (see {@link PruneCache}), if any entries were stored. This is meant to be done once, after
+   * all invocations for a build step have run.
+   *
+   * @param logger The build log.
+   *
+   * @throws InterruptedException When interrupted while pruning.
+   */
+  void prune(@NonNull PrintStream logger) throws InterruptedException {
+    if (this.stored.get() == 0)
+      return;
+    try {
+      final int pruned = this.root.act(new PruneCache(PruneCache.MAX_AGE, PruneCache.MAX_SIZE));
+      if (pruned > 0)
+        logger.println(Messages.MSBuild_Command_BuildCachePruned(pruned));
+    }
+    catch (IOException e) {
+      logger.println(Messages.MSBuild_Command_BuildCachePruneFailed(e));
+    }
+  }
+
+  /**
+   * Gets the environment variables that are relevant for a fingerprint: all of them, except for the ones that are set by Jenkins
+   * (or the shell) and differ for every build (like {@code BUILD_NUMBER} and {@code WORKSPACE}).
+   *
+   * @param env The environment.
+   *
+   * @return The relevant environment variables, as a single string (sorted by name).
+   */
+  @NonNull
+  static String getEnvironment(@NonNull EnvVars env) {
+    final StringJoiner sj = new StringJoiner("\u0000");
+    outer:
+    for (final Map.Entry<String, String> entry : new TreeMap<>(env).entrySet()) {
+      final String name = entry.getKey().toUpperCase(Locale.ROOT);
+      if (BuildCache.VOLATILE_VARIABLES.contains(name))
+        continue;
+      for (final String prefix : BuildCache.VOLATILE_PREFIXES) {
+        if (name.startsWith(prefix))
+          continue outer;
+      }
+      sj.add(entry.getKey() + '=' + entry.getValue());
+    }
+    return sj.toString();
+  }
+
+  /**
+   * Writes the hit and miss counts for this cache to the build log.
+   *
+   * @param logger The build log.
+   */
+  void writeSummary(@NonNull PrintStream logger) {
+    logger.println(Messages.MSBuild_Command_BuildCacheSummary(this.hits.get(), this.misses.get()));
+  }
+
+  @NonNull
+  private String computeKey(@NonNull CommandExecution execution, @NonNull ArgumentListBuilder cmdLine)
+    throws IOException, InterruptedException {
+    return FileHashes.combine(Collections.emptyMap(), this.getInputKey(execution), String.join("\u0000", cmdLine.toList()));
+  }
+
+  /**
+   * Gets the fingerprint of the inputs shared by all invocations, computing it on first use; the working directory is only hashed
+   * once per build step.
+   */
+  @NonNull
+  private synchronized String getInputKey(@NonNull CommandExecution execution) throws IOException, InterruptedException {
+    if (this.inputKey != null)
+      return this.inputKey;
+    // The output directory is not an input (it will typically contain the output of earlier runs, for all invocations).
+    String excludes = BuildCache.NON_INPUTS;
+    final String workspace = execution.getWorkspace().getRemote();
+    final String output = execution.getWorkspace().child(this.outputDirectory).getRemote();
+    if (output.length() > workspace.length() + 1 && output.startsWith(workspace))
+      excludes += "," + output.substring(workspace.length() + 1).replace('\\', '/') + "/**";
+    final Map<String, String> hashes = execution.getWorkspace().act(new FileHashes(BuildCache.INPUTS, excludes));
+    hashes.putAll(execution.getWorkspace().act(new FileHashes(BuildCache.RESTORE_INPUTS, BuildCache.NON_RESTORE_INPUTS)));
+    final DotNetSDK sdk = execution.getSdk();
+    final String sdkVersions = sdk == null ? "" : String.join(",", sdk.getSdkVersions(execution.getWorkspace().getChannel()));
+    this.inputKey = FileHashes.combine(hashes, sdkVersions, BuildCache.getEnvironment(execution.getEnvironment()));
+    return this.inputKey;
+  }
+
+  private boolean restore(@NonNull String key, @NonNull FilePath output) throws IOException, InterruptedException {
+    final FilePath entry;
+    if (this.local) {
+      entry = this.root.child(key);
+      if (!entry.isDirectory())
+        return false;
+      output.mkdirs();
+      entry.copyRecursiveTo(output);
+    }
+    else {
+      entry = this.root.child(key + ".tar.gz");
+      if (!entry.exists())
+        return false;
+      output.mkdirs();
+      try (final InputStream in = entry.read()) {
+        output.untarFrom(in, FilePath.TarCompression.GZIP);
+      }
+    }
+    // Mark the entry as used, so it is kept when pruning.
+    entry.touch(System.currentTimeMillis());
+    return true;
+  }
+
+  private boolean store(@NonNull String key, @NonNull FilePath output) throws IOException, InterruptedException {
+    if (!output.isDirectory())
+      return false;
+    this.root.mkdirs();
+    final String suffix = PruneCache.TEMP_MARKER + UUID.randomUUID();
+    if (this.local) {
+      final FilePath entry = this.root.child(key);
+      final FilePath temp = this.root.child(key + suffix);
+      output.copyRecursiveTo("**", null, temp);
+      if (entry.exists()) {
+        temp.deleteRecursive();
+        entry.touch(System.currentTimeMillis());
+      }
+      else
+        temp.renameTo(entry);
+    }
+    else {
+      final FilePath entry = this.root.child(key + ".tar.gz");
+      final FilePath temp = this.root.child(key + ".tar.gz" + suffix);
+      try (final OutputStream out = temp.write()) {
+        output.archive(ArchiverFactory.TARGZ, out, "**");
+      }
+      temp.renameTo(entry);
+    }
+    return true;
+  }
+
+}
@@ -5,6 +5,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.Util;
 import io.jenkins.plugins.dotnet.DotNetConfiguration;
+import io.jenkins.plugins.dotnet.DotNetUtils;
 import io.jenkins.plugins.dotnet.commands.DotNetArguments;
 import io.jenkins.plugins.dotnet.commands.Messages;
 import org.jenkinsci.Symbol;
@@ -25,16 +26,28 @@ public final class Clean extends MSBuildCommand {
    * <p>
    * This adds:
    * <ol>
-   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments)}.</li>
-   *   <li>{@code -f:xxx}, if a target framework moniker has been specified via {@link #setFramework(String)}.</li>
-   *   <li>{@code -r:xxx}, if a runtime identifier has been specified via {@link #setRuntime(String)}.</li>
+   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments, Invocation)}.</li>
+   *   <li>{@code -f:xxx}, for the invocation's target framework moniker (see {@link #setFrameworks(String...)}).</li>
+   *   <li>{@code -r:xxx}, for the invocation's runtime identifier (see {@link #setRuntimes(String...)}).</li>
    * </ol>
    */
   @Override
-  protected void addCommandLineArguments(@NonNull DotNetArguments args) {
-    super.addCommandLineArguments(args);
-    args.addOption('f', this.framework);
-    args.addOption('r', this.runtime);
+  protected void addCommandLineArguments(@NonNull DotNetArguments args, @NonNull Invocation invocation) {
+    super.addCommandLineArguments(args, invocation);
+    args.addOption('f', invocation.getFramework());
+    args.addOption('r', invocation.getRuntime());
+  }
+
+  @CheckForNull
+  @Override
+  protected String[] getInvocationFrameworks() {
+    return this.getFrameworks();
+  }
+
+  @CheckForNull
+  @Override
+  protected String[] getInvocationRuntimes() {
+    return this.getRuntimes();
   }
 
   //region Properties
@@ -42,45 +55,129 @@ public final class Clean extends MSBuildCommand {
   private String framework;
 
   /**
-   * Gets the target framework moniker to use.
+   * Gets the sole target framework moniker to use.
    *
-   * @return The target framework moniker to use.
+   * @return The sole target framework moniker to use, or {@code null} when there is not exactly one framework set.
    */
   @CheckForNull
   public String getFramework() {
-    return this.framework;
+    return DotNetUtils.singleToken(this.framework);
   }
 
   /**
-   * Sets the target framework moniker to use.
+   * Sets the sole target framework moniker to use.
+   * <p>
+   * To set more than one, use {@link #setFrameworks(String...)} instead.
    *
-   * @param framework The target framework moniker to use.
+   * @param framework The sole target framework moniker to use.
    */
   @DataBoundSetter
   public void setFramework(@CheckForNull String framework) {
-    this.framework = Util.fixEmptyAndTrim(framework);
+    this.framework = DotNetUtils.detokenize(' ', framework);
+  }
+
+  /**
+   * Gets the target framework monikers to use. The command is run separately for each of them.
+   *
+   * @return The target framework monikers to use.
+   */
+  @CheckForNull
+  public String[] getFrameworks() {
+    return DotNetUtils.tokenize(this.framework);
+  }
+
+  /**
+   * Sets the target framework monikers to use. The command is run separately for each of them.
+   *
+   * @param frameworks The target framework monikers to use.
+   */
+  @DataBoundSetter
+  public void setFrameworks(@CheckForNull String... frameworks) {
+    this.framework = DotNetUtils.detokenize(' ', frameworks);
+  }
+
+  /**
+   * Gets the target framework monikers to use.
+   *
+   * @return The target framework monikers to use.
+   */
+  @CheckForNull
+  public String getFrameworksString() {
+    return this.framework;
+  }
+
+  /**
+   * Sets the target framework monikers to use.
+   *
+   * @param frameworks The target framework monikers to use.
+   */
+  @DataBoundSetter
+  public void setFrameworksString(@CheckForNull String frameworks) {
+    this.framework = Util.fixEmptyAndTrim(frameworks);
   }
 
   private String runtime;
 
   /**
-   * Gets the runtime identifier to use.
+   * Gets the sole runtime identifier to use.
    *
-   * @return The runtime identifier to use.
+   * @return The sole runtime identifier to use, or {@code null} when there is not exactly one runtime identifier set.
    */
   @CheckForNull
   public String getRuntime() {
-    return this.runtime;
+    return DotNetUtils.singleToken(this.runtime);
   }
 
   /**
-   * Gets the runtime identifier to use.
+   * Sets the sole runtime identifier to use.
+   * <p>
+   * To set more than one, use {@link #setRuntimes(String...)} instead.
    *
-   * @param runtime The runtime identifier to use.
+   * @param runtime The sole runtime identifier to use.
    */
   @DataBoundSetter
   public void setRuntime(@CheckForNull String runtime) {
-    this.runtime = Util.fixEmptyAndTrim(runtime);
+    this.runtime = DotNetUtils.detokenize(' ', runtime);
+  }
+
+  /**
+   * Gets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String[] getRuntimes() {
+    return DotNetUtils.tokenize(this.runtime);
+  }
+
+  /**
+   * Sets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimes(@CheckForNull String... runtimes) {
+    this.runtime = DotNetUtils.detokenize(' ', runtimes);
+  }
+
+  /**
+   * Gets the runtime identifiers to use.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String getRuntimesString() {
+    return this.runtime;
+  }
+
+  /**
+   * Sets the runtime identifiers to use.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimesString(@CheckForNull String runtimes) {
+    this.runtime = Util.fixEmptyAndTrim(runtimes);
   }
 
   //endregion
@@ -0,0 +1,338 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A file callable merging Cobertura coverage reports (as produced by the {@code XPlat Code Coverage} data collector) into a single
+ * report.
+ * <p>
+ * The reports are read using StAX, one at a time; for each source file, only two bitsets are kept: the coverable lines and the
+ * covered lines. Memory use is therefore roughly two bits per source line, regardless of the number or size of the reports. As a
+ * consequence, the merged report contains line coverage only: every line is reported with a hit count of {@code 0} or {@code 1},
+ * and branch and method details are not included. Source file names are made absolute (using the report's {@code source}
+ * elements), so that reports with different source roots can be merged.
+ */
+public final class CoberturaMerge extends MasterToSlaveFileCallable<CoverageSummary> {
+
+  private static final long serialVersionUID = -2838263197346407528L;
+
+  /** The Ant-style pattern selecting the coverage reports to merge. */
+  static final String INCLUDES = "**/coverage.cobertura.xml";
+
+  /**
+   * Creates a new Cobertura merge callable.
+   *
+   * @param roots  The (absolute) paths of the directories to search for coverage reports.
+   * @param since  Only reports last modified at or after this time (in milliseconds since the epoch) are merged.
+   * @param output The (absolute) path of the merged report to write.
+   * @param report The path of the merged report, as configured (recorded in the summary).
+   */
+  public CoberturaMerge(@NonNull List<String> roots, long since, @NonNull String output, @NonNull String report) {
+    this.roots = new ArrayList<>(roots);
+    this.since = since;
+    this.output = output;
+    this.report = report;
+  }
+
+  @NonNull
+  private final String output;
+
+  @NonNull
+  private final String report;
+
+  @NonNull
+  private final ArrayList<String> roots;
+
+  private final long since;
+
+  @Override
+  public CoverageSummary invoke(@NonNull File workspace, @CheckForNull VirtualChannel channel) throws IOException {
+    final File outputFile = new File(this.output);
+    final Set<String> seen = new HashSet<>();
+    seen.add(outputFile.getCanonicalPath());
+    final Map<String, FileCoverage> files = new TreeMap<>();
+    final XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    int reports = 0;
+    for (final String root : this.roots) {
+      final File dir = new File(root);
+      if (!dir.isDirectory())
+        continue;
+      for (final String name : Util.createFileSet(dir, CoberturaMerge.INCLUDES).getDirectoryScanner().getIncludedFiles()) {
+        final File file = new File(dir, name);
+        if (file.lastModified() < this.since || !seen.add(file.getCanonicalPath()))
+          continue;
+        CoberturaMerge.read(factory, file, files);
+        ++reports;
+      }
+    }
+    final CoverageSummary summary = new CoverageSummary(this.report);
+    summary.setReports(reports);
+    if (reports == 0)
+      return summary;
+    final Map<String, long[]> packages = new LinkedHashMap<>();
+    for (final FileCoverage fc : files.values()) {
+      final long[] totals = packages.computeIfAbsent(fc.packageName, p -> new long[3]);
+      ++totals[0];
+      totals[1] += fc.valid.cardinality();
+      totals[2] += fc.covered.cardinality();
+    }
+    for (final Map.Entry<String, long[]> entry : packages.entrySet()) {
+      final long[] totals = entry.getValue();
+      summary.addPackage(entry.getKey(), (int) totals[0], totals[1], totals[2]);
+    }
+    CoberturaMerge.write(outputFile, files, packages, summary);
+    return summary;
+  }
+
+  //region Reading
+
+  /**
+   * Reads a Cobertura coverage report, adding its line coverage to the per-file bitsets.
+   *
+   * @param factory The XML input factory to use.
+   * @param file    The report to read.
+   * @param files   The coverage per source file, keyed on package name and file name (see {@link #key(String, String)}).
+   *
+   * @throws IOException When the report could not be read.
+   */
+  static void read(@NonNull XMLInputFactory factory, @NonNull File file, @NonNull Map<String, FileCoverage> files)
+    throws IOException {
+    try (final InputStream in = Files.newInputStream(file.toPath())) {
+      final XMLStreamReader reader = factory.createXMLStreamReader(in);
+      try {
+        final List<String> sources = new ArrayList<>();
+        String packageName = "";
+        FileCoverage current = null;
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT)
+            continue;
+          switch (reader.getLocalName()) {
+            case "source":
+              final String source = reader.getElementText().trim();
+              if (!source.isEmpty())
+                sources.add(source);
+              break;
+            case "package":
+              packageName = Util.fixNull(reader.getAttributeValue(null, "name"));
+              break;
+            case "class":
+              final String fileName = Util.fixEmpty(reader.getAttributeValue(null, "filename"));
+              if (fileName == null) {
+                current = null;
+                break;
+              }
+              final String path = CoberturaMerge.resolve(sources, fileName);
+              final String className = Util.fixNull(reader.getAttributeValue(null, "name"));
+              final String pkg = packageName;
+              current = files.computeIfAbsent(CoberturaMerge.key(pkg, path), k -> new FileCoverage(pkg, path, className));
+              break;
+            case "line":
+              if (current != null)
+                current.add(reader.getAttributeValue(null, "number"), reader.getAttributeValue(null, "hits"));
+              break;
+            default:
+              break;
+          }
+        }
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (XMLStreamException e) {
+      throw new IOException("Failed to read " + file + ".", e);
+    }
+  }
+
+  @NonNull
+  private static String key(@NonNull String packageName, @NonNull String fileName) {
+    return packageName + '\n' + fileName;
+  }
+
+  /**
+   * Resolves a source file name from a Cobertura report against the report's source directories.
+   *
+   * @param sources  The report's source directories.
+   * @param fileName The file name.
+   *
+   * @return The file name, made absolute using the first source directory containing it (or the first source directory, if none
+   * do); the file name as-is when it is absolute already or there are no source directories.
+   */
+  @NonNull
+  static String resolve(@NonNull List<String> sources, @NonNull String fileName) {
+    if (sources.isEmpty() || CoberturaMerge.isAbsolute(fileName))
+      return fileName;
+    for (final String source : sources) {
+      final File file = new File(source, fileName);
+      if (file.isFile())
+        return file.getPath();
+    }
+    return new File(sources.get(0), fileName).getPath();
+  }
+
+  private static boolean isAbsolute(@NonNull String fileName) {
+    return fileName.startsWith("/") || fileName.startsWith("\\") || (fileName.length() > 2 && fileName.charAt(1) == ':');
+  }
+
+  //endregion
+
+  //region Writing
+
+  private static void write(@NonNull File file, @NonNull Map<String, FileCoverage> files, @NonNull Map<String, long[]> packages,
+                            @NonNull CoverageSummary summary) throws IOException {
+    final File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null)
+      Files.createDirectories(dir.toPath());
+    final File temp = new File(file.getPath() + ".tmp");
+    try (final OutputStream out = Files.newOutputStream(temp.toPath())) {
+      final XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+      try {
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("coverage");
+        CoberturaMerge.writeTotals(writer, summary.getLinesValid(), summary.getLinesCovered());
+        writer.writeAttribute("version", "1.9");
+        writer.writeAttribute("timestamp", Long.toString(System.currentTimeMillis() / 1000));
+        writer.writeEmptyElement("sources");
+        writer.writeStartElement("packages");
+        String packageName = null;
+        for (final FileCoverage fc : files.values()) {
+          if (!fc.packageName.equals(packageName)) {
+            if (packageName != null) {
+              writer.writeEndElement(); // classes
+              writer.writeEndElement(); // package
+            }
+            packageName = fc.packageName;
+            final long[] totals = packages.get(packageName);
+            writer.writeStartElement("package");
+            writer.writeAttribute("name", packageName);
+            writer.writeAttribute("line-rate", CoberturaMerge.rate(totals[2], totals[1]));
+            writer.writeAttribute("branch-rate", "0");
+            writer.writeAttribute("complexity", "0");
+            writer.writeStartElement("classes");
+          }
+          writer.writeStartElement("class");
+          writer.writeAttribute("name", fc.className);
+          writer.writeAttribute("filename", fc.fileName);
+          writer.writeAttribute("line-rate", CoberturaMerge.rate(fc.covered.cardinality(), fc.valid.cardinality()));
+          writer.writeAttribute("branch-rate", "0");
+          writer.writeAttribute("complexity", "0");
+          writer.writeEmptyElement("methods");
+          writer.writeStartElement("lines");
+          for (int line = fc.valid.nextSetBit(0); line >= 0; line = fc.valid.nextSetBit(line + 1)) {
+            writer.writeEmptyElement("line");
+            writer.writeAttribute("number", Integer.toString(line));
+            writer.writeAttribute("hits", fc.covered.get(line) ? "1" : "0");
+            writer.writeAttribute("branch", "False");
+          }
+          writer.writeEndElement(); // lines
+          writer.writeEndElement(); // class
+        }
+        if (packageName != null) {
+          writer.writeEndElement(); // classes
+          writer.writeEndElement(); // package
+        }
+        writer.writeEndElement(); // packages
+        writer.writeEndElement(); // coverage
+        writer.writeEndDocument();
+      }
+      finally {
+        writer.close();
+      }
+    }
+    catch (XMLStreamException e) {
+      Files.deleteIfExists(temp.toPath());
+      throw new IOException("Failed to write " + file + ".", e);
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void writeTotals(@NonNull XMLStreamWriter writer, long valid, long covered) throws XMLStreamException {
+    writer.writeAttribute("line-rate", CoberturaMerge.rate(covered, valid));
+    writer.writeAttribute("branch-rate", "0");
+    writer.writeAttribute("lines-covered", Long.toString(covered));
+    writer.writeAttribute("lines-valid", Long.toString(valid));
+    writer.writeAttribute("branches-covered", "0");
+    writer.writeAttribute("branches-valid", "0");
+  }
+
+  @NonNull
+  private static String rate(long covered, long valid) {
+    return valid == 0 ? "0" : String.format(Locale.ROOT, "%.4f", (double) covered / valid);
+  }
+
+  //endregion
+
+  /** The line coverage for a single source file. */
+  static final class FileCoverage {
+
+    FileCoverage(@NonNull String packageName, @NonNull String fileName, @NonNull String className) {
+      this.packageName = packageName;
+      this.fileName = fileName;
+      this.className = className;
+    }
+
+    /** The name of the (first) class reported for the file. */
+    @NonNull
+    final String className;
+
+    /** The lines that were hit at least once. */
+    @NonNull
+    final BitSet covered = new BitSet();
+
+    @NonNull
+    final String fileName;
+
+    @NonNull
+    final String packageName;
+
+    /** The coverable lines. */
+    @NonNull
+    final BitSet valid = new BitSet();
+
+    void add(@CheckForNull String number, @CheckForNull String hits) {
+      if (number == null)
+        return;
+      try {
+        final int line = Integer.parseInt(number.trim());
+        if (line < 0)
+          return;
+        this.valid.set(line);
+        if (hits != null && Long.parseLong(hits.trim()) > 0)
+          this.covered.set(line);
+      }
+      catch (NumberFormatException e) {
+        // skip malformed line
+      }
+    }
+
+  }
+
+}
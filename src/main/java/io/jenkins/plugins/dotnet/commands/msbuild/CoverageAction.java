@@ -0,0 +1,101 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+import io.jenkins.plugins.dotnet.commands.Messages;
+import jenkins.model.RunAction2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A build action reporting the merged code coverage reports written for a build (see {@link Test#setMergeCoverage(String)}).
+ */
+public final class CoverageAction implements RunAction2 {
+
+  /** Creates a new coverage action. */
+  CoverageAction() {
+  }
+
+  private transient Run<?, ?> run;
+
+  @NonNull
+  private final List<CoverageSummary> summaries = new ArrayList<>();
+
+  /**
+   * Gets (creating and attaching it when needed) the coverage action for a build.
+   *
+   * @param run The build.
+   *
+   * @return The build's coverage action.
+   */
+  @NonNull
+  static CoverageAction forRun(@NonNull Run<?, ?> run) {
+    synchronized (run) {
+      CoverageAction action = run.getAction(CoverageAction.class);
+      if (action == null) {
+        action = new CoverageAction();
+        run.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  /**
+   * Records the summary of a merged coverage report.
+   *
+   * @param summary The summary.
+   */
+  synchronized void add(@NonNull CoverageSummary summary) {
+    this.summaries.add(summary);
+  }
+
+  @NonNull
+  @Override
+  public String getDisplayName() {
+    return Messages.MSBuild_Test_CoverageAction_DisplayName();
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "clipboard.png";
+  }
+
+  /**
+   * Gets the build this action is attached to.
+   *
+   * @return The build this action is attached to.
+   */
+  @CheckForNull
+  public Run<?, ?> getRun() {
+    return this.run;
+  }
+
+  /**
+   * Gets the summaries of the merged coverage reports.
+   *
+   * @return The summaries of the merged coverage reports, in order of writing.
+   */
+  @NonNull
+  public synchronized List<CoverageSummary> getSummaries() {
+    return Collections.unmodifiableList(new ArrayList<>(this.summaries));
+  }
+
+  @Override
+  public String getUrlName() {
+    return "dotnet-coverage";
+  }
+
+  @Override
+  public void onAttached(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  @Override
+  public void onLoad(Run<?, ?> r) {
+    this.run = r;
+  }
+
+}
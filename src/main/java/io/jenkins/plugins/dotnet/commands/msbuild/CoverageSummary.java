@@ -0,0 +1,204 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A summary of a merged Cobertura coverage report (see {@link CoberturaMerge}): the line coverage totals, overall and per package.
+ */
+public final class CoverageSummary implements Serializable {
+
+  private static final long serialVersionUID = 6017725433418329610L;
+
+  /**
+   * Creates a new (empty) coverage summary.
+   *
+   * @param report The path of the merged report (as configured).
+   */
+  CoverageSummary(@NonNull String report) {
+    this.report = report;
+  }
+
+  private int files;
+
+  private long linesCovered;
+
+  private long linesValid;
+
+  @NonNull
+  private final List<Entry> packages = new ArrayList<>();
+
+  @NonNull
+  private final String report;
+
+  private int reports;
+
+  /**
+   * Adds the totals for a package.
+   *
+   * @param name         The name of the package.
+   * @param files        The number of source files in the package.
+   * @param linesValid   The number of coverable lines in the package.
+   * @param linesCovered The number of covered lines in the package.
+   */
+  void addPackage(@NonNull String name, int files, long linesValid, long linesCovered) {
+    this.packages.add(new Entry(name, files, linesValid, linesCovered));
+    this.files += files;
+    this.linesValid += linesValid;
+    this.linesCovered += linesCovered;
+  }
+
+  /**
+   * Gets the number of source files covered by the report.
+   *
+   * @return The number of source files covered by the report.
+   */
+  public int getFiles() {
+    return this.files;
+  }
+
+  /**
+   * Gets the line coverage, as a percentage.
+   *
+   * @return The line coverage, as a percentage ({@code 0} when there are no coverable lines).
+   */
+  public double getLineCoverage() {
+    return CoverageSummary.percentage(this.linesCovered, this.linesValid);
+  }
+
+  /**
+   * Gets the number of covered lines.
+   *
+   * @return The number of covered lines.
+   */
+  public long getLinesCovered() {
+    return this.linesCovered;
+  }
+
+  /**
+   * Gets the number of coverable lines.
+   *
+   * @return The number of coverable lines.
+   */
+  public long getLinesValid() {
+    return this.linesValid;
+  }
+
+  /**
+   * Gets the totals per package.
+   *
+   * @return The totals per package, ordered by name.
+   */
+  @NonNull
+  public List<Entry> getPackages() {
+    return Collections.unmodifiableList(this.packages);
+  }
+
+  /**
+   * Gets the path of the merged report.
+   *
+   * @return The path of the merged report (as configured).
+   */
+  @NonNull
+  public String getReport() {
+    return this.report;
+  }
+
+  /**
+   * Gets the number of coverage reports that were merged.
+   *
+   * @return The number of coverage reports that were merged.
+   */
+  public int getReports() {
+    return this.reports;
+  }
+
+  /**
+   * Sets the number of coverage reports that were merged.
+   *
+   * @param reports The number of coverage reports that were merged.
+   */
+  void setReports(int reports) {
+    this.reports = reports;
+  }
+
+  private static double percentage(long covered, long valid) {
+    if (valid == 0)
+      return 0;
+    return Math.floor(covered * 1000.0 / valid) / 10;
+  }
+
+  /** The line coverage totals for a package. */
+  public static final class Entry implements Serializable {
+
+    private static final long serialVersionUID = -3285513009486262318L;
+
+    Entry(@NonNull String name, int files, long linesValid, long linesCovered) {
+      this.name = name;
+      this.files = files;
+      this.linesValid = linesValid;
+      this.linesCovered = linesCovered;
+    }
+
+    private final int files;
+
+    private final long linesCovered;
+
+    private final long linesValid;
+
+    @NonNull
+    private final String name;
+
+    /**
+     * Gets the number of source files in the package.
+     *
+     * @return The number of source files in the package.
+     */
+    public int getFiles() {
+      return this.files;
+    }
+
+    /**
+     * Gets the line coverage for the package, as a percentage.
+     *
+     * @return The line coverage for the package, as a percentage ({@code 0} when there are no coverable lines).
+     */
+    public double getLineCoverage() {
+      return CoverageSummary.percentage(this.linesCovered, this.linesValid);
+    }
+
+    /**
+     * Gets the number of covered lines in the package.
+     *
+     * @return The number of covered lines in the package.
+     */
+    public long getLinesCovered() {
+      return this.linesCovered;
+    }
+
+    /**
+     * Gets the number of coverable lines in the package.
+     *
+     * @return The number of coverable lines in the package.
+     */
+    public long getLinesValid() {
+      return this.linesValid;
+    }
+
+    /**
+     * Gets the name of the package.
+     *
+     * @return The name of the package.
+     */
+    @NonNull
+    public String getName() {
+      return this.name;
+    }
+
+  }
+
+}
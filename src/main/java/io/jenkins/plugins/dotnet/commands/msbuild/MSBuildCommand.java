@@ -2,16 +2,40 @@ package io.jenkins.plugins.dotnet.commands.msbuild;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
 import hudson.Util;
+import hudson.slaves.WorkspaceList;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.plugins.dotnet.DotNetSDK;
 import io.jenkins.plugins.dotnet.DotNetUtils;
 import io.jenkins.plugins.dotnet.commands.Command;
+import io.jenkins.plugins.dotnet.commands.CommandExecution;
 import io.jenkins.plugins.dotnet.commands.DotNetArguments;
+import io.jenkins.plugins.dotnet.commands.FailFast;
 import io.jenkins.plugins.dotnet.commands.Messages;
+import io.jenkins.plugins.dotnet.commands.RuntimeTuning;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
 import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,47 +59,753 @@ public class MSBuildCommand extends Command {
   private final String command;
 
   /**
-   * {@inheritDoc}
+   * Adds command line arguments for one invocation of this MSBuild-based command.
    * <p>
    * This adds:
    * <ol>
    *   <li>The command name, if applicable.</li>
-   *   <li>The project specified via {@link #setProject(String)}.</li>
+   *   <li>The project for the invocation (see {@link #setProjects(String...)}).</li>
    *   <li>
    *     Any raw options specified via {@link #setOption(String)}, {@link #setOptions(String...)} or
    *     {@link #setOptionsString(String)}.
    *   </li>
    *   <li>{@code -c:xxx}, if a configuration has been specified via {@link #setConfiguration(String)}.</li>
    *   <li>{@code --nologo}, if requested via {@link #setNologo(boolean)}.</li>
-   *   <li>{@code --output xxx}, if an output directory has been specified via {@link #setOutputDirectory(String)}.</li>
+   *   <li>
+   *     {@code --output xxx}, for the invocation's output directory (by default, the one specified via
+   *     {@link #setOutputDirectory(String)}).
+   *   </li>
    *   <li>
    *     {@code -p:name=value}, for all properties specified via {@link #setProperties(Map)} or
    *     {@link #setPropertiesString(String)}.
    *   </li>
    *   <li>{@code -v:xxx}, if a verbosity has been specified via {@link #setVerbosity(String)}.</li>
+   *   <li>
+   *     {@code -maxcpucount:N}, if a maximum has been specified via {@link #setMaxCpuCount(Integer)}, or else if automatic
+   *     parallelism is in use (see {@link DotNetArguments#getCpuCount()}).
+   *   </li>
    * </ol>
+   *
+   * @param args       The current set of arguments.
+   * @param invocation The invocation for which arguments are being added.
+   *
+   * @throws AbortException When something goes wrong.
    */
-  @Override
-  protected void addCommandLineArguments(@NonNull DotNetArguments args) {
+  protected void addCommandLineArguments(@NonNull DotNetArguments args, @NonNull Invocation invocation) throws AbortException {
     args.addOption(this.command);
-    args.addOption(this.project);
+    args.addOption(invocation.getProject());
     args.addOptions(this.options);
     args.addOption('c', this.configuration);
     args.addFlag("nologo", this.nologo);
-    args.addOption("output", this.outputDirectory);
+    args.addOption("output", invocation.getOutputDirectory());
+    this.addPropertyArguments(args);
+    args.addOption('v', this.verbosity);
+    args.addMaxCpuCount(this.maxCpuCount);
+  }
+
+  /**
+   * Adds {@code -p:name=value} for all properties specified via {@link #setProperties(Map)} or {@link #setPropertiesString(String)}.
+   *
+   * @param args The current set of arguments.
+   */
+  protected final void addPropertyArguments(@NonNull DotNetArguments args) {
     try {
       args.addPropertyOptions("-p:", this.properties);
     }
     catch (IOException e) {
       MSBuildCommand.LOGGER.log(Level.FINE, Messages.MSBuild_Command_BadProperties(), e);
     }
-    args.addOption('v', this.verbosity);
+  }
+
+  /**
+   * Runs this MSBuild-based command.
+   * <p>
+   * When more than one project, target framework or runtime identifier is configured, {@code dotnet} is run for each combination
+   * of them (see {@link #getInvocations()}); this may be limited to affected projects (see {@link #setAffectedOnly(boolean)}).
+   *
+   * @param execution The prepared execution context (SDK, environment and working directory).
+   * @param scanner   The scanner to send command output to.
+   *
+   * @return The return code for the command (for multiple invocations, the first non-zero return code, if any).
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @Override
+  protected int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner)
+    throws AbortException, IOException, InterruptedException {
+    final List<Invocation> invocations = this.selectInvocations(execution);
+    if (invocations.isEmpty())
+      return 0;
+    return this.execute(execution, scanner, invocations);
+  }
+
+  /**
+   * Runs a set of invocations of this MSBuild-based command.
+   * <p>
+   * When there is more than one invocation, up to {@link #getParallelInvocations()} of them run at the same time. Each
+   * invocation's output is then prefixed to identify the project, framework and runtime it applies to, and the error and warning
+   * counts of all invocations are combined.
+   *
+   * @param execution   The prepared execution context (SDK, environment and working directory).
+   * @param scanner     The scanner to send command output to.
+   * @param invocations The invocations to run.
+   *
+   * @return The return code for the command (for multiple invocations, the first non-zero return code, if any).
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  protected int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner,
+                        @NonNull List<Invocation> invocations) throws AbortException, IOException, InterruptedException {
+    final BuildCache cache = this.createBuildCache(execution);
+    try {
+      final int rc = this.execute(execution, scanner, invocations, cache);
+      if (cache != null)
+        cache.prune(execution.getListener().getLogger());
+      return rc;
+    }
+    finally {
+      if (cache != null)
+        cache.writeSummary(execution.getListener().getLogger());
+    }
+  }
+
+  private int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner,
+                      @NonNull List<Invocation> invocations, @CheckForNull BuildCache cache)
+    throws AbortException, IOException, InterruptedException {
+    if (invocations.size() == 1)
+      return this.execute(execution, scanner, invocations.get(0), cache);
+    final int parallelism = this.getParallelism(invocations.size());
+    // Invocations running at the same time share the automatically determined CPU count.
+    final CommandExecution invocationExecution = execution.forParallelInvocations(parallelism);
+    if (invocationExecution != execution) {
+      execution.getListener().getLogger().println(Messages.MSBuild_Command_ParallelCpuCount(parallelism,
+        invocationExecution.getCpuCount()));
+    }
+    final List<DiagnosticScanner> scanners = new ArrayList<>();
+    final List<Callable<Integer>> tasks = new ArrayList<>();
+    for (final Invocation invocation : invocations) {
+      final String prefix = "[" + invocation.getDisplayName() + "] ";
+      // The invocation's output is scanned separately, then sent on to the same place as the output of the command's scanner.
+      final DiagnosticScanner invocationScanner = new DiagnosticScanner(scanner.createSink(prefix), execution.getCharset());
+      scanners.add(invocationScanner);
+      tasks.add(() -> this.execute(invocationExecution, invocationScanner, invocation, cache));
+    }
+    final List<Integer> results = new ArrayList<>();
+    if (parallelism <= 1) {
+      for (int i = 0; i < invocations.size(); ++i)
+        results.add(this.execute(invocationExecution, scanners.get(i), invocations.get(i), cache));
+    }
+    else {
+      final ThreadFactory threadFactory = new NamingThreadFactory(new DaemonThreadFactory(), MSBuildCommand.class.getName());
+      final ExecutorService executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+      try {
+        for (final Future<Integer> future : executor.invokeAll(tasks)) {
+          try {
+            results.add(future.get());
+          }
+          catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+              throw (IOException) cause;
+            if (cause instanceof InterruptedException)
+              throw (InterruptedException) cause;
+            throw new IOException(cause);
+          }
+        }
+      }
+      finally {
+        executor.shutdownNow();
+      }
+    }
+    for (final DiagnosticScanner invocationScanner : scanners)
+      scanner.merge(invocationScanner);
+    for (final int rc : results) {
+      if (rc != 0)
+        return rc;
+    }
+    return 0;
+  }
+
+  /**
+   * Runs a single invocation of this MSBuild-based command.
+   *
+   * @param execution  The prepared execution context (SDK, environment and working directory).
+   * @param scanner    The scanner to send command output to.
+   * @param invocation The invocation to run.
+   * @param cache      The build cache to use, if any.
+   *
+   * @return The return code for the invocation.
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  private int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner, @NonNull Invocation invocation,
+                      @CheckForNull BuildCache cache) throws AbortException, IOException, InterruptedException {
+    final FailFast failFast = execution.getFailFast();
+    if (failFast != null && failFast.isTriggered()) // no point in starting more work
+      return -1;
+    if (cache == null || invocation.getOutputDirectory() == null)
+      return this.executeInvocation(execution, scanner, invocation);
+    final ArgumentListBuilder cmdLine = execution.createCommandLine();
+    this.addCommandLineArguments(execution.createArguments(cmdLine), invocation);
+    return cache.run(execution, scanner, cmdLine, invocation.getOutputDirectory());
+  }
+
+  /**
+   * Runs a single invocation of this MSBuild-based command, when it is not handled by the build cache.
+   *
+   * @param execution  The prepared execution context (SDK, environment and working directory).
+   * @param scanner    The scanner to send command output to.
+   * @param invocation The invocation to run.
+   *
+   * @return The return code for the invocation.
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  protected int executeInvocation(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner,
+                                  @NonNull Invocation invocation) throws AbortException, IOException, InterruptedException {
+    final ArgumentListBuilder cmdLine = execution.createCommandLine();
+    this.addCommandLineArguments(execution.createArguments(cmdLine), invocation);
+    return execution.run(cmdLine, scanner);
+  }
+
+  /**
+   * Applies .NET runtime tuning to the environment for this command, using the settings made for this command where set, and those
+   * for the .NET SDK installation otherwise.
+   *
+   * @param workspace The workspace for the command.
+   * @param env       The environment to update.
+   * @param sdk       The .NET SDK installation in use, if any.
+   * @param log       The stream to report the applied settings to.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @Override
+  protected void applyRuntimeTuning(@NonNull FilePath workspace, @NonNull EnvVars env, @CheckForNull DotNetSDK sdk,
+                                    @NonNull PrintStream log) throws IOException, InterruptedException {
+    Integer gcHeapLimit = this.gcHeapLimit;
+    String gcMode = this.gcMode;
+    boolean noConcurrentGc = this.noConcurrentGc;
+    String tieredCompilation = this.tieredCompilation;
+    if (sdk != null) {
+      if (gcHeapLimit == null)
+        gcHeapLimit = sdk.getGcHeapLimit();
+      if (gcMode == null)
+        gcMode = sdk.getGcMode();
+      noConcurrentGc |= sdk.isNoConcurrentGc();
+      if (tieredCompilation == null)
+        tieredCompilation = sdk.getTieredCompilation();
+    }
+    RuntimeTuning.apply(workspace, env, gcHeapLimit, gcMode, noConcurrentGc, tieredCompilation, log);
+  }
+
+  /**
+   * Creates the fail-fast monitor for this command's processes, if fail-fast mode has been requested (via
+   * {@link #setFailFast(Integer)}).
+   *
+   * @return The fail-fast monitor for this command's processes, or {@code null} when fail-fast mode is not in use.
+   */
+  @CheckForNull
+  @Override
+  protected FailFast createFailFast() {
+    return this.failFast == null ? null : new FailFast(this.failFast);
+  }
+
+  @CheckForNull
+  private BuildCache createBuildCache(@NonNull CommandExecution execution) {
+    if (!this.buildCache || !this.isBuildCacheSupported())
+      return null;
+    if (this.outputDirectory == null) {
+      execution.getListener().getLogger().println(Messages.MSBuild_Command_BuildCacheNoOutputDirectory());
+      return null;
+    }
+    return new BuildCache(execution, this.buildCacheDirectory, this.outputDirectory);
+  }
+
+  /**
+   * Determines whether this command supports running only for affected projects (see {@link #setAffectedOnly(boolean)}).
+   * <p>
+   * This is only the case for commands that can be run for individual projects of a solution.
+   *
+   * @return {@code true} when this command supports running only for affected projects; {@code false} otherwise.
+   */
+  protected boolean isAffectedOnlySupported() {
+    return false;
+  }
+
+  /**
+   * Determines whether an affected project should be processed by this command.
+   *
+   * @param node The affected project.
+   *
+   * @return {@code true} when the project should be processed; {@code false} otherwise.
+   */
+  protected boolean isAffectedProjectIncluded(@NonNull ProjectGraph.Node node) {
+    return true;
+  }
+
+  /**
+   * Determines the number of invocations that run at the same time.
+   *
+   * @param invocations The number of invocations to run.
+   *
+   * @return The number of invocations that run at the same time: the configured maximum (see
+   * {@link #setParallelInvocations(Integer)}), limited to the number of invocations.
+   */
+  private int getParallelism(int invocations) {
+    return Math.max(1, Math.min(invocations, this.parallelInvocations == null ? 1 : this.parallelInvocations));
+  }
+
+  /**
+   * Determines the number of CPUs this command claims on its node while it runs: the number used by each invocation (the maximum
+   * specified via {@link #setMaxCpuCount(Integer)}, or else the share of the automatically determined number), times the number
+   * of invocations that run at the same time (see {@link #setParallelInvocations(Integer)}). Without either CPU count, MSBuild
+   * uses all cores, so the node's entire CPU budget is claimed.
+   *
+   * @param cpuCount The automatically determined number of CPUs the command may use, if any.
+   *
+   * @return The number of CPUs this command claims.
+   */
+  @Override
+  protected int getRequiredCpus(@CheckForNull Integer cpuCount) {
+    final int parallelism = this.getParallelism(this.getInvocations().size());
+    final long perInvocation;
+    if (this.maxCpuCount != null)
+      perInvocation = this.maxCpuCount;
+    else if (cpuCount != null)
+      perInvocation = Math.max(1, cpuCount / parallelism);
+    else
+      return Integer.MAX_VALUE;
+    return (int) Math.min(Integer.MAX_VALUE, perInvocation * parallelism);
+  }
+
+  /**
+   * Determines whether this command uses the automatically determined parallelism; this is the case for all MSBuild-based commands.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  protected boolean isParallelismSupported() {
+    return true;
+  }
+
+  /**
+   * Determines whether this command uses build servers; this is the case for all MSBuild-based commands.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  protected boolean usesBuildServers() {
+    return true;
+  }
+
+  /**
+   * Determines whether this command supports the build cache (see {@link #setBuildCache(boolean)}).
+   * <p>
+   * This is only the case for commands whose entire result is the content of their output directory.
+   *
+   * @return {@code true} when this command supports the build cache; {@code false} otherwise.
+   */
+  protected boolean isBuildCacheSupported() {
+    return false;
+  }
+
+  /**
+   * Gets the target framework monikers to run this command for.
+   *
+   * @return The target framework monikers to run this command for, or {@code null} if the command does not take a target
+   * framework (or none was specified).
+   */
+  @CheckForNull
+  protected String[] getInvocationFrameworks() {
+    return null;
+  }
+
+  /**
+   * Gets the runtime identifiers to run this command for.
+   *
+   * @return The runtime identifiers to run this command for, or {@code null} if the command does not take a runtime identifier
+   * (or none was specified).
+   */
+  @CheckForNull
+  protected String[] getInvocationRuntimes() {
+    return null;
+  }
+
+  /**
+   * Determines the invocations needed for this command: one for each combination of configured project, target framework and
+   * runtime identifier.
+   *
+   * @return The invocations needed for this command; this always contains at least one element.
+   */
+  @NonNull
+  protected List<Invocation> getInvocations() {
+    final String[] projects = MSBuildCommand.orSingleNull(this.getProjects());
+    final String[] frameworks = MSBuildCommand.orSingleNull(this.getInvocationFrameworks());
+    final String[] runtimes = MSBuildCommand.orSingleNull(this.getInvocationRuntimes());
+    final List<Invocation> invocations = new ArrayList<>();
+    for (final String project : projects) {
+      for (final String framework : frameworks) {
+        for (final String runtime : runtimes)
+          invocations.add(new Invocation(project, framework, runtime, this.outputDirectory, false, null, null));
+      }
+    }
+    return invocations;
+  }
+
+  /**
+   * Determines the invocations to run for this command: those returned by {@link #getInvocations()}, limited to affected projects
+   * when requested (see {@link #setAffectedOnly(boolean)}).
+   *
+   * @param execution The execution context.
+   *
+   * @return The invocations to run for this command; empty when no project is affected by the changes.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @NonNull
+  protected List<Invocation> selectInvocations(@NonNull CommandExecution execution) throws IOException, InterruptedException {
+    final List<Invocation> invocations = this.getInvocations();
+    if (!this.affectedOnly || !this.isAffectedOnlySupported())
+      return invocations;
+    final Set<String> changedInCheckout = AffectedProjects.getChangedPaths(execution.getRun());
+    if (changedInCheckout == null) {
+      execution.getListener().getLogger().println(Messages.MSBuild_Command_AffectedUnknown());
+      return invocations;
+    }
+    final Set<String> changed = AffectedProjects.mapToWorkingDirectory(execution.getRun(), execution.getWorkspace(),
+                                                                       changedInCheckout);
+    if (changed == null) {
+      execution.getListener().getLogger().println(Messages.MSBuild_Command_AffectedUnmapped());
+      return invocations;
+    }
+    return this.selectAffectedInvocations(execution, invocations, changed,
+      (invocation, graph, node) -> this.isAffectedProjectIncluded(node) ? invocation : null);
+  }
+
+  /**
+   * Limits a set of invocations to the projects affected by a set of changes.
+   * <p>
+   * For each distinct project (or solution) in the invocations, its project graph is determined (see {@link ProjectGraph.Scan}) and
+   * every invocation is replaced by one invocation for each affected project (see {@link AffectedProjects}), as returned by the
+   * given handler.
+   *
+   * @param execution   The execution context.
+   * @param invocations The invocations to process.
+   * @param changed     The changed paths (relative to the working directory).
+   * @param handler     The handler determining the invocation to run for an affected project.
+   *
+   * @return The invocations to run; empty when no project is affected by the changes.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @NonNull
+  protected final List<Invocation> selectAffectedInvocations(@NonNull CommandExecution execution,
+                                                             @NonNull List<Invocation> invocations,
+                                                             @NonNull Set<String> changed,
+                                                             @NonNull AffectedProjectHandler handler)
+    throws IOException, InterruptedException {
+    final PrintStream logger = execution.getListener().getLogger();
+    final FilePath workspace = execution.getWorkspace();
+    final FilePath tempDir = WorkspaceList.tempDir(workspace);
+    final String cacheFile = (tempDir == null ? workspace : tempDir).child("dotnet-project-graph.cache").getRemote();
+    final Map<String, ProjectGraph> graphs = new HashMap<>();
+    final List<Invocation> selected = new ArrayList<>();
+    for (final Invocation invocation : invocations) {
+      final String entry = invocation.getProject();
+      ProjectGraph graph = graphs.get(entry);
+      final boolean log = graph == null;
+      if (graph == null) {
+        graph = workspace.act(new ProjectGraph.Scan(entry, false, cacheFile));
+        graphs.put(entry, graph);
+      }
+      int count = 0;
+      for (final ProjectGraph.Node node : AffectedProjects.select(graph, changed)) {
+        final Invocation affected = handler.apply(invocation.withProject(node.getPath()), graph, node);
+        if (affected != null) {
+          selected.add(affected);
+          ++count;
+        }
+      }
+      if (log) {
+        logger.println(Messages.MSBuild_Command_AffectedProjects(entry == null ? "." : entry, count, graph.getNodes().size(),
+          graph.getParsedCount(), graph.getReusedCount()));
+      }
+    }
+    if (selected.isEmpty())
+      logger.println(Messages.MSBuild_Command_NoAffectedProjects());
+    return selected;
+  }
+
+  /** Determines the invocation to run for a project affected by changes. */
+  @FunctionalInterface
+  protected interface AffectedProjectHandler {
+
+    /**
+     * Determines the invocation to run for a project affected by changes.
+     *
+     * @param invocation The invocation for the affected project.
+     * @param graph      The project graph containing the project.
+     * @param node       The affected project.
+     *
+     * @return The invocation to run for the project, or {@code null} if it should be skipped.
+     *
+     * @throws IOException          When an I/O error occurs.
+     * @throws InterruptedException When execution is interrupted.
+     */
+    @CheckForNull
+    Invocation apply(@NonNull Invocation invocation, @NonNull ProjectGraph graph, @NonNull ProjectGraph.Node node)
+      throws IOException, InterruptedException;
+
+  }
+
+  /**
+   * Returns the given values, or an array containing only {@code null} when there are none.
+   *
+   * @param values The values to process.
+   *
+   * @return The given values, or an array containing only {@code null} when there are none.
+   */
+  @NonNull
+  static String[] orSingleNull(@CheckForNull String[] values) {
+    if (values == null || values.length == 0)
+      return new String[] { null };
+    return values;
+  }
+
+  /** A single invocation of an MSBuild-based command, for a particular project, target framework and runtime identifier. */
+  protected static final class Invocation {
+
+    /**
+     * Creates a new invocation.
+     *
+     * @param project         The project to process, if any.
+     * @param framework       The target framework moniker to use, if any.
+     * @param runtime         The runtime identifier to use, if any.
+     * @param outputDirectory The output directory to use, if any.
+     * @param restored        Indicates whether the project has already been restored for this invocation.
+     * @param filter          The test filter expression to use, if any (only applicable to test commands).
+     * @param settings        The test settings file to use, if any (only applicable to test commands).
+     */
+    Invocation(@CheckForNull String project, @CheckForNull String framework, @CheckForNull String runtime,
+               @CheckForNull String outputDirectory, boolean restored, @CheckForNull String filter,
+               @CheckForNull String settings) {
+      this.project = project;
+      this.framework = framework;
+      this.runtime = runtime;
+      this.outputDirectory = outputDirectory;
+      this.restored = restored;
+      this.filter = filter;
+      this.settings = settings;
+    }
+
+    @CheckForNull
+    private final String filter;
+
+    @CheckForNull
+    private final String project;
+
+    @CheckForNull
+    private final String framework;
+
+    @CheckForNull
+    private final String runtime;
+
+    @CheckForNull
+    private final String settings;
+
+    @CheckForNull
+    private final String outputDirectory;
+
+    private final boolean restored;
+
+    /**
+     * Gets a display name for this invocation, made up of its project, target framework and runtime identifier.
+     *
+     * @return A display name for this invocation.
+     */
+    @NonNull
+    public String getDisplayName() {
+      final StringJoiner sj = new StringJoiner("|");
+      if (this.project != null)
+        sj.add(this.project);
+      if (this.framework != null)
+        sj.add(this.framework);
+      if (this.runtime != null)
+        sj.add(this.runtime);
+      return sj.toString();
+    }
+
+    /**
+     * Gets the test filter expression to use.
+     *
+     * @return The test filter expression to use, or {@code null} to use the one configured for the command.
+     */
+    @CheckForNull
+    public String getFilter() {
+      return this.filter;
+    }
+
+    /**
+     * Gets the target framework moniker to use.
+     *
+     * @return The target framework moniker to use, or {@code null} to use the project's default.
+     */
+    @CheckForNull
+    public String getFramework() {
+      return this.framework;
+    }
+
+    /**
+     * Gets the output directory to use.
+     *
+     * @return The output directory to use, or {@code null} to use the project's default.
+     */
+    @CheckForNull
+    public String getOutputDirectory() {
+      return this.outputDirectory;
+    }
+
+    /**
+     * Gets the project to process.
+     *
+     * @return The project to process, or {@code null} to process a project or solution from the current directory.
+     */
+    @CheckForNull
+    public String getProject() {
+      return this.project;
+    }
+
+    /**
+     * Gets the runtime identifier to use.
+     *
+     * @return The runtime identifier to use, or {@code null} to use the project's default.
+     */
+    @CheckForNull
+    public String getRuntime() {
+      return this.runtime;
+    }
+
+    /**
+     * Gets the test settings file to use.
+     *
+     * @return The test settings file to use, or {@code null} to use the one configured for the command.
+     */
+    @CheckForNull
+    public String getSettings() {
+      return this.settings;
+    }
+
+    /**
+     * Determines whether the project has already been restored for this invocation, so that the implicit restore can be skipped.
+     *
+     * @return {@code true} when the project has already been restored; {@code false} otherwise.
+     */
+    public boolean isRestored() {
+      return this.restored;
+    }
+
+    /**
+     * Creates a copy of this invocation that uses a different output directory.
+     *
+     * @param outputDirectory The output directory to use.
+     *
+     * @return A suitable invocation.
+     */
+    @NonNull
+    public Invocation withOutputDirectory(@CheckForNull String outputDirectory) {
+      return new Invocation(this.project, this.framework, this.runtime, outputDirectory, this.restored, this.filter, this.settings);
+    }
+
+    /**
+     * Creates a copy of this invocation that uses a specific test filter expression.
+     *
+     * @param filter The test filter expression to use.
+     *
+     * @return A suitable invocation.
+     */
+    @NonNull
+    public Invocation withFilter(@CheckForNull String filter) {
+      return new Invocation(this.project, this.framework, this.runtime, this.outputDirectory, this.restored, filter, this.settings);
+    }
+
+    /**
+     * Creates a copy of this invocation that processes a different project.
+     *
+     * @param project The project to process.
+     *
+     * @return A suitable invocation.
+     */
+    @NonNull
+    public Invocation withProject(@CheckForNull String project) {
+      return new Invocation(project, this.framework, this.runtime, this.outputDirectory, this.restored, this.filter, this.settings);
+    }
+
+    /**
+     * Creates a copy of this invocation that uses a specific test settings file.
+     *
+     * @param settings The test settings file to use.
+     *
+     * @return A suitable invocation.
+     */
+    @NonNull
+    public Invocation withSettings(@CheckForNull String settings) {
+      return new Invocation(this.project, this.framework, this.runtime, this.outputDirectory, this.restored, this.filter, settings);
+    }
+
+    /**
+     * Creates a copy of this invocation that is marked as already restored.
+     *
+     * @return A suitable invocation.
+     */
+    @NonNull
+    public Invocation withRestored() {
+      return new Invocation(this.project, this.framework, this.runtime, this.outputDirectory, true, this.filter, this.settings);
+    }
+
   }
 
   private static final Logger LOGGER = Logger.getLogger(MSBuildCommand.class.getName());
 
   //region Properties
 
+  /** Indicates whether the command should only run for projects affected by changes. */
+  protected boolean affectedOnly;
+
+  /**
+   * Determines whether the command only runs for projects affected by the changes since the last successful build.
+   *
+   * @return {@code true} when the command only runs for affected projects; {@code false} otherwise.
+   */
+  public boolean isAffectedOnly() {
+    return this.affectedOnly;
+  }
+
+  /**
+   * Determines whether the command only runs for projects affected by the changes since the last successful build.
+   * <p>
+   * When enabled, the project graph for each configured project or solution is determined on the agent, and the paths changed
+   * according to the SCM changelogs (taken to be relative to the working directory) select the projects to run for: those
+   * containing a changed file, plus all projects referencing them. When the changes are not known, the command runs for all
+   * configured projects. This only has an effect for commands that support it.
+   *
+   * @param affectedOnly {@code true} to only run for affected projects; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setAffectedOnly(boolean affectedOnly) {
+    this.affectedOnly = affectedOnly;
+  }
+
   /** The project configuration to use. */
   @CheckForNull
   protected String configuration;
@@ -100,6 +830,137 @@ public class MSBuildCommand extends Command {
     this.configuration = Util.fixEmptyAndTrim(configuration);
   }
 
+  /** The number of errors (or failed tests) after which to stop; {@code null} to always run to completion. */
+  protected Integer failFast;
+
+  /**
+   * Gets the number of errors (or failed tests) after which to stop.
+   *
+   * @return The number of errors (or failed tests) after which to stop, or {@code null} to always run to completion.
+   */
+  @CheckForNull
+  public Integer getFailFast() {
+    return this.failFast;
+  }
+
+  /**
+   * Sets the number of errors (or failed tests) after which to stop.
+   * <p>
+   * When set, output is checked for errors with a message code (as reported by compilers and MSBuild tasks) and failed tests as it
+   * streams in; once this many have been seen, the running {@code dotnet} processes (and their child processes) are killed. The
+   * build result is then determined as for errors: the build is marked as unstable or failed, or aborted, as configured.
+   *
+   * @param failFast The number of errors (or failed tests) after which to stop; values less than 1 disable fail-fast mode.
+   */
+  @DataBoundSetter
+  public void setFailFast(@CheckForNull Integer failFast) {
+    if (failFast != null && failFast < 1)
+      failFast = null;
+    this.failFast = failFast;
+  }
+
+  /** The GC heap hard limit, as a percentage of the node's memory per executor; {@code null} to use the SDK's setting. */
+  protected Integer gcHeapLimit;
+
+  /**
+   * Gets the GC heap hard limit for the .NET processes run by this command.
+   *
+   * @return The GC heap hard limit, as a percentage of the node's memory divided by its number of executors, or {@code null} to use
+   * the setting for the .NET SDK installation.
+   */
+  @CheckForNull
+  public Integer getGcHeapLimit() {
+    return this.gcHeapLimit;
+  }
+
+  /**
+   * Sets the GC heap hard limit for the .NET processes run by this command (MSBuild and the processes it starts, like test hosts).
+   *
+   * @param gcHeapLimit The GC heap hard limit, as a percentage of the node's memory divided by its number of executors; values less
+   *                    than 1 select the setting for the .NET SDK installation, values over 100 are taken as 100.
+   */
+  @DataBoundSetter
+  public void setGcHeapLimit(@CheckForNull Integer gcHeapLimit) {
+    this.gcHeapLimit = gcHeapLimit == null || gcHeapLimit < 1 ? null : Math.min(100, gcHeapLimit);
+  }
+
+  /** The GC mode; {@code null} to use the SDK's setting. */
+  @CheckForNull
+  protected String gcMode;
+
+  /**
+   * Gets the GC mode for the .NET processes run by this command.
+   *
+   * @return The GC mode ({@link RuntimeTuning#GC_SERVER} or {@link RuntimeTuning#GC_WORKSTATION}), or {@code null} to use the
+   * setting for the .NET SDK installation.
+   */
+  @CheckForNull
+  public String getGcMode() {
+    return this.gcMode;
+  }
+
+  /**
+   * Sets the GC mode for the .NET processes run by this command.
+   *
+   * @param gcMode The GC mode ({@link RuntimeTuning#GC_SERVER} or {@link RuntimeTuning#GC_WORKSTATION}), or {@code null} to use the
+   *               setting for the .NET SDK installation.
+   */
+  @DataBoundSetter
+  public void setGcMode(@CheckForNull String gcMode) {
+    this.gcMode = Util.fixEmptyAndTrim(gcMode);
+  }
+
+  /** The maximum number of CPUs MSBuild may use; {@code null} for the default (or the automatically determined value). */
+  protected Integer maxCpuCount;
+
+  /**
+   * Gets the maximum number of CPUs MSBuild may use.
+   *
+   * @return The maximum number of CPUs MSBuild may use, or {@code null} for the default (or the automatically determined value).
+   */
+  @CheckForNull
+  public Integer getMaxCpuCount() {
+    return this.maxCpuCount;
+  }
+
+  /**
+   * Sets the maximum number of CPUs MSBuild may use.
+   * <p>
+   * This overrides the value derived from the agent's cores and executors when automatic parallelism has been enabled in the
+   * global configuration.
+   *
+   * @param maxCpuCount The maximum number of CPUs MSBuild may use; values less than 1 select the default (or the automatically
+   *                    determined value).
+   */
+  @DataBoundSetter
+  public void setMaxCpuCount(@CheckForNull Integer maxCpuCount) {
+    if (maxCpuCount != null && maxCpuCount < 1)
+      maxCpuCount = null;
+    this.maxCpuCount = maxCpuCount;
+  }
+
+  /** Flag indicating whether concurrent GC should be disabled (regardless of the SDK's setting). */
+  protected boolean noConcurrentGc;
+
+  /**
+   * Determines whether concurrent (background) GC should be disabled for the .NET processes run by this command.
+   *
+   * @return {@code true} when concurrent GC should be disabled; {@code false} to use the setting for the .NET SDK installation.
+   */
+  public boolean isNoConcurrentGc() {
+    return this.noConcurrentGc;
+  }
+
+  /**
+   * Determines whether concurrent (background) GC should be disabled for the .NET processes run by this command.
+   *
+   * @param noConcurrentGc {@code true} to disable concurrent GC; {@code false} to use the setting for the .NET SDK installation.
+   */
+  @DataBoundSetter
+  public void setNoConcurrentGc(boolean noConcurrentGc) {
+    this.noConcurrentGc = noConcurrentGc;
+  }
+
   /** Flag indicating whether the MSBuild version/copyright lines should be suppressed. */
   protected boolean nologo;
 
@@ -218,7 +1079,90 @@ public class MSBuildCommand extends Command {
     this.outputDirectory = Util.fixEmptyAndTrim(outputDirectory);
   }
 
-  /** The project to process; for some commands this can also be a directory or a solution. */
+  /** Indicates whether the build cache should be used. */
+  protected boolean buildCache;
+
+  /**
+   * Determines whether the build cache should be used.
+   *
+   * @return {@code true} when the build cache is used; {@code false} otherwise.
+   */
+  public boolean isBuildCache() {
+    return this.buildCache;
+  }
+
+  /**
+   * Determines whether the build cache should be used.
+   * <p>
+   * When enabled (and an output directory has been set), a fingerprint is computed for each invocation, covering the project and
+   * source files, the SDK version and the full command line. If the same fingerprint was seen before, the stored contents of the
+   * output directory are restored instead of running {@code dotnet}. This only has an effect for commands that support it.
+   *
+   * @param buildCache {@code true} to use the build cache; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setBuildCache(boolean buildCache) {
+    this.buildCache = buildCache;
+  }
+
+  /** The directory (on the agent) where the build cache is stored. */
+  @CheckForNull
+  protected String buildCacheDirectory;
+
+  /**
+   * Gets the directory (on the agent) where the build cache is stored.
+   *
+   * @return The directory (on the agent) where the build cache is stored, or {@code null} to store it on the controller.
+   */
+  @CheckForNull
+  public String getBuildCacheDirectory() {
+    return this.buildCacheDirectory;
+  }
+
+  /**
+   * Sets the directory (on the agent) where the build cache is stored.
+   *
+   * @param buildCacheDirectory The directory (on the agent) where the build cache is stored, or {@code null} to store it on the
+   *                            controller.
+   */
+  @DataBoundSetter
+  public void setBuildCacheDirectory(@CheckForNull String buildCacheDirectory) {
+    this.buildCacheDirectory = Util.fixEmptyAndTrim(buildCacheDirectory);
+  }
+
+  /** The delimiters used to separate projects. Whitespace is not used, because project paths may well contain spaces. */
+  private static final String PROJECTS_DELIMITER = ";\n\r";
+
+  /** Limit on the number of invocations to run at the same time, when running for multiple projects/frameworks/runtimes. */
+  @CheckForNull
+  protected Integer parallelInvocations;
+
+  /**
+   * Gets the maximum number of invocations to run at the same time, when running this command for multiple projects, target
+   * frameworks and/or runtime identifiers.
+   *
+   * @return The maximum number of invocations to run at the same time; {@code null} means they are run one after the other.
+   */
+  @CheckForNull
+  public Integer getParallelInvocations() {
+    return this.parallelInvocations;
+  }
+
+  /**
+   * Sets the maximum number of invocations to run at the same time, when running this command for multiple projects, target
+   * frameworks and/or runtime identifiers.
+   *
+   * @param parallelInvocations The maximum number of invocations to run at the same time; {@code null} (or a value less than 2)
+   *                            means they are run one after the other.
+   */
+  @DataBoundSetter
+  public void setParallelInvocations(@CheckForNull Integer parallelInvocations) {
+    if (parallelInvocations != null && parallelInvocations < 2)
+      parallelInvocations = null;
+    this.parallelInvocations = parallelInvocations;
+  }
+
+  /** The projects to process; for some commands these can also be directories or solutions. */
   @CheckForNull
   protected String project;
 
@@ -226,22 +1170,66 @@ public class MSBuildCommand extends Command {
    * Gets the name of the project file to process. For some commands, this can also be a directory or a solution file. When
    * {@code null}, a project or solution from the current directory will usually be processed.
    *
-   * @return The project to process.
+   * @return The project to process, or {@code null} when there is not exactly one project set.
    */
   @CheckForNull
   public String getProject() {
-    return this.project;
+    return DotNetUtils.singleToken(this.project, MSBuildCommand.PROJECTS_DELIMITER);
   }
 
   /**
    * Sets the name of the project file to process. For some commands, this can also be a directory or a solution file. When
    * {@code null}, a project or solution from the current directory will usually be processed.
+   * <p>
+   * To set more than one, use {@link #setProjects(String...)} instead.
    *
    * @param project The project to process.
    */
   @DataBoundSetter
   public void setProject(@CheckForNull String project) {
-    this.project = Util.fixEmptyAndTrim(project);
+    this.project = DotNetUtils.detokenize(';', project);
+  }
+
+  /**
+   * Gets the names of the project files to process. For some commands, these can also be directories or solution files. The
+   * command is run separately for each of them.
+   *
+   * @return The projects to process.
+   */
+  @CheckForNull
+  public String[] getProjects() {
+    return DotNetUtils.tokenize(this.project, MSBuildCommand.PROJECTS_DELIMITER);
+  }
+
+  /**
+   * Sets the names of the project files to process. For some commands, these can also be directories or solution files. The
+   * command is run separately for each of them.
+   *
+   * @param projects The projects to process.
+   */
+  @DataBoundSetter
+  public void setProjects(@CheckForNull String... projects) {
+    this.project = DotNetUtils.detokenize(';', projects);
+  }
+
+  /**
+   * Gets the names of the project files to process, separated by semicolons or newlines.
+   *
+   * @return The projects to process.
+   */
+  @CheckForNull
+  public String getProjectsString() {
+    return this.project;
+  }
+
+  /**
+   * Sets the names of the project files to process, separated by semicolons or newlines.
+   *
+   * @param projects The projects to process.
+   */
+  @DataBoundSetter
+  public void setProjectsString(@CheckForNull String projects) {
+    this.project = Util.fixEmptyAndTrim(projects);
   }
 
   /** MSBuild properties to set. */
@@ -352,6 +1340,33 @@ public class MSBuildCommand extends Command {
     this.unstableIfWarnings = unstableIfWarnings;
   }
 
+  /** The tiered compilation setting; {@code null} to use the SDK's setting. */
+  @CheckForNull
+  protected String tieredCompilation;
+
+  /**
+   * Gets the tiered compilation setting for the .NET processes run by this command.
+   *
+   * @return The tiered compilation setting ({@link RuntimeTuning#TIERED_QUICK} or {@link RuntimeTuning#TIERED_DISABLED}), or
+   * {@code null} to use the setting for the .NET SDK installation.
+   */
+  @CheckForNull
+  public String getTieredCompilation() {
+    return this.tieredCompilation;
+  }
+
+  /**
+   * Sets the tiered compilation setting for the .NET processes run by this command.
+   *
+   * @param tieredCompilation The tiered compilation setting ({@link RuntimeTuning#TIERED_QUICK} or
+   *                          {@link RuntimeTuning#TIERED_DISABLED}), or {@code null} to use the setting for the .NET SDK
+   *                          installation.
+   */
+  @DataBoundSetter
+  public void setTieredCompilation(@CheckForNull String tieredCompilation) {
+    this.tieredCompilation = Util.fixEmptyAndTrim(tieredCompilation);
+  }
+
   /** The verbosity to use for the command. */
   @CheckForNull
   protected String verbosity;
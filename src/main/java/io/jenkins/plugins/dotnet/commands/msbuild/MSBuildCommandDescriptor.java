@@ -97,6 +97,18 @@ public abstract class MSBuildCommandDescriptor extends CommandDescriptor {
         continue;
       if ("propertiesString".equals(name))
         continue;
+      if ("projects".equals(name) && oldArgs.containsKey("project"))
+        continue;
+      if ("projectsString".equals(name))
+        continue;
+      if ("frameworks".equals(name) && oldArgs.containsKey("framework"))
+        continue;
+      if ("frameworksString".equals(name))
+        continue;
+      if ("runtimes".equals(name) && oldArgs.containsKey("runtime"))
+        continue;
+      if ("runtimesString".equals(name))
+        continue;
       newArgs.put(name, arg.getValue());
     }
     return new UninstantiatedDescribable(ud.getSymbol(), ud.getKlass(), newArgs);
@@ -5,6 +5,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.Util;
 import io.jenkins.plugins.dotnet.DotNetConfiguration;
+import io.jenkins.plugins.dotnet.DotNetUtils;
 import io.jenkins.plugins.dotnet.commands.DotNetArguments;
 import io.jenkins.plugins.dotnet.commands.Messages;
 import org.jenkinsci.Symbol;
@@ -25,30 +26,46 @@ public final class Pack extends MSBuildCommand {
    * <p>
    * This adds:
    * <ol>
-   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments)}.</li>
+   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments, Invocation)}.</li>
    *   <li>{@code --force}, if requested via {@link #setForce(boolean)}.</li>
    *   <li>{@code --include-source}, if requested via {@link #setIncludeSource(boolean)}.</li>
    *   <li>{@code --include-symbols}, if requested via {@link #setIncludeSymbols(boolean)}.</li>
    *   <li>{@code --no-build}, if requested via {@link #setNoBuild(boolean)}.</li>
    *   <li>{@code --no-dependencies}, if requested via {@link #setNoDependencies(boolean)}.</li>
    *   <li>{@code --no-restore}, if requested via {@link #setNoRestore(boolean)}.</li>
-   *   <li>{@code -r:xxx}, if a runtime identifier has been specified via {@link #setRuntime(String)}.</li>
+   *   <li>{@code -r:xxx}, for the invocation's runtime identifier (see {@link #setRuntimes(String...)}).</li>
    *   <li>{@code --version-suffix xxx}, if a version suffix has been specified via {@link #setRuntime(String)}.</li>
    * </ol>
    */
   @Override
-  protected void addCommandLineArguments(@NonNull DotNetArguments args) {
-    super.addCommandLineArguments(args);
+  protected void addCommandLineArguments(@NonNull DotNetArguments args, @NonNull Invocation invocation) {
+    super.addCommandLineArguments(args, invocation);
     args.addFlag("force", this.force);
     args.addFlag("include-source", this.includeSource);
     args.addFlag("include-symbols", this.includeSymbols);
     args.addFlag("no-build", this.noBuild);
     args.addFlag("no-dependencies", this.noDependencies);
     args.addFlag("no-restore", this.noRestore);
-    args.addOption('r', this.runtime);
+    args.addOption('r', invocation.getRuntime());
     args.addOption("version-suffix", this.versionSuffix);
   }
 
+  @CheckForNull
+  @Override
+  protected String[] getInvocationRuntimes() {
+    return this.getRuntimes();
+  }
+
+  @Override
+  protected boolean isAffectedOnlySupported() {
+    return true;
+  }
+
+  @Override
+  protected boolean isBuildCacheSupported() {
+    return true;
+  }
+
   //region Properties
 
   private boolean force;
@@ -181,23 +198,65 @@ public final class Pack extends MSBuildCommand {
   private String runtime;
 
   /**
-   * Gets the runtime identifier to use.
+   * Gets the sole runtime identifier to use.
    *
-   * @return The runtime identifier to use.
+   * @return The sole runtime identifier to use, or {@code null} when there is not exactly one runtime identifier set.
    */
   @CheckForNull
   public String getRuntime() {
-    return this.runtime;
+    return DotNetUtils.singleToken(this.runtime);
   }
 
   /**
-   * Sets the runtime identifier to use.
+   * Sets the sole runtime identifier to use.
+   * <p>
+   * To set more than one, use {@link #setRuntimes(String...)} instead.
    *
-   * @param runtime The runtime identifier to use.
+   * @param runtime The sole runtime identifier to use.
    */
   @DataBoundSetter
   public void setRuntime(@CheckForNull String runtime) {
-    this.runtime = Util.fixEmptyAndTrim(runtime);
+    this.runtime = DotNetUtils.detokenize(' ', runtime);
+  }
+
+  /**
+   * Gets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String[] getRuntimes() {
+    return DotNetUtils.tokenize(this.runtime);
+  }
+
+  /**
+   * Sets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimes(@CheckForNull String... runtimes) {
+    this.runtime = DotNetUtils.detokenize(' ', runtimes);
+  }
+
+  /**
+   * Gets the runtime identifiers to use.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String getRuntimesString() {
+    return this.runtime;
+  }
+
+  /**
+   * Sets the runtime identifiers to use.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimesString(@CheckForNull String runtimes) {
+    this.runtime = Util.fixEmptyAndTrim(runtimes);
   }
 
   private String versionSuffix;
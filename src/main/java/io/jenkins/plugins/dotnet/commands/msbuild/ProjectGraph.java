@@ -0,0 +1,527 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.dotnet.commands.FileHashes;
+import jenkins.MasterToSlaveFileCallable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The project graph for a solution or project: the projects involved and their project-to-project references.
+ * <p>
+ * The graph is determined on the agent (see {@link Scan}), by streaming through the solution file ({@code .sln} or {@code .slnx})
+ * and the {@code ProjectReference} items of the project files; no MSBuild evaluation takes place, so references using properties
+ * or wildcards are not followed.
+ */
+public final class ProjectGraph implements Serializable {
+
+  private static final long serialVersionUID = -2437709861324596103L;
+
+  /**
+   * Creates a new project graph.
+   *
+   * @param nodes  The projects in the graph, with every project following all projects it references.
+   * @param parsed The number of project files that were parsed to construct the graph.
+   * @param reused The number of project files whose (unchanged) information was taken from the scan cache.
+   */
+  ProjectGraph(@NonNull List<Node> nodes, int parsed, int reused) {
+    this.nodes = nodes;
+    this.parsed = parsed;
+    this.reused = reused;
+  }
+
+  @NonNull
+  private final List<Node> nodes;
+
+  private final int parsed;
+
+  private final int reused;
+
+  /**
+   * Gets the projects in this graph.
+   *
+   * @return The projects in this graph, in build order (every project follows all projects it references).
+   */
+  @NonNull
+  public List<Node> getNodes() {
+    return Collections.unmodifiableList(this.nodes);
+  }
+
+  /**
+   * Gets the number of project files that were parsed to construct this graph.
+   *
+   * @return The number of project files that were parsed to construct this graph.
+   */
+  public int getParsedCount() {
+    return this.parsed;
+  }
+
+  /**
+   * Gets the number of project files whose information was taken from the scan cache, because their contents were unchanged.
+   *
+   * @return The number of project files whose information was taken from the scan cache.
+   */
+  public int getReusedCount() {
+    return this.reused;
+  }
+
+  /** A project in a project graph. */
+  public static final class Node implements Serializable {
+
+    private static final long serialVersionUID = 6028394851772384110L;
+
+    /**
+     * Creates a new project graph node.
+     *
+     * @param path        The path to the project file (relative to the directory that was scanned, using forward slashes).
+     * @param references  The paths to the projects referenced by this one.
+     * @param inputHash   The hash of the project's own input files (empty when not computed).
+     * @param testProject Indicates whether this is a test project.
+     */
+    Node(@NonNull String path, @NonNull List<String> references, @NonNull String inputHash, boolean testProject) {
+      this.path = path;
+      this.references = references;
+      this.inputHash = inputHash;
+      this.testProject = testProject;
+    }
+
+    @NonNull
+    private final String inputHash;
+
+    @NonNull
+    private final String path;
+
+    @NonNull
+    private final List<String> references;
+
+    private final boolean testProject;
+
+    /**
+     * Gets the directory containing the project file.
+     *
+     * @return The directory containing the project file (relative to the directory that was scanned, using forward slashes); empty
+     * when it is that directory itself.
+     */
+    @NonNull
+    public String getDirectory() {
+      final int slash = this.path.lastIndexOf('/');
+      return slash < 0 ? "" : this.path.substring(0, slash);
+    }
+
+    /**
+     * Gets the hash of the project's own input files (the project file, and all source and build files in its directory tree,
+     * excluding {@code bin} and {@code obj}), including the shared build files (like {@code Directory.Build.props} or
+     * {@code global.json}, see {@link AffectedProjects#isSharedBuildFile(String)}) in the directories above it, up to the
+     * directory that was scanned.
+     *
+     * @return The hash of the project's own input files, or an empty string if input hashes were not requested.
+     */
+    @NonNull
+    public String getInputHash() {
+      return this.inputHash;
+    }
+
+    /**
+     * Gets the path to the project file.
+     *
+     * @return The path to the project file (relative to the directory that was scanned, using forward slashes).
+     */
+    @NonNull
+    public String getPath() {
+      return this.path;
+    }
+
+    /**
+     * Gets the paths to the projects referenced by this one.
+     *
+     * @return The paths to the projects referenced by this one (relative to the directory that was scanned, using forward
+     * slashes).
+     */
+    @NonNull
+    public List<String> getReferences() {
+      return Collections.unmodifiableList(this.references);
+    }
+
+    /**
+     * Determines whether this is a test project (i.e. it sets {@code IsTestProject} to {@code true}, or references the
+     * {@code Microsoft.NET.Test.Sdk} package).
+     *
+     * @return {@code true} when this is a test project; {@code false} otherwise.
+     */
+    public boolean isTestProject() {
+      return this.testProject;
+    }
+
+  }
+
+  /** A file callable determining the project graph for a solution or project. */
+  public static final class Scan extends MasterToSlaveFileCallable<ProjectGraph> {
+
+    private static final long serialVersionUID = 4408713360247785329L;
+
+    /**
+     * Creates a new project graph scan.
+     *
+     * @param entry The solution, project or directory to scan (relative to the directory the callable is run against); when
+     *              {@code null}, that directory itself is scanned. For a directory, it must contain exactly one solution or (if
+     *              there is no solution) exactly one project file.
+     */
+    public Scan(@CheckForNull String entry) {
+      this(entry, true, null);
+    }
+
+    /**
+     * Creates a new project graph scan.
+     *
+     * @param entry      The solution, project or directory to scan (relative to the directory the callable is run against); when
+     *                   {@code null}, that directory itself is scanned. For a directory, it must contain exactly one solution or
+     *                   (if there is no solution) exactly one project file.
+     * @param hashInputs Indicates whether the input hash should be computed for each project.
+     * @param cacheFile  The (absolute) path of a file on the agent in which to keep information about scanned project files; when
+     *                   given, project files whose content is unchanged since the previous scan are not parsed again.
+     */
+    public Scan(@CheckForNull String entry, boolean hashInputs, @CheckForNull String cacheFile) {
+      this.entry = Util.fixEmptyAndTrim(entry);
+      this.hashInputs = hashInputs;
+      this.cacheFile = Util.fixEmptyAndTrim(cacheFile);
+    }
+
+    @CheckForNull
+    private final String cacheFile;
+
+    @CheckForNull
+    private final String entry;
+
+    private final boolean hashInputs;
+
+    @Override
+    public ProjectGraph invoke(@NonNull File dir, @CheckForNull VirtualChannel channel) throws IOException {
+      final Path root = dir.toPath().toAbsolutePath().normalize();
+      Path entry = this.entry == null ? root : root.resolve(ProjectGraph.localPath(this.entry)).normalize();
+      if (Files.isDirectory(entry))
+        entry = ProjectGraph.findEntry(entry);
+      final List<Path> projects;
+      if (ProjectGraph.isSolution(entry))
+        projects = ProjectGraph.readSolution(entry);
+      else
+        projects = Collections.singletonList(entry);
+      final Path cacheFile = this.cacheFile == null ? null : Paths.get(this.cacheFile);
+      final ScanCache cache = ScanCache.load(cacheFile);
+      final Map<Path, ProjectInfo> info = new LinkedHashMap<>();
+      for (final Path project : projects)
+        ProjectGraph.collect(project, info, cache);
+      final List<Node> nodes = new ArrayList<>();
+      final Set<Path> done = new HashSet<>();
+      for (final Path project : info.keySet())
+        ProjectGraph.order(root, project, info, done, new HashSet<>(), nodes, this.hashInputs);
+      if (cacheFile != null)
+        cache.save(cacheFile, info);
+      return new ProjectGraph(nodes, cache.parsed, cache.reused);
+    }
+
+  }
+
+  //region Graph Construction
+
+  /** Matches project entries in a {@code .sln} file, capturing the project's path. */
+  private static final Pattern SLN_PROJECT = Pattern.compile("^Project\\(\"\\{[^}]+}\"\\)\\s*=\\s*\"[^\"]*\"\\s*,\\s*\"([^\"]+)\"");
+
+  private static void collect(@NonNull Path project, @NonNull Map<Path, ProjectInfo> info, @NonNull ScanCache cache)
+    throws IOException {
+    if (info.containsKey(project) || !Files.isRegularFile(project))
+      return;
+    final ProjectInfo projectInfo = cache.get(project);
+    info.put(project, projectInfo);
+    for (final Path ref : projectInfo.references)
+      ProjectGraph.collect(ref, info, cache);
+  }
+
+  @NonNull
+  private static Path findEntry(@NonNull Path dir) throws IOException {
+    final List<Path> solutions = new ArrayList<>();
+    final List<Path> projects = new ArrayList<>();
+    try (final Stream<Path> files = Files.list(dir)) {
+      files.filter(Files::isRegularFile).forEach(file -> {
+        if (ProjectGraph.isSolution(file))
+          solutions.add(file);
+        else if (ProjectGraph.isProject(file))
+          projects.add(file);
+      });
+    }
+    if (solutions.size() == 1)
+      return solutions.get(0);
+    if (solutions.isEmpty() && projects.size() == 1)
+      return projects.get(0);
+    throw new IOException("Expected a single solution or project file in " + dir + ".");
+  }
+
+  private static boolean isProject(@NonNull Path file) {
+    return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith("proj");
+  }
+
+  private static boolean isSolution(@NonNull Path file) {
+    final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    return name.endsWith(".sln") || name.endsWith(".slnx");
+  }
+
+  @NonNull
+  private static String localPath(@NonNull String path) {
+    return path.replace('\\', File.separatorChar).replace('/', File.separatorChar);
+  }
+
+  private static void order(@NonNull Path root, @NonNull Path project, @NonNull Map<Path, ProjectInfo> info,
+                            @NonNull Set<Path> done, @NonNull Set<Path> active, @NonNull List<Node> nodes, boolean hashInputs)
+    throws IOException {
+    if (done.contains(project) || !active.add(project))
+      return; // already handled, or a reference cycle
+    final ProjectInfo projectInfo = info.get(project);
+    final List<String> refPaths = new ArrayList<>();
+    for (final Path ref : projectInfo.references) {
+      if (!info.containsKey(ref))
+        continue;
+      ProjectGraph.order(root, ref, info, done, active, nodes, hashInputs);
+      refPaths.add(ProjectGraph.relativePath(root, ref));
+    }
+    active.remove(project);
+    done.add(project);
+    String inputHash = "";
+    if (hashInputs) {
+      final File dir = project.getParent().toFile();
+      final Map<String, String> hashes = new FileHashes(BuildCache.INPUTS, BuildCache.NON_INPUTS).invoke(dir, null);
+      hashes.putAll(new FileHashes(BuildCache.RESTORE_INPUTS, BuildCache.NON_RESTORE_INPUTS).invoke(dir, null));
+      hashes.putAll(ProjectGraph.hashSharedBuildFiles(root, project.getParent()));
+      inputHash = FileHashes.combine(hashes, project.getFileName().toString());
+    }
+    nodes.add(new Node(ProjectGraph.relativePath(root, project), refPaths, inputHash, projectInfo.testProject));
+  }
+
+  /**
+   * Hashes the shared build files in the directories above a project directory, up to the scanned directory; MSBuild picks these
+   * up implicitly (or, for {@code global.json} and {@code NuGet.config}, the SDK and NuGet do), so they are inputs for the project.
+   */
+  @NonNull
+  private static Map<String, String> hashSharedBuildFiles(@NonNull Path root, @NonNull Path dir) throws IOException {
+    final Map<String, String> hashes = new TreeMap<>();
+    for (Path ancestor = dir.getParent(); ancestor != null && ancestor.startsWith(root); ancestor = ancestor.getParent()) {
+      try (final Stream<Path> files = Files.list(ancestor)) {
+        for (final Path file : (Iterable<Path>) files::iterator) {
+          if (Files.isRegularFile(file) && AffectedProjects.isSharedBuildFile(file.getFileName().toString()))
+            hashes.put(dir.relativize(file).toString().replace('\\', '/'), FileHashes.hash(file));
+        }
+      }
+    }
+    return hashes;
+  }
+
+  @NonNull
+  private static ProjectInfo readProject(@NonNull Path project, @NonNull String hash) throws IOException {
+    final List<Path> refs = new ArrayList<>();
+    final boolean[] testProject = { false };
+    ProjectGraph.readXml(project, reader -> {
+      final String name = reader.getLocalName();
+      if ("PackageReference".equals(name)) {
+        if ("Microsoft.NET.Test.Sdk".equalsIgnoreCase(reader.getAttributeValue(null, "Include")))
+          testProject[0] = true;
+        return;
+      }
+      if ("IsTestProject".equals(name)) {
+        if ("true".equalsIgnoreCase(reader.getElementText().trim()))
+          testProject[0] = true;
+        return;
+      }
+      if (!"ProjectReference".equals(name))
+        return;
+      final String include = reader.getAttributeValue(null, "Include");
+      if (include == null || include.contains("$(") || include.contains("*"))
+        return;
+      for (final String item : include.split(";")) {
+        final String ref = Util.fixEmptyAndTrim(item);
+        if (ref != null)
+          refs.add(project.getParent().resolve(ProjectGraph.localPath(ref)).normalize());
+      }
+    });
+    return new ProjectInfo(hash, refs, testProject[0]);
+  }
+
+  @NonNull
+  private static List<Path> readSolution(@NonNull Path solution) throws IOException {
+    final List<Path> projects = new ArrayList<>();
+    final Path dir = solution.getParent();
+    if (solution.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".slnx")) {
+      ProjectGraph.readXml(solution, reader -> {
+        if (!"Project".equals(reader.getLocalName()))
+          return;
+        final String path = reader.getAttributeValue(null, "Path");
+        if (path != null)
+          projects.add(dir.resolve(ProjectGraph.localPath(path)).normalize());
+      });
+      return projects;
+    }
+    try (final BufferedReader reader = Files.newBufferedReader(solution, StandardCharsets.UTF_8)) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        final Matcher m = ProjectGraph.SLN_PROJECT.matcher(line);
+        if (m.find() && m.group(1).toLowerCase(Locale.ROOT).endsWith("proj"))
+          projects.add(dir.resolve(ProjectGraph.localPath(m.group(1))).normalize());
+      }
+    }
+    return projects;
+  }
+
+  private interface ElementHandler {
+
+    void startElement(@NonNull XMLStreamReader reader) throws XMLStreamException;
+
+  }
+
+  /** The information obtained from a project file. */
+  private static final class ProjectInfo {
+
+    ProjectInfo(@NonNull String hash, @NonNull List<Path> references, boolean testProject) {
+      this.hash = hash;
+      this.references = references;
+      this.testProject = testProject;
+    }
+
+    @NonNull
+    final String hash;
+
+    @NonNull
+    final List<Path> references;
+
+    final boolean testProject;
+
+  }
+
+  /**
+   * A cache of project file information, keyed on content hash, so that only changed project files need to be parsed.
+   * <p>
+   * It is stored as a UTF-8 text file, with one line per project: content hash, test project flag, project path and referenced
+   * project paths, all separated by tabs.
+   */
+  private static final class ScanCache {
+
+    @NonNull
+    private final Map<Path, ProjectInfo> entries = new HashMap<>();
+
+    int parsed;
+
+    int reused;
+
+    @NonNull
+    static ScanCache load(@CheckForNull Path file) {
+      final ScanCache cache = new ScanCache();
+      if (file == null || !Files.isRegularFile(file))
+        return cache;
+      try {
+        for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+          final String[] fields = line.split("\t");
+          if (fields.length < 3)
+            continue;
+          final List<Path> refs = new ArrayList<>();
+          for (int i = 3; i < fields.length; ++i)
+            refs.add(Paths.get(fields[i]));
+          cache.entries.put(Paths.get(fields[2]), new ProjectInfo(fields[0], refs, "1".equals(fields[1])));
+        }
+      }
+      catch (IOException | RuntimeException e) {
+        // An unreadable cache is treated as empty; it will be rewritten after the scan.
+        cache.entries.clear();
+      }
+      return cache;
+    }
+
+    @NonNull
+    ProjectInfo get(@NonNull Path project) throws IOException {
+      final String hash = FileHashes.hash(project);
+      final ProjectInfo cached = this.entries.get(project);
+      if (cached != null && cached.hash.equals(hash)) {
+        ++this.reused;
+        return cached;
+      }
+      ++this.parsed;
+      final ProjectInfo info = ProjectGraph.readProject(project, hash);
+      this.entries.put(project, info);
+      return info;
+    }
+
+    void save(@NonNull Path file, @NonNull Map<Path, ProjectInfo> scanned) throws IOException {
+      final StringBuilder sb = new StringBuilder();
+      final Map<Path, ProjectInfo> all = new TreeMap<>(this.entries);
+      all.putAll(scanned);
+      for (final Map.Entry<Path, ProjectInfo> entry : all.entrySet()) {
+        if (!Files.isRegularFile(entry.getKey()))
+          continue; // project file was removed
+        final ProjectInfo info = entry.getValue();
+        sb.append(info.hash).append('\t').append(info.testProject ? '1' : '0').append('\t').append(entry.getKey());
+        for (final Path ref : info.references)
+          sb.append('\t').append(ref);
+        sb.append('\n');
+      }
+      final Path parent = file.getParent();
+      if (parent != null)
+        Files.createDirectories(parent);
+      final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+      Files.write(temp, sb.toString().getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+  }
+
+  private static void readXml(@NonNull Path file, @NonNull ElementHandler handler) throws IOException {
+    final XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    try (final InputStream in = Files.newInputStream(file)) {
+      final XMLStreamReader reader = factory.createXMLStreamReader(in);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT)
+            handler.startElement(reader);
+        }
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (XMLStreamException e) {
+      throw new IOException("Failed to read " + file + ".", e);
+    }
+  }
+
+  @NonNull
+  private static String relativePath(@NonNull Path root, @NonNull Path file) {
+    return root.relativize(file).toString().replace('\\', '/');
+  }
+
+  //endregion
+
+}
@@ -0,0 +1,111 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A file callable that removes old entries from a cache directory (see {@link BuildCache} and {@link ResultsCache}).
+ * <p>
+ * Every file or directory directly inside the cache directory is an entry; its last modification time is taken to be the time it
+ * was last used (so using an entry should update that). Entries not used within the maximum age are removed, as are the least
+ * recently used entries beyond the maximum total size. Leftover temporary entries (from interrupted stores) are removed once they
+ * are an hour old.
+ */
+final class PruneCache extends MasterToSlaveFileCallable<Integer> {
+
+  private static final long serialVersionUID = -4203718626143805907L;
+
+  /** The maximum time (in milliseconds) a cache entry is kept without being used. */
+  static final long MAX_AGE = TimeUnit.DAYS.toMillis(14);
+
+  /** The maximum total size (in bytes) of the entries kept in a cache directory. */
+  static final long MAX_SIZE = 10L * 1024 * 1024 * 1024;
+
+  /** The text present in the names of temporary cache entries. */
+  static final String TEMP_MARKER = ".tmp-";
+
+  /** The age (in milliseconds) after which temporary entries are considered to be left over. */
+  private static final long TEMP_AGE = TimeUnit.HOURS.toMillis(1);
+
+  /**
+   * Creates a new cache pruning callable.
+   *
+   * @param maxAge  The maximum time (in milliseconds) an entry is kept without being used.
+   * @param maxSize The maximum total size (in bytes) of the entries to keep.
+   */
+  PruneCache(long maxAge, long maxSize) {
+    this.maxAge = maxAge;
+    this.maxSize = maxSize;
+  }
+
+  private final long maxAge;
+
+  private final long maxSize;
+
+  /**
+   * Removes old entries from a cache directory.
+   *
+   * @param dir     The cache directory.
+   * @param channel The channel to the controller (unused).
+   *
+   * @return The number of entries removed.
+   *
+   * @throws IOException When an entry could not be examined or removed.
+   */
+  @Override
+  public Integer invoke(@NonNull File dir, @CheckForNull VirtualChannel channel) throws IOException {
+    final File[] children = dir.listFiles();
+    if (children == null)
+      return 0;
+    final long now = System.currentTimeMillis();
+    final List<File> entries = new ArrayList<>();
+    int removed = 0;
+    for (final File child : children) {
+      if (!child.getName().contains(PruneCache.TEMP_MARKER))
+        entries.add(child);
+      else if (now - child.lastModified() > PruneCache.TEMP_AGE) {
+        Util.deleteRecursive(child);
+        ++removed;
+      }
+    }
+    entries.sort(Comparator.comparingLong(File::lastModified).reversed());
+    long total = 0;
+    for (final File entry : entries) {
+      if (now - entry.lastModified() <= this.maxAge) {
+        total += PruneCache.size(entry.toPath());
+        if (total <= this.maxSize)
+          continue;
+      }
+      Util.deleteRecursive(entry);
+      ++removed;
+    }
+    return removed;
+  }
+
+  private static long size(@NonNull Path entry) throws IOException {
+    if (!Files.isDirectory(entry))
+      return Files.size(entry);
+    try (final Stream<Path> paths = Files.walk(entry)) {
+      long size = 0;
+      for (final Path path : (Iterable<Path>) paths::iterator) {
+        if (Files.isRegularFile(path))
+          size += Files.size(path);
+      }
+      return size;
+    }
+  }
+
+}
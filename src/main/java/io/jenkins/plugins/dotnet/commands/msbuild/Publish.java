@@ -2,14 +2,21 @@ package io.jenkins.plugins.dotnet.commands.msbuild;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Util;
 import hudson.model.Item;
+import hudson.model.Run;
+import hudson.util.ArgumentListBuilder;
 import hudson.util.ListBoxModel;
 import io.jenkins.plugins.dotnet.DotNetConfiguration;
 import io.jenkins.plugins.dotnet.DotNetUtils;
+import io.jenkins.plugins.dotnet.commands.CommandExecution;
 import io.jenkins.plugins.dotnet.commands.DotNetArguments;
+import io.jenkins.plugins.dotnet.commands.FileHashes;
 import io.jenkins.plugins.dotnet.commands.Messages;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.structs.describable.UninstantiatedDescribable;
 import org.kohsuke.stapler.AncestorInPath;
@@ -17,8 +24,15 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.verb.POST;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /** A build step to run "{@code dotnet publish}", publishing a project. */
 public final class Publish extends MSBuildCommand {
@@ -34,37 +48,216 @@ public final class Publish extends MSBuildCommand {
    * <p>
    * This adds:
    * <ol>
-   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments)}.</li>
+   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments, Invocation)}.</li>
    *   <li>{@code --force}, if requested via {@link #setForce(boolean)}.</li>
-   *   <li>{@code -f:xxx}, if a target framework moniker has been specified via {@link #setFramework(String)}.</li>
+   *   <li>{@code -f:xxx}, for the invocation's target framework moniker (see {@link #setFrameworks(String...)}).</li>
    *   <li>
    *     {@code --manifest xxx} for each manifest specified via {@link #setManifest(String)}, {@link #setManifests(String...)} or
    *     {@link #setManifestsString(String)}.
    *   </li>
    *   <li>{@code --no-build}, if requested via {@link #setNoBuild(boolean)}.</li>
    *   <li>{@code --no-dependencies}, if requested via {@link #setNoDependencies(boolean)}.</li>
-   *   <li>{@code --no-restore}, if requested via {@link #setNoRestore(boolean)}.</li>
-   *   <li>{@code -r:xxx}, if a runtime identifier has been specified via {@link #setRuntime(String)}.</li>
+   *   <li>
+   *     {@code --no-restore}, if requested via {@link #setNoRestore(boolean)}, or when a shared restore has already been done for the
+   *     invocation.
+   *   </li>
+   *   <li>{@code -r:xxx}, for the invocation's runtime identifier (see {@link #setRuntimes(String...)}).</li>
    *   <li>{@code --self-contained true/false}, if a value has been specified via {@link #setSelfContained(Boolean)}.</li>
    *   <li>{@code --version-suffix xxx}, if a version suffix has been specified via {@link #setRuntime(String)}.</li>
    * </ol>
    */
   @Override
-  protected void addCommandLineArguments(@NonNull DotNetArguments args) {
-    super.addCommandLineArguments(args);
+  protected void addCommandLineArguments(@NonNull DotNetArguments args, @NonNull Invocation invocation) {
+    super.addCommandLineArguments(args, invocation);
     args.addFlag("force", this.force);
-    args.addOption('f', this.framework);
+    args.addOption('f', invocation.getFramework());
     args.addOptions("manifest", this.manifests);
     args.addFlag("no-build", this.noBuild);
     args.addFlag("no-dependencies", this.noDependencies);
-    args.addFlag("no-restore", this.noRestore);
-    args.addOption('r', this.runtime);
+    args.addFlag("no-restore", this.noRestore || invocation.isRestored());
+    args.addOption('r', invocation.getRuntime());
     args.addOption("self-contained", this.selfContained);
     args.addOption("version-suffix", this.versionSuffix);
   }
 
+  /**
+   * Runs this "{@code dotnet publish}" command.
+   * <p>
+   * When publishing for more than one runtime identifier, each project is first restored once for all of them (unless that was
+   * disabled via {@link #setNoRestore(boolean)} or {@link #setNoBuild(boolean)}), after which the per-runtime publishes skip their
+   * implicit restore. In that case, when an output directory has been specified, each runtime identifier publishes into its own
+   * subdirectory of it.
+   * <p>
+   * When requested via {@link #setArchiveOutput(boolean)}, the published output is then archived.
+   *
+   * @param execution The prepared execution context (SDK, environment and working directory).
+   * @param scanner   The scanner to send command output to.
+   *
+   * @return The return code for the command.
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @Override
+  protected int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner)
+    throws AbortException, IOException, InterruptedException {
+    final String[] runtimes = this.getRuntimes();
+    final boolean multipleRuntimes = runtimes != null && runtimes.length > 1;
+    final boolean sharedRestore = multipleRuntimes && !this.noRestore && !this.noBuild;
+    if (sharedRestore) {
+      for (final String project : MSBuildCommand.orSingleNull(this.getProjects())) {
+        final int rc = this.restore(execution, scanner, project);
+        if (rc != 0)
+          return rc;
+      }
+    }
+    final List<Invocation> invocations = new ArrayList<>();
+    for (Invocation invocation : this.getInvocations()) {
+      if (multipleRuntimes && this.outputDirectory != null && invocation.getRuntime() != null)
+        invocation = invocation.withOutputDirectory(this.outputDirectory + "/" + invocation.getRuntime());
+      if (sharedRestore)
+        invocation = invocation.withRestored();
+      invocations.add(invocation);
+    }
+    final int rc = this.execute(execution, scanner, invocations);
+    if (rc == 0 && this.archiveOutput)
+      this.archiveOutput(execution, invocations);
+    return rc;
+  }
+
+  /**
+   * Archives the published output, skipping files whose content is already stored.
+   * <p>
+   * The files are hashed on the node where they were published; only contents not yet in the job's {@link PublishedOutputStore}
+   * are then transferred (as a single archive, compressed on the node). A {@link PublishedOutputAction} records, for every file,
+   * the hash of its content.
+   *
+   * @param execution   The prepared execution context (SDK, environment and working directory).
+   * @param invocations The invocations that were run.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  private void archiveOutput(@NonNull CommandExecution execution, @NonNull List<Invocation> invocations)
+    throws IOException, InterruptedException {
+    final Run<?, ?> run = execution.getRun();
+    final PrintStream logger = execution.getListener().getLogger();
+    final Set<String> outputDirectories = new LinkedHashSet<>();
+    for (final Invocation invocation : invocations) {
+      if (invocation.getOutputDirectory() != null)
+        outputDirectories.add(invocation.getOutputDirectory());
+    }
+    if (outputDirectories.isEmpty()) {
+      logger.println(Messages.MSBuild_Publish_NoOutputDirectory());
+      return;
+    }
+    final PublishedOutputStore store = new PublishedOutputStore(run.getParent());
+    final PublishedOutputAction action = PublishedOutputAction.forRun(run);
+    for (final String outputDirectory : outputDirectories) {
+      final FilePath dir = execution.getWorkspace().child(outputDirectory);
+      final String prefix = Publish.getArtifactPrefix(outputDirectory, dir);
+      final Map<String, String> hashes = dir.act(new FileHashes());
+      final Set<String> missing = store.reference(run.getNumber(), hashes.values());
+      final Map<String, String> toStore = new TreeMap<>();
+      for (final Map.Entry<String, String> file : hashes.entrySet()) {
+        action.add(prefix + file.getKey(), file.getValue());
+        if (missing.remove(file.getValue())) // files with the same content are only stored once
+          toStore.put(file.getKey(), file.getValue());
+      }
+      store.store(dir, toStore);
+      action.addStored(toStore.size());
+      logger.println(Messages.MSBuild_Publish_OutputArchived(outputDirectory, toStore.size(), hashes.size() - toStore.size()));
+    }
+  }
+
+  @NonNull
+  private static String getArtifactPrefix(@NonNull String outputDirectory, @NonNull FilePath dir) {
+    String prefix = outputDirectory.replace('\\', '/');
+    if (prefix.startsWith("/") || prefix.matches("^[A-Za-z]:.*"))
+      prefix = dir.getName();
+    while (prefix.startsWith("./"))
+      prefix = prefix.substring(2);
+    while (prefix.endsWith("/"))
+      prefix = prefix.substring(0, prefix.length() - 1);
+    return prefix.isEmpty() ? "" : prefix + "/";
+  }
+
+  /**
+   * Runs "{@code dotnet restore}" for a project, for all runtime identifiers this command publishes for.
+   *
+   * @param execution The prepared execution context (SDK, environment and working directory).
+   * @param scanner   The scanner to send command output to.
+   * @param project   The project to restore, if any.
+   *
+   * @return The return code for the restore.
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  private int restore(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner, @CheckForNull String project)
+    throws AbortException, IOException, InterruptedException {
+    final ArgumentListBuilder cmdLine = execution.createCommandLine("restore");
+    final DotNetArguments args = new DotNetArguments(execution.getRun(), cmdLine);
+    args.addOption(project);
+    args.addFlag("force", this.force);
+    args.addOptions('r', this.runtime);
+    // Settings that affect what gets restored need to match those used by the publishes.
+    final String configuration = args.expand(this.configuration);
+    if (configuration != null)
+      args.add("-p:Configuration=" + configuration);
+    if (this.selfContained != null)
+      args.add("-p:SelfContained=" + this.selfContained);
+    this.addPropertyArguments(args);
+    args.addOption('v', this.verbosity);
+    return execution.run(cmdLine, scanner);
+  }
+
+  @CheckForNull
+  @Override
+  protected String[] getInvocationFrameworks() {
+    return this.getFrameworks();
+  }
+
+  @CheckForNull
+  @Override
+  protected String[] getInvocationRuntimes() {
+    return this.getRuntimes();
+  }
+
+  @Override
+  protected boolean isBuildCacheSupported() {
+    return true;
+  }
+
   //region Properties
 
+  private boolean archiveOutput;
+
+  /**
+   * Determines whether the published output should be archived.
+   *
+   * @return {@code true} when the published output is archived after a successful publish; {@code false} otherwise.
+   */
+  public boolean isArchiveOutput() {
+    return this.archiveOutput;
+  }
+
+  /**
+   * Determines whether the published output should be archived.
+   * <p>
+   * This requires an output directory to be specified (via {@link #setOutputDirectory(String)}). Files are kept in a
+   * content-addressed store in the job's directory (see {@link PublishedOutputStore}), so files whose content is already stored
+   * (e.g. because they are unchanged since an earlier build) are not transferred or stored again.
+   *
+   * @param archiveOutput {@code true} to archive the published output after a successful publish; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setArchiveOutput(boolean archiveOutput) {
+    this.archiveOutput = archiveOutput;
+  }
+
   private boolean force;
 
   /**
@@ -89,23 +282,65 @@ public final class Publish extends MSBuildCommand {
   private String framework;
 
   /**
-   * Gets the target framework moniker to use.
+   * Gets the sole target framework moniker to use.
    *
-   * @return The target framework moniker to use.
+   * @return The sole target framework moniker to use, or {@code null} when there is not exactly one framework set.
    */
   @CheckForNull
   public String getFramework() {
-    return this.framework;
+    return DotNetUtils.singleToken(this.framework);
   }
 
   /**
-   * Sets the target framework moniker to use.
+   * Sets the sole target framework moniker to use.
+   * <p>
+   * To set more than one, use {@link #setFrameworks(String...)} instead.
    *
-   * @param framework The target framework moniker to use.
+   * @param framework The sole target framework moniker to use.
    */
   @DataBoundSetter
   public void setFramework(@CheckForNull String framework) {
-    this.framework = Util.fixEmptyAndTrim(framework);
+    this.framework = DotNetUtils.detokenize(' ', framework);
+  }
+
+  /**
+   * Gets the target framework monikers to use. The command is run separately for each of them.
+   *
+   * @return The target framework monikers to use.
+   */
+  @CheckForNull
+  public String[] getFrameworks() {
+    return DotNetUtils.tokenize(this.framework);
+  }
+
+  /**
+   * Sets the target framework monikers to use. The command is run separately for each of them.
+   *
+   * @param frameworks The target framework monikers to use.
+   */
+  @DataBoundSetter
+  public void setFrameworks(@CheckForNull String... frameworks) {
+    this.framework = DotNetUtils.detokenize(' ', frameworks);
+  }
+
+  /**
+   * Gets the target framework monikers to use.
+   *
+   * @return The target framework monikers to use.
+   */
+  @CheckForNull
+  public String getFrameworksString() {
+    return this.framework;
+  }
+
+  /**
+   * Sets the target framework monikers to use.
+   *
+   * @param frameworks The target framework monikers to use.
+   */
+  @DataBoundSetter
+  public void setFrameworksString(@CheckForNull String frameworks) {
+    this.framework = Util.fixEmptyAndTrim(frameworks);
   }
 
   private String manifests;
@@ -238,23 +473,65 @@ public final class Publish extends MSBuildCommand {
   private String runtime;
 
   /**
-   * Gets the runtime identifier to use.
+   * Gets the sole runtime identifier to use.
    *
-   * @return The runtime identifier to use.
+   * @return The sole runtime identifier to use, or {@code null} when there is not exactly one runtime identifier set.
    */
   @CheckForNull
   public String getRuntime() {
-    return this.runtime;
+    return DotNetUtils.singleToken(this.runtime);
   }
 
   /**
-   * Sets the runtime identifier to use.
+   * Sets the sole runtime identifier to use.
+   * <p>
+   * To set more than one, use {@link #setRuntimes(String...)} instead.
    *
-   * @param runtime The runtime identifier to use.
+   * @param runtime The sole runtime identifier to use.
    */
   @DataBoundSetter
   public void setRuntime(@CheckForNull String runtime) {
-    this.runtime = Util.fixEmptyAndTrim(runtime);
+    this.runtime = DotNetUtils.detokenize(' ', runtime);
+  }
+
+  /**
+   * Gets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String[] getRuntimes() {
+    return DotNetUtils.tokenize(this.runtime);
+  }
+
+  /**
+   * Sets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimes(@CheckForNull String... runtimes) {
+    this.runtime = DotNetUtils.detokenize(' ', runtimes);
+  }
+
+  /**
+   * Gets the runtime identifiers to use.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String getRuntimesString() {
+    return this.runtime;
+  }
+
+  /**
+   * Sets the runtime identifiers to use.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimesString(@CheckForNull String runtimes) {
+    this.runtime = Util.fixEmptyAndTrim(runtimes);
   }
 
   private Boolean selfContained;
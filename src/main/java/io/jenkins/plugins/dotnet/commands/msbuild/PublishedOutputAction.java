@@ -0,0 +1,218 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import io.jenkins.plugins.dotnet.commands.Messages;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A build action recording the files archived by "{@code dotnet publish}" build steps (see {@link Publish#setArchiveOutput(boolean)}).
+ * <p>
+ * The files themselves are kept in the job's {@link PublishedOutputStore}; this records, for every file, the hash of its content,
+ * and serves the files from the store.
+ */
+public final class PublishedOutputAction implements RunAction2 {
+
+  /** Creates a new published output action. */
+  PublishedOutputAction() {
+  }
+
+  private transient Run<?, ?> run;
+
+  @NonNull
+  private final Map<String, String> files = new TreeMap<>();
+
+  private int stored;
+
+  /**
+   * Gets (creating and attaching it when needed) the published output action for a build.
+   *
+   * @param run The build.
+   *
+   * @return The build's published output action.
+   */
+  @NonNull
+  static PublishedOutputAction forRun(@NonNull Run<?, ?> run) {
+    synchronized (run) {
+      PublishedOutputAction action = run.getAction(PublishedOutputAction.class);
+      if (action == null) {
+        action = new PublishedOutputAction();
+        run.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  /**
+   * Records a published file.
+   *
+   * @param name The file's artifact name.
+   * @param hash The hash of the file's content.
+   */
+  synchronized void add(@NonNull String name, @NonNull String hash) {
+    this.files.put(name, hash);
+  }
+
+  /**
+   * Records the number of file contents that were not stored yet, and were stored for this build.
+   *
+   * @param count The number of file contents stored.
+   */
+  synchronized void addStored(int count) {
+    this.stored += count;
+  }
+
+  /**
+   * Serves a published file (the rest of the URL being its artifact name).
+   *
+   * @param req The request.
+   * @param rsp The response.
+   *
+   * @throws IOException      When the file could not be sent.
+   * @throws ServletException When the response could not be sent.
+   */
+  public void doFile(@NonNull StaplerRequest req, @NonNull StaplerResponse rsp) throws IOException, ServletException {
+    final Run<?, ?> run = this.run;
+    if (run == null) {
+      rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    run.checkPermission(Run.ARTIFACTS);
+    String name = req.getRestOfPath();
+    while (name.startsWith("/"))
+      name = name.substring(1);
+    final String hash;
+    synchronized (this) {
+      hash = this.files.get(name);
+    }
+    final File file = hash == null ? null : new PublishedOutputStore(run.getParent()).getFile(hash);
+    if (file == null || !file.isFile()) {
+      rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    try (final InputStream in = Files.newInputStream(file.toPath())) {
+      rsp.serveFile(req, in, file.lastModified(), file.length(), name.substring(name.lastIndexOf('/') + 1));
+    }
+  }
+
+  /**
+   * Gets the URL (relative to this action) for a published file.
+   *
+   * @param name The file's artifact name.
+   *
+   * @return The URL for the file.
+   */
+  @NonNull
+  public String getFileUrl(@NonNull String name) {
+    return "file/" + Util.rawEncode(name).replace("%2F", "/");
+  }
+
+  /**
+   * Gets the display name for this action.
+   *
+   * @return The display name for this action.
+   */
+  @NonNull
+  @Override
+  public String getDisplayName() {
+    return Messages.MSBuild_Publish_OutputAction_DisplayName();
+  }
+
+  /**
+   * Gets the files recorded by this action.
+   *
+   * @return The files recorded by this action (artifact name mapped to content hash).
+   */
+  @NonNull
+  public synchronized Map<String, String> getFiles() {
+    return Collections.unmodifiableMap(new TreeMap<>(this.files));
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "package.png";
+  }
+
+  /**
+   * Gets the number of files whose content was already stored (for an earlier build, or for another file), so was not stored
+   * again.
+   *
+   * @return The number of files whose content was already stored.
+   */
+  public synchronized int getReusedCount() {
+    return Math.max(0, this.files.size() - this.stored);
+  }
+
+  /**
+   * Gets the build this action is attached to.
+   *
+   * @return The build this action is attached to.
+   */
+  @CheckForNull
+  public Run<?, ?> getRun() {
+    return this.run;
+  }
+
+  /**
+   * Gets the number of file contents that were stored for this build.
+   *
+   * @return The number of file contents that were stored for this build.
+   */
+  public synchronized int getStoredCount() {
+    return this.stored;
+  }
+
+  @Override
+  public String getUrlName() {
+    return "dotnet-published-output";
+  }
+
+  @Override
+  public void onAttached(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  @Override
+  public void onLoad(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  /** Releases the stored file contents of deleted builds. */
+  @Extension
+  public static final class Cleanup extends RunListener<Run<?, ?>> {
+
+    @Override
+    public void onDeleted(@NonNull Run<?, ?> run) {
+      if (run.getAction(PublishedOutputAction.class) == null)
+        return;
+      try {
+        new PublishedOutputStore(run.getParent()).release(run.getNumber());
+      }
+      catch (IOException e) {
+        PublishedOutputAction.LOGGER.log(Level.WARNING, e, () -> "Failed to release the published output of " + run + ".");
+      }
+    }
+
+  }
+
+  private static final Logger LOGGER = Logger.getLogger(PublishedOutputAction.class.getName());
+
+}
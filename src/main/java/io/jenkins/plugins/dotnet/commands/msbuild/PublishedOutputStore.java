@@ -0,0 +1,239 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+import hudson.util.io.Archiver;
+import hudson.util.io.ArchiverFactory;
+import io.jenkins.plugins.dotnet.commands.FileHashes;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * A content-addressed store for the output archived by "{@code dotnet publish}" build steps (see
+ * {@link Publish#setArchiveOutput(boolean)}).
+ * <p>
+ * The store lives in the job's directory on the controller. Every distinct file content is stored once, keyed on its SHA-256 hash,
+ * regardless of how many builds (or files within a build) have that content. The store also keeps track of which builds refer to
+ * which contents; once a build is deleted (see {@link PublishedOutputAction.Cleanup}), the contents no longer referred to by any
+ * build are removed. This means that files unchanged since an earlier build are never transferred or stored again, while each
+ * build's output stays complete for as long as the build itself is kept.
+ */
+final class PublishedOutputStore {
+
+  /** The name of the store's directory (in the job's directory). */
+  static final String DIR_NAME = "dotnet-published-output";
+
+  /** The name of the file (in the store's directory) recording the builds referring to each stored content. */
+  private static final String REFERENCES = "references.txt";
+
+  /** The lock guarding the reference files of all stores. */
+  private static final Object LOCK = new Object();
+
+  /**
+   * Creates a new published output store.
+   *
+   * @param job The job the store is for.
+   */
+  PublishedOutputStore(@NonNull Job<?, ?> job) {
+    this.root = new File(job.getRootDir(), PublishedOutputStore.DIR_NAME);
+  }
+
+  @NonNull
+  private final File root;
+
+  /**
+   * Gets the file holding a stored content.
+   *
+   * @param hash The content's hash.
+   *
+   * @return The file holding the content (which may not exist).
+   */
+  @NonNull
+  File getFile(@NonNull String hash) {
+    return new File(new File(this.root, hash.substring(0, 2)), hash);
+  }
+
+  /**
+   * Records that a build refers to a set of contents.
+   * <p>
+   * This must be done before the contents are stored, so that they cannot be removed (because of the deletion of another build)
+   * in the meantime.
+   *
+   * @param build  The number of the build.
+   * @param hashes The hashes of the contents the build refers to.
+   *
+   * @return The hashes of the contents that are not stored yet.
+   *
+   * @throws IOException When the references could not be recorded.
+   */
+  @NonNull
+  Set<String> reference(int build, @NonNull Collection<String> hashes) throws IOException {
+    final Set<String> missing = new LinkedHashSet<>();
+    synchronized (PublishedOutputStore.LOCK) {
+      final Map<String, Set<Integer>> references = this.readReferences();
+      for (final String hash : hashes) {
+        references.computeIfAbsent(hash, h -> new TreeSet<>()).add(build);
+        if (!this.getFile(hash).isFile())
+          missing.add(hash);
+      }
+      this.writeReferences(references);
+    }
+    return missing;
+  }
+
+  /**
+   * Removes all references made by a build, removing any contents that are no longer referred to.
+   *
+   * @param build The number of the build.
+   *
+   * @throws IOException When the references could not be updated.
+   */
+  void release(int build) throws IOException {
+    synchronized (PublishedOutputStore.LOCK) {
+      if (!this.root.isDirectory())
+        return;
+      final Map<String, Set<Integer>> references = this.readReferences();
+      final List<String> unused = new ArrayList<>();
+      references.entrySet().removeIf(entry -> {
+        if (!entry.getValue().remove(build) || !entry.getValue().isEmpty())
+          return false;
+        unused.add(entry.getKey());
+        return true;
+      });
+      this.writeReferences(references);
+      for (final String hash : unused)
+        Files.deleteIfExists(this.getFile(hash).toPath());
+    }
+  }
+
+  /**
+   * Stores files from a directory on a node.
+   * <p>
+   * The files are sent as a single compressed archive, created on the node; each file's content is then checked against its
+   * expected hash before it is stored.
+   *
+   * @param dir   The directory containing the files.
+   * @param files The files to store (paths relative to {@code dir}, using forward slashes), mapped to their expected hashes.
+   *
+   * @throws IOException          When the files could not be transferred or stored, or when a file changed since it was hashed.
+   * @throws InterruptedException When interrupted during the transfer.
+   */
+  void store(@NonNull FilePath dir, @NonNull Map<String, String> files) throws IOException, InterruptedException {
+    if (files.isEmpty())
+      return;
+    Files.createDirectories(this.root.toPath());
+    final File incoming = new File(this.root, "incoming-" + UUID.randomUUID());
+    final File archive = new File(incoming.getPath() + ".tar.gz");
+    try {
+      try (final OutputStream out = Files.newOutputStream(archive.toPath())) {
+        dir.act(new Pack(new ArrayList<>(files.keySet()), new RemoteOutputStream(out)));
+      }
+      try (final InputStream in = Files.newInputStream(archive.toPath())) {
+        new FilePath(incoming).untarFrom(in, FilePath.TarCompression.GZIP);
+      }
+      for (final Map.Entry<String, String> file : files.entrySet()) {
+        final File received = new File(incoming, file.getKey());
+        final String hash = FileHashes.hash(received.toPath());
+        if (!hash.equals(file.getValue()))
+          throw new IOException("File changed while being archived: " + file.getKey());
+        final File stored = this.getFile(hash);
+        Files.createDirectories(stored.getParentFile().toPath());
+        Files.move(received.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      Util.deleteRecursive(incoming);
+      Files.deleteIfExists(archive.toPath());
+    }
+  }
+
+  @NonNull
+  private Map<String, Set<Integer>> readReferences() throws IOException {
+    final Map<String, Set<Integer>> references = new TreeMap<>();
+    final File file = new File(this.root, PublishedOutputStore.REFERENCES);
+    if (!file.isFile())
+      return references;
+    for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+      final int tab = line.indexOf('\t');
+      if (tab <= 0)
+        continue;
+      final Set<Integer> builds = new TreeSet<>();
+      for (final String build : line.substring(tab + 1).split(",")) {
+        try {
+          builds.add(Integer.parseInt(build));
+        }
+        catch (NumberFormatException e) {
+          // skip malformed entry
+        }
+      }
+      references.put(line.substring(0, tab), builds);
+    }
+    return references;
+  }
+
+  private void writeReferences(@NonNull Map<String, Set<Integer>> references) throws IOException {
+    Files.createDirectories(this.root.toPath());
+    final File file = new File(this.root, PublishedOutputStore.REFERENCES);
+    final File temp = new File(file.getPath() + ".tmp");
+    try (final Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+      for (final Map.Entry<String, Set<Integer>> entry : references.entrySet()) {
+        final StringBuilder sb = new StringBuilder(entry.getKey()).append('\t');
+        for (final Integer build : entry.getValue())
+          sb.append(build).append(',');
+        sb.setCharAt(sb.length() - 1, '\n');
+        writer.write(sb.toString());
+      }
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** Writes a set of files in a directory to a stream, as a compressed archive. */
+  private static final class Pack extends MasterToSlaveFileCallable<Void> {
+
+    private static final long serialVersionUID = 6170238547018563211L;
+
+    Pack(@NonNull List<String> files, @NonNull OutputStream out) {
+      this.files = files;
+      this.out = out;
+    }
+
+    @NonNull
+    private final List<String> files;
+
+    @NonNull
+    private final OutputStream out;
+
+    @Override
+    public Void invoke(@NonNull File dir, @CheckForNull VirtualChannel channel) throws IOException {
+      try (final Archiver archiver = ArchiverFactory.TARGZ.create(this.out)) {
+        for (final String file : this.files)
+          archiver.visit(new File(dir, file), file);
+      }
+      return null;
+    }
+
+  }
+
+}
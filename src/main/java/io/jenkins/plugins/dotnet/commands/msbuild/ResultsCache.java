@@ -0,0 +1,249 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.slaves.WorkspaceList;
+import hudson.util.ArgumentListBuilder;
+import io.jenkins.plugins.dotnet.DotNetSDK;
+import io.jenkins.plugins.dotnet.commands.CommandExecution;
+import io.jenkins.plugins.dotnet.commands.DotNetArguments;
+import io.jenkins.plugins.dotnet.commands.FileHashes;
+import io.jenkins.plugins.dotnet.commands.Messages;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Drives a build project by project, in isolation, using MSBuild's input and output results caches ({@code -irc}/{@code -orc}).
+ * <p>
+ * The project graph is determined up front (see {@link ProjectGraph}); projects are then built in dependency order, each one
+ * getting the results caches of all projects it (transitively) depends on. Every results cache file is stored under a key
+ * combining the project's input hash, the keys of its dependencies, the environment and the command line, either in a directory
+ * on the agent or, when no directory is specified, in the job's directory on the controller, together with a manifest of the
+ * project's output directory (the hashes of all files it contained right after the build). A project whose key is found in the
+ * store is not built again, provided every file in that manifest is still present in the output directory with the same content;
+ * otherwise (for example when the output was cleaned, or replaced by that of another build), it is built again. Entries are
+ * removed once they have not been used for a while, or when the store grows too large (see {@link PruneCache}).
+ */
+final class ResultsCache {
+
+  /** The name of the file (in a store entry) holding the project's MSBuild results cache. */
+  private static final String RESULTS = "results.cache";
+
+  /** The name of the file (in a store entry) holding the manifest of the project's output directory. */
+  private static final String OUTPUTS = "outputs.txt";
+
+  /**
+   * Creates a new results cache.
+   *
+   * @param execution The execution context for the build.
+   * @param directory The directory (on the agent) to store results caches in; when {@code null}, they are stored on the
+   *                  controller.
+   */
+  ResultsCache(@NonNull CommandExecution execution, @CheckForNull String directory) {
+    if (directory == null)
+      this.root = new FilePath(new File(execution.getRun().getParent().getRootDir(), "dotnet-results-cache"));
+    else
+      this.root = new FilePath(execution.getWorkspace().getChannel(), directory);
+    final FilePath tempDir = WorkspaceList.tempDir(execution.getWorkspace());
+    this.work = (tempDir == null ? execution.getWorkspace() : tempDir).child("dotnet-results-cache");
+  }
+
+  @NonNull
+  private final FilePath root;
+
+  @NonNull
+  private final FilePath work;
+
+  /** The known file hashes for output directories (keyed on their remote path), kept up to date as projects are built. */
+  @NonNull
+  private final Map<String, Map<String, String>> outputs = new HashMap<>();
+
+  private int built;
+
+  private int skipped;
+
+  /**
+   * Builds the project graph for an invocation, project by project.
+   *
+   * @param command    The build command.
+   * @param execution  The execution context.
+   * @param scanner    The scanner to send command output to.
+   * @param invocation The invocation to run; its project determines the graph that is built.
+   *
+   * @return The return code for the first failed project build, or {@code 0} when all succeeded (or were skipped).
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  int build(@NonNull Build command, @NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner,
+            @NonNull MSBuildCommand.Invocation invocation) throws AbortException, IOException, InterruptedException {
+    final PrintStream logger = execution.getListener().getLogger();
+    final FilePath workspace = execution.getWorkspace();
+    final ProjectGraph graph = workspace.act(new ProjectGraph.Scan(invocation.getProject()));
+    final String baseKey = this.computeBaseKey(command, execution, invocation);
+    final Map<String, String> keys = new HashMap<>();
+    final Map<String, Set<String>> dependencies = new HashMap<>();
+    this.work.mkdirs();
+    for (final ProjectGraph.Node node : graph.getNodes()) {
+      final String path = node.getPath();
+      final Set<String> deps = new LinkedHashSet<>();
+      final List<String> extra = new ArrayList<>();
+      extra.add(baseKey);
+      for (final String ref : node.getReferences()) {
+        deps.addAll(dependencies.getOrDefault(ref, Collections.emptySet()));
+        deps.add(ref);
+      }
+      for (final String dep : deps)
+        extra.add(keys.get(dep));
+      dependencies.put(path, deps);
+      final String key = FileHashes.combine(Collections.singletonMap(path, node.getInputHash()), extra.toArray(new String[0]));
+      keys.put(path, key);
+      final FilePath local = this.work.child(key + ".cache");
+      final FilePath entry = this.root.child(key);
+      final FilePath output;
+      if (invocation.getOutputDirectory() != null)
+        output = workspace.child(invocation.getOutputDirectory());
+      else
+        output = workspace.child(node.getDirectory()).child("bin");
+      if (entry.child(ResultsCache.RESULTS).exists()) {
+        if (this.isOutputIntact(entry, output)) {
+          if (!local.exists())
+            entry.child(ResultsCache.RESULTS).copyTo(local);
+          // Mark the entry as used, so it is kept when pruning.
+          entry.touch(System.currentTimeMillis());
+          ++this.skipped;
+          logger.println(Messages.MSBuild_Build_ResultsCacheHit(path, key));
+          continue;
+        }
+        logger.println(Messages.MSBuild_Build_ResultsCacheOutputChanged(path));
+      }
+      ++this.built;
+      final ArgumentListBuilder cmdLine = execution.createCommandLine();
+      final DotNetArguments args = execution.createArguments(cmdLine);
+      command.addCommandLineArguments(args, invocation.withProject(path));
+      args.add("-isolate");
+      final List<String> inputCaches = new ArrayList<>();
+      for (final String dep : deps) {
+        final FilePath depCache = this.work.child(keys.get(dep) + ".cache");
+        if (depCache.exists())
+          inputCaches.add(depCache.getRemote());
+      }
+      if (!inputCaches.isEmpty())
+        args.add("-irc:" + String.join(";", inputCaches));
+      args.add("-orc:" + local.getRemote());
+      // The build changes the output directory; it is hashed again afterwards.
+      this.outputs.remove(output.getRemote());
+      final int rc = execution.run(cmdLine, scanner);
+      if (rc != 0)
+        return rc;
+      if (local.exists()) {
+        try {
+          this.store(entry, local, this.getOutputHashes(output));
+        }
+        catch (IOException e) {
+          logger.println(Messages.MSBuild_Build_ResultsCacheStoreFailed(path, e));
+        }
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Writes the numbers of built and skipped projects to the build log.
+   *
+   * @param logger The build log.
+   */
+  void writeSummary(@NonNull PrintStream logger) {
+    logger.println(Messages.MSBuild_Build_ResultsCacheSummary(this.skipped, this.built));
+  }
+
+  /**
+   * Removes old entries from the store (see {@link PruneCache}), if any projects were built (and so may have been stored).
+   *
+   * @param logger The build log.
+   *
+   * @throws InterruptedException When interrupted while pruning.
+   */
+  void prune(@NonNull PrintStream logger) throws InterruptedException {
+    if (this.built == 0)
+      return;
+    try {
+      final int pruned = this.root.act(new PruneCache(PruneCache.MAX_AGE, PruneCache.MAX_SIZE));
+      if (pruned > 0)
+        logger.println(Messages.MSBuild_Build_ResultsCachePruned(pruned));
+    }
+    catch (IOException e) {
+      logger.println(Messages.MSBuild_Build_ResultsCachePruneFailed(e));
+    }
+  }
+
+  @NonNull
+  private Map<String, String> getOutputHashes(@NonNull FilePath output) throws IOException, InterruptedException {
+    Map<String, String> hashes = this.outputs.get(output.getRemote());
+    if (hashes == null) {
+      hashes = output.act(new FileHashes());
+      this.outputs.put(output.getRemote(), hashes);
+    }
+    return hashes;
+  }
+
+  private boolean isOutputIntact(@NonNull FilePath entry, @NonNull FilePath output) throws IOException, InterruptedException {
+    final FilePath manifest = entry.child(ResultsCache.OUTPUTS);
+    if (!manifest.exists())
+      return false;
+    final Map<String, String> actual = this.getOutputHashes(output);
+    boolean empty = true;
+    for (final String line : manifest.readToString().split("\n")) {
+      // Lines are "<hash>  <path>", as written by store().
+      final int separator = line.indexOf("  ");
+      if (separator <= 0)
+        continue;
+      empty = false;
+      if (!line.substring(0, separator).equals(actual.get(line.substring(separator + 2))))
+        return false;
+    }
+    // A build that produced no output at all is not worth skipping on the strength of an empty manifest.
+    return !empty;
+  }
+
+  private void store(@NonNull FilePath entry, @NonNull FilePath results, @NonNull Map<String, String> outputs)
+    throws IOException, InterruptedException {
+    final StringBuilder manifest = new StringBuilder();
+    for (final Map.Entry<String, String> output : new TreeMap<>(outputs).entrySet())
+      manifest.append(output.getValue()).append("  ").append(output.getKey()).append('\n');
+    final FilePath temp = this.root.child(entry.getName() + PruneCache.TEMP_MARKER + UUID.randomUUID());
+    temp.mkdirs();
+    results.copyTo(temp.child(ResultsCache.RESULTS));
+    temp.child(ResultsCache.OUTPUTS).write(manifest.toString(), "UTF-8");
+    entry.deleteRecursive();
+    temp.renameTo(entry);
+  }
+
+  @NonNull
+  private String computeBaseKey(@NonNull Build command, @NonNull CommandExecution execution,
+                                @NonNull MSBuildCommand.Invocation invocation) throws AbortException, IOException,
+                                                                                        InterruptedException {
+    final ArgumentListBuilder cmdLine = execution.createCommandLine();
+    command.addCommandLineArguments(new DotNetArguments(execution.getRun(), cmdLine), invocation.withProject(null));
+    final DotNetSDK sdk = execution.getSdk();
+    final String sdkVersions = sdk == null ? "" : String.join(",", sdk.getSdkVersions(execution.getWorkspace().getChannel()));
+    return FileHashes.combine(Collections.emptyMap(), sdkVersions, BuildCache.getEnvironment(execution.getEnvironment()),
+      String.join("\u0000", cmdLine.toList()));
+  }
+
+}
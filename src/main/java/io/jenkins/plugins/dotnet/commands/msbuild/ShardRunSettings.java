@@ -0,0 +1,105 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A file callable writing the {@code .runsettings} file for a batch of tests run as part of a test shard, or for failed tests that
+ * are run again.
+ * <p>
+ * The file is based on the configured settings file (if any), adding the test case filter selecting the batch's tests, the results
+ * directory to use, and a TRX logger (so that the shard's results and durations can be collected).
+ */
+public final class ShardRunSettings extends MasterToSlaveFileCallable<Void> {
+
+  private static final long serialVersionUID = -4206297457312406620L;
+
+  /**
+   * Creates a new shard run settings callable.
+   *
+   * @param baseSettings     The (absolute) path of the configured settings file, if any.
+   * @param filter           The test case filter to use.
+   * @param resultsDirectory The (absolute) path of the results directory to use.
+   */
+  public ShardRunSettings(@CheckForNull String baseSettings, @NonNull String filter, @NonNull String resultsDirectory) {
+    this.baseSettings = baseSettings;
+    this.filter = filter;
+    this.resultsDirectory = resultsDirectory;
+  }
+
+  @CheckForNull
+  private final String baseSettings;
+
+  @NonNull
+  private final String filter;
+
+  @NonNull
+  private final String resultsDirectory;
+
+  @Override
+  public Void invoke(@NonNull File file, @CheckForNull VirtualChannel channel) throws IOException {
+    try {
+      final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+      dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      dbf.setExpandEntityReferences(false);
+      final DocumentBuilder db = dbf.newDocumentBuilder();
+      final Document doc;
+      if (this.baseSettings != null && new File(this.baseSettings).isFile())
+        doc = db.parse(new File(this.baseSettings));
+      else {
+        doc = db.newDocument();
+        doc.appendChild(doc.createElement("RunSettings"));
+      }
+      final Element root = doc.getDocumentElement();
+      final Element runConfiguration = ShardRunSettings.child(root, "RunConfiguration");
+      ShardRunSettings.child(runConfiguration, "ResultsDirectory").setTextContent(this.resultsDirectory);
+      final Element testCaseFilter = ShardRunSettings.child(runConfiguration, "TestCaseFilter");
+      final String existing = testCaseFilter.getTextContent().trim();
+      testCaseFilter.setTextContent(existing.isEmpty() ? this.filter : "(" + existing + ")&(" + this.filter + ")");
+      final Element loggers = ShardRunSettings.child(ShardRunSettings.child(root, "LoggerRunSettings"), "Loggers");
+      final Element logger = doc.createElement("Logger");
+      logger.setAttribute("friendlyName", "trx");
+      logger.setAttribute("enabled", "True");
+      loggers.appendChild(logger);
+      final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+      transformer.transform(new DOMSource(doc), new StreamResult(file));
+    }
+    catch (ParserConfigurationException | SAXException | TransformerException e) {
+      throw new IOException("Failed to write test settings to " + file + ".", e);
+    }
+    return null;
+  }
+
+  @NonNull
+  private static Element child(@NonNull Element parent, @NonNull String name) {
+    for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element && name.equals(node.getNodeName()))
+        return (Element) node;
+    }
+    final Element child = parent.getOwnerDocument().createElement(name);
+    parent.appendChild(child);
+    return child;
+  }
+
+}
@@ -2,15 +2,25 @@ package io.jenkins.plugins.dotnet.commands.msbuild;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Util;
 import hudson.model.Item;
+import hudson.model.Run;
+import hudson.slaves.WorkspaceList;
+import hudson.util.ArgumentListBuilder;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import io.jenkins.plugins.dotnet.DotNetConfiguration;
+import io.jenkins.plugins.dotnet.DotNetSDK;
 import io.jenkins.plugins.dotnet.DotNetUtils;
+import io.jenkins.plugins.dotnet.commands.CommandExecution;
 import io.jenkins.plugins.dotnet.commands.DotNetArguments;
+import io.jenkins.plugins.dotnet.commands.FailFast;
+import io.jenkins.plugins.dotnet.commands.FileHashes;
 import io.jenkins.plugins.dotnet.commands.Messages;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.structs.describable.UninstantiatedDescribable;
 import org.kohsuke.stapler.AncestorInPath;
@@ -19,10 +29,23 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.verb.POST;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,9 +63,9 @@ public final class Test extends MSBuildCommand {
    * <p>
    * This adds:
    * <ol>
-   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments)}.</li>
-   *   <li>{@code -f:xxx}, if a target framework moniker has been specified via {@link #setFramework(String)}.</li>
-   *   <li>{@code -r:xxx}, if a runtime identifier has been specified via {@link #setRuntime(String)}.</li>
+   *   <li>Any arguments added by {@link MSBuildCommand#addCommandLineArguments(DotNetArguments, Invocation)}.</li>
+   *   <li>{@code -f:xxx}, for the invocation's target framework moniker (see {@link #setFrameworks(String...)}).</li>
+   *   <li>{@code -r:xxx}, for the invocation's runtime identifier (see {@link #setRuntimes(String...)}).</li>
    *   <li>{@code --blame}, if requested via {@link #setBlame(boolean)}.</li>
    *   <li>{@code --blame-crash}, if requested via {@link #setBlameCrash(boolean)}.</li>
    *   <li>{@code --blame-crash-collect-always}, if requested via {@link #setBlameCrashCollectAlways(boolean)}.</li>
@@ -52,25 +75,49 @@ public final class Test extends MSBuildCommand {
    *   <li>{@code --blame-hang-timeout nnn}, if requested via {@link #setBlameHangTimeout(Integer)}.</li>
    *   <li>{@code --collect xxx}, if a data collector has been specified via {@link #setCollect(String)}.</li>
    *   <li>{@code --diag xxx}, if a diagnostics file has been specified via {@link #setDiag(String)}.</li>
-   *   <li>{@code --filter xxx}, if a filter expression has been specified via {@link #setFilter(String)}.</li>
+   *   <li>
+   *     {@code --filter xxx}, for the invocation's filter expression (see {@link #setTestImpact(boolean)}), or else the one specified
+   *     via {@link #setFilter(String)}, if any; this is omitted when the invocation has its own settings file.
+   *   </li>
    *   <li>{@code --list-tests}, if requested via {@link #setListTests(boolean)}.</li>
    *   <li>{@code --logger xxx}, if a logger has been specified via {@link #setLogger(String)}.</li>
-   *   <li>{@code --no-build}, if requested via {@link #setNoBuild(boolean)}.</li>
+   *   <li>
+   *     {@code --logger trx;LogFilePrefix=xxx}, if failed tests are to be run again (see {@link #setRetryFailedTests(Integer)}), or
+   *     else {@code --logger trx}, if test results are to be recorded (see {@link #setRecordResults(boolean)}) and no TRX logger
+   *     has been specified via {@link #setLogger(String)}; this is omitted when the invocation has its own settings file.
+   *   </li>
+   *   <li>
+   *     {@code --no-build}, if requested via {@link #setNoBuild(boolean)}; this is always included when running failed tests again.
+   *   </li>
    *   <li>{@code --no-restore}, if requested via {@link #setNoRestore(boolean)}.</li>
-   *   <li>{@code --results-directory xxx}, if a results directory has been specified via {@link #setResultsDirectory(String)}.</li>
-   *   <li>{@code --settings xxx}, if a {@code .runsettings} file has been specified via {@link #setSettings(String)}.</li>
+   *   <li>
+   *     {@code --results-directory xxx}, if a results directory has been specified via {@link #setResultsDirectory(String)}; this is
+   *     omitted when the invocation has its own settings file.
+   *   </li>
+   *   <li>
+   *     {@code --settings xxx}, for the invocation's own settings file (see {@link #setShardCount(Integer)}), or else the
+   *     {@code .runsettings} file specified via {@link #setSettings(String)}, if any.
+   *   </li>
    *   <li>{@code --test-adapter-path xxx}, if a test adapter path has been specified via {@link #setTestAdapterPath(String)}.</li>
    *   <li>
    *     {@code -- name=value [name=value]}, for all settings specified via {@link #setRunSettings(Map)} or
-   *     {@link #setRunSettingsString(String)}.
+   *     {@link #setRunSettingsString(String)}, plus {@code RunConfiguration.MaxCpuCount=N} for the test runner, if a maximum has
+   *     been specified via {@link #setMaxCpuCount(Integer)} or automatic parallelism is in use (and no settings file has been
+   *     specified via {@link #setSettings(String)}), unless the run settings include it already.
    *   </li>
    * </ol>
    */
   @Override
-  protected void addCommandLineArguments(@NonNull DotNetArguments args) {
-    super.addCommandLineArguments(args);
-    args.addOption('f', this.framework);
-    args.addOption('r', this.runtime);
+  protected void addCommandLineArguments(@NonNull DotNetArguments args, @NonNull Invocation invocation) {
+    this.addCommandLineArguments(args, invocation, this.listTests, null, false);
+  }
+
+  private void addCommandLineArguments(@NonNull DotNetArguments args, @NonNull Invocation invocation, boolean listTests,
+                                       @CheckForNull String trxPrefix, boolean noBuild) {
+    super.addCommandLineArguments(args, invocation);
+    final boolean ownSettings = invocation.getSettings() != null;
+    args.addOption('f', invocation.getFramework());
+    args.addOption('r', invocation.getRuntime());
     args.addFlag("blame", this.blame);
     args.addFlag("blame-crash", this.blameCrash);
     args.addFlag("blame-crash-collect-always", this.blameCrashCollectAlways);
@@ -80,27 +127,548 @@ public final class Test extends MSBuildCommand {
     args.addOption("blame-hang-timeout", this.blameHangTimeout);
     args.addOption("collect", this.collect);
     args.addOption("diag", this.diag);
-    args.addOption("filter", this.filter);
-    args.addFlag("list-tests", this.listTests);
+    if (!ownSettings)
+      args.addOption("filter", invocation.getFilter() == null ? this.filter : invocation.getFilter());
+    args.addFlag("list-tests", listTests);
     args.addOption("logger", this.logger);
-    args.addFlag("no-build", this.noBuild);
+    if (trxPrefix != null && !ownSettings)
+      args.addOption("logger", "trx;LogFilePrefix=" + trxPrefix);
+    else if (this.recordResults && !ownSettings && !listTests && (this.logger == null || !this.logger.startsWith("trx")))
+      args.addOption("logger", "trx");
+    args.addFlag("no-build", noBuild || this.noBuild);
     args.addFlag("no-restore", this.noRestore);
-    args.addOption("results-directory", this.resultsDirectory);
-    args.addOption("settings", this.settings);
+    if (!ownSettings)
+      args.addOption("results-directory", this.resultsDirectory);
+    args.addOption("settings", ownSettings ? invocation.getSettings() : this.settings);
     args.addOption("test-adapter-path", this.testAdapterPath);
     // This has to be at the end
-    if (this.runSettings != null) {
+    final Integer runnerCpuCount = listTests ? null : this.getRunnerCpuCount(args);
+    if (this.runSettings != null || runnerCpuCount != null) {
       args.add("--");
+      if (this.runSettings != null) {
+        try {
+          args.addPropertyOptions("", this.runSettings);
+        }
+        catch (IOException e) {
+          Test.LOGGER.log(Level.FINE, Messages.MSBuild_Test_BadRunSettings(), e);
+        }
+      }
+      if (runnerCpuCount != null)
+        args.add(Test.MAX_CPU_COUNT_SETTING + "=" + runnerCpuCount);
+    }
+  }
+
+  /** The name of the run setting for the test runner's maximum number of CPUs. */
+  private static final String MAX_CPU_COUNT_SETTING = "RunConfiguration.MaxCpuCount";
+
+  /**
+   * Determines the number of CPUs the test runner may use: the one specified via {@link #setMaxCpuCount(Integer)}, or else the
+   * automatically determined one (unless a settings file has been specified via {@link #setSettings(String)}). No value is used
+   * when the run settings specified via {@link #setRunSettings(Map)} or {@link #setRunSettingsString(String)} include one.
+   */
+  @CheckForNull
+  private Integer getRunnerCpuCount(@NonNull DotNetArguments args) {
+    final Integer cpuCount = this.maxCpuCount != null ? this.maxCpuCount : this.settings == null ? args.getCpuCount() : null;
+    if (cpuCount == null)
+      return null;
+    try {
+      if (this.getRunSettings().containsKey(Test.MAX_CPU_COUNT_SETTING))
+        return null;
+    }
+    catch (IOException e) {
+      Test.LOGGER.log(Level.FINE, Messages.MSBuild_Test_BadRunSettings(), e);
+    }
+    return cpuCount;
+  }
+
+  private static final Logger LOGGER = Logger.getLogger(Test.class.getName());
+
+  @CheckForNull
+  @Override
+  protected String[] getInvocationFrameworks() {
+    return this.getFrameworks();
+  }
+
+  @CheckForNull
+  @Override
+  protected String[] getInvocationRuntimes() {
+    return this.getRuntimes();
+  }
+
+  @Override
+  protected boolean isAffectedOnlySupported() {
+    return true;
+  }
+
+  /**
+   * Determines whether an affected project should be tested; this is only the case for test projects.
+   *
+   * @param node The affected project.
+   *
+   * @return {@code true} when the project is a test project; {@code false} otherwise.
+   */
+  @Override
+  protected boolean isAffectedProjectIncluded(@NonNull ProjectGraph.Node node) {
+    return node.isTestProject();
+  }
+
+  /**
+   * Runs this "{@code dotnet test}" command.
+   * <p>
+   * When sharding has been requested (via {@link #setShardCount(Integer)}), only this shard's part of the tests is run, and its
+   * results are merged into the build's {@link TestShardsAction}.
+   * <p>
+   * When recording of test results has been requested (via {@link #setRecordResults(boolean)}), the TRX files produced by the run
+   * are read and stored for the build, with a report in the build's {@link TestResultsAction}.
+   * <p>
+   * When merging of code coverage has been requested (via {@link #setMergeCoverage(String)}), the Cobertura reports produced by the
+   * run (including those of all shard batches and retries) are merged into a single report, with a summary in the build's
+   * {@link CoverageAction}.
+   * <p>
+   * When test impact analysis has been requested (via {@link #setTestImpact(boolean)}) and a test impact map has been specified
+   * (via {@link #setTestImpactMap(String)}), the map produced by the test run is merged into the one stored for earlier builds, and
+   * stored for this build.
+   *
+   * @param execution The prepared execution context (SDK, environment and working directory).
+   * @param scanner   The scanner to send command output to.
+   *
+   * @return The return code for the command.
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @Override
+  protected int execute(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner)
+    throws AbortException, IOException, InterruptedException {
+    final FilePath workspace = execution.getWorkspace();
+    final long since = this.recordResults || this.mergeCoverage != null ? Test.getAgentTime(workspace) : 0;
+    final int rc;
+    if (this.shardCount != null)
+      rc = this.executeShard(execution, scanner);
+    else {
+      rc = super.execute(execution, scanner);
+      if (this.recordResults)
+        this.recordResults(execution, this.resultsDirectory == null ? workspace : workspace.child(this.resultsDirectory), since);
+    }
+    if (this.mergeCoverage != null)
+      this.mergeCoverage(execution, this.mergeCoverage, since);
+    if (this.testImpact && this.testImpactMap != null)
+      this.storeTestImpactMap(execution);
+    return rc;
+  }
+
+  /**
+   * Runs a single invocation of this "{@code dotnet test}" command.
+   * <p>
+   * When live test results have been requested (via {@link #setLiveResults(boolean)}), test results are picked up from the output
+   * as it streams in. When failed tests are to be run again (see {@link #setRetryFailedTests(Integer)}), a TRX logger with a unique
+   * file prefix is added, so that the failed tests can be read from its results when the run fails.
+   *
+   * @param execution  The prepared execution context (SDK, environment and working directory).
+   * @param scanner    The scanner to send command output to.
+   * @param invocation The invocation to run.
+   *
+   * @return The return code for the invocation ({@code 0} when all failed tests passed when run again).
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @Override
+  protected int executeInvocation(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner,
+                                  @NonNull Invocation invocation) throws AbortException, IOException, InterruptedException {
+    if (this.retryFailedTests == null || this.listTests) {
+      final ArgumentListBuilder cmdLine = execution.createCommandLine();
+      this.addCommandLineArguments(execution.createArguments(cmdLine), invocation);
+      return this.run(execution, cmdLine, scanner);
+    }
+    final String prefix = "dotnet-test-" + UUID.randomUUID();
+    final ArgumentListBuilder cmdLine = execution.createCommandLine();
+    this.addCommandLineArguments(execution.createArguments(cmdLine), invocation, false, prefix, false);
+    final int rc = this.run(execution, cmdLine, scanner);
+    if (rc == 0)
+      return 0;
+    final FilePath workspace = execution.getWorkspace();
+    final FilePath dir = this.resultsDirectory == null ? workspace : workspace.child(this.resultsDirectory);
+    final TrxResults results = dir.act(new TrxResults.Scan("**/" + prefix + "*.trx"));
+    return this.retryFailedTests(execution, scanner, invocation, results.getFailedTests(), rc);
+  }
+
+  /** Runs a command line, feeding its output through a {@link TestProgressStream} if live test results were requested. */
+  private int run(@NonNull CommandExecution execution, @NonNull ArgumentListBuilder cmdLine, @NonNull DiagnosticScanner scanner)
+    throws IOException, InterruptedException {
+    if (!this.liveResults || this.listTests)
+      return execution.run(cmdLine, scanner);
+    final TestProgressAction progress = TestProgressAction.forRun(execution.getRun());
+    return execution.run(cmdLine, scanner, new TestProgressStream(scanner, execution.getCharset(), progress));
+  }
+
+  /**
+   * Runs failed tests again, up to the number of times specified via {@link #setRetryFailedTests(Integer)}.
+   * <p>
+   * Each attempt runs only the tests that are still failing, without building, using a generated {@code .runsettings} file
+   * containing a test case filter for them and a TRX logger. Tests that pass on a retry are recorded as flaky in the build's
+   * {@link TestResultsAction}.
+   *
+   * @param execution   The prepared execution context (SDK, environment and working directory).
+   * @param scanner     The scanner to send command output to.
+   * @param invocation  The invocation whose tests failed.
+   * @param failedTests The filter terms (see {@link TestShards#filterTerm(String)}) for the failed tests.
+   * @param rc          The return code for the failed run.
+   *
+   * @return {@code 0} when all failed tests passed on a retry; otherwise, a non-zero return code.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  private int retryFailedTests(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner,
+                               @NonNull Invocation invocation, @NonNull Set<String> failedTests, int rc)
+    throws IOException, InterruptedException {
+    if (Test.isFailFastTriggered(execution))
+      return rc;
+    final Run<?, ?> run = execution.getRun();
+    final PrintStream log = execution.getListener().getLogger();
+    if (failedTests.isEmpty()) {
+      log.println(Messages.MSBuild_Test_RetryNoFailedTests());
+      return rc;
+    }
+    final FilePath workspace = execution.getWorkspace();
+    final FilePath tempDir = WorkspaceList.tempDir(workspace);
+    final FilePath retriesDir = (tempDir == null ? workspace : tempDir).child("dotnet-test-retries");
+    final String baseSettings = this.settings == null ? null : workspace.child(this.settings).getRemote();
+    final String filter = invocation.getFilter() == null ? this.filter : invocation.getFilter();
+    final String id = UUID.randomUUID().toString();
+    final Set<String> failing = new TreeSet<>(failedTests);
+    final Set<String> flaky = new TreeSet<>();
+    int lastRc = rc;
+    for (int attempt = 1; attempt <= this.retryFailedTests && !failing.isEmpty(); ++attempt) {
+      log.println(Messages.MSBuild_Test_RetryAttempt(attempt, this.retryFailedTests, failing.size()));
+      final FilePath resultsDir = retriesDir.child(id + "-" + attempt);
+      resultsDir.mkdirs();
+      final FilePath settingsFile = resultsDir.child("retry.runsettings");
+      settingsFile.act(new ShardRunSettings(baseSettings, TestShards.filterFor(failing, filter), resultsDir.getRemote()));
+      final ArgumentListBuilder cmdLine = execution.createCommandLine();
+      this.addCommandLineArguments(execution.createArguments(cmdLine), invocation.withSettings(settingsFile.getRemote()), false,
+        null, true);
+      lastRc = this.run(execution, cmdLine, scanner);
+      final TrxResults results = resultsDir.act(new TrxResults.Scan());
+      resultsDir.deleteRecursive();
+      // Only tests that actually ran (and did not fail) count as passed.
+      final Set<String> passed = new TreeSet<>();
+      for (final String test : failing) {
+        if (results.getDurations().containsKey(test) && !results.getFailedTests().contains(test))
+          passed.add(test);
+      }
+      if (passed.isEmpty() && results.getFailedTests().isEmpty())
+        break;
+      failing.removeAll(passed);
+      flaky.addAll(passed);
+    }
+    if (!flaky.isEmpty()) {
+      TestResultsAction.forRun(run).addFlakyTests(flaky);
+      for (final String test : flaky)
+        log.println(Messages.MSBuild_Test_RetryFlaky(test));
+    }
+    if (!failing.isEmpty()) {
+      log.println(Messages.MSBuild_Test_RetryStillFailing(failing.size()));
+      return lastRc == 0 ? rc : lastRc;
+    }
+    return lastRc;
+  }
+
+  /**
+   * Determines the invocations to run for this command.
+   * <p>
+   * When test impact analysis has been requested (via {@link #setTestImpact(boolean)}), only the affected test projects are run
+   * and, where the per-test coverage information stored for earlier builds allows it, only their impacted tests (via a generated
+   * filter expression). All tests are run when the changes since the last successful build are not known, or when a full run is
+   * due (see {@link #setFullTestRunInterval(Integer)}).
+   *
+   * @param execution The execution context.
+   *
+   * @return The invocations to run for this command; empty when no tests are impacted by the changes.
+   *
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  @NonNull
+  @Override
+  protected List<Invocation> selectInvocations(@NonNull CommandExecution execution) throws IOException, InterruptedException {
+    if (!this.testImpact)
+      return super.selectInvocations(execution);
+    final Run<?, ?> run = execution.getRun();
+    final PrintStream log = execution.getListener().getLogger();
+    final List<Invocation> invocations = this.getInvocations();
+    final Set<String> changedInCheckout = AffectedProjects.getChangedPaths(run);
+    if (changedInCheckout == null) {
+      log.println(Messages.MSBuild_Command_AffectedUnknown());
+      TestImpactAction.record(run, true);
+      return invocations;
+    }
+    final Set<String> changed = AffectedProjects.mapToWorkingDirectory(run, execution.getWorkspace(), changedInCheckout);
+    if (changed == null) {
+      log.println(Messages.MSBuild_Command_AffectedUnmapped());
+      TestImpactAction.record(run, true);
+      return invocations;
+    }
+    if (TestImpactAction.isFullRunDue(run, this.fullTestRunInterval)) {
+      log.println(Messages.MSBuild_Test_ImpactFullRun(this.fullTestRunInterval));
+      TestImpactAction.record(run, true);
+      return invocations;
+    }
+    TestImpactAction.record(run, false);
+    final TestImpact impact = TestImpact.load(run);
+    return this.selectAffectedInvocations(execution, invocations, changed, (invocation, graph, node) -> {
+      if (!node.isTestProject())
+        return null;
+      final Invocation refined = impact.refine(invocation, graph, node, changed, this.filter);
+      if (refined == null)
+        log.println(Messages.MSBuild_Test_ImpactNoTests(node.getPath()));
+      else if (refined.getFilter() != null)
+        log.println(Messages.MSBuild_Test_ImpactFiltered(node.getPath()));
+      return refined;
+    });
+  }
+
+  /**
+   * Runs this shard's part of the tests.
+   * <p>
+   * For each invocation, a test catalog is determined by listing the tests; it is kept with the build (and reused by later builds
+   * of the job, see {@link TestShards#loadCatalog(Run, String)}), keyed on the input hashes of the projects involved, the SDK
+   * versions and the command line. The tests are then split into shards of roughly equal
+   * duration (based on the durations measured for earlier builds), and the tests for this shard are run, using a generated
+   * {@code .runsettings} file containing the test case filter and a TRX logger. With dynamic sharding (see
+   * {@link #setDynamicSharding(boolean)}), shards instead keep taking batches of tests from a queue shared by all shards of the
+   * build, until it is empty.
+   * <p>
+   * The results of each batch are recorded in the build's {@link TestShardsAction}, and the measured durations are stored for
+   * use by later builds.
+   *
+   * @param execution The prepared execution context (SDK, environment and working directory).
+   * @param scanner   The scanner to send command output to.
+   *
+   * @return The first non-zero return code for the tests run, or {@code 0} if all succeeded.
+   *
+   * @throws AbortException       When something goes wrong.
+   * @throws IOException          When an I/O error occurs.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  private int executeShard(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner)
+    throws AbortException, IOException, InterruptedException {
+    final int count = this.shardCount;
+    final Integer index = this.shardIndex;
+    if (!this.dynamicSharding && (index == null || index > count))
+      throw new AbortException(Messages.MSBuild_Test_ShardInvalidIndex(count));
+    final String shard = (index == null ? "*" : index.toString()) + "/" + count;
+    final Run<?, ?> run = execution.getRun();
+    final PrintStream log = execution.getListener().getLogger();
+    final Map<String, Long> durations = TestShards.loadDurations(run);
+    int rc = 0;
+    int batchNumber = 0;
+    for (final Invocation invocation : this.selectInvocations(execution)) {
+      final List<String> catalog = this.getTestCatalog(execution, invocation);
+      if (this.dynamicSharding) {
+        final Queue<List<String>> queue = TestShardQueue.get(run, invocation.getDisplayName(),
+          () -> TestShards.batches(catalog, durations, count));
+        for (List<String> batch = queue.poll(); batch != null && !Test.isFailFastTriggered(execution); batch = queue.poll()) {
+          final int batchRc = this.runShardBatch(execution, scanner, invocation, shard, ++batchNumber, batch, durations);
+          if (rc == 0)
+            rc = batchRc;
+        }
+        continue;
+      }
+      final List<String> tests = TestShards.partition(catalog, durations, count).get(index - 1);
+      if (tests.isEmpty()) {
+        log.println(Messages.MSBuild_Test_ShardEmpty(shard));
+        continue;
+      }
+      final int batchRc = this.runShardBatch(execution, scanner, invocation, shard, ++batchNumber, tests, durations);
+      if (rc == 0)
+        rc = batchRc;
+    }
+    return rc;
+  }
+
+  private static boolean isFailFastTriggered(@NonNull CommandExecution execution) {
+    final FailFast failFast = execution.getFailFast();
+    return failFast != null && failFast.isTriggered();
+  }
+
+  @NonNull
+  private List<String> getTestCatalog(@NonNull CommandExecution execution, @NonNull Invocation invocation)
+    throws AbortException, IOException, InterruptedException {
+    final PrintStream log = execution.getListener().getLogger();
+    final String name = invocation.getProject() == null ? "." : invocation.getProject();
+    final ArgumentListBuilder cmdLine = execution.createCommandLine();
+    this.addCommandLineArguments(execution.createArguments(cmdLine), invocation, true, null, false);
+    String key = null;
+    try {
+      final ProjectGraph graph = execution.getWorkspace().act(new ProjectGraph.Scan(invocation.getProject()));
+      final Map<String, String> hashes = new TreeMap<>();
+      for (final ProjectGraph.Node node : graph.getNodes())
+        hashes.put(node.getPath(), node.getInputHash());
+      final DotNetSDK sdk = execution.getSdk();
+      final String sdkVersions = sdk == null ? "" : String.join(",", sdk.getSdkVersions(execution.getWorkspace().getChannel()));
+      // The executable is left out, so that agents with the SDK in a different location share the catalog.
+      final List<String> args = cmdLine.toList();
+      key = FileHashes.combine(hashes, sdkVersions, String.join("\u0000", args.subList(1, args.size())));
+      final List<String> catalog = TestShards.loadCatalog(execution.getRun(), key);
+      if (catalog != null) {
+        log.println(Messages.MSBuild_Test_ShardCatalogCached(name, catalog.size()));
+        return catalog;
+      }
+    }
+    catch (IOException e) {
+      log.println(Messages.MSBuild_Test_ShardCatalogNotCached(e));
+    }
+    // The listing is captured rather than logged; it is only shown when listing fails.
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final int rc;
+    try (final DiagnosticScanner listing = new DiagnosticScanner(output, execution.getCharset())) {
+      rc = execution.run(cmdLine, listing);
+    }
+    if (rc != 0) {
+      output.writeTo(log);
+      throw new AbortException(Messages.MSBuild_Test_ShardListFailed(rc));
+    }
+    final List<String> catalog = TestShards.parseTestList(output.toString(execution.getCharset()));
+    log.println(Messages.MSBuild_Test_ShardCatalogListed(name, catalog.size()));
+    if (key != null) {
       try {
-        args.addPropertyOptions("", this.runSettings);
+        TestShards.storeCatalog(execution.getRun(), key, catalog);
       }
       catch (IOException e) {
-        Test.LOGGER.log(Level.FINE, Messages.MSBuild_Test_BadRunSettings(), e);
+        log.println(Messages.MSBuild_Test_ShardCatalogNotCached(e));
       }
     }
+    return catalog;
   }
 
-  private static final Logger LOGGER = Logger.getLogger(Test.class.getName());
+  private int runShardBatch(@NonNull CommandExecution execution, @NonNull DiagnosticScanner scanner, @NonNull Invocation invocation,
+                            @NonNull String shard, int batchNumber, @NonNull List<String> tests,
+                            @NonNull Map<String, Long> durations) throws IOException, InterruptedException {
+    final Run<?, ?> run = execution.getRun();
+    final FilePath workspace = execution.getWorkspace();
+    final String label = "shard-" + (this.shardIndex == null ? UUID.randomUUID().toString() : this.shardIndex.toString()) +
+                         "-" + batchNumber;
+    final FilePath resultsDir;
+    if (this.resultsDirectory != null)
+      resultsDir = workspace.child(this.resultsDirectory).child(label);
+    else {
+      final FilePath tempDir = WorkspaceList.tempDir(workspace);
+      resultsDir = (tempDir == null ? workspace : tempDir).child("dotnet-test-shards").child(label);
+    }
+    resultsDir.deleteRecursive();
+    resultsDir.mkdirs();
+    final FilePath settingsFile = resultsDir.child("shard.runsettings");
+    final String baseSettings = this.settings == null ? null : workspace.child(this.settings).getRemote();
+    final String filter = TestShards.filterFor(tests, invocation.getFilter() == null ? this.filter : invocation.getFilter());
+    settingsFile.act(new ShardRunSettings(baseSettings, filter, resultsDir.getRemote()));
+    final long estimated = TestShards.duration(tests, durations);
+    execution.getListener().getLogger().println(Messages.MSBuild_Test_ShardBatch(shard, tests.size(), estimated));
+    final ArgumentListBuilder cmdLine = execution.createCommandLine();
+    this.addCommandLineArguments(execution.createArguments(cmdLine), invocation.withSettings(settingsFile.getRemote()), false, null,
+      false);
+    final long start = System.currentTimeMillis();
+    int rc = this.run(execution, cmdLine, scanner);
+    final long elapsed = System.currentTimeMillis() - start;
+    final TrxResults results = resultsDir.act(new TrxResults.Scan());
+    TestShards.storeDurations(run, results.getDurations());
+    TestShardsAction.forRun(run).add(new TestShardsAction.Batch(shard, invocation.getProject(), estimated, elapsed, results));
+    if (rc != 0 && this.retryFailedTests != null)
+      rc = this.retryFailedTests(execution, scanner, invocation, results.getFailedTests(), rc);
+    if (this.recordResults)
+      this.recordResults(execution, resultsDir, 0);
+    return rc;
+  }
+
+  /** Determines the current time on an agent, as used for file timestamps. */
+  private static long getAgentTime(@NonNull FilePath workspace) throws IOException, InterruptedException {
+    final FilePath tempDir = WorkspaceList.tempDir(workspace);
+    final FilePath marker = (tempDir == null ? workspace : tempDir).child("dotnet-test-results.start");
+    marker.write("", "UTF-8");
+    final long time = marker.lastModified();
+    marker.delete();
+    return time;
+  }
+
+  private void recordResults(@NonNull CommandExecution execution, @NonNull FilePath dir, long since)
+    throws IOException, InterruptedException {
+    final Run<?, ?> run = execution.getRun();
+    final PrintStream log = execution.getListener().getLogger();
+    final FilePath workspace = execution.getWorkspace();
+    final FilePath tempDir = WorkspaceList.tempDir(workspace);
+    final String fileName = TestResultStore.FILE_PREFIX + UUID.randomUUID() + TestResultStore.FILE_EXTENSION;
+    final FilePath storeFile = (tempDir == null ? workspace : tempDir).child(fileName);
+    try {
+      final FilePath storeDir = storeFile.getParent();
+      if (storeDir != null)
+        storeDir.mkdirs();
+      final TestResultsAction action = run.getAction(TestResultsAction.class);
+      final Set<String> flaky = action == null ? Collections.emptySet() : action.getFlakyTests();
+      final TestResultSummary summary = dir.act(new TestResultStore.Record(storeFile.getRemote(), fileName, since, flaky));
+      if (summary.getTotal() == 0) {
+        log.println(Messages.MSBuild_Test_ResultsNotFound());
+        return;
+      }
+      storeFile.copyTo(new FilePath(new File(run.getRootDir(), fileName)));
+      TestResultsAction.forRun(run).add(summary);
+      log.println(Messages.MSBuild_Test_ResultsRecorded(summary.getTotal(), summary.getPassed(), summary.getFailed(),
+        summary.getSkipped()));
+    }
+    finally {
+      if (storeFile.exists())
+        storeFile.delete();
+    }
+  }
+
+  private void mergeCoverage(@NonNull CommandExecution execution, @NonNull String report, long since)
+    throws IOException, InterruptedException {
+    final PrintStream log = execution.getListener().getLogger();
+    final FilePath workspace = execution.getWorkspace();
+    // Shard batches and retries write their results under the workspace's temporary directory.
+    final List<String> roots = new ArrayList<>();
+    roots.add((this.resultsDirectory == null ? workspace : workspace.child(this.resultsDirectory)).getRemote());
+    final FilePath tempDir = WorkspaceList.tempDir(workspace);
+    if (tempDir != null)
+      roots.add(tempDir.getRemote());
+    final FilePath output = workspace.child(report);
+    final CoverageSummary summary = workspace.act(new CoberturaMerge(roots, since, output.getRemote(), report));
+    if (summary.getReports() == 0) {
+      log.println(Messages.MSBuild_Test_CoverageNotFound());
+      return;
+    }
+    CoverageAction.forRun(execution.getRun()).add(summary);
+    log.println(Messages.MSBuild_Test_CoverageMerged(summary.getReports(), report, summary.getLinesCovered(),
+      summary.getLinesValid()));
+  }
+
+  private void storeTestImpactMap(@NonNull CommandExecution execution) throws IOException, InterruptedException {
+    final PrintStream log = execution.getListener().getLogger();
+    final FilePath mapFile = execution.getWorkspace().child(this.testImpactMap);
+    if (!mapFile.exists()) {
+      log.println(Messages.MSBuild_Test_ImpactMapMissing(this.testImpactMap));
+      return;
+    }
+    final TestImpact produced;
+    try (final InputStream in = mapFile.read()) {
+      produced = TestImpact.read(in);
+    }
+    final Run<?, ?> run = execution.getRun();
+    final TestImpact impact = TestImpact.load(run);
+    synchronized (run) {
+      final File stored = new File(run.getRootDir(), TestImpact.FILE_NAME);
+      if (stored.isFile()) {
+        try (final InputStream in = Files.newInputStream(stored.toPath())) {
+          impact.merge(TestImpact.read(in));
+        }
+      }
+      impact.merge(produced);
+      impact.write(stored);
+    }
+    log.println(Messages.MSBuild_Test_ImpactMapStored(impact.size()));
+  }
 
   //region Properties
 
@@ -299,6 +867,32 @@ public final class Test extends MSBuildCommand {
     this.diag = Util.fixEmptyAndTrim(diag);
   }
 
+  private boolean dynamicSharding;
+
+  /**
+   * Determines whether shards take batches of tests from a shared queue, instead of running a fixed part of the tests.
+   *
+   * @return {@code true} when shards take batches of tests from a shared queue; {@code false} otherwise.
+   */
+  public boolean isDynamicSharding() {
+    return this.dynamicSharding;
+  }
+
+  /**
+   * Determines whether shards take batches of tests from a shared queue, instead of running a fixed part of the tests (see
+   * {@link #setShardCount(Integer)}).
+   * <p>
+   * The queue is shared by all shards of the build that run the same project, target framework and runtime identifier, and holds
+   * several batches per shard, longest running first. Each shard keeps taking batches until the queue is empty, so that a shard
+   * that finishes early takes on work that would otherwise wait for a slower one. For this mode, the shard index is optional.
+   *
+   * @param dynamicSharding {@code true} to have shards take batches of tests from a shared queue; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setDynamicSharding(boolean dynamicSharding) {
+    this.dynamicSharding = dynamicSharding;
+  }
+
   private String filter;
 
   /**
@@ -324,23 +918,93 @@ public final class Test extends MSBuildCommand {
   private String framework;
 
   /**
-   * Gets the target framework moniker to use.
+   * Gets the sole target framework moniker to use.
    *
-   * @return The target framework moniker to use.
+   * @return The sole target framework moniker to use, or {@code null} when there is not exactly one framework set.
    */
   @CheckForNull
   public String getFramework() {
-    return this.framework;
+    return DotNetUtils.singleToken(this.framework);
   }
 
   /**
-   * Sets the target framework moniker to use.
+   * Sets the sole target framework moniker to use.
+   * <p>
+   * To set more than one, use {@link #setFrameworks(String...)} instead.
    *
-   * @param framework The target framework moniker to use.
+   * @param framework The sole target framework moniker to use.
    */
   @DataBoundSetter
   public void setFramework(@CheckForNull String framework) {
-    this.framework = Util.fixEmptyAndTrim(framework);
+    this.framework = DotNetUtils.detokenize(' ', framework);
+  }
+
+  /**
+   * Gets the target framework monikers to use. The command is run separately for each of them.
+   *
+   * @return The target framework monikers to use.
+   */
+  @CheckForNull
+  public String[] getFrameworks() {
+    return DotNetUtils.tokenize(this.framework);
+  }
+
+  /**
+   * Sets the target framework monikers to use. The command is run separately for each of them.
+   *
+   * @param frameworks The target framework monikers to use.
+   */
+  @DataBoundSetter
+  public void setFrameworks(@CheckForNull String... frameworks) {
+    this.framework = DotNetUtils.detokenize(' ', frameworks);
+  }
+
+  /**
+   * Gets the target framework monikers to use.
+   *
+   * @return The target framework monikers to use.
+   */
+  @CheckForNull
+  public String getFrameworksString() {
+    return this.framework;
+  }
+
+  /**
+   * Sets the target framework monikers to use.
+   *
+   * @param frameworks The target framework monikers to use.
+   */
+  @DataBoundSetter
+  public void setFrameworksString(@CheckForNull String frameworks) {
+    this.framework = Util.fixEmptyAndTrim(frameworks);
+  }
+
+  private Integer fullTestRunInterval;
+
+  /**
+   * Gets the maximum number of builds between full test runs, when using test impact analysis.
+   *
+   * @return The maximum number of builds between full test runs, or {@code null} if full test runs are only done when the changes
+   * are not known.
+   */
+  @CheckForNull
+  public Integer getFullTestRunInterval() {
+    return this.fullTestRunInterval;
+  }
+
+  /**
+   * Sets the maximum number of builds between full test runs, when using test impact analysis (see
+   * {@link #setTestImpact(boolean)}). For example, a value of 10 means that after a full test run, at most 9 builds will only run
+   * impacted tests.
+   *
+   * @param fullTestRunInterval The maximum number of builds between full test runs; {@code null} (or a value less than 1) means
+   *                            full test runs are only done when the changes are not known.
+   */
+  @DataBoundSetter
+  public void setFullTestRunInterval(@CheckForNull Integer fullTestRunInterval) {
+    if (fullTestRunInterval != null && fullTestRunInterval < 1)
+      fullTestRunInterval = null;
+    this.fullTestRunInterval = fullTestRunInterval;
   }
 
   private boolean listTests;
@@ -364,6 +1028,31 @@ public final class Test extends MSBuildCommand {
     this.listTests = listTests;
   }
 
+  private boolean liveResults;
+
+  /**
+   * Determines whether test results should be shown while the tests are running.
+   *
+   * @return {@code true} when test results are shown while the tests are running; {@code false} otherwise.
+   */
+  public boolean isLiveResults() {
+    return this.liveResults;
+  }
+
+  /**
+   * Determines whether test results should be shown while the tests are running.
+   * <p>
+   * When set, the test output is scanned for test results as it streams in from the agent, and these are reported on the build
+   * (via a {@link TestProgressAction}), so that failures show up as soon as they happen. At the default (minimal) console
+   * verbosity, only failed tests are reported individually; passed and skipped tests are counted as each test assembly completes.
+   *
+   * @param liveResults {@code true} to show test results while the tests are running; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setLiveResults(boolean liveResults) {
+    this.liveResults = liveResults;
+  }
+
   private String logger;
 
   /**
@@ -386,6 +1075,33 @@ public final class Test extends MSBuildCommand {
     this.logger = Util.fixEmptyAndTrim(logger);
   }
 
+  private String mergeCoverage;
+
+  /**
+   * Gets the path of the merged code coverage report to write.
+   *
+   * @return The path of the merged code coverage report to write, relative to the workspace.
+   */
+  @CheckForNull
+  public String getMergeCoverage() {
+    return this.mergeCoverage;
+  }
+
+  /**
+   * Sets the path of the merged code coverage report to write.
+   * <p>
+   * When set, after the tests have run, all Cobertura coverage reports they produced ({@code coverage.cobertura.xml}, as written by
+   * the {@code XPlat Code Coverage} data collector; see {@link #setCollect(String)}) are merged on the agent, streaming through
+   * them while keeping only per-file line bitsets. The merged report (with line coverage only) is written to this path, and a
+   * summary is attached to the build.
+   *
+   * @param mergeCoverage The path of the merged code coverage report to write, relative to the workspace.
+   */
+  @DataBoundSetter
+  public void setMergeCoverage(@CheckForNull String mergeCoverage) {
+    this.mergeCoverage = Util.fixEmptyAndTrim(mergeCoverage);
+  }
+
   private boolean noBuild;
 
   /**
@@ -428,6 +1144,32 @@ public final class Test extends MSBuildCommand {
     this.noRestore = noRestore;
   }
 
+  private boolean recordResults;
+
+  /**
+   * Determines whether the test results should be recorded for the build.
+   *
+   * @return {@code true} when the test results are recorded for the build; {@code false} otherwise.
+   */
+  public boolean isRecordResults() {
+    return this.recordResults;
+  }
+
+  /**
+   * Determines whether the test results should be recorded for the build.
+   * <p>
+   * When set, a TRX logger is added (unless one has been configured via {@link #setLogger(String)}), and after the tests have run,
+   * the TRX files they produced (in the results directory, if one has been specified via {@link #setResultsDirectory(String)}, or
+   * anywhere in the workspace otherwise) are read on the agent. The per-test results are stored in a compact file in the build's
+   * directory, and a report of the slowest tests and test classes is attached to the build.
+   *
+   * @param recordResults {@code true} to record the test results for the build; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setRecordResults(boolean recordResults) {
+    this.recordResults = recordResults;
+  }
+
   private String resultsDirectory;
 
   /**
@@ -450,6 +1192,35 @@ public final class Test extends MSBuildCommand {
     this.resultsDirectory = Util.fixEmptyAndTrim(resultsDirectory);
   }
 
+  private Integer retryFailedTests;
+
+  /**
+   * Gets the number of times failed tests are run again.
+   *
+   * @return The number of times failed tests are run again, or {@code null} if they are not run again.
+   */
+  @CheckForNull
+  public Integer getRetryFailedTests() {
+    return this.retryFailedTests;
+  }
+
+  /**
+   * Sets the number of times failed tests are run again.
+   * <p>
+   * When a test run fails, the failed tests are read from its TRX results, and only those tests are run again (without building),
+   * up to this number of times, until they all pass. Tests that pass on a retry are reported as flaky rather than failed, and the
+   * invocation then succeeds. This uses a generated {@code .runsettings} file, based on the one specified via
+   * {@link #setSettings(String)}, if any.
+   *
+   * @param retryFailedTests The number of times failed tests are run again; values less than 1 disable retries.
+   */
+  @DataBoundSetter
+  public void setRetryFailedTests(@CheckForNull Integer retryFailedTests) {
+    if (retryFailedTests != null && retryFailedTests < 1)
+      retryFailedTests = null;
+    this.retryFailedTests = retryFailedTests;
+  }
+
   private String runSettings;
 
   /**
@@ -499,23 +1270,65 @@ public final class Test extends MSBuildCommand {
   private String runtime;
 
   /**
-   * Gets the runtime identifier to use.
+   * Gets the sole runtime identifier to use.
    *
-   * @return The runtime identifier to use.
+   * @return The sole runtime identifier to use, or {@code null} when there is not exactly one runtime identifier set.
    */
   @CheckForNull
   public String getRuntime() {
-    return this.runtime;
+    return DotNetUtils.singleToken(this.runtime);
   }
 
   /**
-   * Sets the runtime identifier to use.
+   * Sets the sole runtime identifier to use.
+   * <p>
+   * To set more than one, use {@link #setRuntimes(String...)} instead.
    *
-   * @param runtime The runtime identifier to use.
+   * @param runtime The sole runtime identifier to use.
    */
   @DataBoundSetter
   public void setRuntime(@CheckForNull String runtime) {
-    this.runtime = Util.fixEmptyAndTrim(runtime);
+    this.runtime = DotNetUtils.detokenize(' ', runtime);
+  }
+
+  /**
+   * Gets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String[] getRuntimes() {
+    return DotNetUtils.tokenize(this.runtime);
+  }
+
+  /**
+   * Sets the runtime identifiers to use. The command is run separately for each of them.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimes(@CheckForNull String... runtimes) {
+    this.runtime = DotNetUtils.detokenize(' ', runtimes);
+  }
+
+  /**
+   * Gets the runtime identifiers to use.
+   *
+   * @return The runtime identifiers to use.
+   */
+  @CheckForNull
+  public String getRuntimesString() {
+    return this.runtime;
+  }
+
+  /**
+   * Sets the runtime identifiers to use.
+   *
+   * @param runtimes The runtime identifiers to use.
+   */
+  @DataBoundSetter
+  public void setRuntimesString(@CheckForNull String runtimes) {
+    this.runtime = Util.fixEmptyAndTrim(runtimes);
   }
 
   private String settings;
@@ -540,6 +1353,61 @@ public final class Test extends MSBuildCommand {
     this.settings = Util.fixEmptyAndTrim(settings);
   }
 
+  private Integer shardCount;
+
+  /**
+   * Gets the number of shards the tests are split into.
+   *
+   * @return The number of shards the tests are split into, or {@code null} if the tests are not sharded.
+   */
+  @CheckForNull
+  public Integer getShardCount() {
+    return this.shardCount;
+  }
+
+  /**
+   * Sets the number of shards the tests are split into.
+   * <p>
+   * Sharding splits a test suite over several build steps (typically parallel branches of a pipeline, running on different
+   * agents), each running with the same settings but a different shard index (see {@link #setShardIndex(Integer)}). The tests are
+   * listed (with the catalog reused by later builds of the job, based on the project inputs), and divided into shards of roughly
+   * equal duration, using the test durations measured for earlier builds. Each shard runs its tests using a generated
+   * {@code .runsettings} file (based on the configured one, if any) holding the test case filter and a TRX logger; the results of
+   * all shards are merged into a single report for the build.
+   *
+   * @param shardCount The number of shards the tests are split into; {@code null} (or a value less than 2) disables sharding.
+   */
+  @DataBoundSetter
+  public void setShardCount(@CheckForNull Integer shardCount) {
+    if (shardCount != null && shardCount < 2)
+      shardCount = null;
+    this.shardCount = shardCount;
+  }
+
+  private Integer shardIndex;
+
+  /**
+   * Gets the (1-based) index of the shard to run.
+   *
+   * @return The (1-based) index of the shard to run.
+   */
+  @CheckForNull
+  public Integer getShardIndex() {
+    return this.shardIndex;
+  }
+
+  /**
+   * Sets the (1-based) index of the shard to run (see {@link #setShardCount(Integer)}).
+   *
+   * @param shardIndex The (1-based) index of the shard to run.
+   */
+  @DataBoundSetter
+  public void setShardIndex(@CheckForNull Integer shardIndex) {
+    if (shardIndex != null && shardIndex < 1)
+      shardIndex = null;
+    this.shardIndex = shardIndex;
+  }
+
   private String testAdapterPath;
 
   /**
@@ -562,6 +1430,59 @@ public final class Test extends MSBuildCommand {
     this.testAdapterPath = Util.fixEmptyAndTrim(testAdapterPath);
   }
 
+  private boolean testImpact;
+
+  /**
+   * Determines whether only the tests impacted by the changes since the last successful build should be run.
+   *
+   * @return {@code true} when only impacted tests are run; {@code false} otherwise.
+   */
+  public boolean isTestImpact() {
+    return this.testImpact;
+  }
+
+  /**
+   * Determines whether only the tests impacted by the changes since the last successful build should be run.
+   * <p>
+   * When enabled, the test projects affected by the changes are determined via the project graph (as for
+   * {@link #setAffectedOnly(boolean)}). Within those, when per-test coverage information from earlier builds is available (see
+   * {@link #setTestImpactMap(String)}) and covers all relevant changed files, a filter expression is generated that selects only
+   * the tests covering a changed file. A full test run is done when the changes are not known, and periodically (see
+   * {@link #setFullTestRunInterval(Integer)}).
+   *
+   * @param testImpact {@code true} to only run impacted tests; {@code false} otherwise.
+   */
+  @DataBoundSetter
+  public void setTestImpact(boolean testImpact) {
+    this.testImpact = testImpact;
+  }
+
+  private String testImpactMap;
+
+  /**
+   * Gets the per-test coverage file produced by the test run.
+   *
+   * @return The per-test coverage file produced by the test run (relative to the working directory).
+   */
+  @CheckForNull
+  public String getTestImpactMap() {
+    return this.testImpactMap;
+  }
+
+  /**
+   * Sets the per-test coverage file produced by the test run, used for test impact analysis (see {@link #setTestImpact(boolean)}).
+   * <p>
+   * This is a tab-separated text file with a line per test, containing the test project, the fully qualified test name and the
+   * source files covered by the test (all relative to the working directory). After the tests have run, its contents are merged
+   * into the information stored for earlier builds and stored with the build.
+   *
+   * @param testImpactMap The per-test coverage file produced by the test run (relative to the working directory).
+   */
+  @DataBoundSetter
+  public void setTestImpactMap(@CheckForNull String testImpactMap) {
+    this.testImpactMap = Util.fixEmptyAndTrim(testImpactMap);
+  }
+
   //endregion
 
   //region DescriptorImpl
@@ -0,0 +1,249 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Per-test coverage information, used to select the tests impacted by a set of changes.
+ * <p>
+ * This is read from a tab-separated text file, with one line per test: the test project (relative to the working directory), the
+ * fully qualified name of the test, and the source files it covers (relative to the working directory, using forward slashes).
+ * Lines starting with {@code #} are ignored. Information produced by a build is merged into that of earlier builds (per test), and
+ * stored in the build's directory on the controller as {@value #FILE_NAME}.
+ */
+final class TestImpact {
+
+  /** The name of the file (in a build's directory) containing its test impact information. */
+  static final String FILE_NAME = "dotnet-test-impact.txt";
+
+  /** Filters longer than this are not used (the project's tests are all run instead), to stay clear of command line limits. */
+  private static final int MAX_FILTER_LENGTH = 8000;
+
+  /** The covered files per test, per test project. */
+  @NonNull
+  private final Map<String, Map<String, Set<String>>> tests = new TreeMap<>();
+
+  /**
+   * Gets the test impact information stored by the most recent earlier build that has any.
+   *
+   * @param run The current build.
+   *
+   * @return The test impact information stored by the most recent earlier build that has any (empty if there is none).
+   *
+   * @throws IOException When the stored information could not be read.
+   */
+  @NonNull
+  static TestImpact load(@NonNull Run<?, ?> run) throws IOException {
+    for (Run<?, ?> previous = run.getPreviousBuild(); previous != null; previous = previous.getPreviousBuild()) {
+      final File file = new File(previous.getRootDir(), TestImpact.FILE_NAME);
+      if (file.isFile()) {
+        try (final InputStream in = Files.newInputStream(file.toPath())) {
+          return TestImpact.read(in);
+        }
+      }
+    }
+    return new TestImpact();
+  }
+
+  /**
+   * Reads test impact information.
+   *
+   * @param in The stream to read from (UTF-8 encoded).
+   *
+   * @return The test impact information.
+   *
+   * @throws IOException When the information could not be read.
+   */
+  @NonNull
+  static TestImpact read(@NonNull InputStream in) throws IOException {
+    final TestImpact impact = new TestImpact();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+      if (line.isEmpty() || line.startsWith("#"))
+        continue;
+      final String[] fields = line.split("\t");
+      if (fields.length < 2)
+        continue;
+      final Set<String> files = new TreeSet<>();
+      for (int i = 2; i < fields.length; ++i)
+        files.add(fields[i].replace('\\', '/'));
+      impact.tests.computeIfAbsent(fields[0].replace('\\', '/'), project -> new TreeMap<>()).put(fields[1], files);
+    }
+    return impact;
+  }
+
+  /**
+   * Merges newer test impact information into this information; for every test it covers, it replaces the existing information.
+   *
+   * @param newer The newer test impact information.
+   */
+  void merge(@NonNull TestImpact newer) {
+    newer.tests.forEach((project, tests) -> this.tests.computeIfAbsent(project, p -> new TreeMap<>()).putAll(tests));
+  }
+
+  /**
+   * Gets the number of tests covered by this information.
+   *
+   * @return The number of tests covered by this information.
+   */
+  int size() {
+    return this.tests.values().stream().mapToInt(Map::size).sum();
+  }
+
+  /**
+   * Writes this information to a file.
+   *
+   * @param file The file to write to.
+   *
+   * @throws IOException When the file could not be written.
+   */
+  void write(@NonNull File file) throws IOException {
+    final File temp = new File(file.getPath() + ".tmp");
+    try (final Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+      for (final Map.Entry<String, Map<String, Set<String>>> project : this.tests.entrySet()) {
+        for (final Map.Entry<String, Set<String>> test : project.getValue().entrySet()) {
+          writer.write(project.getKey());
+          writer.write('\t');
+          writer.write(test.getKey());
+          for (final String covered : test.getValue()) {
+            writer.write('\t');
+            writer.write(covered);
+          }
+          writer.write('\n');
+        }
+      }
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Limits an invocation for an affected test project to the tests impacted by a set of changes.
+   * <p>
+   * Only changes to files in the directory trees of the test project and the projects it (transitively) references are
+   * considered, along with shared build files outside of all project directories. When there is no information for the test
+   * project, or any of those changed files is not covered by any of its tests (for example because it is a project or build file,
+   * or part of the tests themselves), the invocation is returned as is.
+   *
+   * @param invocation The invocation for the test project.
+   * @param graph      The project graph containing the test project.
+   * @param node       The test project.
+   * @param changed    The changed paths (relative to the working directory).
+   * @param filter     The configured filter expression, if any.
+   *
+   * @return The invocation to run (with a filter selecting the impacted tests, where applicable), or {@code null} when none of the
+   * project's tests are impacted.
+   */
+  @CheckForNull
+  MSBuildCommand.Invocation refine(@NonNull MSBuildCommand.Invocation invocation, @NonNull ProjectGraph graph,
+                                   @NonNull ProjectGraph.Node node, @NonNull Set<String> changed, @CheckForNull String filter) {
+    final Map<String, Set<String>> tests = this.tests.get(node.getPath());
+    if (tests == null || tests.isEmpty())
+      return invocation;
+    final Set<String> directories = TestImpact.closureDirectories(graph, node);
+    final Set<String> relevant = new HashSet<>();
+    for (final String path : changed) {
+      if (TestImpact.isInDirectories(path, directories))
+        relevant.add(path);
+      else if (AffectedProjects.isSharedBuildFile(path) && !TestImpact.isInProject(path, graph))
+        relevant.add(path); // never covered by a test, so this will run all the project's tests
+    }
+    final Set<String> covered = new HashSet<>();
+    tests.values().forEach(covered::addAll);
+    if (!covered.containsAll(relevant))
+      return invocation;
+    final StringJoiner impacted = new StringJoiner("|");
+    for (final Map.Entry<String, Set<String>> test : tests.entrySet()) {
+      for (final String file : test.getValue()) {
+        if (relevant.contains(file)) {
+          impacted.add("FullyQualifiedName=" + TestImpact.escape(test.getKey()));
+          break;
+        }
+      }
+    }
+    if (impacted.length() == 0)
+      return null;
+    if (impacted.length() > TestImpact.MAX_FILTER_LENGTH)
+      return invocation;
+    if (filter == null)
+      return invocation.withFilter(impacted.toString());
+    return invocation.withFilter("(" + filter + ")&(" + impacted + ")");
+  }
+
+  private static boolean isInDirectories(@NonNull String path, @NonNull Set<String> directories) {
+    for (final String dir : directories) {
+      if (dir.isEmpty() || path.startsWith(dir + "/"))
+        return true;
+    }
+    return false;
+  }
+
+  private static boolean isInProject(@NonNull String path, @NonNull ProjectGraph graph) {
+    for (final ProjectGraph.Node node : graph.getNodes()) {
+      if (node.getDirectory().isEmpty() || path.startsWith(node.getDirectory() + "/"))
+        return true;
+    }
+    return false;
+  }
+
+  @NonNull
+  private static Set<String> closureDirectories(@NonNull ProjectGraph graph, @NonNull ProjectGraph.Node node) {
+    final Map<String, ProjectGraph.Node> nodes = new HashMap<>();
+    for (final ProjectGraph.Node n : graph.getNodes())
+      nodes.put(n.getPath(), n);
+    final Set<String> seen = new HashSet<>();
+    final Set<String> directories = new HashSet<>();
+    final Deque<ProjectGraph.Node> pending = new ArrayDeque<>();
+    pending.add(node);
+    while (!pending.isEmpty()) {
+      final ProjectGraph.Node current = pending.remove();
+      if (!seen.add(current.getPath()))
+        continue;
+      directories.add(current.getDirectory());
+      for (final String ref : current.getReferences()) {
+        final ProjectGraph.Node referenced = nodes.get(ref);
+        if (referenced != null)
+          pending.add(referenced);
+      }
+    }
+    return directories;
+  }
+
+  /**
+   * Escapes a test name for use in a test filter expression.
+   *
+   * @param name The test name.
+   *
+   * @return The escaped test name.
+   */
+  @NonNull
+  static String escape(@NonNull String name) {
+    final StringBuilder sb = new StringBuilder(name.length());
+    for (final char c : name.toCharArray()) {
+      if ("\\()&|=!~".indexOf(c) >= 0)
+        sb.append('\\');
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+}
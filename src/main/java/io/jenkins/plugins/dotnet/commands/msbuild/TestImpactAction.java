@@ -0,0 +1,73 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+/**
+ * A build action recording whether a "{@code dotnet test}" build step using test impact analysis (see
+ * {@link Test#setTestImpact(boolean)}) ran all tests, or only the impacted ones.
+ */
+public final class TestImpactAction extends InvisibleAction {
+
+  /**
+   * Creates a new test impact action.
+   *
+   * @param fullRun Indicates whether all tests were run.
+   */
+  TestImpactAction(boolean fullRun) {
+    this.fullRun = fullRun;
+  }
+
+  private final boolean fullRun;
+
+  /**
+   * Determines whether all tests were run.
+   *
+   * @return {@code true} when all tests were run; {@code false} when only impacted tests were run.
+   */
+  public boolean isFullRun() {
+    return this.fullRun;
+  }
+
+  /**
+   * Determines whether a full test run is due, based on the number of builds that only ran impacted tests since the last full run.
+   *
+   * @param run      The current build.
+   * @param interval The maximum number of builds between full test runs; {@code null} when full runs are not periodic.
+   *
+   * @return {@code true} when a full test run is due; {@code false} otherwise.
+   */
+  static boolean isFullRunDue(@NonNull Run<?, ?> run, @CheckForNull Integer interval) {
+    if (interval == null)
+      return false;
+    int selective = 0;
+    for (Run<?, ?> previous = run.getPreviousBuild(); previous != null; previous = previous.getPreviousBuild()) {
+      final TestImpactAction action = previous.getAction(TestImpactAction.class);
+      if (action == null)
+        continue;
+      if (action.isFullRun())
+        return selective + 1 >= interval;
+      ++selective;
+    }
+    return true;
+  }
+
+  /**
+   * Records whether all tests were run for a build. When a build runs several test steps, it only counts as a full run when all of
+   * them ran all tests.
+   *
+   * @param run     The build.
+   * @param fullRun Indicates whether all tests were run.
+   */
+  static void record(@NonNull Run<?, ?> run, boolean fullRun) {
+    synchronized (run) {
+      final TestImpactAction existing = run.getAction(TestImpactAction.class);
+      if (existing != null)
+        fullRun &= existing.isFullRun();
+      run.addOrReplaceAction(new TestImpactAction(fullRun));
+    }
+  }
+
+}
@@ -0,0 +1,255 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.model.Run;
+import io.jenkins.plugins.dotnet.commands.Messages;
+import jenkins.model.RunAction2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A build action showing test progress while {@code dotnet test} runs (see {@link Test#setLiveResults(boolean)}).
+ * <p>
+ * Results are fed in by {@link TestProgressStream} as the test output streams in, so failures show up as soon as they happen,
+ * rather than when the test run ends. Only the first {@value #MAX_FAILURES} failures are kept.
+ */
+public final class TestProgressAction implements RunAction2 {
+
+  /** The maximum number of failures kept. */
+  static final int MAX_FAILURES = 100;
+
+  /** Creates a new test progress action. */
+  TestProgressAction() {
+  }
+
+  private transient Run<?, ?> run;
+
+  private int failed;
+
+  @NonNull
+  private final List<Failure> failures = new ArrayList<>();
+
+  private int passed;
+
+  private int skipped;
+
+  /**
+   * Gets (creating and attaching it when needed) the test progress action for a build.
+   *
+   * @param run The build.
+   *
+   * @return The build's test progress action.
+   */
+  @NonNull
+  static TestProgressAction forRun(@NonNull Run<?, ?> run) {
+    synchronized (run) {
+      TestProgressAction action = run.getAction(TestProgressAction.class);
+      if (action == null) {
+        action = new TestProgressAction();
+        run.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  /**
+   * Adds test counts (for tests that were not reported individually).
+   *
+   * @param passed  The number of passed tests to add.
+   * @param failed  The number of failed tests to add.
+   * @param skipped The number of skipped tests to add.
+   */
+  synchronized void addCounts(int passed, int failed, int skipped) {
+    this.passed += passed;
+    this.failed += failed;
+    this.skipped += skipped;
+  }
+
+  /**
+   * Records a test result.
+   *
+   * @param name     The name of the test.
+   * @param outcome  The outcome of the test.
+   * @param duration The duration of the test, as reported (e.g. {@code 12 ms}).
+   */
+  synchronized void record(@NonNull String name, @NonNull TestResultStore.Outcome outcome, @NonNull String duration) {
+    switch (outcome) {
+      case PASSED:
+        ++this.passed;
+        break;
+      case FAILED:
+        ++this.failed;
+        if (this.failures.size() < TestProgressAction.MAX_FAILURES) {
+          final Run<?, ?> r = this.run;
+          final long elapsed = r == null ? 0 : System.currentTimeMillis() - r.getStartTimeInMillis();
+          this.failures.add(new Failure(name, duration, elapsed));
+        }
+        break;
+      default:
+        ++this.skipped;
+        break;
+    }
+  }
+
+  @NonNull
+  @Override
+  public String getDisplayName() {
+    return Messages.MSBuild_Test_ProgressAction_DisplayName();
+  }
+
+  /**
+   * Gets the number of failed tests so far.
+   *
+   * @return The number of failed tests so far.
+   */
+  public synchronized int getFailed() {
+    return this.failed;
+  }
+
+  /**
+   * Gets the failures seen so far.
+   *
+   * @return The failures seen so far (at most {@value #MAX_FAILURES}), in the order they occurred.
+   */
+  @NonNull
+  public synchronized List<Failure> getFailures() {
+    return Collections.unmodifiableList(new ArrayList<>(this.failures));
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "clipboard.png";
+  }
+
+  /**
+   * Gets the number of passed tests so far.
+   *
+   * @return The number of passed tests so far.
+   */
+  public synchronized int getPassed() {
+    return this.passed;
+  }
+
+  /**
+   * Gets the build this action is attached to.
+   *
+   * @return The build this action is attached to.
+   */
+  @CheckForNull
+  public Run<?, ?> getRun() {
+    return this.run;
+  }
+
+  /**
+   * Gets the number of skipped tests so far.
+   *
+   * @return The number of skipped tests so far.
+   */
+  public synchronized int getSkipped() {
+    return this.skipped;
+  }
+
+  /**
+   * Gets the number of tests run so far.
+   *
+   * @return The number of tests run so far.
+   */
+  public synchronized int getTotal() {
+    return this.passed + this.failed + this.skipped;
+  }
+
+  @Override
+  public String getUrlName() {
+    return "dotnet-test-progress";
+  }
+
+  /**
+   * Determines whether the build is still running.
+   *
+   * @return {@code true} when the build is still running; {@code false} otherwise.
+   */
+  public boolean isBuilding() {
+    final Run<?, ?> r = this.run;
+    return r != null && r.isBuilding();
+  }
+
+  @Override
+  public void onAttached(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  @Override
+  public void onLoad(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  /** A failed test, as seen while the tests were running. */
+  public static final class Failure {
+
+    /**
+     * Creates a new failure.
+     *
+     * @param name     The name of the test.
+     * @param duration The duration of the test, as reported.
+     * @param elapsed  The time since the start of the build at which the failure was seen (in milliseconds).
+     */
+    Failure(@NonNull String name, @NonNull String duration, long elapsed) {
+      this.name = name;
+      this.duration = duration;
+      this.elapsed = elapsed;
+    }
+
+    @NonNull
+    private final String duration;
+
+    private final long elapsed;
+
+    @NonNull
+    private final String name;
+
+    /**
+     * Gets the duration of the test.
+     *
+     * @return The duration of the test, as reported (e.g. {@code 12 ms}).
+     */
+    @NonNull
+    public String getDuration() {
+      return this.duration;
+    }
+
+    /**
+     * Gets the time since the start of the build at which the failure was seen.
+     *
+     * @return The time since the start of the build at which the failure was seen (in milliseconds).
+     */
+    public long getElapsed() {
+      return this.elapsed;
+    }
+
+    /**
+     * Gets the time since the start of the build at which the failure was seen, as a string.
+     *
+     * @return The time since the start of the build at which the failure was seen (e.g. {@code 1 min 12 sec}).
+     */
+    @NonNull
+    public String getElapsedString() {
+      return Util.getTimeSpanString(this.elapsed);
+    }
+
+    /**
+     * Gets the name of the test.
+     *
+     * @return The name of the test.
+     */
+    @NonNull
+    public String getName() {
+      return this.name;
+    }
+
+  }
+
+}
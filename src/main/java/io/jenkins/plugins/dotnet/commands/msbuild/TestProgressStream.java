@@ -0,0 +1,125 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An output stream that picks up test results from the output of {@code dotnet test} as it streams in, forwarding all output
+ * unchanged.
+ * <p>
+ * The console logger reports each failed test (and, at normal verbosity or higher, each passed or skipped test) on a line of its
+ * own, and ends the run for each test assembly with a summary line. Individual results are passed on to a
+ * {@link TestProgressAction} as they are seen; the counts from a summary line are used for the tests that were not reported
+ * individually. Like {@link io.jenkins.plugins.dotnet.console.DiagnosticScanner}, this relies on the (English) output format.
+ */
+public final class TestProgressStream extends LineTransformationOutputStream {
+
+  /** Regular expression pattern for a test result line: outcome, test name and duration. */
+  private static final Pattern RE_RESULT = Pattern.compile("^ {1,4}(Passed|Failed|Skipped) (\\S.*) \\[([^\\]]+)\\]$");
+
+  /** Regular expression pattern for a test assembly summary line. */
+  private static final Pattern RE_SUMMARY =
+    Pattern.compile("^(?:Passed|Failed)! +- +Failed: +(\\d+), +Passed: +(\\d+), +Skipped: +(\\d+), +Total: +\\d+.*$");
+
+  /**
+   * Creates a new test progress stream.
+   *
+   * @param out     The output stream to forward all output to.
+   * @param charset The character set in use.
+   * @param action  The action to report test results to.
+   */
+  public TestProgressStream(@NonNull OutputStream out, @NonNull Charset charset, @NonNull TestProgressAction action) {
+    this.out = out;
+    this.charset = charset;
+    this.action = action;
+  }
+
+  @NonNull
+  private final TestProgressAction action;
+
+  @NonNull
+  private final Charset charset;
+
+  @NonNull
+  private final OutputStream out;
+
+  /** The number of failed tests reported individually since the last summary line. */
+  private int failed;
+
+  /** The number of passed tests reported individually since the last summary line. */
+  private int passed;
+
+  /** The number of skipped tests reported individually since the last summary line. */
+  private int skipped;
+
+  /**
+   * Forces end-of-line processing for any pending output; the wrapped output stream is <em>not</em> closed.
+   *
+   * @throws IOException When thrown by {@link LineTransformationOutputStream#close()}.
+   */
+  @Override
+  public void close() throws IOException {
+    super.close();
+    this.out.flush();
+  }
+
+  /**
+   * Flushes the wrapped output stream.
+   *
+   * @throws IOException When thrown by {@link OutputStream#flush()}.
+   */
+  @Override
+  public void flush() throws IOException {
+    this.out.flush();
+  }
+
+  /**
+   * Scans a line of output, then forwards it to the wrapped output stream.
+   *
+   * @param lineBytes  The raw line contents, including any line terminator.
+   * @param lineLength The length of the line within {@code lineBytes}.
+   *
+   * @throws IOException When thrown by {@link OutputStream#write(byte[], int, int)}.
+   */
+  @Override
+  protected void eol(byte[] lineBytes, int lineLength) throws IOException {
+    this.out.write(lineBytes, 0, lineLength);
+    final String line = this.trimEOL(this.charset.decode(ByteBuffer.wrap(lineBytes, 0, lineLength)).toString());
+    Matcher m = TestProgressStream.RE_RESULT.matcher(line);
+    if (m.matches()) {
+      final TestResultStore.Outcome outcome = TestResultStore.Outcome.fromTrx(m.group(1));
+      switch (outcome) {
+        case PASSED:
+          ++this.passed;
+          break;
+        case FAILED:
+          ++this.failed;
+          break;
+        default:
+          ++this.skipped;
+          break;
+      }
+      this.action.record(m.group(2), outcome, m.group(3));
+      return;
+    }
+    m = TestProgressStream.RE_SUMMARY.matcher(line);
+    if (m.matches()) {
+      final int summaryFailed = Integer.parseInt(m.group(1));
+      final int summaryPassed = Integer.parseInt(m.group(2));
+      final int summarySkipped = Integer.parseInt(m.group(3));
+      this.action.addCounts(Math.max(0, summaryPassed - this.passed), Math.max(0, summaryFailed - this.failed),
+        Math.max(0, summarySkipped - this.skipped));
+      this.passed = 0;
+      this.failed = 0;
+      this.skipped = 0;
+    }
+  }
+
+}
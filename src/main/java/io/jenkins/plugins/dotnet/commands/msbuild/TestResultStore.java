@@ -0,0 +1,337 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A compact, columnar store of per-test results (name, outcome and duration), kept in a build's directory on the controller.
+ * <p>
+ * A store file starts with a fixed-size header (magic number, format version, record count, and the sizes of the first two
+ * columns), followed by three columns: the test names (in modified UTF-8), the outcomes (one byte each), and the durations (in
+ * milliseconds, as variable-length integers). Both writing and reading stream through the columns, so memory use does not depend
+ * on the number of tests.
+ */
+public final class TestResultStore {
+
+  private TestResultStore() {
+  }
+
+  /** The prefix for the names of the store files in a build's directory. */
+  static final String FILE_PREFIX = "dotnet-test-results-";
+
+  /** The extension for the names of the store files in a build's directory. */
+  static final String FILE_EXTENSION = ".dat";
+
+  private static final int MAGIC = 0x444E5452;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+
+  /** Test names longer than this are truncated, to stay within the limits of modified UTF-8 encoding. */
+  private static final int MAX_NAME_LENGTH = 8192;
+
+  /** The outcome of a test. */
+  public enum Outcome {
+
+    /** The test passed. */
+    PASSED,
+
+    /** The test failed (including errors, time-outs and aborted tests). */
+    FAILED,
+
+    /** The test was not run. */
+    SKIPPED,
+
+    /** Any other outcome. */
+    OTHER,
+
+    /** The test failed, but passed when it was run again (see {@link Test#setRetryFailedTests(Integer)}). */
+    FLAKY;
+
+    /**
+     * Determines the outcome for a TRX outcome.
+     *
+     * @param outcome The TRX outcome (e.g. {@code Passed} or {@code NotExecuted}).
+     *
+     * @return The corresponding outcome.
+     */
+    @NonNull
+    public static Outcome fromTrx(@CheckForNull String outcome) {
+      if (outcome == null)
+        return Outcome.OTHER;
+      switch (outcome.toLowerCase(Locale.ROOT)) {
+        case "passed":
+        case "completed":
+          return Outcome.PASSED;
+        case "failed":
+        case "error":
+        case "timeout":
+        case "aborted":
+          return Outcome.FAILED;
+        case "notexecuted":
+        case "notrunnable":
+        case "skipped":
+          return Outcome.SKIPPED;
+        default:
+          return Outcome.OTHER;
+      }
+    }
+
+  }
+
+  /** Handles the records read from a store file. */
+  interface Handler {
+
+    /**
+     * Handles a test result.
+     *
+     * @param name     The name of the test.
+     * @param outcome  The outcome of the test.
+     * @param duration The duration of the test (in milliseconds).
+     *
+     * @throws IOException When the record could not be handled.
+     */
+    void record(@NonNull String name, @NonNull Outcome outcome, long duration) throws IOException;
+
+  }
+
+  /**
+   * Reads a store file.
+   *
+   * @param file    The store file.
+   * @param handler The handler to pass the test results to (in the order they were written).
+   *
+   * @throws IOException When the file could not be read.
+   */
+  static void read(@NonNull File file, @NonNull Handler handler) throws IOException {
+    final Path path = file.toPath();
+    final int count;
+    final long namesSize;
+    final long outcomesSize;
+    try (final DataInputStream header = new DataInputStream(Files.newInputStream(path))) {
+      if (header.readInt() != TestResultStore.MAGIC || header.readInt() != TestResultStore.VERSION)
+        throw new IOException(file + " is not a supported test result store.");
+      count = header.readInt();
+      namesSize = header.readLong();
+      outcomesSize = header.readLong();
+    }
+    final long outcomesOffset = TestResultStore.HEADER_SIZE + namesSize;
+    try (final DataInputStream names = TestResultStore.openColumn(path, TestResultStore.HEADER_SIZE);
+         final DataInputStream outcomes = TestResultStore.openColumn(path, outcomesOffset);
+         final DataInputStream durations = TestResultStore.openColumn(path, outcomesOffset + outcomesSize)) {
+      final Outcome[] values = Outcome.values();
+      for (int i = 0; i < count; ++i) {
+        final String name = names.readUTF();
+        final int outcome = outcomes.readUnsignedByte();
+        final long duration = TestResultStore.readVarLong(durations);
+        handler.record(name, outcome < values.length ? values[outcome] : Outcome.OTHER, duration);
+      }
+    }
+  }
+
+  @NonNull
+  private static DataInputStream openColumn(@NonNull Path path, long offset) throws IOException {
+    final SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ);
+    try {
+      channel.position(offset);
+    }
+    catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+  }
+
+  private static long readVarLong(@NonNull InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = in.read();
+      if (b < 0)
+        throw new EOFException();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed variable-length integer.");
+  }
+
+  private static void writeVarLong(@NonNull OutputStream out, long value) throws IOException {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      out.write((int) ((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    out.write((int) remaining);
+  }
+
+  /**
+   * Writes a store file. Each column is first written to its own temporary file; these are combined when the writer is closed.
+   */
+  static final class Writer implements Closeable {
+
+    /**
+     * Creates a new store writer.
+     *
+     * @param file The store file to write.
+     *
+     * @throws IOException When the temporary column files could not be created.
+     */
+    Writer(@NonNull File file) throws IOException {
+      this.file = file;
+      this.namesFile = new File(file.getPath() + ".names");
+      this.outcomesFile = new File(file.getPath() + ".outcomes");
+      this.durationsFile = new File(file.getPath() + ".durations");
+      this.names = TestResultStore.Writer.openColumn(this.namesFile);
+      this.outcomes = TestResultStore.Writer.openColumn(this.outcomesFile);
+      this.durations = TestResultStore.Writer.openColumn(this.durationsFile);
+    }
+
+    private int count;
+
+    @NonNull
+    private final DataOutputStream durations;
+
+    @NonNull
+    private final File durationsFile;
+
+    @NonNull
+    private final File file;
+
+    @NonNull
+    private final DataOutputStream names;
+
+    @NonNull
+    private final File namesFile;
+
+    @NonNull
+    private final DataOutputStream outcomes;
+
+    @NonNull
+    private final File outcomesFile;
+
+    /**
+     * Adds a test result.
+     *
+     * @param name     The name of the test.
+     * @param outcome  The outcome of the test.
+     * @param duration The duration of the test (in milliseconds).
+     *
+     * @throws IOException When the result could not be written.
+     */
+    void add(@NonNull String name, @NonNull Outcome outcome, long duration) throws IOException {
+      String storedName = name;
+      if (storedName.length() > TestResultStore.MAX_NAME_LENGTH)
+        storedName = storedName.substring(0, TestResultStore.MAX_NAME_LENGTH);
+      this.names.writeUTF(storedName);
+      this.outcomes.writeByte(outcome.ordinal());
+      TestResultStore.writeVarLong(this.durations, Math.max(0, duration));
+      ++this.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        this.names.close();
+        this.outcomes.close();
+        this.durations.close();
+        try (final DataOutputStream out = TestResultStore.Writer.openColumn(this.file)) {
+          out.writeInt(TestResultStore.MAGIC);
+          out.writeInt(TestResultStore.VERSION);
+          out.writeInt(this.count);
+          out.writeLong(this.namesFile.length());
+          out.writeLong(this.outcomesFile.length());
+          Files.copy(this.namesFile.toPath(), out);
+          Files.copy(this.outcomesFile.toPath(), out);
+          Files.copy(this.durationsFile.toPath(), out);
+        }
+      }
+      finally {
+        Files.deleteIfExists(this.namesFile.toPath());
+        Files.deleteIfExists(this.outcomesFile.toPath());
+        Files.deleteIfExists(this.durationsFile.toPath());
+      }
+    }
+
+    @NonNull
+    private static DataOutputStream openColumn(@NonNull File file) throws IOException {
+      return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())));
+    }
+
+  }
+
+  /**
+   * A file callable that reads the TRX files in a directory tree (on the agent), writing the test results to a store file next to
+   * it and returning their summary.
+   */
+  public static final class Record extends MasterToSlaveFileCallable<TestResultSummary> {
+
+    private static final long serialVersionUID = 4715270933498014287L;
+
+    /**
+     * Creates a new TRX recording callable.
+     *
+     * @param storeFile The (absolute) path of the store file to write.
+     * @param fileName  The name the store file will have in the build's directory.
+     * @param since     Only TRX files last modified at or after this time (in milliseconds since the epoch) are read.
+     * @param flaky     The filter terms (see {@link TestShards#filterTerm(String)}) for the tests that passed when run again after
+     *                  failing; failures for these tests are recorded as {@link Outcome#FLAKY}.
+     */
+    public Record(@NonNull String storeFile, @NonNull String fileName, long since, @NonNull Set<String> flaky) {
+      this.storeFile = storeFile;
+      this.fileName = fileName;
+      this.since = since;
+      this.flaky = new TreeSet<>(flaky);
+    }
+
+    @NonNull
+    private final String fileName;
+
+    @NonNull
+    private final TreeSet<String> flaky;
+
+    private final long since;
+
+    @NonNull
+    private final String storeFile;
+
+    @Override
+    public TestResultSummary invoke(@NonNull File dir, @CheckForNull VirtualChannel channel) throws IOException {
+      final TestResultSummary summary = new TestResultSummary(this.fileName);
+      try (final Writer writer = new Writer(new File(this.storeFile))) {
+        TrxReader.read(dir, "**/*.trx", this.since, (testName, trxOutcome, duration) -> {
+          Outcome outcome = Outcome.fromTrx(trxOutcome);
+          if (outcome == Outcome.FAILED && this.flaky.contains(TestShards.filterTerm(testName)))
+            outcome = Outcome.FLAKY;
+          writer.add(testName, outcome, duration);
+          summary.add(testName, outcome, duration);
+        });
+      }
+      summary.finish();
+      return summary;
+    }
+
+  }
+
+}
@@ -0,0 +1,321 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A summary of the test results recorded in a {@link TestResultStore}: the outcome counts, plus the slowest tests and test classes.
+ * <p>
+ * While results are being added, only the slowest {@value #TOP_COUNT} tests are kept (plus the running totals per test class), so
+ * memory use does not depend on the number of results.
+ */
+public final class TestResultSummary implements Serializable {
+
+  private static final long serialVersionUID = -1950315658927839184L;
+
+  /** The number of slowest tests and test classes kept. */
+  static final int TOP_COUNT = 25;
+
+  /** The comparator putting the slowest entries first. */
+  static final Comparator<Entry> SLOWEST_FIRST = Comparator.comparingLong(Entry::getDuration).reversed()
+                                                           .thenComparing(Entry::getName);
+
+  /**
+   * Creates a new (empty) test result summary.
+   *
+   * @param fileName The name of the corresponding store file in the build's directory.
+   */
+  TestResultSummary(@NonNull String fileName) {
+    this.fileName = fileName;
+  }
+
+  private long duration;
+
+  private int failed;
+
+  @NonNull
+  private final String fileName;
+
+  private int flaky;
+
+  private int passed;
+
+  private int skipped;
+
+  @NonNull
+  private List<Entry> slowestClasses = Collections.emptyList();
+
+  @NonNull
+  private List<Entry> slowestTests = Collections.emptyList();
+
+  private int total;
+
+  /** The running totals per test class, while results are being added. */
+  @CheckForNull
+  private transient Map<String, Entry> classes = new HashMap<>();
+
+  /** The slowest tests so far (fastest first), while results are being added. */
+  @CheckForNull
+  private transient PriorityQueue<Entry> tests = new PriorityQueue<>(TestResultSummary.SLOWEST_FIRST.reversed());
+
+  /**
+   * Adds a test result.
+   *
+   * @param name     The name of the test.
+   * @param outcome  The outcome of the test.
+   * @param duration The duration of the test (in milliseconds).
+   */
+  void add(@NonNull String name, @NonNull TestResultStore.Outcome outcome, long duration) {
+    if (this.tests == null || this.classes == null)
+      throw new IllegalStateException("This summary is complete.");
+    ++this.total;
+    this.duration += duration;
+    switch (outcome) {
+      case PASSED:
+        ++this.passed;
+        break;
+      case FAILED:
+        ++this.failed;
+        break;
+      case SKIPPED:
+        ++this.skipped;
+        break;
+      case FLAKY:
+        ++this.flaky;
+        break;
+      default:
+        break;
+    }
+    final boolean isFailed = outcome == TestResultStore.Outcome.FAILED;
+    final String className = TestResultSummary.className(name);
+    if (className != null)
+      this.classes.computeIfAbsent(className, Entry::new).add(duration, isFailed);
+    final Entry test = new Entry(name);
+    test.add(duration, isFailed);
+    this.tests.add(test);
+    if (this.tests.size() > TestResultSummary.TOP_COUNT)
+      this.tests.remove();
+  }
+
+  /** Completes this summary, determining the slowest tests and test classes. */
+  void finish() {
+    if (this.tests == null || this.classes == null)
+      return;
+    this.slowestTests = TestResultSummary.slowest(this.tests);
+    this.slowestClasses = TestResultSummary.slowest(this.classes.values());
+    this.tests = null;
+    this.classes = null;
+  }
+
+  /**
+   * Determines the class a test belongs to.
+   *
+   * @param name The name of the test.
+   *
+   * @return The fully qualified name of the test's class, or {@code null} when the test name is not fully qualified.
+   */
+  @CheckForNull
+  static String className(@NonNull String name) {
+    final int paren = name.indexOf('(');
+    final String baseName = paren < 0 ? name : name.substring(0, paren);
+    final int dot = baseName.lastIndexOf('.');
+    return dot <= 0 ? null : baseName.substring(0, dot);
+  }
+
+  /**
+   * Selects the slowest entries.
+   *
+   * @param entries The entries.
+   *
+   * @return The slowest {@value #TOP_COUNT} entries, slowest first.
+   */
+  @NonNull
+  static List<Entry> slowest(@NonNull Collection<Entry> entries) {
+    final List<Entry> sorted = new ArrayList<>(entries);
+    sorted.sort(TestResultSummary.SLOWEST_FIRST);
+    if (sorted.size() > TestResultSummary.TOP_COUNT)
+      return new ArrayList<>(sorted.subList(0, TestResultSummary.TOP_COUNT));
+    return sorted;
+  }
+
+  /**
+   * Gets the total duration of the tests.
+   *
+   * @return The total duration of the tests (in milliseconds).
+   */
+  public long getDuration() {
+    return this.duration;
+  }
+
+  /**
+   * Gets the number of failed tests.
+   *
+   * @return The number of failed tests.
+   */
+  public int getFailed() {
+    return this.failed;
+  }
+
+  /**
+   * Gets the name of the corresponding store file.
+   *
+   * @return The name of the corresponding store file in the build's directory.
+   */
+  @NonNull
+  public String getFileName() {
+    return this.fileName;
+  }
+
+  /**
+   * Gets the number of flaky tests.
+   *
+   * @return The number of tests that failed, but passed when run again.
+   */
+  public int getFlaky() {
+    return this.flaky;
+  }
+
+  /**
+   * Gets the number of passed tests.
+   *
+   * @return The number of passed tests.
+   */
+  public int getPassed() {
+    return this.passed;
+  }
+
+  /**
+   * Gets the number of skipped tests.
+   *
+   * @return The number of skipped tests.
+   */
+  public int getSkipped() {
+    return this.skipped;
+  }
+
+  /**
+   * Gets the slowest test classes.
+   *
+   * @return The slowest test classes (with the total duration of their tests), slowest first.
+   */
+  @NonNull
+  public List<Entry> getSlowestClasses() {
+    return Collections.unmodifiableList(this.slowestClasses);
+  }
+
+  /**
+   * Gets the slowest tests.
+   *
+   * @return The slowest tests, slowest first.
+   */
+  @NonNull
+  public List<Entry> getSlowestTests() {
+    return Collections.unmodifiableList(this.slowestTests);
+  }
+
+  /**
+   * Gets the total number of tests.
+   *
+   * @return The total number of tests.
+   */
+  public int getTotal() {
+    return this.total;
+  }
+
+  /** The (combined) duration of a test or test class. */
+  public static final class Entry implements Serializable {
+
+    private static final long serialVersionUID = 6281290356601442719L;
+
+    /**
+     * Creates a new entry.
+     *
+     * @param name The name of the test or test class.
+     */
+    Entry(@NonNull String name) {
+      this.name = name;
+    }
+
+    private int count;
+
+    private long duration;
+
+    private int failed;
+
+    @NonNull
+    private final String name;
+
+    /**
+     * Adds a test result to this entry.
+     *
+     * @param duration The duration of the test (in milliseconds).
+     * @param failed   Indicates whether the test failed.
+     */
+    void add(long duration, boolean failed) {
+      ++this.count;
+      this.duration += duration;
+      if (failed)
+        ++this.failed;
+    }
+
+    /**
+     * Adds the results of another entry to this one.
+     *
+     * @param other The other entry.
+     */
+    void add(@NonNull Entry other) {
+      this.count += other.count;
+      this.duration += other.duration;
+      this.failed += other.failed;
+    }
+
+    /**
+     * Gets the number of tests.
+     *
+     * @return The number of tests (or test cases) combined in this entry.
+     */
+    public int getCount() {
+      return this.count;
+    }
+
+    /**
+     * Gets the duration.
+     *
+     * @return The (total) duration (in milliseconds).
+     */
+    public long getDuration() {
+      return this.duration;
+    }
+
+    /**
+     * Gets the number of failed tests.
+     *
+     * @return The number of failed tests (or test cases) combined in this entry.
+     */
+    public int getFailed() {
+      return this.failed;
+    }
+
+    /**
+     * Gets the name.
+     *
+     * @return The name of the test or test class.
+     */
+    @NonNull
+    public String getName() {
+      return this.name;
+    }
+
+  }
+
+}
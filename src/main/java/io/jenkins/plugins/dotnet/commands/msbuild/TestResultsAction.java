@@ -0,0 +1,196 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+import io.jenkins.plugins.dotnet.commands.Messages;
+import jenkins.model.RunAction2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A build action reporting the test results recorded for a build (see {@link Test#setRecordResults(boolean)}) and its flaky tests.
+ * <p>
+ * The per-test results are kept in {@link TestResultStore} files in the build's directory; this action only holds their
+ * summaries, along with the tests that passed when they were run again after failing (see
+ * {@link Test#setRetryFailedTests(Integer)}).
+ */
+public final class TestResultsAction implements RunAction2 {
+
+  /** Creates a new test results action. */
+  TestResultsAction() {
+  }
+
+  private transient Run<?, ?> run;
+
+  @NonNull
+  private final Set<String> flakyTests = new TreeSet<>();
+
+  @NonNull
+  private final List<TestResultSummary> summaries = new ArrayList<>();
+
+  /**
+   * Gets (creating and attaching it when needed) the test results action for a build.
+   *
+   * @param run The build.
+   *
+   * @return The build's test results action.
+   */
+  @NonNull
+  static TestResultsAction forRun(@NonNull Run<?, ?> run) {
+    synchronized (run) {
+      TestResultsAction action = run.getAction(TestResultsAction.class);
+      if (action == null) {
+        action = new TestResultsAction();
+        run.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  /**
+   * Records the summary of a set of test results.
+   *
+   * @param summary The summary.
+   */
+  synchronized void add(@NonNull TestResultSummary summary) {
+    this.summaries.add(summary);
+  }
+
+  /**
+   * Records tests that failed, but passed when run again.
+   *
+   * @param tests The filter terms (see {@link TestShards#filterTerm(String)}) for the flaky tests.
+   */
+  synchronized void addFlakyTests(@NonNull Collection<String> tests) {
+    this.flakyTests.addAll(tests);
+  }
+
+  @NonNull
+  @Override
+  public String getDisplayName() {
+    return Messages.MSBuild_Test_ResultsAction_DisplayName();
+  }
+
+  /**
+   * Gets the total number of failed tests.
+   *
+   * @return The total number of failed tests.
+   */
+  public synchronized int getFailed() {
+    return this.summaries.stream().mapToInt(TestResultSummary::getFailed).sum();
+  }
+
+  /**
+   * Gets the tests that failed, but passed when run again (see {@link Test#setRetryFailedTests(Integer)}).
+   *
+   * @return The filter terms (see {@link TestShards#filterTerm(String)}) for the flaky tests.
+   */
+  @NonNull
+  public synchronized Set<String> getFlakyTests() {
+    return Collections.unmodifiableSet(new TreeSet<>(this.flakyTests));
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "clipboard.png";
+  }
+
+  /**
+   * Gets the total number of passed tests.
+   *
+   * @return The total number of passed tests.
+   */
+  public synchronized int getPassed() {
+    return this.summaries.stream().mapToInt(TestResultSummary::getPassed).sum();
+  }
+
+  /**
+   * Gets the build this action is attached to.
+   *
+   * @return The build this action is attached to.
+   */
+  @CheckForNull
+  public Run<?, ?> getRun() {
+    return this.run;
+  }
+
+  /**
+   * Gets the total number of skipped tests.
+   *
+   * @return The total number of skipped tests.
+   */
+  public synchronized int getSkipped() {
+    return this.summaries.stream().mapToInt(TestResultSummary::getSkipped).sum();
+  }
+
+  /**
+   * Gets the slowest test classes, over all recorded test results.
+   *
+   * @return The slowest test classes, slowest first.
+   */
+  @NonNull
+  public synchronized List<TestResultSummary.Entry> getSlowestClasses() {
+    final Map<String, TestResultSummary.Entry> classes = new LinkedHashMap<>();
+    for (final TestResultSummary summary : this.summaries) {
+      for (final TestResultSummary.Entry entry : summary.getSlowestClasses())
+        classes.computeIfAbsent(entry.getName(), TestResultSummary.Entry::new).add(entry);
+    }
+    return TestResultSummary.slowest(classes.values());
+  }
+
+  /**
+   * Gets the slowest tests, over all recorded test results.
+   *
+   * @return The slowest tests, slowest first.
+   */
+  @NonNull
+  public synchronized List<TestResultSummary.Entry> getSlowestTests() {
+    final List<TestResultSummary.Entry> tests = new ArrayList<>();
+    for (final TestResultSummary summary : this.summaries)
+      tests.addAll(summary.getSlowestTests());
+    return TestResultSummary.slowest(tests);
+  }
+
+  /**
+   * Gets the summaries of the recorded test results.
+   *
+   * @return The summaries of the recorded test results, in order of recording.
+   */
+  @NonNull
+  public synchronized List<TestResultSummary> getSummaries() {
+    return Collections.unmodifiableList(new ArrayList<>(this.summaries));
+  }
+
+  /**
+   * Gets the total number of tests.
+   *
+   * @return The total number of tests.
+   */
+  public synchronized int getTotal() {
+    return this.summaries.stream().mapToInt(TestResultSummary::getTotal).sum();
+  }
+
+  @Override
+  public String getUrlName() {
+    return "dotnet-test-results";
+  }
+
+  @Override
+  public void onAttached(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  @Override
+  public void onLoad(Run<?, ?> r) {
+    this.run = r;
+  }
+
+}
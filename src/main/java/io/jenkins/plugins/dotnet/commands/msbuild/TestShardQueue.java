@@ -0,0 +1,65 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * The shared queues of test batches used for dynamic test sharding (see {@link Test#setDynamicSharding(boolean)}).
+ * <p>
+ * Build steps run on the controller, so the shards of a build (typically parallel branches of a pipeline, each running on its own
+ * agent) can share an in-memory queue: every shard keeps taking batches until the queue is empty, so a shard that finishes early
+ * takes on work that would otherwise wait for a slower one. Queues are discarded when their build completes.
+ */
+public final class TestShardQueue {
+
+  private TestShardQueue() {
+  }
+
+  private static final Map<String, Queue<List<String>>> QUEUES = new ConcurrentHashMap<>();
+
+  /**
+   * Gets (creating it if needed) a shared queue of test batches.
+   *
+   * @param run     The build.
+   * @param key     The key identifying the test run within the build (e.g. its project, framework and runtime).
+   * @param batches Provides the batches to fill the queue with, when it is created.
+   *
+   * @return The shared queue.
+   */
+  @NonNull
+  static Queue<List<String>> get(@NonNull Run<?, ?> run, @NonNull String key, @NonNull Supplier<List<List<String>>> batches) {
+    return TestShardQueue.QUEUES.computeIfAbsent(TestShardQueue.prefix(run) + key,
+      k -> new ConcurrentLinkedQueue<>(batches.get()));
+  }
+
+  @NonNull
+  private static String prefix(@NonNull Run<?, ?> run) {
+    return run.getExternalizableId() + '\u0000';
+  }
+
+  /** Discards the test batch queues of completed builds. */
+  @Extension
+  public static final class Cleanup extends RunListener<Run<?, ?>> {
+
+    @Override
+    public void onCompleted(@CheckForNull Run<?, ?> run, @NonNull TaskListener listener) {
+      if (run != null) {
+        final String prefix = TestShardQueue.prefix(run);
+        TestShardQueue.QUEUES.keySet().removeIf(key -> key.startsWith(prefix));
+      }
+    }
+
+  }
+
+}
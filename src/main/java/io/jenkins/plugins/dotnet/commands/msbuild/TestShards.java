@@ -0,0 +1,335 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Support for splitting a test suite into shards of roughly equal duration.
+ * <p>
+ * Tests are identified by the filter term selecting them (see {@link #filterTerm(String)}), so that all cases of a parameterized
+ * test are kept together. Durations are taken from earlier builds: every build stores the durations measured for its test shards
+ * (merged with those of earlier builds) in its directory on the controller, as {@value #DURATIONS_FILE}.
+ * <p>
+ * Test catalogs (the output of {@code dotnet test --list-tests}, parsed) are kept the same way: every build stores the catalogs it
+ * used (whether listed or taken from an earlier build) in the {@value #CATALOG_DIR} subdirectory of its directory, so they are
+ * discarded along with the build.
+ */
+final class TestShards {
+
+  private TestShards() {
+  }
+
+  /** The name of the file (in a build's directory) containing the known test durations. */
+  static final String DURATIONS_FILE = "dotnet-test-durations.txt";
+
+  /** The name of the directory (in a build's directory) containing the test catalogs used by the build. */
+  static final String CATALOG_DIR = "dotnet-test-catalog";
+
+  /** The duration assumed for a test when no durations are known at all. */
+  private static final long DEFAULT_DURATION = 1000;
+
+  /** The number of batches created per shard for dynamic sharding. */
+  private static final int BATCHES_PER_SHARD = 4;
+
+  /** The line preceding the list of tests in the output of {@code dotnet test --list-tests}. */
+  private static final String LIST_TESTS_HEADER = "The following Tests are available:";
+
+  //region Test Lists
+
+  /**
+   * Parses the output of {@code dotnet test --list-tests}.
+   *
+   * @param output The command's output.
+   *
+   * @return The filter terms for the listed tests, without duplicates, in listing order.
+   */
+  @NonNull
+  static List<String> parseTestList(@NonNull String output) {
+    final Set<String> terms = new LinkedHashSet<>();
+    try (final BufferedReader reader = new BufferedReader(new StringReader(output))) {
+      boolean listing = false;
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (!listing) {
+          listing = line.trim().equals(TestShards.LIST_TESTS_HEADER);
+          continue;
+        }
+        if (!line.startsWith("    ")) {
+          listing = false;
+          continue;
+        }
+        final String name = line.trim();
+        if (!name.isEmpty())
+          terms.add(TestShards.filterTerm(name));
+      }
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("Failed to read from a string.", e);
+    }
+    return new ArrayList<>(terms);
+  }
+
+  /**
+   * Determines the filter term selecting a test.
+   * <p>
+   * Any argument list (for parameterized tests) is dropped; a dotted name is matched against {@code FullyQualifiedName}, other
+   * names against {@code Name}.
+   *
+   * @param name The test name, as listed by {@code dotnet test --list-tests} or reported in a TRX file.
+   *
+   * @return The filter term selecting the test.
+   */
+  @NonNull
+  static String filterTerm(@NonNull String name) {
+    final int paren = name.indexOf('(');
+    final String baseName = (paren < 0 ? name : name.substring(0, paren)).trim();
+    final String property = baseName.indexOf('.') < 0 ? "Name" : "FullyQualifiedName";
+    return property + "=" + TestImpact.escape(baseName);
+  }
+
+  /**
+   * Creates a filter expression selecting a set of tests.
+   *
+   * @param terms  The filter terms for the tests.
+   * @param filter The configured filter expression, if any.
+   *
+   * @return The filter expression.
+   */
+  @NonNull
+  static String filterFor(@NonNull Collection<String> terms, @CheckForNull String filter) {
+    final StringJoiner sj = new StringJoiner("|");
+    terms.forEach(sj::add);
+    if (filter == null)
+      return sj.toString();
+    return "(" + filter + ")&(" + sj + ")";
+  }
+
+  //endregion
+
+  //region Partitioning
+
+  /**
+   * Partitions tests into shards of roughly equal estimated duration, using the "longest processing time first" heuristic.
+   * <p>
+   * The result only depends on the arguments, so every shard computes the same partitioning.
+   *
+   * @param terms     The filter terms for the tests.
+   * @param durations The known test durations (in milliseconds), keyed on filter term.
+   * @param count     The number of shards.
+   *
+   * @return The tests for each shard.
+   */
+  @NonNull
+  static List<List<String>> partition(@NonNull Collection<String> terms, @NonNull Map<String, Long> durations, int count) {
+    final List<List<String>> shards = new ArrayList<>();
+    final long[] loads = new long[count];
+    for (int i = 0; i < count; ++i)
+      shards.add(new ArrayList<>());
+    final PriorityQueue<Integer> lightest = new PriorityQueue<>(Comparator.<Integer>comparingLong(i -> loads[i]).thenComparing(i -> i));
+    for (int i = 0; i < count; ++i)
+      lightest.add(i);
+    final long estimate = TestShards.estimate(durations);
+    for (final String term : TestShards.longestFirst(terms, durations, estimate)) {
+      final int shard = lightest.remove();
+      shards.get(shard).add(term);
+      loads[shard] += durations.getOrDefault(term, estimate);
+      lightest.add(shard);
+    }
+    return shards;
+  }
+
+  /**
+   * Splits tests into batches for dynamic sharding, where shards take batches from a shared queue until it is empty.
+   * <p>
+   * The batches are of roughly equal estimated duration (several per shard), ordered so that the longest running tests are taken
+   * first.
+   *
+   * @param terms     The filter terms for the tests.
+   * @param durations The known test durations (in milliseconds), keyed on filter term.
+   * @param count     The number of shards.
+   *
+   * @return The batches.
+   */
+  @NonNull
+  static List<List<String>> batches(@NonNull Collection<String> terms, @NonNull Map<String, Long> durations, int count) {
+    final List<List<String>> batches = TestShards.partition(terms, durations, count * TestShards.BATCHES_PER_SHARD);
+    batches.removeIf(List::isEmpty);
+    final long estimate = TestShards.estimate(durations);
+    batches.sort(Comparator.comparingLong((List<String> batch) -> -TestShards.duration(batch, durations, estimate)));
+    return batches;
+  }
+
+  /**
+   * Computes the estimated duration for a set of tests.
+   *
+   * @param terms     The filter terms for the tests.
+   * @param durations The known test durations (in milliseconds), keyed on filter term.
+   *
+   * @return The estimated duration (in milliseconds).
+   */
+  static long duration(@NonNull Collection<String> terms, @NonNull Map<String, Long> durations) {
+    return TestShards.duration(terms, durations, TestShards.estimate(durations));
+  }
+
+  private static long duration(@NonNull Collection<String> terms, @NonNull Map<String, Long> durations, long estimate) {
+    long total = 0;
+    for (final String term : terms)
+      total += durations.getOrDefault(term, estimate);
+    return total;
+  }
+
+  /** Estimates the duration of a test without known duration as the median of all known durations. */
+  private static long estimate(@NonNull Map<String, Long> durations) {
+    if (durations.isEmpty())
+      return TestShards.DEFAULT_DURATION;
+    final long[] values = durations.values().stream().mapToLong(Long::longValue).sorted().toArray();
+    return Math.max(1, values[values.length / 2]);
+  }
+
+  @NonNull
+  private static List<String> longestFirst(@NonNull Collection<String> terms, @NonNull Map<String, Long> durations, long estimate) {
+    final List<String> sorted = new ArrayList<>(new LinkedHashSet<>(terms));
+    sorted.sort(Comparator.comparingLong((String term) -> -durations.getOrDefault(term, estimate))
+                          .thenComparing(Comparator.naturalOrder()));
+    return sorted;
+  }
+
+  //endregion
+
+  //region Catalogs
+
+  /**
+   * Gets a stored test catalog, as stored by the build itself (e.g. for another shard), or by the most recent earlier build that
+   * stored any.
+   *
+   * @param run The current build.
+   * @param key The key for the catalog (identifying the inputs it was determined from).
+   *
+   * @return The catalog (a list of filter terms), or {@code null} if it is not available.
+   *
+   * @throws IOException When the stored catalog could not be read.
+   */
+  @CheckForNull
+  static List<String> loadCatalog(@NonNull Run<?, ?> run, @NonNull String key) throws IOException {
+    final File own = new File(new File(run.getRootDir(), TestShards.CATALOG_DIR), key + ".txt");
+    if (own.isFile())
+      return Files.readAllLines(own.toPath(), StandardCharsets.UTF_8);
+    for (Run<?, ?> previous = run.getPreviousBuild(); previous != null; previous = previous.getPreviousBuild()) {
+      final File dir = new File(previous.getRootDir(), TestShards.CATALOG_DIR);
+      if (!dir.isDirectory())
+        continue;
+      // Only the most recent set of catalogs is checked; older ones are for inputs that have since changed.
+      final File file = new File(dir, key + ".txt");
+      if (!file.isFile())
+        return null;
+      final List<String> catalog = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+      TestShards.storeCatalog(run, key, catalog);
+      return catalog;
+    }
+    return null;
+  }
+
+  /**
+   * Stores a test catalog for a build.
+   *
+   * @param run     The build.
+   * @param key     The key for the catalog (identifying the inputs it was determined from).
+   * @param catalog The catalog (a list of filter terms).
+   *
+   * @throws IOException When the catalog could not be stored.
+   */
+  static void storeCatalog(@NonNull Run<?, ?> run, @NonNull String key, @NonNull List<String> catalog) throws IOException {
+    final File dir = new File(run.getRootDir(), TestShards.CATALOG_DIR);
+    Files.createDirectories(dir.toPath());
+    final File temp = File.createTempFile(key, ".tmp", dir);
+    Files.write(temp.toPath(), catalog, StandardCharsets.UTF_8);
+    Files.move(temp.toPath(), new File(dir, key + ".txt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  //endregion
+
+  //region Durations
+
+  /**
+   * Gets the test durations stored by the most recent earlier build that has any.
+   *
+   * @param run The current build.
+   *
+   * @return The test durations (in milliseconds), keyed on filter term (empty if there are none).
+   *
+   * @throws IOException When the stored durations could not be read.
+   */
+  @NonNull
+  static Map<String, Long> loadDurations(@NonNull Run<?, ?> run) throws IOException {
+    for (Run<?, ?> previous = run.getPreviousBuild(); previous != null; previous = previous.getPreviousBuild()) {
+      final File file = new File(previous.getRootDir(), TestShards.DURATIONS_FILE);
+      if (file.isFile())
+        return TestShards.readDurations(file);
+    }
+    return new TreeMap<>();
+  }
+
+  /**
+   * Records measured test durations for a build, merging them with those stored for it (or, if there are none yet, for the most
+   * recent earlier build).
+   *
+   * @param run       The build.
+   * @param durations The measured test durations (in milliseconds), keyed on filter term.
+   *
+   * @throws IOException When the durations could not be stored.
+   */
+  static void storeDurations(@NonNull Run<?, ?> run, @NonNull Map<String, Long> durations) throws IOException {
+    if (durations.isEmpty())
+      return;
+    synchronized (run) {
+      final File file = new File(run.getRootDir(), TestShards.DURATIONS_FILE);
+      final Map<String, Long> merged = file.isFile() ? TestShards.readDurations(file) : TestShards.loadDurations(run);
+      merged.putAll(durations);
+      final File temp = new File(file.getPath() + ".tmp");
+      try (final Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+        for (final Map.Entry<String, Long> entry : merged.entrySet())
+          writer.write(entry.getKey() + '\t' + entry.getValue() + '\n');
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  @NonNull
+  private static Map<String, Long> readDurations(@NonNull File file) throws IOException {
+    final Map<String, Long> durations = new TreeMap<>();
+    for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+      final int tab = line.lastIndexOf('\t');
+      if (tab <= 0)
+        continue;
+      try {
+        durations.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+      }
+      catch (NumberFormatException e) {
+        // skip malformed line
+      }
+    }
+    return durations;
+  }
+
+  //endregion
+
+}
@@ -0,0 +1,233 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+import io.jenkins.plugins.dotnet.commands.Messages;
+import jenkins.model.RunAction2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A build action merging the results of the test shards run for a build (see {@link Test#setShardCount(Integer)}).
+ */
+public final class TestShardsAction implements RunAction2 {
+
+  /** Creates a new test shards action. */
+  TestShardsAction() {
+  }
+
+  private transient Run<?, ?> run;
+
+  @NonNull
+  private final List<Batch> batches = new ArrayList<>();
+
+  /**
+   * Gets (creating and attaching it when needed) the test shards action for a build.
+   *
+   * @param run The build.
+   *
+   * @return The build's test shards action.
+   */
+  @NonNull
+  static TestShardsAction forRun(@NonNull Run<?, ?> run) {
+    synchronized (run) {
+      TestShardsAction action = run.getAction(TestShardsAction.class);
+      if (action == null) {
+        action = new TestShardsAction();
+        run.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  /**
+   * Records the results of a batch of tests run by a shard.
+   *
+   * @param batch The batch results.
+   */
+  synchronized void add(@NonNull Batch batch) {
+    this.batches.add(batch);
+  }
+
+  /**
+   * Gets the results of the test batches run for the build.
+   *
+   * @return The results of the test batches run for the build, in order of completion.
+   */
+  @NonNull
+  public synchronized List<Batch> getBatches() {
+    return Collections.unmodifiableList(new ArrayList<>(this.batches));
+  }
+
+  @NonNull
+  @Override
+  public String getDisplayName() {
+    return Messages.MSBuild_Test_ShardsAction_DisplayName();
+  }
+
+  /**
+   * Gets the total number of failed tests, over all shards.
+   *
+   * @return The total number of failed tests.
+   */
+  public synchronized int getFailed() {
+    return this.batches.stream().mapToInt(Batch::getFailed).sum();
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "clipboard.png";
+  }
+
+  /**
+   * Gets the build this action is attached to.
+   *
+   * @return The build this action is attached to.
+   */
+  @CheckForNull
+  public Run<?, ?> getRun() {
+    return this.run;
+  }
+
+  /**
+   * Gets the number of distinct shards that ran tests.
+   *
+   * @return The number of distinct shards that ran tests.
+   */
+  public synchronized int getShardCount() {
+    return (int) this.batches.stream().map(Batch::getShard).distinct().count();
+  }
+
+  /**
+   * Gets the total number of tests run, over all shards.
+   *
+   * @return The total number of tests run.
+   */
+  public synchronized int getTotal() {
+    return this.batches.stream().mapToInt(Batch::getTotal).sum();
+  }
+
+  @Override
+  public String getUrlName() {
+    return "dotnet-test-shards";
+  }
+
+  @Override
+  public void onAttached(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  @Override
+  public void onLoad(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  /** The results of a batch of tests run by a shard. */
+  public static final class Batch {
+
+    /**
+     * Creates a new batch result.
+     *
+     * @param shard     The shard that ran the batch (e.g. {@code 2/4}).
+     * @param project   The project (or solution) tested, if any.
+     * @param estimated The estimated duration of the batch (in milliseconds).
+     * @param elapsed   The time it took to run the batch (in milliseconds).
+     * @param results   The batch's test results.
+     */
+    Batch(@NonNull String shard, @CheckForNull String project, long estimated, long elapsed, @NonNull TrxResults results) {
+      this.shard = shard;
+      this.project = project;
+      this.estimated = estimated;
+      this.elapsed = elapsed;
+      this.total = results.getTotal();
+      this.passed = results.getPassed();
+      this.failed = results.getFailed();
+    }
+
+    private final long elapsed;
+
+    private final long estimated;
+
+    private final int failed;
+
+    private final int passed;
+
+    @CheckForNull
+    private final String project;
+
+    @NonNull
+    private final String shard;
+
+    private final int total;
+
+    /**
+     * Gets the time it took to run the batch.
+     *
+     * @return The time it took to run the batch (in milliseconds).
+     */
+    public long getElapsed() {
+      return this.elapsed;
+    }
+
+    /**
+     * Gets the estimated duration of the batch, based on the test durations of earlier builds.
+     *
+     * @return The estimated duration of the batch (in milliseconds).
+     */
+    public long getEstimated() {
+      return this.estimated;
+    }
+
+    /**
+     * Gets the number of failed tests.
+     *
+     * @return The number of failed tests.
+     */
+    public int getFailed() {
+      return this.failed;
+    }
+
+    /**
+     * Gets the number of passed tests.
+     *
+     * @return The number of passed tests.
+     */
+    public int getPassed() {
+      return this.passed;
+    }
+
+    /**
+     * Gets the project (or solution) tested.
+     *
+     * @return The project (or solution) tested, or {@code null} if it was taken from the working directory.
+     */
+    @CheckForNull
+    public String getProject() {
+      return this.project;
+    }
+
+    /**
+     * Gets the shard that ran the batch.
+     *
+     * @return The shard that ran the batch (e.g. {@code 2/4}).
+     */
+    @NonNull
+    public String getShard() {
+      return this.shard;
+    }
+
+    /**
+     * Gets the total number of tests run.
+     *
+     * @return The total number of tests run.
+     */
+    public int getTotal() {
+      return this.total;
+    }
+
+  }
+
+}
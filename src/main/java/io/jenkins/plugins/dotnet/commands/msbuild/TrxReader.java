@@ -0,0 +1,115 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * A streaming reader for TRX (Visual Studio test results) files.
+ * <p>
+ * Files are read using StAX, reporting each {@code UnitTestResult} element as it is encountered; nothing else is kept in memory,
+ * so the size of the result files does not matter. DTDs and external entities are not processed.
+ */
+final class TrxReader {
+
+  private TrxReader() {
+  }
+
+  /** Handles the test results read from TRX files. */
+  interface Handler {
+
+    /**
+     * Handles a test result.
+     *
+     * @param testName The name of the test (including any arguments, for a parameterized test).
+     * @param outcome  The outcome of the test (e.g. {@code Passed} or {@code Failed}), if recorded.
+     * @param duration The duration of the test (in milliseconds).
+     *
+     * @throws IOException When the result could not be handled.
+     */
+    void result(@NonNull String testName, @CheckForNull String outcome, long duration) throws IOException;
+
+  }
+
+  /**
+   * Reads TRX files in a directory tree.
+   *
+   * @param dir      The directory to search.
+   * @param includes The Ant-style pattern selecting the files to read (e.g. {@code **}{@code /*.trx}).
+   * @param since    Only files last modified at or after this time (in milliseconds since the epoch) are read.
+   * @param handler  The handler to pass the test results to.
+   *
+   * @return The number of TRX files read.
+   *
+   * @throws IOException When a file could not be read.
+   */
+  static int read(@NonNull File dir, @NonNull String includes, long since, @NonNull Handler handler) throws IOException {
+    if (!dir.isDirectory())
+      return 0;
+    final XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    int count = 0;
+    for (final String name : Util.createFileSet(dir, includes).getDirectoryScanner().getIncludedFiles()) {
+      final File file = new File(dir, name);
+      if (file.lastModified() < since)
+        continue;
+      try (final InputStream in = Files.newInputStream(file.toPath())) {
+        final XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+          while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT || !"UnitTestResult".equals(reader.getLocalName()))
+              continue;
+            final String testName = reader.getAttributeValue(null, "testName");
+            if (testName != null) {
+              final long duration = TrxReader.parseDuration(reader.getAttributeValue(null, "duration"));
+              handler.result(testName, reader.getAttributeValue(null, "outcome"), duration);
+            }
+          }
+        }
+        finally {
+          reader.close();
+        }
+      }
+      catch (XMLStreamException e) {
+        throw new IOException("Failed to read " + file + ".", e);
+      }
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * Parses a TRX duration.
+   *
+   * @param duration The duration, in {@code hh:mm:ss.fffffff} format.
+   *
+   * @return The duration in milliseconds; {@code 0} when it could not be parsed.
+   */
+  static long parseDuration(@CheckForNull String duration) {
+    if (duration == null)
+      return 0;
+    final String[] parts = duration.trim().split(":");
+    if (parts.length != 3)
+      return 0;
+    try {
+      final long hours = Long.parseLong(parts[0]);
+      final long minutes = Long.parseLong(parts[1]);
+      final double seconds = Double.parseDouble(parts[2]);
+      return (hours * 60 + minutes) * 60_000 + Math.round(seconds * 1000);
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+}
@@ -0,0 +1,139 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The outcomes and durations of tests, as read from TRX (Visual Studio test results) files.
+ * <p>
+ * The files are read on the agent (see {@link Scan}), streaming through them using {@link TrxReader}; only the per-test totals are
+ * kept.
+ */
+public final class TrxResults implements Serializable {
+
+  private static final long serialVersionUID = -6357049382417263829L;
+
+  /** Creates a new (empty) set of TRX results. */
+  TrxResults() {
+  }
+
+  @NonNull
+  private final TreeMap<String, Long> durations = new TreeMap<>();
+
+  private int failed;
+
+  @NonNull
+  private final TreeSet<String> failedTests = new TreeSet<>();
+
+  private int passed;
+
+  private int total;
+
+  /**
+   * Gets the test durations.
+   *
+   * @return The test durations (in milliseconds), keyed on filter term (see {@link TestShards#filterTerm(String)}); the cases of a
+   * parameterized test are combined.
+   */
+  @NonNull
+  public Map<String, Long> getDurations() {
+    return Collections.unmodifiableMap(this.durations);
+  }
+
+  /**
+   * Gets the number of failed tests.
+   *
+   * @return The number of failed tests.
+   */
+  public int getFailed() {
+    return this.failed;
+  }
+
+  /**
+   * Gets the failed tests.
+   *
+   * @return The filter terms (see {@link TestShards#filterTerm(String)}) for the failed tests.
+   */
+  @NonNull
+  public Set<String> getFailedTests() {
+    return Collections.unmodifiableSet(this.failedTests);
+  }
+
+  /**
+   * Gets the number of passed tests.
+   *
+   * @return The number of passed tests.
+   */
+  public int getPassed() {
+    return this.passed;
+  }
+
+  /**
+   * Gets the total number of tests.
+   *
+   * @return The total number of tests (including those that were neither passed nor failed, like skipped tests).
+   */
+  public int getTotal() {
+    return this.total;
+  }
+
+  private void add(@NonNull String testName, @CheckForNull String outcome, long duration) {
+    ++this.total;
+    final String term = TestShards.filterTerm(testName);
+    switch (TestResultStore.Outcome.fromTrx(outcome)) {
+      case PASSED:
+        ++this.passed;
+        break;
+      case FAILED:
+        ++this.failed;
+        this.failedTests.add(term);
+        break;
+      default:
+        break;
+    }
+    this.durations.merge(term, duration, Long::sum);
+  }
+
+  /** A file callable reading TRX files in a directory tree. */
+  public static final class Scan extends MasterToSlaveFileCallable<TrxResults> {
+
+    private static final long serialVersionUID = 2194855702339176316L;
+
+    /** Creates a new TRX scan, reading all TRX files. */
+    public Scan() {
+      this("**/*.trx");
+    }
+
+    /**
+     * Creates a new TRX scan.
+     *
+     * @param includes The Ant-style pattern selecting the TRX files to read.
+     */
+    public Scan(@NonNull String includes) {
+      this.includes = includes;
+    }
+
+    @NonNull
+    private final String includes;
+
+    @Override
+    public TrxResults invoke(@NonNull File dir, @CheckForNull VirtualChannel channel) throws IOException {
+      final TrxResults results = new TrxResults();
+      TrxReader.read(dir, this.includes, 0, results::add);
+      return results;
+    }
+
+  }
+
+}
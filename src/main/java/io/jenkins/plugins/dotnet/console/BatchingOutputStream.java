@@ -0,0 +1,352 @@
+package io.jenkins.plugins.dotnet.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An output stream that coalesces writes into larger batches before forwarding them to the wrapped stream.
+ * <p>
+ * A batch is forwarded once it reaches a size threshold, or once its oldest data has waited for a set time. Forwarding is done on a
+ * thread pool shared by all batching streams (with the wait for a partial batch scheduled on {@link Timer}), so writers never wait
+ * for the wrapped stream, and no threads are created per stream. When the wrapped stream cannot keep up, and the batches waiting
+ * to be forwarded exceed a memory limit, further output is spilled to a temporary file until the backlog has been cleared.
+ * <p>
+ * Because output sources (like process output pumps) tend to flush after every read, {@link #flush()} does not wait for output to
+ * be forwarded; {@link #drain()} does that, and should be called when all output for a command has been written.
+ */
+public final class BatchingOutputStream extends OutputStream {
+
+  /** The default batch size (in bytes). */
+  public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+  /** The default maximum time (in milliseconds) output is held before being forwarded. */
+  public static final long DEFAULT_MAX_DELAY = 250;
+
+  /** The default amount of pending output (in bytes) kept in memory; anything beyond that is spilled to a temporary file. */
+  public static final int DEFAULT_MEMORY_LIMIT = 4 * 1024 * 1024;
+
+  /** The threads forwarding output, shared by all batching streams; idle threads are reused. */
+  private static final ExecutorService FORWARDERS =
+    Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), BatchingOutputStream.class.getName()));
+
+  /** The output stream being decorated. */
+  @NonNull
+  private final OutputStream out;
+
+  /** The size (in bytes) at which a batch is forwarded. */
+  private final int batchSize;
+
+  /** The maximum time (in milliseconds) output is held before being forwarded. */
+  private final long maxDelay;
+
+  /** The amount of pending output (in bytes) to keep in memory. */
+  private final int memoryLimit;
+
+  /** The lock protecting this stream's state. */
+  private final Object lock = new Object();
+
+  /** The batch currently being filled. */
+  private final ByteArrayOutputStream batch;
+
+  /** The time (as per {@link System#nanoTime()}) at which the first output was written to the current batch. */
+  private long batchStarted;
+
+  /** The batches waiting to be forwarded. */
+  private final Deque<byte[]> queue = new ArrayDeque<>();
+
+  /** The total size of the batches waiting to be forwarded. */
+  private long queued = 0;
+
+  /** The spill file; {@code null} if none was needed yet. */
+  @CheckForNull
+  private File spillFile;
+
+  /** The spill file, opened for reading and writing; {@code null} if none was needed yet. */
+  @CheckForNull
+  private RandomAccessFile spill;
+
+  /** The position in the spill file up to which its contents have been forwarded. */
+  private long spillRead = 0;
+
+  /** The position in the spill file up to which it has been written. */
+  private long spillWritten = 0;
+
+  /** Indicates whether a task forwarding output has been submitted (and has not yet found the queue empty). */
+  private boolean forwarding = false;
+
+  /** Indicates whether the forwarding of a partial batch has been scheduled. */
+  private boolean timed = false;
+
+  /** The problem encountered while forwarding output, if any; reported to the next caller. */
+  @CheckForNull
+  private IOException problem;
+
+  /** Indicates whether this stream has been closed. */
+  private boolean closed = false;
+
+  /**
+   * Creates a new batching stream, using default settings.
+   *
+   * @param out The output stream to decorate.
+   */
+  public BatchingOutputStream(@NonNull OutputStream out) {
+    this(out, BatchingOutputStream.DEFAULT_BATCH_SIZE, BatchingOutputStream.DEFAULT_MAX_DELAY,
+      BatchingOutputStream.DEFAULT_MEMORY_LIMIT);
+  }
+
+  /**
+   * Creates a new batching stream.
+   *
+   * @param out         The output stream to decorate.
+   * @param batchSize   The size (in bytes) at which a batch is forwarded.
+   * @param maxDelay    The maximum time (in milliseconds) output is held before being forwarded.
+   * @param memoryLimit The amount of pending output (in bytes) to keep in memory before spilling to a temporary file.
+   */
+  public BatchingOutputStream(@NonNull OutputStream out, int batchSize, long maxDelay, int memoryLimit) {
+    this.out = out;
+    this.batchSize = Math.max(1, batchSize);
+    this.maxDelay = Math.max(0, maxDelay);
+    this.memoryLimit = Math.max(0, memoryLimit);
+    this.batch = new ByteArrayOutputStream(this.batchSize);
+  }
+
+  //region OutputStream
+
+  @Override
+  public void write(int b) throws IOException {
+    this.write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(@NonNull byte[] b, int off, int len) throws IOException {
+    synchronized (this.lock) {
+      this.checkState();
+      while (len > 0) {
+        if (this.batch.size() == 0)
+          this.batchStarted = System.nanoTime();
+        final int n = Math.min(len, this.batchSize - this.batch.size());
+        this.batch.write(b, off, n);
+        off += n;
+        len -= n;
+        if (this.batch.size() >= this.batchSize)
+          this.handOff();
+      }
+      this.schedule();
+    }
+  }
+
+  /**
+   * Does not wait for pending output to be forwarded (see {@link #drain()}); only reports any problem forwarding earlier output.
+   *
+   * @throws IOException When forwarding earlier output failed.
+   */
+  @Override
+  public void flush() throws IOException {
+    synchronized (this.lock) {
+      this.checkState();
+    }
+  }
+
+  /**
+   * Forwards all pending output, then closes the wrapped stream.
+   *
+   * @throws IOException When forwarding output failed, or when thrown by {@link OutputStream#close()}.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.drain();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    finally {
+      synchronized (this.lock) {
+        this.closed = true;
+        this.deleteSpillFile();
+      }
+      this.out.close();
+    }
+  }
+
+  //endregion
+
+  /**
+   * Waits until all output written so far has been forwarded to (and flushed on) the wrapped stream.
+   *
+   * @throws IOException          When forwarding output failed.
+   * @throws InterruptedException When interrupted while waiting.
+   */
+  public void drain() throws IOException, InterruptedException {
+    synchronized (this.lock) {
+      if (this.closed)
+        return;
+      if (this.batch.size() > 0)
+        this.handOff();
+      this.schedule();
+      while (this.forwarding && this.problem == null)
+        this.lock.wait();
+      this.checkState();
+    }
+  }
+
+  //region Internals
+
+  private void checkState() throws IOException {
+    if (this.closed)
+      throw new IOException("Stream closed.");
+    if (this.problem != null)
+      throw this.problem;
+  }
+
+  /** Moves the current batch to the queue, or to the spill file when too much output is pending. Requires the lock. */
+  private void handOff() throws IOException {
+    final byte[] data = this.batch.toByteArray();
+    this.batch.reset();
+    if (this.spillRead < this.spillWritten || this.queued + data.length > this.memoryLimit) {
+      if (this.spill == null) {
+        this.spillFile = File.createTempFile("dotnet-console", ".spill");
+        this.spillFile.deleteOnExit();
+        this.spill = new RandomAccessFile(this.spillFile, "rw");
+      }
+      this.spill.seek(this.spillWritten);
+      this.spill.write(data);
+      this.spillWritten += data.length;
+    }
+    else {
+      this.queue.add(data);
+      this.queued += data.length;
+    }
+    this.lock.notifyAll();
+  }
+
+  /** Takes the next batch to forward; {@code null} if there is none. Requires the lock. */
+  @CheckForNull
+  private byte[] takeNext() throws IOException {
+    final byte[] data = this.queue.poll();
+    if (data != null) {
+      this.queued -= data.length;
+      return data;
+    }
+    if (this.spill == null || this.spillRead >= this.spillWritten)
+      return null;
+    final byte[] spilled = new byte[(int) Math.min(this.batchSize, this.spillWritten - this.spillRead)];
+    this.spill.seek(this.spillRead);
+    this.spill.readFully(spilled);
+    this.spillRead += spilled.length;
+    if (this.spillRead >= this.spillWritten) { // backlog cleared; start over
+      this.spill.setLength(0);
+      this.spillRead = this.spillWritten = 0;
+    }
+    return spilled;
+  }
+
+  private void deleteSpillFile() {
+    try {
+      if (this.spill != null)
+        this.spill.close();
+    }
+    catch (IOException e) {
+      BatchingOutputStream.LOGGER.log(Level.FINE, "Failed to close the spill file.", e);
+    }
+    if (this.spillFile != null && !this.spillFile.delete())
+      BatchingOutputStream.LOGGER.fine(() -> "Failed to delete " + this.spillFile + ".");
+    this.spill = null;
+    this.spillFile = null;
+  }
+
+  /** Determines whether there are complete batches waiting to be forwarded. Requires the lock. */
+  private boolean hasQueued() {
+    return !this.queue.isEmpty() || this.spillRead < this.spillWritten;
+  }
+
+  /**
+   * Makes sure pending output gets forwarded: complete batches right away, a partial batch once it has waited long enough.
+   * Requires the lock.
+   */
+  private void schedule() {
+    if (this.forwarding || this.problem != null)
+      return;
+    if (this.hasQueued()) {
+      this.forwarding = true;
+      BatchingOutputStream.FORWARDERS.execute(this::forward);
+    }
+    else if (this.batch.size() > 0 && !this.timed) {
+      this.timed = true;
+      final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.batchStarted);
+      Timer.get().schedule(this::timeout, Math.max(0, this.maxDelay - waited), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Hands off the current batch if it has waited long enough. */
+  private void timeout() {
+    synchronized (this.lock) {
+      this.timed = false;
+      if (this.closed)
+        return;
+      try {
+        if (this.batch.size() > 0 && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.batchStarted) >= this.maxDelay)
+          this.handOff();
+      }
+      catch (IOException e) {
+        this.problem = e;
+        this.lock.notifyAll();
+        return;
+      }
+      this.schedule();
+    }
+  }
+
+  /** Forwards complete batches until there are none left. */
+  private void forward() {
+    try {
+      while (true) {
+        final byte[] data;
+        final boolean last;
+        synchronized (this.lock) {
+          data = this.takeNext();
+          if (data == null) { // nothing left to do (for now)
+            this.forwarding = false;
+            this.schedule();
+            this.lock.notifyAll();
+            return;
+          }
+          last = !this.hasQueued();
+        }
+        this.out.write(data);
+        if (last)
+          this.out.flush();
+      }
+    }
+    catch (IOException e) {
+      synchronized (this.lock) {
+        this.problem = e;
+        this.forwarding = false;
+        this.lock.notifyAll();
+      }
+    }
+  }
+
+  //endregion
+
+  private static final Logger LOGGER = Logger.getLogger(BatchingOutputStream.class.getName());
+
+}
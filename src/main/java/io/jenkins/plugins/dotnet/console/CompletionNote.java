@@ -17,9 +17,9 @@ public final class CompletionNote extends ConsoleNote<Object> {
   @SuppressWarnings("rawtypes")
   @Override
   public ConsoleAnnotator annotate(@Nullable Object context, @NonNull MarkupText text, int charPos) {
-    final String t = text.getText().replaceAll("\r?\n$", "");
+    final int end = DiagnosticNote.trimEOL(text.getText()).length();
     text.addMarkup(0, text.length(), "<span class='dotnet-completed-line'>", "</span><br/>");
-    text.addMarkup(charPos, t.length(), "<span class='dotnet-exit-code'>", "</span>");
+    text.addMarkup(charPos, end, "<span class='dotnet-exit-code'>", "</span>");
     return null;
   }
 
@@ -0,0 +1,188 @@
+package io.jenkins.plugins.dotnet.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.ConsoleNote;
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An output stream that only forwards a summary of the output of .NET commands, while sending all of it (without console notes)
+ * to a separate stream.
+ * <p>
+ * The summary consists of all lines carrying a console note (so diagnostics, as marked by a {@link DiagnosticScanner}, and command
+ * completion messages), plus lines marking the start and end of projects and targets, and build and test summaries.
+ * A warning with a message code is only forwarded the first time it is seen for a particular file; further occurrences are
+ * counted, and reported by {@link #writeRepeats()}.
+ */
+public final class ConsoleSummarizer extends LineTransformationOutputStream {
+
+  /** The output stream being decorated by this summarizer. */
+  @NonNull
+  private final OutputStream out;
+
+  /** The output stream receiving all output. */
+  @NonNull
+  private final OutputStream raw;
+
+  /** The character set to use when interpreting output as text. */
+  @NonNull
+  private final Charset charset;
+
+  /** The number of times each coded warning was repeated, keyed on the warning's code and file. */
+  private final Map<String, Integer> repeats = new LinkedHashMap<>();
+
+  /**
+   * Creates a new summarizer.
+   *
+   * @param out     The output stream to forward the summary to.
+   * @param raw     The output stream to forward all output to. This is closed when this summarizer is closed.
+   * @param charset The character set in use.
+   */
+  public ConsoleSummarizer(@NonNull OutputStream out, @NonNull OutputStream raw, @NonNull Charset charset) {
+    this.out = out;
+    this.raw = raw;
+    this.charset = charset;
+  }
+
+  /**
+   * Closes this summarizer; this forces end-of-line processing and then closes the stream receiving all output.
+   * The stream receiving the summary is not closed, as it is typically a build log.
+   *
+   * @throws IOException When thrown by either {@link LineTransformationOutputStream#close()} or {@link OutputStream#close()}.
+   */
+  @Override
+  public void close() throws IOException {
+    super.close();
+    this.raw.close();
+  }
+
+  /**
+   * Flushes both wrapped output streams.
+   *
+   * @throws IOException When thrown by {@link OutputStream#flush()}.
+   */
+  @Override
+  public void flush() throws IOException {
+    this.raw.flush();
+    this.out.flush();
+  }
+
+  /**
+   * Regular expression pattern for the lines (without console notes) that are part of the summary. Lines may carry a prefix
+   * identifying the invocation they came from, when a command runs several {@code dotnet} processes at once.
+   */
+  private static final Pattern RE_SUMMARY_LINE = Pattern.compile("^(?:\\[[^\\]]*\\] )?\\s*(?:" +
+    // build start/end, and summary
+    "Build started|Build succeeded\\.|Build FAILED\\.|Time Elapsed |\\d+ Warning\\(s\\)$|\\d+ Error\\(s\\)$|" +
+    // project and target markers (normal and higher verbosity)
+    "Project \".*\" on node |Done [Bb]uilding [Pp]roject \"|Target \"|Done building target \"|" +
+    // project outputs (minimal verbosity)
+    "\\S+ -> \\S|" +
+    // test summaries
+    "Passed!|Failed!|Total tests:|Test Run Successful\\.|Test Run Failed\\.)");
+
+  /**
+   * Forwards a line of output to the stream receiving all output and, if it is part of the summary, to the wrapped output stream.
+   *
+   * @param lineBytes  The raw line contents, including any line terminator.
+   * @param lineLength The length of the line within {@code lineBytes}.
+   *
+   * @throws IOException When thrown by {@link OutputStream#write(byte[], int, int)}.
+   */
+  @Override
+  protected void eol(byte[] lineBytes, int lineLength) throws IOException {
+    final byte[] plain = ConsoleSummarizer.removeNotes(lineBytes, lineLength);
+    final int plainLength = plain == null ? lineLength : plain.length;
+    this.raw.write(plain == null ? lineBytes : plain, 0, plainLength);
+    final String line = this.trimEOL(this.charset.decode(ByteBuffer.wrap(plain == null ? lineBytes : plain, 0, plainLength))
+                                                 .toString());
+    if (plain == null) { // no notes, so not a diagnostic
+      if (!ConsoleSummarizer.RE_SUMMARY_LINE.matcher(line).find())
+        return;
+    }
+    else {
+      final String[] warning = DiagnosticNote.getCodedWarning(line);
+      if (warning != null) {
+        final String key = warning[0] + '\0' + (warning[1] == null ? "" : warning[1]);
+        final Integer count = this.repeats.get(key);
+        this.repeats.put(key, count == null ? 0 : count + 1);
+        if (count != null)
+          return;
+      }
+    }
+    this.out.write(lineBytes, 0, lineLength);
+  }
+
+  /**
+   * Writes lines reporting how often coded warnings were repeated (without being forwarded), then resets those counts.
+   *
+   * @throws IOException When thrown by {@link OutputStream#write(byte[])}.
+   */
+  public void writeRepeats() throws IOException {
+    this.forceEol();
+    for (final Map.Entry<String, Integer> repeat : this.repeats.entrySet()) {
+      if (repeat.getValue() == 0)
+        continue;
+      final String key = repeat.getKey();
+      final int sep = key.indexOf('\0');
+      final String code = key.substring(0, sep);
+      final String file = key.substring(sep + 1);
+      final String message;
+      if (file.isEmpty())
+        message = Messages.ConsoleSummarizer_RepeatedWarning(code, repeat.getValue());
+      else
+        message = Messages.ConsoleSummarizer_RepeatedWarningInFile(code, file, repeat.getValue());
+      this.out.write((message + System.lineSeparator()).getBytes(this.charset));
+    }
+    this.repeats.clear();
+  }
+
+  /**
+   * Removes all console notes from a line.
+   *
+   * @param lineBytes  The raw line contents.
+   * @param lineLength The length of the line within {@code lineBytes}.
+   *
+   * @return The line contents without console notes, or {@code null} if the line contained no console notes.
+   */
+  @CheckForNull
+  static byte[] removeNotes(@NonNull byte[] lineBytes, int lineLength) {
+    int start = ConsoleSummarizer.indexOf(lineBytes, 0, lineLength, ConsoleNote.PREAMBLE);
+    if (start < 0)
+      return null;
+    final ByteArrayOutputStream plain = new ByteArrayOutputStream(lineLength);
+    int pos = 0;
+    while (start >= 0) {
+      final int end = ConsoleSummarizer.indexOf(lineBytes, start + ConsoleNote.PREAMBLE.length, lineLength, ConsoleNote.POSTAMBLE);
+      if (end < 0) // unterminated note; keep it as-is
+        break;
+      plain.write(lineBytes, pos, start - pos);
+      pos = end + ConsoleNote.POSTAMBLE.length;
+      start = ConsoleSummarizer.indexOf(lineBytes, pos, lineLength, ConsoleNote.PREAMBLE);
+    }
+    plain.write(lineBytes, pos, lineLength - pos);
+    return plain.toByteArray();
+  }
+
+  private static int indexOf(@NonNull byte[] data, int from, int to, @NonNull byte[] what) {
+    outer:
+    for (int i = from; i <= to - what.length; ++i) {
+      for (int j = 0; j < what.length; ++j) {
+        if (data[i + j] != what[j])
+          continue outer;
+      }
+      return i;
+    }
+    return -1;
+  }
+
+}
@@ -1,5 +1,6 @@
 package io.jenkins.plugins.dotnet.console;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.MarkupText;
@@ -26,6 +27,10 @@ import java.util.regex.Pattern;
  * <p>
  * In the shorter term, it may be enough to have a few well-known alternatives for 'error' and 'warning', but assumptions about
  * message format and word order may still cause problems.
+ * <p>
+ * A note created for a specific line (see {@link #forLine(String)}) carries the positions of the line's parts, so that rendering it
+ * does not require matching the line again. A generic note (as used when the note cannot be encoded per line, and as found in
+ * older build logs) scans the line when rendered.
  */
 public final class DiagnosticNote extends ConsoleNote<Object> {
 
@@ -47,6 +52,85 @@ public final class DiagnosticNote extends ConsoleNote<Object> {
     DiagnosticNote.MESSAGE_PREFIX_URLS.put("SYSLIB", "https://aka.ms/dotnet-warnings/"); // .NET 6
   }
 
+  /** Creates a generic diagnostic note, which scans the line it applies to when rendered. */
+  public DiagnosticNote() {
+  }
+
+  private DiagnosticNote(boolean error, @NonNull Matcher m, int length) {
+    this.severity = error ? DiagnosticNote.ERROR : DiagnosticNote.WARNING;
+    this.end = m.start(5) >= 0 ? m.start(5) : length;
+    this.contextStart = m.start(1);
+    this.contextEnd = m.end(1);
+    this.labelStart = m.start(2);
+    this.labelEnd = m.end(2);
+    this.codeStart = m.start(3);
+    this.codeSplit = m.start(4);
+    this.codeEnd = m.end(4);
+  }
+
+  /** The severity value for a generic note, which has no precomputed positions. */
+  private static final byte GENERIC = 0;
+
+  /** The severity value for an error. */
+  private static final byte ERROR = 1;
+
+  /** The severity value for a warning. */
+  private static final byte WARNING = 2;
+
+  /** The severity of the diagnostic ({@link #ERROR} or {@link #WARNING}); {@link #GENERIC} for a generic note. */
+  private byte severity;
+
+  /** The end of the diagnostic message (i.e. the start of the build file information, if present). */
+  private int end;
+
+  /** The start of the message context (usually a file name); -1 if there is none. */
+  private int contextStart;
+
+  /** The end of the message context. */
+  private int contextEnd;
+
+  /** The start of the message label (the 'error' or 'warning' keyword with the message code). */
+  private int labelStart;
+
+  /** The end of the message label. */
+  private int labelEnd;
+
+  /** The start of the message code prefix (like {@code CS}); -1 if there is no message code. */
+  private int codeStart;
+
+  /** The start of the message code number. */
+  private int codeSplit;
+
+  /** The end of the message code number. */
+  private int codeEnd;
+
+  /**
+   * Creates a note for a specific diagnostic line, recording the positions of its parts.
+   *
+   * @param text The line of text (without line terminator).
+   *
+   * @return A note for {@code text}, or {@code null} if {@code text} does not contain a diagnostic message.
+   */
+  @CheckForNull
+  public static DiagnosticNote forLine(@NonNull String text) {
+    Matcher m = DiagnosticNote.RE_ERROR_LINE.matcher(text);
+    if (m.matches())
+      return new DiagnosticNote(true, m, text.length());
+    m = DiagnosticNote.RE_WARNING_LINE.matcher(text);
+    if (m.matches())
+      return new DiagnosticNote(false, m, text.length());
+    return null;
+  }
+
+  /**
+   * Determines whether this note is for an error line.
+   *
+   * @return {@code true} if this note was created for an error line; {@code false} otherwise (including for a generic note).
+   */
+  boolean isError() {
+    return this.severity == DiagnosticNote.ERROR;
+  }
+
   /** Regular expression for the 'error' label. */
   private static final String RE_ERROR = "error";
 
@@ -81,48 +165,86 @@ public final class DiagnosticNote extends ConsoleNote<Object> {
   @SuppressWarnings("rawtypes")
   @Override
   public ConsoleAnnotator annotate(@NonNull Object context, MarkupText text, int charPos) {
-    // FIXME: This logic should probably avoid adding markup to a line that already includes it.
-    final String t = text.getText().replaceAll("\r?\n$", "");
-    {
-      Matcher m = DiagnosticNote.RE_ERROR_LINE.matcher(t);
-      final String htmlClass;
-      final char icon;
-      if (m.matches()) {
-        htmlClass = "dotnet-error-line";
-        icon = '⛔';
-      }
-      else {
-        m = DiagnosticNote.RE_WARNING_LINE.matcher(t);
-        if (m.matches()) {
-          htmlClass = "dotnet-warning-line";
-          icon = '⚠';
-        }
-        else
-          return null;
-      }
-      {
-        final int buildFileStart = m.start(5);
-        final int len = buildFileStart >= 0 ? buildFileStart : t.length();
-        text.addMarkup(0, len, icon + "<span class='" + htmlClass + "'>", "</span>");
-      }
-      if (m.start(1) >= 0)
-        text.addMarkup(m.start(1), m.end(1), "<span class='dotnet-message-context'>", "</span>");
-      if (m.start(2) >= 0) {
-        final String prefix = m.group(3);
-        final String number = m.group(4);
-        if (prefix != null) {
-          String url = DiagnosticNote.MESSAGE_PREFIX_URLS.get(prefix);
-          if (url == null)
-            url = DiagnosticNote.GENERIC_MESSAGE_URL_BASE + prefix + number;
-          else
-            url += prefix.toLowerCase() + number;
-          text.addHyperlinkLowKey(m.start(2), m.end(2), url);
-        }
-      }
+    if (this.severity == DiagnosticNote.GENERIC || charPos + this.end > text.length()) {
+      DiagnosticNote.annotateByScanning(text);
+      return null;
     }
+    final String t = text.getText();
+    final String prefix = this.codeStart >= 0 ? t.substring(charPos + this.codeStart, charPos + this.codeSplit) : null;
+    final String number = this.codeStart >= 0 ? t.substring(charPos + this.codeSplit, charPos + this.codeEnd) : null;
+    DiagnosticNote.addMarkup(text, charPos, this.severity == DiagnosticNote.ERROR, this.end, this.contextStart, this.contextEnd,
+      this.labelStart, this.labelEnd, prefix, number);
     return null;
   }
 
+  /**
+   * Adds markup to a diagnostic line, after matching it against the diagnostic line patterns.
+   *
+   * @param text The text to add markup to.
+   */
+  private static void annotateByScanning(@NonNull MarkupText text) {
+    // FIXME: This logic should probably avoid adding markup to a line that already includes it.
+    final String t = DiagnosticNote.trimEOL(text.getText());
+    Matcher m = DiagnosticNote.RE_ERROR_LINE.matcher(t);
+    final boolean error = m.matches();
+    if (!error) {
+      m = DiagnosticNote.RE_WARNING_LINE.matcher(t);
+      if (!m.matches())
+        return;
+    }
+    DiagnosticNote.addMarkup(text, 0, error, m.start(5) >= 0 ? m.start(5) : t.length(), m.start(1), m.end(1), m.start(2), m.end(2),
+      m.group(3), m.group(4));
+  }
+
+  /**
+   * Adds markup to a diagnostic line.
+   *
+   * @param text         The text to add markup to.
+   * @param offset       The offset of the diagnostic line within {@code text}.
+   * @param error        Indicates whether the diagnostic is an error (as opposed to a warning).
+   * @param end          The end of the diagnostic message (i.e. the start of the build file information, if present).
+   * @param contextStart The start of the message context; -1 if there is none.
+   * @param contextEnd   The end of the message context.
+   * @param labelStart   The start of the message label; -1 if there is none.
+   * @param labelEnd     The end of the message label.
+   * @param prefix       The message code prefix, if there is a message code.
+   * @param number       The message code number, if there is a message code.
+   */
+  private static void addMarkup(@NonNull MarkupText text, int offset, boolean error, int end, int contextStart, int contextEnd,
+                                int labelStart, int labelEnd, @CheckForNull String prefix, @CheckForNull String number) {
+    final String htmlClass = error ? "dotnet-error-line" : "dotnet-warning-line";
+    final char icon = error ? '⛔' : '⚠';
+    text.addMarkup(offset, offset + end, icon + "<span class='" + htmlClass + "'>", "</span>");
+    if (contextStart >= 0)
+      text.addMarkup(offset + contextStart, offset + contextEnd, "<span class='dotnet-message-context'>", "</span>");
+    if (labelStart >= 0 && prefix != null) {
+      String url = DiagnosticNote.MESSAGE_PREFIX_URLS.get(prefix);
+      if (url == null)
+        url = DiagnosticNote.GENERIC_MESSAGE_URL_BASE + prefix + number;
+      else
+        url += prefix.toLowerCase() + number;
+      text.addHyperlinkLowKey(offset + labelStart, offset + labelEnd, url);
+    }
+  }
+
+  /**
+   * Removes a trailing line terminator from a line of text.
+   *
+   * @param text The text to trim.
+   *
+   * @return {@code text}, without any trailing line terminator.
+   */
+  @NonNull
+  static String trimEOL(@NonNull String text) {
+    int length = text.length();
+    if (length > 0 && text.charAt(length - 1) == '\n') {
+      --length;
+      if (length > 0 && text.charAt(length - 1) == '\r')
+        --length;
+    }
+    return text.substring(0, length);
+  }
+
   /**
    * Scans a line of text to determine whether it would be styled by this note.
    *
@@ -134,6 +256,42 @@ public final class DiagnosticNote extends ConsoleNote<Object> {
     return DiagnosticNote.RE_DIAGNOSTIC_LINE.matcher(text).matches();
   }
 
+  /**
+   * Scans a line of text to determine whether it contains an error with a message code (like {@code CS0103} or {@code MSB3073}),
+   * as reported by compilers and MSBuild tasks.
+   *
+   * @param text The text to scan.
+   *
+   * @return {@code true} if {@code text} contains an error with a message code; {@code false} otherwise.
+   */
+  public static boolean isCodedError(@NonNull String text) {
+    final Matcher m = DiagnosticNote.RE_ERROR_LINE.matcher(text);
+    return m.matches() && m.group(3) != null;
+  }
+
+  /**
+   * Scans a line of text to determine whether it contains a warning with a message code, and if so, extracts that code and the file
+   * it applies to (without any line and column information).
+   *
+   * @param text The text to scan.
+   *
+   * @return A two-element array containing the warning's message code and its file (or {@code null} if there was no context), or
+   * {@code null} if {@code text} does not contain a warning with a message code.
+   */
+  @CheckForNull
+  public static String[] getCodedWarning(@NonNull String text) {
+    final Matcher m = DiagnosticNote.RE_WARNING_LINE.matcher(text);
+    if (!m.matches() || m.group(3) == null)
+      return null;
+    String file = m.group(1);
+    if (file != null)
+      file = DiagnosticNote.RE_POSITION.matcher(file.trim()).replaceFirst("");
+    return new String[] { m.group(3) + m.group(4), file };
+  }
+
+  /** Regular expression pattern for the position information (like {@code (12,34)}) at the end of a message's context. */
+  private static final Pattern RE_POSITION = Pattern.compile("\\([0-9,-]+\\)$");
+
   /** Descriptor for {@link DiagnosticNote}. */
   @Extension
   @Symbol("dotnetDiagnostic")
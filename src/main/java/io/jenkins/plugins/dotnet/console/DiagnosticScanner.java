@@ -5,10 +5,14 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.console.LineTransformationOutputStream;
 import io.jenkins.plugins.dotnet.DotNetUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -30,20 +34,29 @@ public final class DiagnosticScanner extends LineTransformationOutputStream {
   /** The character set to use when interpreting output as text. */
   private final Charset charset;
 
-  /** The encoded {@link DiagnosticNote} to use when marking diagnostic lines. */
+  /**
+   * The encoded generic {@link DiagnosticNote} to use when marking diagnostic lines, when no note specific to the line can be
+   * encoded (i.e. when not running on the controller).
+   */
   private final byte[] diagnosticNote;
 
+  /** Indicates whether notes specific to each diagnostic line (see {@link DiagnosticNote#forLine(String)}) should be encoded. */
+  private final boolean lineNotes;
+
   /** The encoded {@link CompletionNote} to use when marking command completion lines. */
   private final byte[] completionNote;
 
   /**
    * Creates a new scanner.
+   * <p>
+   * Each write to {@code out} consists of one or more complete lines (only the last line of the output can be incomplete), so
+   * several scanners (or other line-based sources) can share a synchronized output stream without their lines getting mixed up.
    *
    * @param out     The output stream to decorate.
    * @param charset The character set in use.
    */
   public DiagnosticScanner(@NonNull OutputStream out, @NonNull Charset charset) {
-    this(out, charset, DotNetUtils.encodeNote(DiagnosticNote::new), DotNetUtils.encodeNote(CompletionNote::new));
+    this(out, charset, DotNetUtils.encodeNote(DiagnosticNote::new), DotNetUtils.encodeNote(CompletionNote::new), true);
   }
 
   /**
@@ -54,7 +67,7 @@ public final class DiagnosticScanner extends LineTransformationOutputStream {
    * @param diagnosticNote A specific encoded {@link DiagnosticNote} to use.
    */
   DiagnosticScanner(@NonNull OutputStream out, @NonNull Charset charset, @NonNull byte[] diagnosticNote) {
-    this(out, charset, diagnosticNote, null);
+    this(out, charset, diagnosticNote, null, false);
   }
 
   /**
@@ -64,16 +77,21 @@ public final class DiagnosticScanner extends LineTransformationOutputStream {
    * @param charset        The character set in use.
    * @param diagnosticNote A specific encoded {@link DiagnosticNote} to use.
    * @param completionNote A specific encoded {@link CompletionNote} to use.
+   * @param lineNotes      Indicates whether notes specific to each diagnostic line should be encoded (only possible on the
+   *                       controller).
    */
-  private DiagnosticScanner(@NonNull OutputStream out, @NonNull Charset charset, @NonNull byte[] diagnosticNote, @CheckForNull byte[] completionNote) {
+  private DiagnosticScanner(@NonNull OutputStream out, @NonNull Charset charset, @NonNull byte[] diagnosticNote, @CheckForNull byte[] completionNote,
+                            boolean lineNotes) {
     this.out = out;
     this.charset = charset;
     this.diagnosticNote = diagnosticNote;
     this.completionNote = completionNote;
+    this.lineNotes = lineNotes;
   }
 
-  /** The number of errors reported by an MSBuild-based command in its build summary. */
-  private int errors = 0;
+  /** The number of errors reported by an MSBuild-based command in its build summary; {@code null} if none was seen. */
+  @CheckForNull
+  private Integer errors = null;
 
   /**
    * Gets the number of errors reported by an MSBuild-based command in its build summary.
@@ -81,11 +99,22 @@ public final class DiagnosticScanner extends LineTransformationOutputStream {
    * @return The number of errors reported; 0 if no build summary was seen.
    */
   public int getErrors() {
+    return this.errors == null ? 0 : this.errors;
+  }
+
+  /**
+   * Gets the number of errors reported by an MSBuild-based command in its build summary, if one was seen.
+   *
+   * @return The number of errors reported, or {@code null} if no build summary was seen.
+   */
+  @CheckForNull
+  public Integer getReportedErrors() {
     return this.errors;
   }
 
-  /** The number of warnings reported by an MSBuild-based command in its build summary. */
-  private int warnings = 0;
+  /** The number of warnings reported by an MSBuild-based command in its build summary; {@code null} if none was seen. */
+  @CheckForNull
+  private Integer warnings = null;
 
   /**
    * Gets the number of warnings reported by an MSBuild-based command in its build summary.
@@ -93,9 +122,70 @@ public final class DiagnosticScanner extends LineTransformationOutputStream {
    * @return The number of warnings reported; 0 if no build summary was seen.
    */
   public int getWarnings() {
+    return this.warnings == null ? 0 : this.warnings;
+  }
+
+  /**
+   * Gets the number of warnings reported by an MSBuild-based command in its build summary, if one was seen.
+   *
+   * @return The number of warnings reported, or {@code null} if no build summary was seen.
+   */
+  @CheckForNull
+  public Integer getReportedWarnings() {
     return this.warnings;
   }
 
+  /**
+   * Creates a stream for output that has already been scanned (typically by a separate scanner per process, when a command runs
+   * several {@code dotnet} processes at once), sending it on to wherever this scanner's output goes, with a prefix added to every
+   * line.
+   * <p>
+   * Each line is forwarded using a single write, so several such streams can be in use at the same time, provided the stream this
+   * scanner wraps is synchronized. Closing the stream has no effect on this scanner.
+   *
+   * @param prefix The prefix to add to each line.
+   *
+   * @return A new stream, forwarding to this scanner's output.
+   */
+  @NonNull
+  public OutputStream createSink(@NonNull String prefix) {
+    return new PrefixedOutputStream(this.out, prefix, this.charset);
+  }
+
+  /**
+   * Gets the settings needed to scan output in another JVM (typically that of the agent running a command), so that only the
+   * positions of the diagnostic lines (and any build summary counts) need to be sent back along with the output (see
+   * {@link #writeScanned(byte[], ScanResult)}).
+   *
+   * @return The settings for this scanner.
+   */
+  @NonNull
+  public Settings getSettings() {
+    return new Settings(this.charset.name());
+  }
+
+  /**
+   * Adds the error and warning counts seen by another scanner to those of this one.
+   * <p>
+   * This is used when a command runs several {@code dotnet} processes, each with its own scanner, to get overall totals.
+   *
+   * @param other The scanner whose counts should be added to this one's.
+   */
+  public void merge(@NonNull DiagnosticScanner other) {
+    if (other.errors != null)
+      this.errors = this.getErrors() + other.errors;
+    if (other.warnings != null)
+      this.warnings = this.getWarnings() + other.warnings;
+  }
+
+  /**
+   * Resets the error and warning counts, so that this scanner can be reused for the output of a subsequent command.
+   */
+  public void resetCounts() {
+    this.errors = null;
+    this.warnings = null;
+  }
+
   /**
    * Closes this scanner; this forces end-of-line processing and then closes the wrapped output stream.
    *
@@ -146,11 +236,158 @@ public final class DiagnosticScanner extends LineTransformationOutputStream {
     // FIXME: used inside a wrapper, the decorator added by the wrapper gets wrapped in a PrintStream before being passed to the
     // FIXME: command, making it unrecognizable.
     // FIXME: This _could_ look for an encoded DiagnosticNote in the line bytes, but that currently doesn't seem worth it.
-    if (!(this.out instanceof DiagnosticScanner) && DiagnosticNote.appliesTo(line))
-      this.out.write(this.diagnosticNote);
+    if (!(this.out instanceof DiagnosticScanner) && DiagnosticNote.appliesTo(line)) {
+      this.writeDiagnostic(line, lineBytes, 0, lineLength);
+      return;
+    }
     this.out.write(lineBytes, 0, lineLength);
   }
 
+  /**
+   * Forwards a diagnostic line to the wrapped output stream, preceded by a diagnostic note.
+   *
+   * @param line   The line, as text (without line terminator).
+   * @param data   The buffer containing the raw line contents.
+   * @param offset The offset of the line within {@code data}.
+   * @param length The length of the line (including any line terminator).
+   *
+   * @throws IOException When thrown by {@link OutputStream#write(byte[])}.
+   */
+  private void writeDiagnostic(@NonNull String line, @NonNull byte[] data, int offset, int length) throws IOException {
+    // When running on the controller, encode a note specific to this line, so that rendering does not need to scan it again.
+    final DiagnosticNote note = this.lineNotes ? DiagnosticNote.forLine(line) : null;
+    final byte[] encoded = note != null ? DotNetUtils.encodeNote(() -> note) : this.diagnosticNote;
+    // The note and the line are forwarded using a single write.
+    final byte[] annotated = new byte[encoded.length + length];
+    System.arraycopy(encoded, 0, annotated, 0, encoded.length);
+    System.arraycopy(data, offset, annotated, encoded.length, length);
+    this.out.write(annotated);
+  }
+
+  /**
+   * Writes output that has already been scanned in another JVM (see {@link Settings#scan(byte[], int)}), annotating the diagnostic
+   * lines found there and taking over the counts from any build summary seen there.
+   *
+   * @param data   The scanned output; this must consist of complete lines (except at the very end of the output).
+   * @param result The result of scanning {@code data}.
+   *
+   * @throws IOException When thrown by {@link OutputStream#write(byte[], int, int)}.
+   */
+  public void writeScanned(@NonNull byte[] data, @NonNull ScanResult result) throws IOException {
+    this.forceEol();
+    int start = 0;
+    if (!(this.out instanceof DiagnosticScanner)) {
+      for (final int diagnostic : result.diagnostics) {
+        if (diagnostic > start)
+          this.out.write(data, start, diagnostic - start);
+        final int end = DiagnosticScanner.findEol(data, diagnostic, data.length);
+        final String line = this.trimEOL(this.charset.decode(ByteBuffer.wrap(data, diagnostic, end - diagnostic)).toString());
+        this.writeDiagnostic(line, data, diagnostic, end - diagnostic);
+        start = end;
+      }
+    }
+    if (start < data.length)
+      this.out.write(data, start, data.length - start);
+    if (result.errors != null)
+      this.errors = result.errors;
+    if (result.warnings != null)
+      this.warnings = result.warnings;
+  }
+
+  /**
+   * Finds the end of a line.
+   *
+   * @param data  The data containing the line.
+   * @param start The offset of the start of the line.
+   * @param end   The offset of the end of the data.
+   *
+   * @return The offset just past the line's terminating newline (or {@code end}, if there is none).
+   */
+  private static int findEol(@NonNull byte[] data, int start, int end) {
+    for (int i = start; i < end; ++i) {
+      if (data[i] == '\n')
+        return i + 1;
+    }
+    return end;
+  }
+
+  /** The result of scanning output in another JVM (see {@link Settings#scan(byte[], int)}). */
+  public static final class ScanResult implements Serializable {
+
+    private static final long serialVersionUID = 8137704571924622473L;
+
+    ScanResult(@NonNull int[] diagnostics, @CheckForNull Integer errors, @CheckForNull Integer warnings) {
+      this.diagnostics = diagnostics;
+      this.errors = errors;
+      this.warnings = warnings;
+    }
+
+    /** The offsets of the diagnostic lines in the scanned output. */
+    @NonNull
+    private final int[] diagnostics;
+
+    /** The number of errors reported in a build summary in the scanned output, or {@code null} if there was none. */
+    @CheckForNull
+    private final Integer errors;
+
+    /** The number of warnings reported in a build summary in the scanned output, or {@code null} if there was none. */
+    @CheckForNull
+    private final Integer warnings;
+
+  }
+
+  /**
+   * The settings needed to scan output in another JVM (see {@link #getSettings()}).
+   * <p>
+   * Scanning there only finds the diagnostic lines and build summary counts; the diagnostic notes are then encoded (for each line)
+   * by the scanner these settings came from, when the output is written to it (see {@link #writeScanned(byte[], ScanResult)}).
+   */
+  public static final class Settings implements Serializable {
+
+    private static final long serialVersionUID = 2288604683417313470L;
+
+    Settings(@NonNull String charset) {
+      this.charset = charset;
+    }
+
+    @NonNull
+    private final String charset;
+
+    /**
+     * Scans output.
+     *
+     * @param data   The output to scan.
+     * @param length The length of the output within {@code data}; this must consist of complete lines (except at the very end of
+     *               the output).
+     *
+     * @return The result of the scan.
+     */
+    @NonNull
+    public ScanResult scan(@NonNull byte[] data, int length) {
+      final Charset cs = Charset.forName(this.charset);
+      final List<Integer> diagnostics = new ArrayList<>();
+      Integer errors = null;
+      Integer warnings = null;
+      for (int start = 0; start < length; ) {
+        final int end = DiagnosticScanner.findEol(data, start, length);
+        String line = cs.decode(ByteBuffer.wrap(data, start, end - start)).toString();
+        if (line.endsWith("\n"))
+          line = line.substring(0, line.length() - (line.endsWith("\r\n") ? 2 : 1));
+        Matcher m = DiagnosticScanner.RE_ERROR_COUNT.matcher(line);
+        if (m.matches())
+          errors = Integer.parseInt(m.group(1));
+        m = DiagnosticScanner.RE_WARNING_COUNT.matcher(line);
+        if (m.matches())
+          warnings = Integer.parseInt(m.group(1));
+        if (DiagnosticNote.appliesTo(line))
+          diagnostics.add(start);
+        start = end;
+      }
+      return new ScanResult(diagnostics.stream().mapToInt(Integer::intValue).toArray(), errors, warnings);
+    }
+
+  }
+
   /** The marker that a completion message should contain, to indicate where exit code information starts. */
   private static final String COMPLETION_MESSAGE_EXIT_CODE_MARKER = "<!>";
 
@@ -168,15 +405,18 @@ public final class DiagnosticScanner extends LineTransformationOutputStream {
       final String marker = DiagnosticScanner.COMPLETION_MESSAGE_EXIT_CODE_MARKER;
       // FIXME: This assumes the exit code will always be in the second half of the sentence.
       final int idx = message.indexOf(marker);
+      // The line is assembled first, so that it is forwarded using a single write.
+      final ByteArrayOutputStream line = new ByteArrayOutputStream();
       if (idx < 0) // just write the entire line
-        this.out.write(message.getBytes(this.charset));
+        line.write(message.getBytes(this.charset));
       else
-        this.out.write(message.substring(0, idx).getBytes(this.charset));
+        line.write(message.substring(0, idx).getBytes(this.charset));
       if (this.completionNote != null)
-        this.out.write(this.completionNote);
+        line.write(this.completionNote);
       if (idx >= 0)
-        this.out.write(message.substring(idx + marker.length()).getBytes(this.charset));
-      this.out.write(System.lineSeparator().getBytes(this.charset));
+        line.write(message.substring(idx + marker.length()).getBytes(this.charset));
+      line.write(System.lineSeparator().getBytes(this.charset));
+      this.out.write(line.toByteArray());
     }
     catch (Throwable t) {
       DiagnosticScanner.LOGGER.log(Level.FINE, Messages.DiagnosticScanner_CompletionMessageFailed(), t);
@@ -0,0 +1,489 @@
+package io.jenkins.plugins.dotnet.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.ConsoleNote;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A build action holding an index of the diagnostic lines and project boundaries in the build log, as seen by
+ * {@link LogIndexer}.
+ * <p>
+ * Each entry records the (approximate) byte offset of its line in the build log, so that the log around it can be shown by reading
+ * only that part of the log, instead of loading and annotating the entire console output. When the line is not found near that
+ * offset (for example because parallel branches were writing to the log), the log is scanned for it instead. Only the first
+ * {@value #MAX_ENTRIES} entries are kept.
+ */
+public final class LogIndexAction implements RunAction2 {
+
+  /** The maximum number of entries kept. */
+  static final int MAX_ENTRIES = 1000;
+
+  /** The maximum length of the text kept for an entry. */
+  static final int MAX_TEXT = 200;
+
+  /** The number of bytes of the build log read on either side of an entry when showing an excerpt. */
+  static final int CONTEXT = 8 * 1024;
+
+  /** Creates a new log index action. */
+  LogIndexAction() {
+  }
+
+  private transient Run<?, ?> run;
+
+  @NonNull
+  private final List<Entry> entries = new ArrayList<>();
+
+  private int errors;
+
+  private int omitted;
+
+  private int warnings;
+
+  /**
+   * Gets (creating and attaching it when needed) the log index action for a build.
+   *
+   * @param run The build.
+   *
+   * @return The build's log index action.
+   */
+  @NonNull
+  public static LogIndexAction forRun(@NonNull Run<?, ?> run) {
+    synchronized (run) {
+      LogIndexAction action = run.getAction(LogIndexAction.class);
+      if (action == null) {
+        action = new LogIndexAction();
+        run.addAction(action);
+      }
+      return action;
+    }
+  }
+
+  /**
+   * Records an entry.
+   *
+   * @param entry The entry to record.
+   */
+  public synchronized void record(@NonNull Entry entry) {
+    if (entry.kind == Kind.ERROR)
+      ++this.errors;
+    else if (entry.kind == Kind.WARNING)
+      ++this.warnings;
+    if (this.entries.size() < LogIndexAction.MAX_ENTRIES)
+      this.entries.add(entry);
+    else
+      ++this.omitted;
+  }
+
+  @NonNull
+  @Override
+  public String getDisplayName() {
+    return Messages.LogIndexAction_DisplayName();
+  }
+
+  /**
+   * Gets the entries recorded so far.
+   *
+   * @return The entries recorded so far (at most {@value #MAX_ENTRIES}), in log order.
+   */
+  @NonNull
+  public synchronized List<Entry> getEntries() {
+    return Collections.unmodifiableList(new ArrayList<>(this.entries));
+  }
+
+  /**
+   * Gets the number of errors seen.
+   *
+   * @return The number of errors seen (including any that were not kept).
+   */
+  public synchronized int getErrors() {
+    return this.errors;
+  }
+
+  /**
+   * Gets an excerpt of the build log around an entry.
+   *
+   * @param number The (0-based) number of the entry, as a string (as taken from a request parameter).
+   *
+   * @return The excerpt, or {@code null} if there is no such entry (or the build log is not available).
+   *
+   * @throws IOException When the build log could not be read.
+   */
+  @CheckForNull
+  public Excerpt getExcerpt(@CheckForNull String number) throws IOException {
+    if (number == null)
+      return null;
+    try {
+      return this.getExcerpt(Integer.parseInt(number.trim()));
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets an excerpt of the build log around an entry.
+   *
+   * @param number The (0-based) number of the entry.
+   *
+   * @return The excerpt, or {@code null} if there is no such entry (or the build log is not available).
+   *
+   * @throws IOException When the build log could not be read.
+   */
+  @CheckForNull
+  Excerpt getExcerpt(int number) throws IOException {
+    final Run<?, ?> r = this.run;
+    final Entry entry;
+    synchronized (this) {
+      if (r == null || number < 0 || number >= this.entries.size())
+        return null;
+      entry = this.entries.get(number);
+    }
+    final int nextError = this.getNext(number, Kind.ERROR);
+    final int nextWarning = this.getNext(number, Kind.WARNING);
+    final Excerpt excerpt = LogIndexAction.readExcerpt(r, entry, entry.offset, nextError, nextWarning);
+    if (excerpt.highlight >= 0)
+      return excerpt;
+    // The recorded offset can be well off (e.g. when parallel branches write to the log at the same time); look further out.
+    final long offset = LogIndexAction.locate(r, entry);
+    if (offset < 0)
+      return excerpt;
+    return LogIndexAction.readExcerpt(r, entry, offset, nextError, nextWarning);
+  }
+
+  /**
+   * Finds the line for an entry anywhere in the build log.
+   *
+   * @param r     The build.
+   * @param entry The entry.
+   *
+   * @return The byte offset of the line for the entry that is closest to its recorded offset, or -1 if there is no such line.
+   *
+   * @throws IOException When the build log could not be read.
+   */
+  private static long locate(@NonNull Run<?, ?> r, @NonNull Entry entry) throws IOException {
+    long found = -1;
+    long bestDistance = Long.MAX_VALUE;
+    try (final InputStream in = new BufferedInputStream(r.getLogInputStream())) {
+      final ByteArrayOutputStream line = new ByteArrayOutputStream();
+      long position = 0;
+      long lineStart = 0;
+      for (int b = in.read(); ; b = in.read()) {
+        if (b >= 0 && b != '\n') {
+          line.write(b);
+          ++position;
+          continue;
+        }
+        final String plain = ConsoleNote.removeNotes(new String(line.toByteArray(), r.getCharset()));
+        final long distance = Math.abs(lineStart - entry.offset);
+        if (distance < bestDistance && plain.trim().startsWith(entry.text)) {
+          found = lineStart;
+          bestDistance = distance;
+        }
+        // Past the recorded offset, every further line is only further away.
+        if (b < 0 || lineStart - entry.offset > bestDistance)
+          break;
+        line.reset();
+        lineStart = ++position;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Reads an excerpt of the build log around an offset.
+   *
+   * @param r           The build.
+   * @param entry       The entry the excerpt is for.
+   * @param offset      The byte offset (in the build log) around which to read.
+   * @param nextError   The number of the next error entry.
+   * @param nextWarning The number of the next warning entry.
+   *
+   * @return The excerpt; its highlight is the line for the entry closest to {@code offset}, if there is one.
+   *
+   * @throws IOException When the build log could not be read.
+   */
+  @NonNull
+  private static Excerpt readExcerpt(@NonNull Run<?, ?> r, @NonNull Entry entry, long offset, int nextError,
+                                     int nextWarning) throws IOException {
+    final long start = Math.max(0, offset - LogIndexAction.CONTEXT);
+    final byte[] data = new byte[2 * LogIndexAction.CONTEXT];
+    int length = 0;
+    try (final InputStream in = r.getLogInputStream()) {
+      long toSkip = start;
+      while (toSkip > 0) {
+        final long skipped = in.skip(toSkip);
+        if (skipped <= 0)
+          break;
+        toSkip -= skipped;
+      }
+      if (toSkip == 0) {
+        while (length < data.length) {
+          final int read = in.read(data, length, data.length - length);
+          if (read < 0)
+            break;
+          length += read;
+        }
+      }
+    }
+    final String[] split = new String(data, 0, length, r.getCharset()).split("\r?\n", -1);
+    // The first and last lines are likely to be partial, unless they are at the start or end of the log.
+    final int first = start > 0 ? 1 : 0;
+    final int last = split.length - (length == data.length ? 1 : 0);
+    final List<String> lines = new ArrayList<>();
+    int highlight = -1;
+    int bestDistance = Integer.MAX_VALUE;
+    long position = start;
+    for (int i = 0; i < split.length; ++i) {
+      final String line = split[i];
+      if (i >= first && i < last) {
+        final String plain = ConsoleNote.removeNotes(line);
+        final int distance = (int) Math.min(Integer.MAX_VALUE, Math.abs(position - offset));
+        if (plain.trim().startsWith(entry.text) && distance < bestDistance) {
+          highlight = lines.size();
+          bestDistance = distance;
+        }
+        lines.add(plain);
+      }
+      position += line.getBytes(r.getCharset()).length + 1;
+    }
+    return new Excerpt(entry, lines, highlight, nextError, nextWarning);
+  }
+
+  /**
+   * Gets the number of the first error entry.
+   *
+   * @return The number of the first error entry, or -1 if there is none.
+   */
+  public int getFirstError() {
+    return this.getNext(-1, Kind.ERROR);
+  }
+
+  /**
+   * Gets the number of the first warning entry.
+   *
+   * @return The number of the first warning entry, or -1 if there is none.
+   */
+  public int getFirstWarning() {
+    return this.getNext(-1, Kind.WARNING);
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "terminal.png";
+  }
+
+  /**
+   * Gets the number of the next entry of a particular kind.
+   *
+   * @param number The number of the current entry; use -1 to find the first entry of the specified kind.
+   * @param kind   The kind of entry to look for.
+   *
+   * @return The number of the next entry of the specified kind, or -1 if there is none.
+   */
+  public synchronized int getNext(int number, @NonNull Kind kind) {
+    for (int i = Math.max(0, number + 1); i < this.entries.size(); ++i) {
+      if (this.entries.get(i).kind == kind)
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the number of entries that were not kept.
+   *
+   * @return The number of entries that were not kept, because the maximum number of entries was reached.
+   */
+  public synchronized int getOmitted() {
+    return this.omitted;
+  }
+
+  /**
+   * Gets the build this action is attached to.
+   *
+   * @return The build this action is attached to.
+   */
+  @CheckForNull
+  public Run<?, ?> getRun() {
+    return this.run;
+  }
+
+  @Override
+  public String getUrlName() {
+    return "dotnet-log-index";
+  }
+
+  /**
+   * Gets the number of warnings seen.
+   *
+   * @return The number of warnings seen (including any that were not kept).
+   */
+  public synchronized int getWarnings() {
+    return this.warnings;
+  }
+
+  @Override
+  public void onAttached(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  @Override
+  public void onLoad(Run<?, ?> r) {
+    this.run = r;
+  }
+
+  /** The kinds of entries in the index. */
+  public enum Kind {
+
+    /** An error message. */
+    ERROR,
+
+    /** A warning message. */
+    WARNING,
+
+    /** The start or end of the build of a project. */
+    PROJECT
+
+  }
+
+  /** An entry in the index. */
+  public static final class Entry implements Serializable {
+
+    private static final long serialVersionUID = 5306342946215627410L;
+
+    /**
+     * Creates a new entry.
+     *
+     * @param kind   The kind of entry.
+     * @param offset The byte offset of the line in the build log.
+     * @param text   The text of the line (truncated to {@value #MAX_TEXT} characters).
+     */
+    Entry(@NonNull Kind kind, long offset, @NonNull String text) {
+      this.kind = kind;
+      this.offset = offset;
+      text = text.trim();
+      this.text = text.length() > LogIndexAction.MAX_TEXT ? text.substring(0, LogIndexAction.MAX_TEXT) : text;
+    }
+
+    @NonNull
+    private final Kind kind;
+
+    private final long offset;
+
+    @NonNull
+    private final String text;
+
+    /**
+     * Gets the kind of entry.
+     *
+     * @return The kind of entry.
+     */
+    @NonNull
+    public Kind getKind() {
+      return this.kind;
+    }
+
+    /**
+     * Gets the byte offset of the line in the build log.
+     *
+     * @return The (approximate) byte offset of the line in the build log.
+     */
+    public long getOffset() {
+      return this.offset;
+    }
+
+    /**
+     * Gets the text of the line.
+     *
+     * @return The text of the line, without leading or trailing whitespace, and truncated to {@value #MAX_TEXT} characters.
+     */
+    @NonNull
+    public String getText() {
+      return this.text;
+    }
+
+  }
+
+  /** An excerpt of the build log around an entry. */
+  public static final class Excerpt {
+
+    Excerpt(@NonNull Entry entry, @NonNull List<String> lines, int highlight, int nextError, int nextWarning) {
+      this.entry = entry;
+      this.lines = lines;
+      this.highlight = highlight;
+      this.nextError = nextError;
+      this.nextWarning = nextWarning;
+    }
+
+    @NonNull
+    private final Entry entry;
+
+    private final int highlight;
+
+    @NonNull
+    private final List<String> lines;
+
+    private final int nextError;
+
+    private final int nextWarning;
+
+    /**
+     * Gets the entry this excerpt is for.
+     *
+     * @return The entry this excerpt is for.
+     */
+    @NonNull
+    public Entry getEntry() {
+      return this.entry;
+    }
+
+    /**
+     * Gets the index (within {@link #getLines()}) of the entry's line.
+     *
+     * @return The index of the entry's line, or -1 if it was not found anywhere in the build log.
+     */
+    public int getHighlight() {
+      return this.highlight;
+    }
+
+    /**
+     * Gets the lines of the excerpt.
+     *
+     * @return The lines of the excerpt, without console notes.
+     */
+    @NonNull
+    public List<String> getLines() {
+      return Collections.unmodifiableList(this.lines);
+    }
+
+    /**
+     * Gets the number of the next error entry.
+     *
+     * @return The number of the next error entry, or -1 if there is none.
+     */
+    public int getNextError() {
+      return this.nextError;
+    }
+
+    /**
+     * Gets the number of the next warning entry.
+     *
+     * @return The number of the next warning entry, or -1 if there is none.
+     */
+    public int getNextWarning() {
+      return this.nextWarning;
+    }
+
+  }
+
+}
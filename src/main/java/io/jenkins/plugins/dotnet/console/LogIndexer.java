@@ -0,0 +1,129 @@
+package io.jenkins.plugins.dotnet.console;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.ConsoleNote;
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * An output stream that keeps an index of the diagnostic lines and project boundaries passing through it (see
+ * {@link LogIndexAction}), recording for each the position at which it is written to the wrapped stream.
+ * <p>
+ * This is meant to be placed directly in front of the stream leading to the build log, so that everything written there (notes
+ * included) is counted, regardless of where it came from. Diagnostic lines are recognized by the notes added to them by
+ * {@link DiagnosticScanner}, so only lines containing a console note are checked for that; lines may carry a prefix identifying the
+ * invocation they came from.
+ */
+public final class LogIndexer extends LineTransformationOutputStream {
+
+  /** The output stream being decorated. */
+  @NonNull
+  private final OutputStream out;
+
+  /** The character set to use when interpreting output as text. */
+  @NonNull
+  private final Charset charset;
+
+  /** The receiver of index entries. */
+  @NonNull
+  private final Consumer<LogIndexAction.Entry> index;
+
+  /** The position (in bytes) in the build log of the next output forwarded to the wrapped output stream. */
+  private long position;
+
+  /**
+   * Creates a new indexing stream.
+   *
+   * @param out      The output stream to decorate.
+   * @param charset  The character set in use.
+   * @param index    The receiver of index entries.
+   * @param position The position (in bytes) in the build log of the next output forwarded to the wrapped output stream, i.e. the
+   *                 build log's current length.
+   */
+  public LogIndexer(@NonNull OutputStream out, @NonNull Charset charset, @NonNull Consumer<LogIndexAction.Entry> index,
+                    long position) {
+    this.out = out;
+    this.charset = charset;
+    this.index = index;
+    this.position = position;
+  }
+
+  /**
+   * Closes this stream; this forces end-of-line processing and then closes the wrapped output stream.
+   *
+   * @throws IOException When thrown by either {@link LineTransformationOutputStream#close()} or {@link OutputStream#close()}.
+   */
+  @Override
+  public void close() throws IOException {
+    super.close();
+    this.out.close();
+  }
+
+  /**
+   * Flushes the wrapped output stream.
+   *
+   * @throws IOException When thrown by {@link OutputStream#flush()}.
+   */
+  @Override
+  public void flush() throws IOException {
+    this.out.flush();
+  }
+
+  /** The text that must be present in a line marking the start or end of the build of a project. */
+  private static final byte[] PROJECT = "roject \"".getBytes(StandardCharsets.US_ASCII);
+
+  /** Regular expression pattern for the lines marking the start and end of the build of a project. */
+  private static final Pattern RE_PROJECT_BOUNDARY =
+    Pattern.compile("^(?:\\[[^\\]]*\\] )?\\s*(?:Project \".*\" on node \\d+|Done Building Project \")");
+
+  /**
+   * Records an index entry for a line of output if needed, then forwards it to the wrapped output stream.
+   *
+   * @param lineBytes  The raw line contents, including any line terminator.
+   * @param lineLength The length of the line within {@code lineBytes}.
+   *
+   * @throws IOException When thrown by {@link OutputStream#write(byte[], int, int)}.
+   */
+  @Override
+  protected void eol(byte[] lineBytes, int lineLength) throws IOException {
+    final long lineStart = this.position;
+    this.out.write(lineBytes, 0, lineLength);
+    this.position += lineLength;
+    // Avoid decoding lines that cannot be of interest; most lines are neither diagnostics nor project boundaries.
+    final boolean annotated = LogIndexer.indexOf(lineBytes, lineLength, ConsoleNote.PREAMBLE) >= 0;
+    if (!annotated && LogIndexer.indexOf(lineBytes, lineLength, LogIndexer.PROJECT) < 0)
+      return;
+    String line = this.trimEOL(this.charset.decode(ByteBuffer.wrap(lineBytes, 0, lineLength)).toString());
+    if (annotated) {
+      line = ConsoleNote.removeNotes(line);
+      final DiagnosticNote note = DiagnosticNote.forLine(line);
+      if (note != null) {
+        final LogIndexAction.Kind kind = note.isError() ? LogIndexAction.Kind.ERROR : LogIndexAction.Kind.WARNING;
+        this.index.accept(new LogIndexAction.Entry(kind, lineStart, line));
+        return;
+      }
+    }
+    if (LogIndexer.RE_PROJECT_BOUNDARY.matcher(line).find())
+      this.index.accept(new LogIndexAction.Entry(LogIndexAction.Kind.PROJECT, lineStart, line));
+  }
+
+  private static int indexOf(@NonNull byte[] data, int length, @NonNull byte[] what) {
+    outer:
+    for (int i = 0; i <= length - what.length; ++i) {
+      for (int j = 0; j < what.length; ++j) {
+        if (data[i + j] != what[j])
+          continue outer;
+      }
+      return i;
+    }
+    return -1;
+  }
+
+}
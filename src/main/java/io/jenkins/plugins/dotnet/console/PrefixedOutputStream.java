@@ -0,0 +1,62 @@
+package io.jenkins.plugins.dotnet.console;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * An output stream that adds a fixed prefix to every line, forwarding each (prefixed) line using a single write.
+ * <p>
+ * This allows the output of several concurrently running commands to be sent to the same (synchronized) stream, such as a build
+ * log, without lines getting mixed up.
+ */
+public final class PrefixedOutputStream extends LineTransformationOutputStream {
+
+  /** The output stream being decorated. */
+  private final OutputStream out;
+
+  /** The prefix to add to each line. */
+  private final byte[] prefix;
+
+  /**
+   * Creates a new prefixing stream.
+   *
+   * @param out     The output stream to decorate.
+   * @param prefix  The prefix to add to each line.
+   * @param charset The character set to use for encoding the prefix.
+   */
+  public PrefixedOutputStream(@NonNull OutputStream out, @NonNull String prefix, @NonNull Charset charset) {
+    this.out = out;
+    this.prefix = prefix.getBytes(charset);
+  }
+
+  /**
+   * Flushes the wrapped output stream.
+   *
+   * @throws IOException When thrown by {@link OutputStream#flush()}.
+   */
+  @Override
+  public void flush() throws IOException {
+    this.out.flush();
+  }
+
+  /**
+   * Forwards a line of output, with the prefix added, to the wrapped output stream.
+   *
+   * @param lineBytes  The raw line contents, including any line terminator.
+   * @param lineLength The length of the line within {@code lineBytes}.
+   *
+   * @throws IOException When thrown by {@link OutputStream#write(byte[], int, int)}.
+   */
+  @Override
+  protected void eol(byte[] lineBytes, int lineLength) throws IOException {
+    final byte[] line = new byte[this.prefix.length + lineLength];
+    System.arraycopy(this.prefix, 0, line, 0, this.prefix.length);
+    System.arraycopy(lineBytes, 0, line, this.prefix.length, lineLength);
+    this.out.write(line, 0, line.length);
+  }
+
+}
@@ -0,0 +1,44 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public final class AdmissionControlTests {
+
+  @Test
+  public void claimsWaitUntilTheyFit() throws Exception {
+    final AdmissionControl.Governor governor = new AdmissionControl.Governor(8, Integer.MAX_VALUE);
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final PrintStream log = new PrintStream(output, true, "UTF-8");
+    final AdmissionControl.Claim first = new AdmissionControl.Claim(governor, 6, 0);
+    governor.acquire(first, log);
+    Assert.assertEquals(0, output.size());
+    final AdmissionControl.Claim second = new AdmissionControl.Claim(governor, 4, 0);
+    final CountDownLatch admitted = new CountDownLatch(1);
+    final Thread waiter = new Thread(() -> {
+      try {
+        governor.acquire(second, log);
+        admitted.countDown();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiter.start();
+    Assert.assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+    first.release();
+    Assert.assertTrue(admitted.await(10, TimeUnit.SECONDS));
+    waiter.join();
+    second.release();
+    final String text = output.toString(StandardCharsets.UTF_8.name());
+    Assert.assertTrue(text, text.contains("Waiting for node resources"));
+    Assert.assertTrue(text, text.contains("Node resources acquired"));
+  }
+
+}
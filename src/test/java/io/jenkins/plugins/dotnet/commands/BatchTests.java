@@ -0,0 +1,147 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.model.Slave;
+import io.jenkins.plugins.dotnet.commands.msbuild.Build;
+import io.jenkins.plugins.dotnet.commands.msbuild.Test;
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.structs.describable.DescribableModel;
+import org.junit.Assert;
+import org.jvnet.hudson.test.FakeLauncher;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+public final class BatchTests extends CommandTests {
+
+  @org.junit.Test
+  public void emptyBatchWorks() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> steps.add(new Batch(null)));
+  }
+
+  @org.junit.Test
+  public void commandsRunInOrder() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      steps.add(new Batch(Arrays.asList(new Restore(), new Build(), new Test())));
+      clc.expectCommand().withArgument("restore");
+      clc.expectCommand().withArgument("build");
+      clc.expectCommand().withArgument("test");
+    });
+  }
+
+  @org.junit.Test
+  public void showSdkInfoRunsOnce() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      final Restore restore = new Restore();
+      restore.setShowSdkInfo(true);
+      final Batch batch = new Batch(Arrays.asList(restore, new Build()));
+      batch.setShowSdkInfo(true);
+      steps.add(batch);
+      clc.expectCommand().withArgument("--info");
+      clc.expectCommand().withArgument("restore");
+      clc.expectCommand().withArgument("build");
+    });
+  }
+
+  @org.junit.Test
+  public void buildServersAreShutDownOnce() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      final Build build = new Build();
+      build.setShutDownBuildServers(true);
+      final Test test = new Test();
+      test.setShutDownBuildServers(true);
+      steps.add(new Batch(Arrays.asList(build, test)));
+      clc.expectCommand().withArgument("build");
+      clc.expectCommand().withArgument("test");
+      clc.expectCommand().withArguments("build-server", "shutdown");
+    });
+  }
+
+  @org.junit.Test
+  public void commandSettingsAreHonored() throws Exception {
+    final FreeStyleProject project = this.rule.createFreeStyleProject();
+    final Build build = new Build();
+    build.setSummarizeOutput(true);
+    final Test test = new Test();
+    test.setWorkDirectory("tests");
+    project.getBuildersList().add(new Batch(Arrays.asList(build, test)));
+    final Map<String, FilePath> directories = new HashMap<>();
+    final Slave slave = this.rule.createPretendSlave(p -> {
+      final String command = p.cmds().get(1);
+      directories.put(command, p.pwd());
+      final PrintStream out = new PrintStream(p.stdout(), true, "UTF-8");
+      out.println("Detailed logging for " + command);
+      out.println("  Foo -> /src/bin/" + command + "/Foo.dll");
+      return new FakeLauncher.FinishedProc(0);
+    });
+    this.rule.jenkins.addNode(slave);
+    project.setAssignedNode(slave);
+    final FreeStyleBuild run = this.rule.buildAndAssertSuccess(project);
+    final FilePath workspace = run.getWorkspace();
+    Assert.assertNotNull(workspace);
+    Assert.assertEquals(workspace, directories.get("build"));
+    Assert.assertEquals(workspace.child("tests"), directories.get("test"));
+    // Only the build's output is summarized; its complete output is archived.
+    this.rule.assertLogContains("  Foo -> /src/bin/build/Foo.dll", run);
+    this.rule.assertLogNotContains("Detailed logging for build", run);
+    this.rule.assertLogContains(Messages.RawOutputArchive_Stored(), run);
+    this.rule.assertLogContains("Detailed logging for test", run);
+    final List<? extends Run<?, ?>.Artifact> artifacts = run.getArtifacts();
+    Assert.assertEquals(1, artifacts.size());
+    try (final InputStream in = new GZIPInputStream(run.getArtifactManager().root().child(artifacts.get(0).relativePath).open())) {
+      final String raw = IOUtils.toString(in, StandardCharsets.UTF_8);
+      Assert.assertTrue(raw, raw.contains("Detailed logging for build"));
+      Assert.assertFalse(raw, raw.contains("Detailed logging for test"));
+    }
+  }
+
+  @org.junit.Test
+  public void nestedCommandsCanUseClassSyntax() throws Exception {
+    // In a Pipeline, a nested command's symbol (e.g. dotnetBuild()) would run it as a step of its own, so commands are written as
+    // [$class: 'Build', ...] instead.
+    final Map<String, Object> build = new HashMap<>();
+    build.put("$class", "Build");
+    build.put("project", "Foo.Bar.sln");
+    final Map<String, Object> test = new HashMap<>();
+    test.put("$class", "Test");
+    test.put("workDirectory", "tests");
+    final Map<String, Object> restore = new HashMap<>();
+    restore.put("$class", Restore.class.getName());
+    final Batch batch = new DescribableModel<>(Batch.class).instantiate(
+      Collections.singletonMap("commands", Arrays.asList(restore, build, test)), this.rule.createTaskListener());
+    final List<Command> commands = batch.getCommands();
+    Assert.assertEquals(3, commands.size());
+    Assert.assertTrue(commands.get(0) instanceof Restore);
+    Assert.assertTrue(commands.get(1) instanceof Build);
+    Assert.assertEquals("Foo.Bar.sln", ((Build) commands.get(1)).getProject());
+    Assert.assertTrue(commands.get(2) instanceof Test);
+    Assert.assertEquals("tests", commands.get(2).getWorkDirectory());
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      steps.add(batch);
+      clc.expectCommand().withArgument("restore");
+      clc.expectCommand().withArguments("build", "Foo.Bar.sln");
+      clc.expectCommand().withArgument("test");
+    });
+  }
+
+  @org.junit.Test
+  public void singleCommandWorks() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      final Build build = new Build();
+      build.setProject("Foo.Bar.sln");
+      steps.add(new Batch(Collections.singletonList(build)));
+      clc.expectCommand().withArguments("build", "Foo.Bar.sln");
+    });
+  }
+
+}
@@ -0,0 +1,50 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class BuildServerPoolTests {
+
+  @Rule
+  public final JenkinsRule rule = new JenkinsRule();
+
+  @Test
+  public void leasesExemptOnlyBuildServers() throws Exception {
+    final FilePath workspace = this.rule.jenkins.getRootPath();
+    final EnvVars env = new EnvVars("BUILD_ID", "42", "DOTNET_ROOT", "/opt/dotnet");
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final PrintStream log = new PrintStream(output, true, "UTF-8");
+    final BuildServerPool.Lease lease = BuildServerPool.acquire(workspace, "/opt/dotnet/dotnet", env, 15, null, log);
+    Assert.assertNotNull(lease);
+    // The command's environment is left alone, so Jenkins still kills everything else the build starts.
+    Assert.assertEquals("42", env.get("BUILD_ID"));
+    Assert.assertNull(env.get("JENKINS_NODE_COOKIE"));
+    Assert.assertEquals("/opt/dotnet", env.get("DOTNET_ROOT"));
+    final String text = output.toString(StandardCharsets.UTF_8.name());
+    Assert.assertTrue(text, text.contains("15 minute(s)"));
+    Assert.assertTrue(BuildServerPool.isPooled(Arrays.asList("/opt/dotnet/dotnet", "/opt/dotnet/sdk/8.0.100/MSBuild.dll",
+      "/nologo", "/nodemode:1", "/nodeReuse:true", "/low:false")));
+    Assert.assertTrue(BuildServerPool.isPooled(Arrays.asList("/opt/dotnet/dotnet", "exec",
+      "/opt/dotnet/sdk/8.0.100/Roslyn/bincore/VBCSCompiler.dll", "-pipename:abc")));
+    // Not a build server.
+    Assert.assertFalse(BuildServerPool.isPooled(Arrays.asList("/opt/dotnet/dotnet", "/opt/dotnet/sdk/8.0.100/MSBuild.dll",
+      "/nodemode:1", "/nodeReuse:false")));
+    Assert.assertFalse(BuildServerPool.isPooled(Arrays.asList("/opt/dotnet/dotnet", "test", "Foo.csproj")));
+    // Not from a pooled installation.
+    Assert.assertFalse(BuildServerPool.isPooled(Arrays.asList("/usr/share/dotnet/dotnet",
+      "/usr/share/dotnet/sdk/8.0.100/MSBuild.dll", "/nodemode:1", "/nodeReuse:true")));
+    lease.release(true);
+    // Releasing again has no effect.
+    lease.release(false);
+  }
+
+}
@@ -0,0 +1,89 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.StreamTaskListener;
+import io.jenkins.plugins.dotnet.console.DiagnosticNote;
+import io.jenkins.plugins.dotnet.console.DiagnosticScanner;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+public final class DetachedProcTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public final JenkinsRule rule = new JenkinsRule();
+
+  @Test
+  public void outputAndExitCodeAreForwarded() throws Exception {
+    Assume.assumeFalse(Functions.isWindows());
+    final File dir = this.folder.newFolder("ws");
+    final FilePath workspace = new FilePath(dir);
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    final StreamTaskListener listener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+    final ArgumentListBuilder cmdLine = new ArgumentListBuilder("sh", "-c", "echo \"$GREETING\"; echo oops >&2; exit 3");
+    final DetachedProc proc = DetachedProc.start(cmdLine, new EnvVars("GREETING", "hello"), workspace, output, null, listener);
+    Assert.assertEquals(3, proc.join());
+    Assert.assertEquals("hello\noops\n", output.toString(StandardCharsets.UTF_8.name()));
+    Assert.assertFalse(proc.isAlive());
+    // the control directory is cleaned up
+    final File[] remaining = new File(dir.getParentFile(), "ws@tmp").listFiles();
+    Assert.assertTrue(remaining == null || remaining.length == 0);
+  }
+
+  @Test
+  public void outputIsScannedByTheNode() throws Exception {
+    Assume.assumeFalse(Functions.isWindows());
+    final FilePath workspace = new FilePath(this.folder.newFolder("ws"));
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final StreamTaskListener listener = new StreamTaskListener(new ByteArrayOutputStream(), StandardCharsets.UTF_8);
+    final DiagnosticScanner scanner = new DiagnosticScanner(output, StandardCharsets.UTF_8);
+    final String diagnostic = "/src/Foo.cs(1,1): error CS0103: unknown";
+    final ArgumentListBuilder cmdLine = new ArgumentListBuilder("sh", "-c", "echo '" + diagnostic + "'; " +
+                                                                "echo '    2 Warning(s)'; echo '    1 Error(s)'; printf 'done'");
+    final DetachedProc proc = DetachedProc.start(cmdLine, new EnvVars(), workspace, scanner, scanner, listener);
+    Assert.assertEquals(0, proc.join());
+    scanner.close();
+    Assert.assertEquals(2, scanner.getWarnings());
+    Assert.assertEquals(1, scanner.getErrors());
+    final String text = output.toString(StandardCharsets.UTF_8.name());
+    // The node only located the diagnostic line; the note specific to it was encoded here.
+    final DiagnosticNote note = DiagnosticNote.forLine(diagnostic);
+    Assert.assertNotNull(note);
+    final String annotated = note.encode() + diagnostic + "\n";
+    Assert.assertTrue(text, text.startsWith(annotated));
+    Assert.assertTrue(text, text.contains("    2 Warning(s)\n"));
+    Assert.assertTrue(text, text.endsWith("done\n") || text.endsWith("done"));
+  }
+
+  @Test
+  public void killedProcessIsCleanedUp() throws Exception {
+    Assume.assumeFalse(Functions.isWindows());
+    final File dir = this.folder.newFolder("ws");
+    final FilePath workspace = new FilePath(dir);
+    final StreamTaskListener listener = new StreamTaskListener(new ByteArrayOutputStream(), StandardCharsets.UTF_8);
+    final ArgumentListBuilder cmdLine = new ArgumentListBuilder("sh", "-c", "echo started; sleep 60");
+    final DetachedProc proc = DetachedProc.start(cmdLine, new EnvVars(), workspace, new ByteArrayOutputStream(), null, listener);
+    Assert.assertTrue(proc.isAlive());
+    proc.kill();
+    Assert.assertFalse(proc.isAlive());
+    Assert.assertEquals(-1, proc.join());
+    // the control directory is removed along with the process
+    final File[] remaining = new File(dir.getParentFile(), "ws@tmp").listFiles();
+    Assert.assertTrue(remaining == null || remaining.length == 0);
+  }
+
+}
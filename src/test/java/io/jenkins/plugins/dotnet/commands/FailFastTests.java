@@ -0,0 +1,91 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import hudson.Proc;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public final class FailFastTests {
+
+  @Test
+  public void codedErrorsAndFailedTestsAreCounted() throws Exception {
+    final String output = "  Determining projects to restore...\n" +
+                          "Program.cs(3,5): error CS0103: The name 'x' does not exist in the current context [/src/App.csproj]\n" +
+                          "  Failed Tests.MathTests.Divides(x: 0) [3 ms]\n" +
+                          "  Error Message:\n" +
+                          "   System.DivideByZeroException : Attempted to divide by zero.\n" +
+                          "  Passed Tests.OtherTests.Works [12 ms]\n";
+    final FailFast failFast = new FailFast(3);
+    final ByteArrayOutputStream forwarded = new ByteArrayOutputStream();
+    try (final OutputStream stream = failFast.monitor(forwarded, StandardCharsets.UTF_8)) {
+      stream.write(output.getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertEquals(output, forwarded.toString("UTF-8"));
+    Assert.assertEquals(2, failFast.getFailures());
+    Assert.assertFalse(failFast.isTriggered());
+  }
+
+  @Test
+  public void triggersAtTheLimit() throws Exception {
+    final FailFast failFast = new FailFast(2);
+    try (final OutputStream stream = failFast.monitor(new ByteArrayOutputStream(), StandardCharsets.UTF_8)) {
+      stream.write("  Failed Tests.A [1 ms]\n".getBytes(StandardCharsets.UTF_8));
+      Assert.assertFalse(failFast.isTriggered());
+      stream.write("  Failed Tests.B [1 ms]".getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertTrue(failFast.isTriggered());
+    Assert.assertEquals(2, failFast.getFailures());
+  }
+
+  @Test
+  public void processesAreKilledOffTheMonitoringThread() throws Exception {
+    final FailFast failFast = new FailFast(1);
+    final CompletableFuture<Thread> killedOn = new CompletableFuture<>();
+    final Proc proc = new Proc() {
+
+      @Override
+      public boolean isAlive() {
+        return !killedOn.isDone();
+      }
+
+      @Override
+      public void kill() {
+        killedOn.complete(Thread.currentThread());
+      }
+
+      @Override
+      public int join() {
+        return -1;
+      }
+
+      @Override
+      public InputStream getStdout() {
+        return null;
+      }
+
+      @Override
+      public InputStream getStderr() {
+        return null;
+      }
+
+      @Override
+      public OutputStream getStdin() {
+        return null;
+      }
+
+    };
+    failFast.register(proc);
+    try (final OutputStream stream = failFast.monitor(new ByteArrayOutputStream(), StandardCharsets.UTF_8)) {
+      stream.write("  Failed Tests.A [1 ms]\n".getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertTrue(failFast.isTriggered());
+    Assert.assertNotSame(Thread.currentThread(), killedOn.get(10, TimeUnit.SECONDS));
+  }
+
+}
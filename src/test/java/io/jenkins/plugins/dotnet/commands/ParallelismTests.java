@@ -0,0 +1,16 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class ParallelismTests {
+
+  @Test
+  public void coresAreSharedByExecutors() {
+    Assert.assertEquals(4, Parallelism.cpuCount(16, 4));
+    Assert.assertEquals(5, Parallelism.cpuCount(16, 3));
+    Assert.assertEquals(1, Parallelism.cpuCount(2, 4));
+    Assert.assertEquals(8, Parallelism.cpuCount(8, 0));
+  }
+
+}
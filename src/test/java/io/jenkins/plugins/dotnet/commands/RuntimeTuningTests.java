@@ -0,0 +1,25 @@
+package io.jenkins.plugins.dotnet.commands;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class RuntimeTuningTests {
+
+  private static final long GB = 1024L * 1024 * 1024;
+
+  @Test
+  public void heapLimitIsShareOfMemoryPerExecutor() {
+    // 16 GB, 4 executors -> 4 GB share; 50% -> 2 GB
+    Assert.assertEquals("0x80000000", RuntimeTuning.heapHardLimit(16 * RuntimeTuningTests.GB, 4, 50));
+    // no executors is treated as one
+    Assert.assertEquals("0x100000000", RuntimeTuning.heapHardLimit(4 * RuntimeTuningTests.GB, 0, 100));
+    // percentages are clamped to 1-100
+    Assert.assertEquals("0x100000000", RuntimeTuning.heapHardLimit(4 * RuntimeTuningTests.GB, 1, 250));
+  }
+
+  @Test
+  public void heapLimitHasMinimum() {
+    Assert.assertEquals("0x1000000", RuntimeTuning.heapHardLimit(64L * 1024 * 1024, 8, 1));
+  }
+
+}
@@ -0,0 +1,83 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+public final class AffectedProjectsTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private void write(String path, String content) throws Exception {
+    final File file = new File(this.folder.getRoot(), path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private ProjectGraph scan() throws Exception {
+    this.write("All.slnx", "<Solution><Project Path=\"App/App.csproj\" /><Project Path=\"Tool/Tool.csproj\" /></Solution>");
+    this.write("App/App.csproj", "<Project><ItemGroup><ProjectReference Include=\"../Lib/Lib.csproj\" /></ItemGroup></Project>");
+    this.write("Lib/Lib.csproj", "<Project />");
+    this.write("Tool/Tool.csproj", "<Project />");
+    return new ProjectGraph.Scan("All.slnx", false, null).invoke(this.folder.getRoot(), null);
+  }
+
+  private static List<String> paths(List<ProjectGraph.Node> nodes) {
+    return nodes.stream().map(ProjectGraph.Node::getPath).collect(Collectors.toList());
+  }
+
+  @Test
+  public void referencingProjectsAreAffected() throws Exception {
+    final ProjectGraph graph = this.scan();
+    final List<ProjectGraph.Node> affected = AffectedProjects.select(graph, Collections.singletonList("Lib/Class1.cs"));
+    Assert.assertEquals(Arrays.asList("Lib/Lib.csproj", "App/App.csproj"), AffectedProjectsTests.paths(affected));
+  }
+
+  @Test
+  public void unrelatedChangesAffectNothing() throws Exception {
+    final ProjectGraph graph = this.scan();
+    Assert.assertTrue(AffectedProjects.select(graph, Arrays.asList("README.md", "Library/Other.cs")).isEmpty());
+  }
+
+  @Test
+  public void sharedBuildFilesAffectEverything() throws Exception {
+    final ProjectGraph graph = this.scan();
+    final List<ProjectGraph.Node> affected = AffectedProjects.select(graph, Collections.singletonList("Directory.Build.props"));
+    Assert.assertEquals(graph.getNodes().size(), affected.size());
+  }
+
+  @Test
+  public void changedPathsAreMappedOntoTheWorkingDirectory() {
+    final List<String> changed = Arrays.asList("src/Lib/Class1.cs", "docs/README.md", "Directory.Build.props",
+                                               "other/Directory.Build.props");
+    final Set<String> mapped = AffectedProjects.relativize(changed, "src");
+    Assert.assertEquals(new TreeSet<>(Arrays.asList("Lib/Class1.cs", "Directory.Build.props")), mapped);
+    Assert.assertEquals(new TreeSet<>(changed), AffectedProjects.relativize(changed, ""));
+    Assert.assertNull(AffectedProjects.relativize(Arrays.asList("src/Lib/Class1.cs", "../elsewhere/File.cs"), "src"));
+  }
+
+  @Test
+  public void checkoutRootIsFound() throws Exception {
+    final File root = this.folder.newFolder("checkout");
+    Files.createDirectories(root.toPath().resolve(".git"));
+    final File workDir = new File(root, "src/App");
+    Files.createDirectories(workDir.toPath());
+    Assert.assertEquals("src/App", new AffectedProjects.FindCheckoutPath(null).invoke(workDir, null));
+    Assert.assertEquals("", new AffectedProjects.FindCheckoutPath(null).invoke(root, null));
+    // For freestyle builds, the module root takes precedence.
+    Assert.assertEquals("App", new AffectedProjects.FindCheckoutPath(new File(root, "src").getPath()).invoke(workDir, null));
+  }
+
+}
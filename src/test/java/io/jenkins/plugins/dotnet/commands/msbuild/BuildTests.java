@@ -1,8 +1,21 @@
 package io.jenkins.plugins.dotnet.commands.msbuild;
 
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Slave;
 import io.jenkins.plugins.dotnet.commands.CommandTests;
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.FakeLauncher;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 public final class BuildTests extends CommandTests {
@@ -65,6 +78,267 @@ public final class BuildTests extends CommandTests {
     });
   }
 
+  @Test
+  public void multipleFrameworksAndRuntimesWork() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      final Build command = new Build();
+      command.setFrameworks("net6.0", "net8.0");
+      command.setRuntimesString("linux-x64 win-x64");
+      steps.add(command);
+      clc.expectCommand().withArguments("build", "-f:net6.0", "-r:linux-x64");
+      clc.expectCommand().withArguments("build", "-f:net6.0", "-r:win-x64");
+      clc.expectCommand().withArguments("build", "-f:net8.0", "-r:linux-x64");
+      clc.expectCommand().withArguments("build", "-f:net8.0", "-r:win-x64");
+    });
+  }
+
+  @Test
+  public void buildCacheMissRunsCommand() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      {
+        final Build command = new Build();
+        command.setBuildCache(true);
+        command.setOutputDirectory("out");
+        steps.add(command);
+        clc.expectCommand().withArguments("build", "--output", "out");
+      }
+      {
+        final Build command = new Build();
+        command.setBuildCache(true);
+        steps.add(command);
+        clc.expectCommand().withArguments("build");
+      }
+    });
+  }
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Sets up a project building for two runtimes using the build cache, on an agent whose launcher pretends to build (writing an
+   * assembly to the output directory), recording the command lines.
+   */
+  private FreeStyleProject createBuildCacheProject(File workspace, File store, List<List<String>> commands) throws Exception {
+    new FilePath(workspace).child("App.csproj").write("<Project Sdk=\"Microsoft.NET.Sdk\" />", "UTF-8");
+    final FreeStyleProject project = this.rule.createFreeStyleProject();
+    project.setCustomWorkspace(workspace.getPath());
+    final Build command = new Build();
+    command.setBuildCache(true);
+    command.setBuildCacheDirectory(store == null ? null : store.getPath());
+    command.setOutputDirectory("out");
+    command.setRuntimesString("linux-x64 win-x64");
+    project.getBuildersList().add(command);
+    final Slave slave = this.rule.createPretendSlave(p -> {
+      final List<String> cmds = p.cmds();
+      synchronized (commands) {
+        commands.add(new ArrayList<>(cmds));
+      }
+      final int output = cmds.indexOf("--output");
+      if (output >= 0)
+        p.pwd().child(cmds.get(output + 1)).child("App.dll").write(String.join(" ", cmds), "UTF-8");
+      return new FakeLauncher.FinishedProc(0);
+    });
+    this.rule.jenkins.addNode(slave);
+    project.setAssignedNode(slave);
+    return project;
+  }
+
+  private void buildCacheRestoresOutput(boolean local) throws Exception {
+    final List<List<String>> commands = new ArrayList<>();
+    final File workspace = this.folder.newFolder("ws");
+    final File store = local ? this.folder.newFolder("store") : null;
+    final FreeStyleProject project = this.createBuildCacheProject(workspace, store, commands);
+    final FreeStyleBuild first = this.rule.buildAndAssertSuccess(project);
+    this.rule.assertLogContains("Build cache: 0 hit(s), 2 miss(es).", first);
+    Assert.assertEquals(2, commands.size());
+    final FilePath assembly = new FilePath(new File(workspace, "out/App.dll"));
+    final String output = assembly.readToString();
+    // The output directory is not an input, so with the output removed, both invocations are restored from the store.
+    new FilePath(new File(workspace, "out")).deleteRecursive();
+    commands.clear();
+    final FreeStyleBuild second = this.rule.buildAndAssertSuccess(project);
+    this.rule.assertLogContains("Build cache: 2 hit(s), 0 miss(es).", second);
+    Assert.assertEquals(Collections.emptyList(), commands);
+    Assert.assertEquals(output, assembly.readToString());
+    // A changed input causes a miss.
+    new FilePath(workspace).child("Program.cs").write("class Program {}", "UTF-8");
+    final FreeStyleBuild third = this.rule.buildAndAssertSuccess(project);
+    this.rule.assertLogContains("Build cache: 0 hit(s), 2 miss(es).", third);
+    Assert.assertEquals(2, commands.size());
+  }
+
+  @Test
+  public void buildCacheRestoresOutputFromAgentStore() throws Exception {
+    this.buildCacheRestoresOutput(true);
+  }
+
+  @Test
+  public void buildCacheRestoresOutputFromControllerStore() throws Exception {
+    this.buildCacheRestoresOutput(false);
+  }
+
+  @Test
+  public void buildCacheIsPrunedOncePerStep() throws Exception {
+    final List<List<String>> commands = new ArrayList<>();
+    final File store = this.folder.newFolder("store");
+    final File stale = new File(store, "stale");
+    new FilePath(new File(stale, "App.dll")).write("stale", "UTF-8");
+    Assert.assertTrue(stale.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30)));
+    final FreeStyleProject project = this.createBuildCacheProject(this.folder.newFolder("ws"), store, commands);
+    final FreeStyleBuild build = this.rule.buildAndAssertSuccess(project);
+    Assert.assertEquals(2, commands.size());
+    Assert.assertFalse(stale.exists());
+    final String log = build.getLog();
+    final String pruned = "Build cache: removed 1 unused entry(ies).";
+    Assert.assertTrue(log.contains(pruned));
+    Assert.assertEquals(log.indexOf(pruned), log.lastIndexOf(pruned));
+    final File[] entries = store.listFiles();
+    Assert.assertNotNull(entries);
+    Assert.assertEquals(2, entries.length);
+  }
+
+  /**
+   * Sets up a project building a two-project solution using results caches, on an agent whose launcher pretends to build each
+   * project (writing its results cache and its output assembly), recording the command lines.
+   */
+  private FreeStyleProject createResultsCacheProject(File workspace, File store, List<List<String>> commands) throws Exception {
+    final FilePath ws = new FilePath(workspace);
+    ws.child("App.slnx").write("<Solution><Project Path=\"App/App.csproj\" /><Project Path=\"Lib/Lib.csproj\" /></Solution>",
+                               "UTF-8");
+    ws.child("App/App.csproj").write("<Project Sdk=\"Microsoft.NET.Sdk\"><ItemGroup>" +
+                                     "<ProjectReference Include=\"../Lib/Lib.csproj\" /></ItemGroup></Project>", "UTF-8");
+    ws.child("Lib/Lib.csproj").write("<Project Sdk=\"Microsoft.NET.Sdk\" />", "UTF-8");
+    final FreeStyleProject project = this.rule.createFreeStyleProject();
+    project.setCustomWorkspace(workspace.getPath());
+    final Build command = new Build();
+    command.setResultsCache(true);
+    command.setResultsCacheDirectory(store.getPath());
+    project.getBuildersList().add(command);
+    final Slave slave = this.rule.createPretendSlave(p -> {
+      final List<String> cmds = p.cmds();
+      synchronized (commands) {
+        commands.add(new ArrayList<>(cmds));
+      }
+      for (final String arg : cmds) {
+        if (arg.startsWith("-orc:"))
+          new FilePath(new File(arg.substring(5))).write("results", "UTF-8");
+        else if (arg.endsWith(".csproj")) {
+          final String name = arg.substring(arg.lastIndexOf('/') + 1, arg.length() - 7);
+          p.pwd().child(arg).getParent().child("bin").child(name + ".dll").write(name, "UTF-8");
+        }
+      }
+      return new FakeLauncher.FinishedProc(0);
+    });
+    this.rule.jenkins.addNode(slave);
+    project.setAssignedNode(slave);
+    return project;
+  }
+
+  private static String getArgument(List<String> cmds, String prefix) {
+    for (final String arg : cmds) {
+      if (arg.startsWith(prefix))
+        return arg.substring(prefix.length());
+    }
+    return null;
+  }
+
+  @Test
+  public void resultsCacheChainsProjectResults() throws Exception {
+    final List<List<String>> commands = new ArrayList<>();
+    final File store = this.folder.newFolder("store");
+    final FreeStyleProject project = this.createResultsCacheProject(this.folder.newFolder("ws"), store, commands);
+    final FreeStyleBuild build = this.rule.buildAndAssertSuccess(project);
+    this.rule.assertLogContains("0 project(s) skipped, 2 project(s) built", build);
+    Assert.assertEquals(2, commands.size());
+    final List<String> lib = commands.get(0);
+    final List<String> app = commands.get(1);
+    Assert.assertTrue(lib.contains("Lib/Lib.csproj"));
+    Assert.assertTrue(lib.contains("-isolate"));
+    Assert.assertNull(BuildTests.getArgument(lib, "-irc:"));
+    Assert.assertTrue(app.contains("App/App.csproj"));
+    Assert.assertTrue(app.contains("-isolate"));
+    // The referencing project gets the results cache written by the referenced one as input.
+    Assert.assertEquals(BuildTests.getArgument(lib, "-orc:"), BuildTests.getArgument(app, "-irc:"));
+    // Both results caches are stored, each with the manifest of the project's output.
+    final File[] entries = store.listFiles();
+    Assert.assertNotNull(entries);
+    Assert.assertEquals(2, entries.length);
+    for (final File entry : entries) {
+      Assert.assertTrue(new File(entry, "results.cache").isFile());
+      Assert.assertTrue(new File(entry, "outputs.txt").isFile());
+    }
+  }
+
+  @Test
+  public void resultsCacheSkipsStoredProjects() throws Exception {
+    final List<List<String>> commands = new ArrayList<>();
+    final File workspace = this.folder.newFolder("ws");
+    final File store = this.folder.newFolder("store");
+    final FreeStyleProject project = this.createResultsCacheProject(workspace, store, commands);
+    // Populate the store using a first build.
+    this.rule.buildAndAssertSuccess(project);
+    Assert.assertEquals(2, commands.size());
+    commands.clear();
+    // With the store populated and the output in place, neither project is built.
+    final FreeStyleBuild skipped = this.rule.buildAndAssertSuccess(project);
+    this.rule.assertLogContains("2 project(s) skipped, 0 project(s) built", skipped);
+    Assert.assertEquals(Collections.emptyList(), commands);
+    // Output that no longer matches the stored manifest causes the project to be built again; the referenced project's
+    // results cache is restored from the store as input.
+    new FilePath(new File(workspace, "App/bin/App.dll")).write("something else", "UTF-8");
+    final FreeStyleBuild rebuilt = this.rule.buildAndAssertSuccess(project);
+    this.rule.assertLogContains("1 project(s) skipped, 1 project(s) built", rebuilt);
+    this.rule.assertLogContains("Building App/App.csproj again", rebuilt);
+    Assert.assertEquals(1, commands.size());
+    Assert.assertTrue(commands.get(0).contains("App/App.csproj"));
+    Assert.assertTrue(new File(BuildTests.getArgument(commands.get(0), "-irc:")).isFile());
+  }
+
+  @Test
+  public void resultsCacheStoreIsPruned() throws Exception {
+    final List<List<String>> commands = new ArrayList<>();
+    final File store = this.folder.newFolder("store");
+    final File stale = new File(store, "stale");
+    new FilePath(new File(stale, "results.cache")).write("results", "UTF-8");
+    Assert.assertTrue(stale.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30)));
+    final FreeStyleProject project = this.createResultsCacheProject(this.folder.newFolder("ws"), store, commands);
+    final FreeStyleBuild build = this.rule.buildAndAssertSuccess(project);
+    this.rule.assertLogContains("removed 1 unused entry(ies)", build);
+    Assert.assertFalse(stale.exists());
+    final File[] entries = store.listFiles();
+    Assert.assertNotNull(entries);
+    Assert.assertEquals(2, entries.length);
+  }
+
+  @Test
+  public void graphFlagWorks() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      {
+        final Build command = new Build();
+        command.setGraph(true);
+        steps.add(command);
+        clc.expectCommand().withArguments("build", "-graph");
+      }
+      {
+        final Build command = new Build();
+        command.setGraph(false);
+        steps.add(command);
+        clc.expectCommand().withArguments("build");
+      }
+    });
+  }
+  @Test
+  public void affectedOnlyRunsForAllProjectsWhenChangesAreUnknown() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      final Build command = new Build();
+      command.setProject("App.csproj");
+      command.setAffectedOnly(true);
+      steps.add(command);
+      clc.expectCommand().withArguments("build", "App.csproj");
+    });
+  }
+
+
   @Test
   public void noDependenciesFlagWorks() throws Exception {
     this.runCommandsAndValidateProcessExecution((steps, clc) -> {
@@ -263,4 +537,21 @@ public final class BuildTests extends CommandTests {
     });
   }
 
+  @Test
+  public void maxCpuCountOptionWorks() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      {
+        final Build command = new Build();
+        command.setMaxCpuCount(4);
+        steps.add(command);
+        clc.expectCommand().withArguments("build", "-maxcpucount:4");
+      }
+      {
+        final Build command = new Build();
+        command.setMaxCpuCount(0);
+        steps.add(command);
+        clc.expectCommand().withArguments("build");
+      }
+    });
+  }
 }
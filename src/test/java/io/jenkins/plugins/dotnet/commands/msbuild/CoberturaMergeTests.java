@@ -0,0 +1,93 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class CoberturaMergeTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static String report(String source, String... lines) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+    sb.append("<coverage line-rate=\"0.5\" branch-rate=\"0\" version=\"1.9\" timestamp=\"1\">\n");
+    sb.append("  <sources><source>").append(source).append("</source></sources>\n");
+    sb.append("  <packages><package name=\"App\"><classes>\n");
+    sb.append("    <class name=\"App.Calculator\" filename=\"Calculator.cs\"><methods/><lines>\n");
+    for (final String line : lines)
+      sb.append("      ").append(line).append('\n');
+    sb.append("    </lines></class>\n");
+    sb.append("  </classes></package></packages>\n");
+    sb.append("</coverage>\n");
+    return sb.toString();
+  }
+
+  private void write(String path, String content) throws Exception {
+    final File file = new File(this.folder.getRoot(), path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void reportsAreMergedPerLine() throws Exception {
+    this.write("results/a/coverage.cobertura.xml", CoberturaMergeTests.report("/src/",
+      "<line number=\"1\" hits=\"3\" branch=\"False\"/>",
+      "<line number=\"2\" hits=\"0\" branch=\"False\"/>",
+      "<line number=\"3\" hits=\"0\" branch=\"False\"/>"));
+    this.write("results/b/coverage.cobertura.xml", CoberturaMergeTests.report("/src",
+      "<line number=\"2\" hits=\"1\" branch=\"False\"/>",
+      "<line number=\"3\" hits=\"0\" branch=\"False\"/>",
+      "<line number=\"4\" hits=\"0\" branch=\"False\"/>"));
+    final File output = new File(this.folder.getRoot(), "merged/coverage.xml");
+    final String root = new File(this.folder.getRoot(), "results").getPath();
+    final CoverageSummary summary = new CoberturaMerge(Collections.singletonList(root), 0, output.getPath(), "merged/coverage.xml")
+      .invoke(this.folder.getRoot(), null);
+    Assert.assertEquals(2, summary.getReports());
+    Assert.assertEquals(1, summary.getFiles());
+    Assert.assertEquals(4, summary.getLinesValid());
+    Assert.assertEquals(2, summary.getLinesCovered());
+    Assert.assertEquals(50.0, summary.getLineCoverage(), 0.0);
+    Assert.assertEquals("App", summary.getPackages().get(0).getName());
+    Assert.assertTrue(output.isFile());
+    // The merged report can be read back, giving the same coverage.
+    final Map<String, CoberturaMerge.FileCoverage> files = new TreeMap<>();
+    CoberturaMerge.read(XMLInputFactory.newFactory(), output, files);
+    Assert.assertEquals(1, files.size());
+    final CoberturaMerge.FileCoverage fc = files.values().iterator().next();
+    Assert.assertEquals(new File("/src", "Calculator.cs").getPath(), fc.fileName);
+    Assert.assertEquals("{1, 2, 3, 4}", fc.valid.toString());
+    Assert.assertEquals("{1, 2}", fc.covered.toString());
+  }
+
+  @Test
+  public void oldReportsAreIgnored() throws Exception {
+    this.write("coverage.cobertura.xml", CoberturaMergeTests.report("/src", "<line number=\"1\" hits=\"1\"/>"));
+    final File output = new File(this.folder.getRoot(), "merged.xml");
+    final CoverageSummary summary = new CoberturaMerge(Collections.singletonList(this.folder.getRoot().getPath()),
+      System.currentTimeMillis() + 60_000, output.getPath(), "merged.xml").invoke(this.folder.getRoot(), null);
+    Assert.assertEquals(0, summary.getReports());
+    Assert.assertFalse(output.exists());
+  }
+
+  @Test
+  public void relativeNamesAreResolved() {
+    Assert.assertEquals("/abs/File.cs", CoberturaMerge.resolve(Arrays.asList("/src", "/other"), "/abs/File.cs"));
+    Assert.assertEquals("C:\\src\\File.cs", CoberturaMerge.resolve(Collections.singletonList("/src"), "C:\\src\\File.cs"));
+    Assert.assertEquals("File.cs", CoberturaMerge.resolve(Collections.emptyList(), "File.cs"));
+    Assert.assertEquals(new File("/src", "File.cs").getPath(),
+      CoberturaMerge.resolve(Collections.singletonList("/src"), "File.cs"));
+  }
+
+}
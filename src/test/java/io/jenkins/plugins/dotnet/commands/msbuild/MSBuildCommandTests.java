@@ -1,7 +1,17 @@
 package io.jenkins.plugins.dotnet.commands.msbuild;
 
+import hudson.ExtensionList;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Slave;
+import io.jenkins.plugins.dotnet.DotNetConfiguration;
 import io.jenkins.plugins.dotnet.commands.CommandTests;
+import org.junit.Assert;
 import org.junit.Test;
+import org.jvnet.hudson.test.FakeLauncher;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public final class MSBuildCommandTests extends CommandTests {
 
@@ -25,6 +35,70 @@ public final class MSBuildCommandTests extends CommandTests {
     });
   }
 
+  @Test
+  public void multipleProjectsWork() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      {
+        final MSBuildCommand command = new MSBuildCommand("unit-test");
+        command.setProjects("Foo.csproj", "Bar Baz.csproj");
+        steps.add(command);
+        clc.expectCommand().withArguments("unit-test", "Foo.csproj");
+        clc.expectCommand().withArguments("unit-test", "Bar Baz.csproj");
+      }
+      {
+        final MSBuildCommand command = new MSBuildCommand("unit-test");
+        command.setProjectsString("Foo.csproj;\nBar.csproj");
+        command.setParallelInvocations(1);
+        steps.add(command);
+        clc.expectCommand().withArguments("unit-test", "Foo.csproj");
+        clc.expectCommand().withArguments("unit-test", "Bar.csproj");
+      }
+    });
+  }
+
+  @Test
+  public void parallelInvocationsShareAutomaticCpuCount() throws Exception {
+    ExtensionList.lookupSingleton(DotNetConfiguration.class).setAutomaticParallelism(true);
+    final FreeStyleProject project = this.rule.createFreeStyleProject();
+    final MSBuildCommand command = new MSBuildCommand("unit-test");
+    command.setProjectsString("Foo.csproj;Bar.csproj;Baz.csproj");
+    command.setParallelInvocations(2);
+    project.getBuildersList().add(command);
+    final List<List<String>> commands = new ArrayList<>();
+    final Slave slave = this.rule.createPretendSlave(p -> {
+      synchronized (commands) {
+        commands.add(new ArrayList<>(p.cmds()));
+      }
+      return new FakeLauncher.FinishedProc(0);
+    });
+    this.rule.jenkins.addNode(slave);
+    project.setAssignedNode(slave);
+    final FreeStyleBuild build = this.rule.buildAndAssertSuccess(project);
+    // The pretend agent has a single executor, so a single build may use all cores; two invocations run at the same time.
+    final int cpuCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    this.rule.assertLogContains("Running 2 invocations at the same time; each may use " + cpuCount + " CPU(s).", build);
+    Assert.assertEquals(3, commands.size());
+    for (final List<String> cmds : commands)
+      Assert.assertTrue(cmds.toString(), cmds.contains("-maxcpucount:" + cpuCount));
+  }
+
+  @Test
+  public void requiredCpusCoverParallelInvocations() {
+    final MSBuildCommand command = new MSBuildCommand("unit-test");
+    command.setProjectsString("Foo.csproj;Bar.csproj;Baz.csproj");
+    Assert.assertEquals(8, command.getRequiredCpus(8));
+    Assert.assertEquals(Integer.MAX_VALUE, command.getRequiredCpus(null));
+    command.setParallelInvocations(2);
+    Assert.assertEquals(8, command.getRequiredCpus(8));
+    command.setMaxCpuCount(3);
+    Assert.assertEquals(6, command.getRequiredCpus(8));
+    // Never more than the number of invocations runs at the same time.
+    command.setParallelInvocations(5);
+    Assert.assertEquals(9, command.getRequiredCpus(8));
+    command.setMaxCpuCount(null);
+    Assert.assertEquals(6, command.getRequiredCpus(8));
+  }
+
   private static final String CONFIGURATION = "Release";
 
   @Test
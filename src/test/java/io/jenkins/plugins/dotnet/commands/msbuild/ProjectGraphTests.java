@@ -0,0 +1,110 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public final class ProjectGraphTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private void write(String path, String content) throws Exception {
+    final File file = new File(this.folder.getRoot(), path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String project(String... references) {
+    final StringBuilder sb = new StringBuilder("<Project Sdk=\"Microsoft.NET.Sdk\"><ItemGroup>");
+    for (final String reference : references)
+      sb.append("<ProjectReference Include=\"").append(reference).append("\" />");
+    return sb.append("</ItemGroup></Project>").toString();
+  }
+
+  @Test
+  public void solutionProjectsAreOrderedByDependency() throws Exception {
+    this.write("App.sln", "Microsoft Visual Studio Solution File, Format Version 12.00\n" +
+                          "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"App\", \"App\\App.csproj\", \"{1}\"\n" +
+                          "EndProject\n" +
+                          "Project(\"{2150E333-8FDC-42A3-9474-1A3956D46DE8}\") = \"src\", \"src\", \"{2}\"\n" +
+                          "EndProject\n");
+    this.write("App/App.csproj", ProjectGraphTests.project("..\\Lib\\Lib.csproj"));
+    this.write("Lib/Lib.csproj", ProjectGraphTests.project("../Core/Core.csproj"));
+    this.write("Core/Core.csproj", ProjectGraphTests.project());
+    final ProjectGraph graph = new ProjectGraph.Scan(null).invoke(this.folder.getRoot(), null);
+    final List<String> paths = graph.getNodes().stream().map(ProjectGraph.Node::getPath).collect(Collectors.toList());
+    Assert.assertEquals(Arrays.asList("Core/Core.csproj", "Lib/Lib.csproj", "App/App.csproj"), paths);
+    Assert.assertEquals(Collections.singletonList("Lib/Lib.csproj"), graph.getNodes().get(2).getReferences());
+    Assert.assertEquals("App", graph.getNodes().get(2).getDirectory());
+  }
+
+  @Test
+  public void xmlSolutionsAreSupported() throws Exception {
+    this.write("App.slnx", "<Solution><Project Path=\"App/App.csproj\" /><Project Path=\"Lib/Lib.csproj\" /></Solution>");
+    this.write("App/App.csproj", ProjectGraphTests.project("../Lib/Lib.csproj"));
+    this.write("Lib/Lib.csproj", ProjectGraphTests.project());
+    final ProjectGraph graph = new ProjectGraph.Scan("App.slnx").invoke(this.folder.getRoot(), null);
+    final List<String> paths = graph.getNodes().stream().map(ProjectGraph.Node::getPath).collect(Collectors.toList());
+    Assert.assertEquals(Arrays.asList("Lib/Lib.csproj", "App/App.csproj"), paths);
+  }
+
+  @Test
+  public void inputHashChangesWithSources() throws Exception {
+    this.write("Lib/Lib.csproj", ProjectGraphTests.project());
+    this.write("Lib/Class1.cs", "class Class1 {}");
+    final String before = new ProjectGraph.Scan("Lib").invoke(this.folder.getRoot(), null).getNodes().get(0).getInputHash();
+    this.write("Lib/obj/Generated.cs", "class Generated {}");
+    final String unchanged = new ProjectGraph.Scan("Lib").invoke(this.folder.getRoot(), null).getNodes().get(0).getInputHash();
+    Assert.assertEquals(before, unchanged);
+    this.write("Lib/Class1.cs", "class Class1 { int x; }");
+    final String after = new ProjectGraph.Scan("Lib").invoke(this.folder.getRoot(), null).getNodes().get(0).getInputHash();
+    Assert.assertNotEquals(before, after);
+  }
+
+  @Test
+  public void inputHashIncludesSharedBuildFilesAbove() throws Exception {
+    this.write("src/Lib/Lib.csproj", ProjectGraphTests.project());
+    this.write("src/Lib/Class1.cs", "class Class1 {}");
+    this.write("Directory.Build.props", "<Project />");
+    final String before = new ProjectGraph.Scan("src/Lib").invoke(this.folder.getRoot(), null).getNodes().get(0).getInputHash();
+    this.write("README.md", "unrelated");
+    this.write("src/notes.txt", "unrelated");
+    final String unchanged = new ProjectGraph.Scan("src/Lib").invoke(this.folder.getRoot(), null).getNodes().get(0).getInputHash();
+    Assert.assertEquals(before, unchanged);
+    this.write("Directory.Build.props", "<Project><PropertyGroup><Nullable>enable</Nullable></PropertyGroup></Project>");
+    final String props = new ProjectGraph.Scan("src/Lib").invoke(this.folder.getRoot(), null).getNodes().get(0).getInputHash();
+    Assert.assertNotEquals(before, props);
+    this.write("src/global.json", "{ \"sdk\": { \"version\": \"8.0.100\" } }");
+    final String globalJson = new ProjectGraph.Scan("src/Lib").invoke(this.folder.getRoot(), null).getNodes().get(0).getInputHash();
+    Assert.assertNotEquals(props, globalJson);
+  }
+
+  @Test
+  public void unchangedProjectFilesAreNotParsedAgain() throws Exception {
+    this.write("App.slnx", "<Solution><Project Path=\"App/App.csproj\" /><Project Path=\"Lib/Lib.csproj\" /></Solution>");
+    this.write("App/App.csproj", ProjectGraphTests.project("../Lib/Lib.csproj"));
+    this.write("Lib/Lib.csproj", ProjectGraphTests.project());
+    final String cacheFile = new File(this.folder.newFolder("tmp"), "graph.cache").getPath();
+    final ProjectGraph first = new ProjectGraph.Scan("App.slnx", false, cacheFile).invoke(this.folder.getRoot(), null);
+    Assert.assertEquals(2, first.getParsedCount());
+    Assert.assertEquals(0, first.getReusedCount());
+    Assert.assertEquals("", first.getNodes().get(0).getInputHash());
+    this.write("Lib/Lib.csproj", "<Project><ItemGroup><PackageReference Include=\"Microsoft.NET.Test.Sdk\" /></ItemGroup></Project>");
+    final ProjectGraph second = new ProjectGraph.Scan("App.slnx", false, cacheFile).invoke(this.folder.getRoot(), null);
+    Assert.assertEquals(1, second.getParsedCount());
+    Assert.assertEquals(1, second.getReusedCount());
+    Assert.assertTrue(second.getNodes().get(0).isTestProject());
+    Assert.assertEquals(Collections.singletonList("Lib/Lib.csproj"), second.getNodes().get(1).getReferences());
+  }
+
+}
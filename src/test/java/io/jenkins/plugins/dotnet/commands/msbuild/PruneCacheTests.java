@@ -0,0 +1,54 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+public final class PruneCacheTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static File entry(File dir, String name, int size, long age) throws Exception {
+    final File file = new File(dir, name);
+    Files.write(file.toPath(), new byte[size]);
+    Assert.assertTrue(file.setLastModified(System.currentTimeMillis() - age));
+    return file;
+  }
+
+  @Test
+  public void unusedEntriesAreRemoved() throws Exception {
+    final File dir = this.folder.newFolder("cache");
+    final File recent = PruneCacheTests.entry(dir, "recent.tar.gz", 10, TimeUnit.HOURS.toMillis(1));
+    final File old = PruneCacheTests.entry(dir, "old.tar.gz", 10, TimeUnit.DAYS.toMillis(30));
+    final File temp = PruneCacheTests.entry(dir, "old.tar.gz" + PruneCache.TEMP_MARKER + "1", 10, TimeUnit.DAYS.toMillis(1));
+    final File busy = PruneCacheTests.entry(dir, "new.tar.gz" + PruneCache.TEMP_MARKER + "2", 10, 0);
+    Assert.assertEquals(2, (int) new PruneCache(TimeUnit.DAYS.toMillis(14), 1000).invoke(dir, null));
+    Assert.assertTrue(recent.exists());
+    Assert.assertFalse(old.exists());
+    Assert.assertFalse(temp.exists());
+    Assert.assertTrue(busy.exists());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreRemovedBeyondMaximumSize() throws Exception {
+    final File dir = this.folder.newFolder("cache");
+    final File newest = new File(dir, "newest");
+    Assert.assertTrue(newest.mkdir());
+    PruneCacheTests.entry(newest, "a.dll", 40, 0);
+    PruneCacheTests.entry(newest, "b.dll", 40, 0);
+    Assert.assertTrue(newest.setLastModified(System.currentTimeMillis() - 1000));
+    final File middle = PruneCacheTests.entry(dir, "middle", 40, 2000);
+    final File oldest = PruneCacheTests.entry(dir, "oldest", 10, 3000);
+    Assert.assertEquals(2, (int) new PruneCache(TimeUnit.DAYS.toMillis(14), 100).invoke(dir, null));
+    Assert.assertTrue(newest.exists());
+    Assert.assertFalse(middle.exists());
+    Assert.assertFalse(oldest.exists());
+  }
+
+}
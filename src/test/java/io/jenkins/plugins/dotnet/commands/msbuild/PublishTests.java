@@ -1,8 +1,19 @@
 package io.jenkins.plugins.dotnet.commands.msbuild;
 
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Slave;
 import io.jenkins.plugins.dotnet.commands.CommandTests;
+import org.junit.Assert;
 import org.junit.Test;
+import org.jvnet.hudson.test.FakeLauncher;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 public final class PublishTests extends CommandTests {
@@ -27,6 +38,80 @@ public final class PublishTests extends CommandTests {
     });
   }
 
+  @Test
+  public void archiveOutputFlagDoesNotAffectCommandLine() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      {
+        final Publish command = new Publish();
+        command.setArchiveOutput(true);
+        command.setOutputDirectory("out");
+        steps.add(command);
+        clc.expectCommand().withArguments("publish", "--output", "out");
+      }
+      {
+        final Publish command = new Publish();
+        command.setArchiveOutput(true);
+        steps.add(command);
+        clc.expectCommand().withArguments("publish");
+      }
+    });
+  }
+
+  private static String sha256(String content) throws Exception {
+    return Util.toHexString(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void archivedOutputIsStoredOnce() throws Exception {
+    final FreeStyleProject project = this.rule.createFreeStyleProject();
+    final Publish command = new Publish();
+    command.setArchiveOutput(true);
+    command.setOutputDirectory("out");
+    project.getBuildersList().add(command);
+    final AtomicInteger publishes = new AtomicInteger();
+    final Slave slave = this.rule.createPretendSlave(p -> {
+      if (p.cmds().contains("publish")) {
+        // Each publish changes only b.dll; c.dll has the same content as a.dll.
+        final FilePath out = p.pwd().child("out");
+        out.child("a.dll").write("A", "UTF-8");
+        out.child("b.dll").write("B" + publishes.incrementAndGet(), "UTF-8");
+        out.child("sub/c.dll").write("A", "UTF-8");
+      }
+      return new FakeLauncher.FinishedProc(0);
+    });
+    this.rule.jenkins.addNode(slave);
+    project.setAssignedNode(slave);
+    final PublishedOutputStore store = new PublishedOutputStore(project);
+    final FreeStyleBuild first = this.rule.buildAndAssertSuccess(project);
+    {
+      final PublishedOutputAction action = first.getAction(PublishedOutputAction.class);
+      Assert.assertNotNull(action);
+      final Map<String, String> files = action.getFiles();
+      Assert.assertEquals(3, files.size());
+      Assert.assertEquals(PublishTests.sha256("A"), files.get("out/a.dll"));
+      Assert.assertEquals(PublishTests.sha256("B1"), files.get("out/b.dll"));
+      Assert.assertEquals(PublishTests.sha256("A"), files.get("out/sub/c.dll"));
+      Assert.assertEquals(2, action.getStoredCount());
+      Assert.assertEquals(1, action.getReusedCount());
+      for (final String hash : files.values())
+        Assert.assertTrue(hash, store.getFile(hash).isFile());
+    }
+    final FreeStyleBuild second = this.rule.buildAndAssertSuccess(project);
+    {
+      final PublishedOutputAction action = second.getAction(PublishedOutputAction.class);
+      Assert.assertNotNull(action);
+      Assert.assertEquals(PublishTests.sha256("B2"), action.getFiles().get("out/b.dll"));
+      Assert.assertEquals(1, action.getStoredCount());
+      Assert.assertEquals(2, action.getReusedCount());
+    }
+    this.rule.assertLogContains("1 new or changed file(s) stored, 2 file(s) skipped", second);
+    // Deleting the first build releases only the content no other build refers to.
+    first.delete();
+    Assert.assertFalse(store.getFile(PublishTests.sha256("B1")).exists());
+    Assert.assertTrue(store.getFile(PublishTests.sha256("A")).isFile());
+    Assert.assertTrue(store.getFile(PublishTests.sha256("B2")).isFile());
+  }
+
   @Test
   public void forceFlagWorks() throws Exception {
     this.runCommandsAndValidateProcessExecution((steps, clc) -> {
@@ -45,6 +130,30 @@ public final class PublishTests extends CommandTests {
     });
   }
 
+  @Test
+  public void multipleRuntimesShareOneRestore() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      {
+        final Publish command = new Publish();
+        command.setProject(PublishTests.PROJECT);
+        command.setOutputDirectory("out");
+        command.setRuntimes("linux-x64", "win-x64");
+        steps.add(command);
+        clc.expectCommand().withArguments("restore", PublishTests.PROJECT, "-r:linux-x64", "-r:win-x64");
+        clc.expectCommand().withArguments("publish", PublishTests.PROJECT, "--output", "out/linux-x64", "--no-restore", "-r:linux-x64");
+        clc.expectCommand().withArguments("publish", PublishTests.PROJECT, "--output", "out/win-x64", "--no-restore", "-r:win-x64");
+      }
+      {
+        final Publish command = new Publish();
+        command.setNoBuild(true);
+        command.setRuntimes("linux-x64", "win-x64");
+        steps.add(command);
+        clc.expectCommand().withArguments("publish", "--no-build", "-r:linux-x64");
+        clc.expectCommand().withArguments("publish", "--no-build", "-r:win-x64");
+      }
+    });
+  }
+
   private static final String FRAMEWORK = "net5.0";
 
   @Test
@@ -0,0 +1,79 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+
+public final class TestImpactTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private void write(String path, String content) throws Exception {
+    final File file = new File(this.folder.getRoot(), path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private ProjectGraph scan() throws Exception {
+    this.write("All.slnx", "<Solution><Project Path=\"Tests/Tests.csproj\" /></Solution>");
+    this.write("Tests/Tests.csproj", "<Project><ItemGroup><PackageReference Include=\"Microsoft.NET.Test.Sdk\" />" +
+                                     "<ProjectReference Include=\"../Lib/Lib.csproj\" /></ItemGroup></Project>");
+    this.write("Lib/Lib.csproj", "<Project />");
+    return new ProjectGraph.Scan("All.slnx", false, null).invoke(this.folder.getRoot(), null);
+  }
+
+  private static TestImpact impact() throws Exception {
+    final String map = "# test project, test, covered files\n" +
+                       "Tests/Tests.csproj\tTests.AddTests.Adds\tLib/Add.cs\n" +
+                       "Tests/Tests.csproj\tTests.SubTests.Subtracts(1)\tLib/Sub.cs\tLib/Common.cs\n";
+    return TestImpact.read(new ByteArrayInputStream(map.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static MSBuildCommand.Invocation refine(ProjectGraph graph, Set<String> changed, String filter) throws Exception {
+    final ProjectGraph.Node node = graph.getNodes().get(1);
+    final MSBuildCommand.Invocation invocation = new MSBuildCommand.Invocation(node.getPath(), null, null, null, false, null, null);
+    return TestImpactTests.impact().refine(invocation, graph, node, changed, filter);
+  }
+
+  @Test
+  public void onlyImpactedTestsAreSelected() throws Exception {
+    final ProjectGraph graph = this.scan();
+    final MSBuildCommand.Invocation refined = TestImpactTests.refine(graph, Collections.singleton("Lib/Sub.cs"), null);
+    Assert.assertNotNull(refined);
+    Assert.assertEquals("FullyQualifiedName=Tests.SubTests.Subtracts\\(1\\)", refined.getFilter());
+  }
+
+  @Test
+  public void configuredFilterIsCombined() throws Exception {
+    final ProjectGraph graph = this.scan();
+    final MSBuildCommand.Invocation refined = TestImpactTests.refine(graph, Collections.singleton("Lib/Add.cs"), "Priority=1");
+    Assert.assertNotNull(refined);
+    Assert.assertEquals("(Priority=1)&(FullyQualifiedName=Tests.AddTests.Adds)", refined.getFilter());
+  }
+
+  @Test
+  public void uncoveredChangesRunAllTests() throws Exception {
+    final ProjectGraph graph = this.scan();
+    final MSBuildCommand.Invocation refined = TestImpactTests.refine(graph, Collections.singleton("Tests/AddTests.cs"), null);
+    Assert.assertNotNull(refined);
+    Assert.assertNull(refined.getFilter());
+  }
+
+  @Test
+  public void sharedBuildFileChangesRunAllTests() throws Exception {
+    final ProjectGraph graph = this.scan();
+    final MSBuildCommand.Invocation refined = TestImpactTests.refine(graph, Collections.singleton("Directory.Build.props"), null);
+    Assert.assertNotNull(refined);
+    Assert.assertNull(refined.getFilter());
+  }
+
+}
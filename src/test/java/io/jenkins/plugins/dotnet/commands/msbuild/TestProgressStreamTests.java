@@ -0,0 +1,36 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+public final class TestProgressStreamTests {
+
+  @Test
+  public void resultsAreReportedAsTheyStreamIn() throws Exception {
+    final String output = "  Determining projects to restore...\n" +
+                          "  Failed Tests.MathTests.Divides(x: 0) [3 ms]\n" +
+                          "  Error Message:\n" +
+                          "   System.DivideByZeroException : Attempted to divide by zero.\n" +
+                          "  Skipped Tests.MathTests.Later [< 1 ms]\n" +
+                          "\n" +
+                          "Failed!  - Failed:     1, Passed:    41, Skipped:     1, Total:    43, Duration: 2 s - Tests.dll (net8.0)\n" +
+                          "  Passed Tests.OtherTests.Works [12 ms]";
+    final TestProgressAction action = new TestProgressAction();
+    final ByteArrayOutputStream forwarded = new ByteArrayOutputStream();
+    try (final TestProgressStream stream = new TestProgressStream(forwarded, StandardCharsets.UTF_8, action)) {
+      stream.write(output.getBytes(StandardCharsets.UTF_8));
+      Assert.assertEquals(1, action.getFailed());
+      Assert.assertEquals("Tests.MathTests.Divides(x: 0)", action.getFailures().get(0).getName());
+      Assert.assertEquals("3 ms", action.getFailures().get(0).getDuration());
+    }
+    Assert.assertEquals(output, forwarded.toString("UTF-8"));
+    Assert.assertEquals(42, action.getPassed());
+    Assert.assertEquals(1, action.getFailed());
+    Assert.assertEquals(1, action.getSkipped());
+    Assert.assertEquals(44, action.getTotal());
+  }
+
+}
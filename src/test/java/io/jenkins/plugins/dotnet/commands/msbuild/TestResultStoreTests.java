@@ -0,0 +1,70 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public final class TestResultStoreTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void recordsAreReadBackInOrder() throws Exception {
+    final File file = new File(this.folder.getRoot(), "results.dat");
+    try (final TestResultStore.Writer writer = new TestResultStore.Writer(file)) {
+      writer.add("Tests.A.First", TestResultStore.Outcome.PASSED, 12);
+      writer.add("Tests.A.Second", TestResultStore.Outcome.FAILED, 300_000);
+      writer.add("Third", TestResultStore.Outcome.SKIPPED, 0);
+    }
+    final List<String> records = new ArrayList<>();
+    TestResultStore.read(file, (name, outcome, duration) -> records.add(name + ' ' + outcome + ' ' + duration));
+    Assert.assertEquals(Arrays.asList("Tests.A.First PASSED 12", "Tests.A.Second FAILED 300000", "Third SKIPPED 0"), records);
+    Assert.assertEquals(1, this.folder.getRoot().list().length);
+  }
+
+  @Test
+  public void trxOutcomesAreMapped() {
+    Assert.assertEquals(TestResultStore.Outcome.PASSED, TestResultStore.Outcome.fromTrx("Passed"));
+    Assert.assertEquals(TestResultStore.Outcome.FAILED, TestResultStore.Outcome.fromTrx("Timeout"));
+    Assert.assertEquals(TestResultStore.Outcome.SKIPPED, TestResultStore.Outcome.fromTrx("NotExecuted"));
+    Assert.assertEquals(TestResultStore.Outcome.OTHER, TestResultStore.Outcome.fromTrx(null));
+  }
+
+  @Test
+  public void trxFilesAreRecordedAndSummarized() throws Exception {
+    final File dir = this.folder.newFolder("TestResults");
+    final StringBuilder content = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<TestRun><Results>");
+    for (int i = 1; i <= 40; ++i) {
+      content.append("<UnitTestResult testName=\"Tests.C").append(i % 4).append(".Test").append(i)
+             .append("\" outcome=\"").append(i == 7 ? "Failed" : "Passed")
+             .append("\" duration=\"00:00:0").append(i % 10).append(".0000000\" />");
+    }
+    content.append("</Results></TestRun>");
+    Files.write(new File(dir, "run.trx").toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+    final File store = new File(this.folder.getRoot(), "results.dat");
+    final TestResultSummary summary = new TestResultStore.Record(store.getPath(), "results.dat", 0,
+      Collections.singleton("FullyQualifiedName=Tests.C3.Test7")).invoke(dir, null);
+    Assert.assertEquals(40, summary.getTotal());
+    Assert.assertEquals(39, summary.getPassed());
+    Assert.assertEquals(0, summary.getFailed());
+    Assert.assertEquals(1, summary.getFlaky());
+    Assert.assertEquals(TestResultSummary.TOP_COUNT, summary.getSlowestTests().size());
+    Assert.assertEquals("Tests.C1.Test29", summary.getSlowestTests().get(0).getName());
+    Assert.assertEquals(9000, summary.getSlowestTests().get(0).getDuration());
+    Assert.assertEquals(4, summary.getSlowestClasses().size());
+    final int[] count = { 0 };
+    TestResultStore.read(store, (name, outcome, duration) -> ++count[0]);
+    Assert.assertEquals(40, count[0]);
+  }
+
+}
@@ -0,0 +1,84 @@
+package io.jenkins.plugins.dotnet.commands.msbuild;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class TestShardsTests {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testListIsParsed() {
+    final String output = "Build succeeded.\n" +
+                          "Test run for /src/Tests/bin/Debug/net8.0/Tests.dll (.NETCoreApp,Version=v8.0)\n" +
+                          "The following Tests are available:\n" +
+                          "    Tests.MathTests.Adds\n" +
+                          "    Tests.MathTests.Divides(x: 1)\n" +
+                          "    Tests.MathTests.Divides(x: 2)\n" +
+                          "    Subtracts\n";
+    Assert.assertEquals(Arrays.asList("FullyQualifiedName=Tests.MathTests.Adds", "FullyQualifiedName=Tests.MathTests.Divides",
+                                      "Name=Subtracts"), TestShards.parseTestList(output));
+  }
+
+  @Test
+  public void partitionsAreBalanced() {
+    final Map<String, Long> durations = new HashMap<>();
+    durations.put("Name=A", 8L);
+    durations.put("Name=B", 7L);
+    durations.put("Name=C", 6L);
+    durations.put("Name=D", 5L);
+    durations.put("Name=E", 4L);
+    final List<List<String>> shards = TestShards.partition(durations.keySet(), durations, 2);
+    Assert.assertEquals(Arrays.asList("Name=A", "Name=D", "Name=E"), shards.get(0));
+    Assert.assertEquals(Arrays.asList("Name=B", "Name=C"), shards.get(1));
+    Assert.assertEquals(17, TestShards.duration(shards.get(0), durations));
+    Assert.assertEquals(13, TestShards.duration(shards.get(1), durations));
+  }
+
+  @Test
+  public void batchesAreLongestFirst() {
+    final Map<String, Long> durations = new HashMap<>();
+    durations.put("Name=A", 1L);
+    durations.put("Name=B", 50L);
+    final List<List<String>> batches = TestShards.batches(Arrays.asList("Name=A", "Name=B", "Name=C"), durations, 2);
+    Assert.assertEquals(3, batches.size());
+    Assert.assertEquals(Arrays.asList("Name=B"), batches.get(0));
+  }
+
+  @Test
+  public void filtersAreCombined() {
+    Assert.assertEquals("(Priority=1)&(Name=A|Name=B)", TestShards.filterFor(Arrays.asList("Name=A", "Name=B"), "Priority=1"));
+  }
+
+  @Test
+  public void trxResultsAreRead() throws Exception {
+    final File trx = new File(this.folder.newFolder("results"), "shard.trx");
+    final String content = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                           "<TestRun xmlns=\"http://microsoft.com/schemas/VisualStudio/TeamTest/2010\"><Results>" +
+                           "<UnitTestResult testName=\"Tests.MathTests.Adds\" outcome=\"Passed\" duration=\"00:00:01.5000000\" />" +
+                           "<UnitTestResult testName=\"Tests.MathTests.Divides(x: 1)\" outcome=\"Failed\" duration=\"00:00:00.2500000\" />" +
+                           "<UnitTestResult testName=\"Tests.MathTests.Divides(x: 2)\" outcome=\"Passed\" duration=\"00:00:00.2500000\" />" +
+                           "</Results></TestRun>";
+    Files.write(trx.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    final TrxResults results = new TrxResults.Scan().invoke(trx.getParentFile(), null);
+    Assert.assertEquals(3, results.getTotal());
+    Assert.assertEquals(2, results.getPassed());
+    Assert.assertEquals(1, results.getFailed());
+    Assert.assertEquals(Collections.singleton("FullyQualifiedName=Tests.MathTests.Divides"), results.getFailedTests());
+    Assert.assertEquals(Long.valueOf(1500), results.getDurations().get("FullyQualifiedName=Tests.MathTests.Adds"));
+    Assert.assertEquals(Long.valueOf(500), results.getDurations().get("FullyQualifiedName=Tests.MathTests.Divides"));
+  }
+
+}
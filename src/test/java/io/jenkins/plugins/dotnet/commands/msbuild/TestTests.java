@@ -320,4 +320,47 @@ public final class TestTests extends CommandTests {
     });
   }
 
+  @org.junit.Test
+  public void testImpactRunsAllTestsWhenChangesAreUnknown() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      final Test command = new Test();
+      command.setProject(TestTests.PROJECT);
+      command.setTestImpact(true);
+      command.setFullTestRunInterval(10);
+      steps.add(command);
+      clc.expectCommand().withArguments("test", TestTests.PROJECT);
+    });
+  }
+
+  @org.junit.Test
+  public void recordResultsAddsTrxLogger() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      final Test command = new Test();
+      command.setProject(TestTests.PROJECT);
+      command.setRecordResults(true);
+      steps.add(command);
+      clc.expectCommand().withArguments("test", TestTests.PROJECT, "--logger", "trx");
+    });
+  }
+
+  @org.junit.Test
+  public void maxCpuCountAppliesToTestRunner() throws Exception {
+    this.runCommandsAndValidateProcessExecution((steps, clc) -> {
+      {
+        final Test command = new Test();
+        command.setProject(TestTests.PROJECT);
+        command.setMaxCpuCount(2);
+        steps.add(command);
+        clc.expectCommand().withArguments("test", TestTests.PROJECT, "-maxcpucount:2", "--", "RunConfiguration.MaxCpuCount=2");
+      }
+      {
+        final Test command = new Test();
+        command.setProject(TestTests.PROJECT);
+        command.setMaxCpuCount(2);
+        command.setRunSettingsString("RunConfiguration.MaxCpuCount=1");
+        steps.add(command);
+        clc.expectCommand().withArguments("test", TestTests.PROJECT, "-maxcpucount:2", "--", "RunConfiguration.MaxCpuCount=1");
+      }
+    });
+  }
 }
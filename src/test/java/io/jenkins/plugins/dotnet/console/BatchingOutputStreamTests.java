@@ -0,0 +1,113 @@
+package io.jenkins.plugins.dotnet.console;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public final class BatchingOutputStreamTests {
+
+  /** Records the output written to it, along with the number of write calls. */
+  private static class Recorder extends OutputStream {
+
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    int writes = 0;
+
+    @Override
+    public synchronized void write(int b) {
+      this.write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      ++this.writes;
+      this.data.write(b, off, len);
+    }
+
+    synchronized String text() {
+      return new String(this.data.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+  }
+
+  @Test
+  public void linesAreCoalesced() throws Exception {
+    final Recorder recorder = new Recorder();
+    final BatchingOutputStream out = new BatchingOutputStream(recorder, 1024, TimeUnit.MINUTES.toMillis(1), 4096);
+    final StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 50; ++i) {
+      final String line = "line " + i + "\n";
+      expected.append(line);
+      out.write(line.getBytes(StandardCharsets.UTF_8));
+      out.flush(); // does not force a write
+    }
+    out.drain();
+    Assert.assertEquals(expected.toString(), recorder.text());
+    Assert.assertEquals(1, recorder.writes);
+  }
+
+  @Test
+  public void outputIsForwardedAfterMaxDelay() throws Exception {
+    final Recorder recorder = new Recorder();
+    final BatchingOutputStream out = new BatchingOutputStream(recorder, 1024, 50, 4096);
+    out.write("hello\n".getBytes(StandardCharsets.UTF_8));
+    final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (recorder.text().isEmpty() && System.currentTimeMillis() < deadline)
+      Thread.sleep(10);
+    Assert.assertEquals("hello\n", recorder.text());
+  }
+
+  @Test
+  public void backlogIsSpilledInOrder() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final Recorder recorder = new Recorder() {
+      @Override
+      public void write(byte[] b, int off, int len) {
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.write(b, off, len);
+      }
+    };
+    final BatchingOutputStream out = new BatchingOutputStream(recorder, 16, TimeUnit.MINUTES.toMillis(1), 64);
+    final StringBuilder expected = new StringBuilder();
+    // Far more than the memory limit; this must not block even though nothing can be forwarded yet.
+    for (int i = 0; i < 1000; ++i) {
+      final String line = "line " + i + "\n";
+      expected.append(line);
+      out.write(line.getBytes(StandardCharsets.UTF_8));
+    }
+    release.countDown();
+    out.close();
+    Assert.assertEquals(expected.toString(), recorder.text());
+  }
+
+  @Test
+  public void forwardingProblemsAreReported() throws Exception {
+    final OutputStream broken = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("broken");
+      }
+    };
+    final BatchingOutputStream out = new BatchingOutputStream(broken, 1024, 0, 4096);
+    out.write("hello\n".getBytes(StandardCharsets.UTF_8));
+    try {
+      out.drain();
+      Assert.fail("Expected the write failure to be reported.");
+    }
+    catch (IOException e) {
+      Assert.assertEquals("broken", e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+package io.jenkins.plugins.dotnet.console;
+
+import hudson.console.ConsoleNote;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+public final class ConsoleSummarizerTests {
+
+  /** A fake encoded console note. */
+  private static final String NOTE = new String(ConsoleNote.PREAMBLE, StandardCharsets.US_ASCII) + "note" +
+    new String(ConsoleNote.POSTAMBLE, StandardCharsets.US_ASCII);
+
+  @Test
+  public void onlySummaryIsForwarded() throws Exception {
+    final ByteArrayOutputStream summary = new ByteArrayOutputStream();
+    final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    final ConsoleSummarizer summarizer = new ConsoleSummarizer(summary, raw, StandardCharsets.UTF_8);
+    final String input = "" +
+      "Build started 1/1/2024 12:00:00.\n" +
+      "Some detailed logging\n" +
+      ConsoleSummarizerTests.NOTE + "/src/Foo.cs(1,2): warning CS0168: unused [/src/Foo.csproj]\n" +
+      "More detailed logging\n" +
+      ConsoleSummarizerTests.NOTE + "/src/Foo.cs(3,4): warning CS0168: unused [/src/Foo.csproj]\n" +
+      ConsoleSummarizerTests.NOTE + "/src/Bar.cs(1,2): warning CS0168: unused [/src/Foo.csproj]\n" +
+      ConsoleSummarizerTests.NOTE + "/src/Foo.cs(5,6): error CS0103: unknown [/src/Foo.csproj]\n" +
+      "  Foo -> /src/bin/Foo.dll\n" +
+      "    3 Warning(s)\n" +
+      "    1 Error(s)\n";
+    summarizer.write(input.getBytes(StandardCharsets.UTF_8));
+    summarizer.writeRepeats();
+    summarizer.close();
+    final String expectedSummary = "" +
+      "Build started 1/1/2024 12:00:00.\n" +
+      ConsoleSummarizerTests.NOTE + "/src/Foo.cs(1,2): warning CS0168: unused [/src/Foo.csproj]\n" +
+      ConsoleSummarizerTests.NOTE + "/src/Bar.cs(1,2): warning CS0168: unused [/src/Foo.csproj]\n" +
+      ConsoleSummarizerTests.NOTE + "/src/Foo.cs(5,6): error CS0103: unknown [/src/Foo.csproj]\n" +
+      "  Foo -> /src/bin/Foo.dll\n" +
+      "    3 Warning(s)\n" +
+      "    1 Error(s)\n" +
+      Messages.ConsoleSummarizer_RepeatedWarningInFile("CS0168", "/src/Foo.cs", 1) + System.lineSeparator();
+    Assert.assertEquals(expectedSummary, summary.toString(StandardCharsets.UTF_8.name()));
+    Assert.assertEquals(input.replace(ConsoleSummarizerTests.NOTE, ""), raw.toString(StandardCharsets.UTF_8.name()));
+  }
+
+  @Test
+  public void prefixedSummaryLinesAreForwarded() throws Exception {
+    final ByteArrayOutputStream summary = new ByteArrayOutputStream();
+    final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    final ConsoleSummarizer summarizer = new ConsoleSummarizer(summary, raw, StandardCharsets.UTF_8);
+    final String input = "" +
+      "[Foo.csproj|net8.0] Some detailed logging\n" +
+      "[Foo.csproj|net8.0]   Foo -> /src/bin/Foo.dll\n" +
+      "[Foo.csproj|net8.0] Build succeeded.\n";
+    summarizer.write(input.getBytes(StandardCharsets.UTF_8));
+    summarizer.close();
+    Assert.assertEquals("" +
+      "[Foo.csproj|net8.0]   Foo -> /src/bin/Foo.dll\n" +
+      "[Foo.csproj|net8.0] Build succeeded.\n", summary.toString(StandardCharsets.UTF_8.name()));
+    Assert.assertEquals(input, raw.toString(StandardCharsets.UTF_8.name()));
+  }
+
+  @Test
+  public void notesAreRemoved() {
+    final String text = "a" + ConsoleSummarizerTests.NOTE + "b" + ConsoleSummarizerTests.NOTE + "c\n";
+    final byte[] line = text.getBytes(StandardCharsets.UTF_8);
+    Assert.assertNull(ConsoleSummarizer.removeNotes("abc\n".getBytes(StandardCharsets.UTF_8), 4));
+    final byte[] plain = ConsoleSummarizer.removeNotes(line, line.length);
+    Assert.assertNotNull(plain);
+    Assert.assertEquals("abc\n", new String(plain, StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,44 @@
+package io.jenkins.plugins.dotnet.console;
+
+import hudson.MarkupText;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class DiagnosticNoteTests {
+
+  private static String render(DiagnosticNote note, String line) {
+    final MarkupText text = new MarkupText(line);
+    note.annotate(new Object(), text, 0);
+    return text.toString(false);
+  }
+
+  private static void assertSameMarkup(String line) {
+    final DiagnosticNote note = DiagnosticNote.forLine(DiagnosticNote.trimEOL(line));
+    Assert.assertNotNull(line, note);
+    final String expected = DiagnosticNoteTests.render(new DiagnosticNote(), line);
+    Assert.assertNotEquals(line, expected);
+    Assert.assertEquals(expected, DiagnosticNoteTests.render(note, line));
+  }
+
+  @Test
+  public void precomputedSpansMatchScanning() {
+    DiagnosticNoteTests.assertSameMarkup("/src/Foo.cs(12,5): warning CS0168: The variable 'x' is unused [/src/Foo.csproj]\n");
+    DiagnosticNoteTests.assertSameMarkup("/src/Foo.cs(1,1): error CS0103: The name 'y' does not exist\r\n");
+    DiagnosticNoteTests.assertSameMarkup("MSBUILD : error MSB1009: Project file does not exist.\n");
+    DiagnosticNoteTests.assertSameMarkup("warning : something odd happened\n");
+  }
+
+  @Test
+  public void nonDiagnosticLinesGetNoNote() {
+    Assert.assertNull(DiagnosticNote.forLine("Build succeeded."));
+  }
+
+  @Test
+  public void mismatchedTextFallsBackToScanning() {
+    final DiagnosticNote note = DiagnosticNote.forLine("/src/Foo.cs(12,5): warning CS0168: a rather long message text");
+    Assert.assertNotNull(note);
+    // A shorter line (e.g. decoded using a different character set) must not cause out-of-range markup.
+    Assert.assertEquals("short line\n", DiagnosticNoteTests.render(note, "short line\n"));
+  }
+
+}
@@ -0,0 +1,57 @@
+package io.jenkins.plugins.dotnet.console;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class DiagnosticScannerTests {
+
+  private static final byte[] NOTE = "[note]".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  public void sinkForwardsPrefixedLinesToScannerOutput() throws Exception {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final DiagnosticScanner scanner = new DiagnosticScanner(output, StandardCharsets.UTF_8, DiagnosticScannerTests.NOTE);
+    final DiagnosticScanner invocationScanner = new DiagnosticScanner(scanner.createSink("[Foo] "), StandardCharsets.UTF_8,
+      DiagnosticScannerTests.NOTE);
+    invocationScanner.write("/src/Foo.cs(1,1): error CS0103: unknown\n".getBytes(StandardCharsets.UTF_8));
+    invocationScanner.close();
+    // the line is marked once (by the invocation's scanner), and closing the sink does not close the command's scanner
+    scanner.write("done\n".getBytes(StandardCharsets.UTF_8));
+    scanner.close();
+    Assert.assertEquals("[Foo] [note]/src/Foo.cs(1,1): error CS0103: unknown\ndone\n",
+      output.toString(StandardCharsets.UTF_8.name()));
+  }
+
+  @Test
+  public void scannedOutputIsAnnotatedLikeDirectOutput() throws Exception {
+    final String input = "" +
+      "Build started.\n" +
+      "/src/Foo.cs(1,1): error CS0103: unknown\r\n" +
+      "/src/Foo.cs(2,1): warning CS0168: unused\n" +
+      "    1 Warning(s)\n" +
+      "    1 Error(s)\n" +
+      "done";
+    final byte[] data = input.getBytes(StandardCharsets.UTF_8);
+    final ByteArrayOutputStream direct = new ByteArrayOutputStream();
+    final DiagnosticScanner directScanner = new DiagnosticScanner(direct, StandardCharsets.UTF_8, DiagnosticScannerTests.NOTE);
+    directScanner.write(data);
+    directScanner.close();
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final DiagnosticScanner scanner = new DiagnosticScanner(output, StandardCharsets.UTF_8, DiagnosticScannerTests.NOTE);
+    // Scanned in two chunks of complete lines (except at the very end), as a node would.
+    final int split = input.indexOf("    1 Warning(s)");
+    final DiagnosticScanner.Settings settings = scanner.getSettings();
+    scanner.writeScanned(Arrays.copyOf(data, split), settings.scan(data, split));
+    final byte[] rest = Arrays.copyOfRange(data, split, data.length);
+    scanner.writeScanned(rest, settings.scan(rest, rest.length));
+    scanner.close();
+    Assert.assertEquals(direct.toString(StandardCharsets.UTF_8.name()), output.toString(StandardCharsets.UTF_8.name()));
+    Assert.assertEquals(1, scanner.getErrors());
+    Assert.assertEquals(1, scanner.getWarnings());
+  }
+
+}
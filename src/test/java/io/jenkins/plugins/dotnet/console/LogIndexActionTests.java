@@ -0,0 +1,49 @@
+package io.jenkins.plugins.dotnet.console;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+public final class LogIndexActionTests {
+
+  @Rule
+  public JenkinsRule rule = new JenkinsRule();
+
+  @Test
+  public void excerptFindsEntryFarFromItsRecordedOffset() throws Exception {
+    final FreeStyleProject project = this.rule.createFreeStyleProject();
+    project.getBuildersList().add(new TestBuilder() {
+      @Override
+      public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+        // Lots of output from elsewhere (e.g. a parallel branch) ahead of the diagnostic.
+        for (int i = 0; i < 2000; ++i)
+          listener.getLogger().println("some unrelated output, line " + i);
+        listener.getLogger().println("/src/Foo.cs(1,1): error CS0103: unknown");
+        listener.getLogger().println("more output");
+        return true;
+      }
+    });
+    final FreeStyleBuild build = this.rule.buildAndAssertSuccess(project);
+    final LogIndexAction action = LogIndexAction.forRun(build);
+    // The recorded offset is at the start of the log, more than the excerpt's context away from the actual line.
+    action.record(new LogIndexAction.Entry(LogIndexAction.Kind.ERROR, 0, "/src/Foo.cs(1,1): error CS0103"));
+    final LogIndexAction.Excerpt excerpt = action.getExcerpt(0);
+    Assert.assertNotNull(excerpt);
+    Assert.assertNotEquals(-1, excerpt.getHighlight());
+    Assert.assertEquals("/src/Foo.cs(1,1): error CS0103: unknown", excerpt.getLines().get(excerpt.getHighlight()));
+    Assert.assertTrue(excerpt.getLines().contains("more output"));
+    // An entry whose line is not in the log at all is not highlighted.
+    action.record(new LogIndexAction.Entry(LogIndexAction.Kind.ERROR, 0, "/src/Bar.cs(1,1): error CS0103"));
+    final LogIndexAction.Excerpt missing = action.getExcerpt(1);
+    Assert.assertNotNull(missing);
+    Assert.assertEquals(-1, missing.getHighlight());
+  }
+
+}
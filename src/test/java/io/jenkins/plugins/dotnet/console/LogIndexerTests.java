@@ -0,0 +1,48 @@
+package io.jenkins.plugins.dotnet.console;
+
+import hudson.console.ConsoleNote;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class LogIndexerTests {
+
+  /** A fake encoded console note. */
+  private static final String NOTE = new String(ConsoleNote.PREAMBLE, StandardCharsets.US_ASCII) + "note" +
+    new String(ConsoleNote.POSTAMBLE, StandardCharsets.US_ASCII);
+
+  @Test
+  public void entriesRecordPositionsOfAllOutput() throws Exception {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final List<LogIndexAction.Entry> entries = new ArrayList<>();
+    final LogIndexer indexer = new LogIndexer(output, StandardCharsets.UTF_8, entries::add, 100);
+    final String input = "" +
+      "[workspace] $ dotnet build\n" +
+      "hello\n" +
+      LogIndexerTests.NOTE + "/src/Foo.cs(1,1): error CS0103: unknown\n" +
+      "Project \"/src/Foo.csproj\" on node 1 (default targets).\n" +
+      "Retrying 2 failed test(s).\n" +
+      "[Foo.csproj|net8.0] " + LogIndexerTests.NOTE + "/src/Foo.cs(2,1): warning CS0168: unused\n" +
+      "/src/Foo.cs(3,1): warning CS0168: not annotated, so not a diagnostic\n";
+    // Written in arbitrary pieces, as several sources would.
+    final byte[] data = input.getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < data.length; i += 7)
+      indexer.write(data, i, Math.min(7, data.length - i));
+    indexer.close();
+    Assert.assertEquals(input, output.toString(StandardCharsets.UTF_8.name()));
+    Assert.assertEquals(3, entries.size());
+    Assert.assertEquals(LogIndexAction.Kind.ERROR, entries.get(0).getKind());
+    Assert.assertEquals(LogIndexAction.Kind.PROJECT, entries.get(1).getKind());
+    Assert.assertEquals(LogIndexAction.Kind.WARNING, entries.get(2).getKind());
+    for (final LogIndexAction.Entry entry : entries) {
+      // each entry points at the start of its line (including its prefix and note, if any)
+      final String rest = input.substring((int) entry.getOffset() - 100);
+      Assert.assertTrue(rest, ConsoleNote.removeNotes(rest).startsWith(entry.getText()));
+    }
+  }
+
+}